@@ -0,0 +1,218 @@
+import benchmarks.Workload;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+
+/**
+ * Default package side of the benchmarks, see benchmarks.Workload for why this bridge exists
+ */
+public class JmhWorkload implements Workload {
+    /** Generated program that synthetic inputs repeat, using every kind of statement the Parser handles */
+    static final String SYNTHETIC_CHUNK =
+            "/* generated */\n" +
+            "i = 0;\n" +
+            "while (i < 10) {\n" +
+            "    x = (i * 3 + 7) % 5 - i / 2;\n" +
+            "    if (x > 2 && !(i == 4)) {\n" +
+            "        print(\"big value\\n\");\n" +
+            "    } else {\n" +
+            "        putc('a');\n" +
+            "    }\n" +
+            "    i = i + 1; // next\n" +
+            "}\n";
+
+    /** Packed token buffer reused by every tokenize call */
+    private final TokenBuffer buffer = new TokenBuffer();
+    /** Parser only used for its printAST, never given any tokens */
+    private final Parser printer = new Parser(new Lexer(""));
+    /** VM reused by every runBytecode call */
+    private final VM vm = new VM(Writer.nullWriter());
+    /** RegisterVM reused by every runRegisters call */
+    private final RegisterVM registerVM = new RegisterVM(Writer.nullWriter());
+    /** Parser reused by every parseArena call, so its arena keeps the arrays it has grown */
+    private final Parser parser = new Parser(new Lexer(""));
+    /** Compile cache kept in memory only, shared by every compileCached call */
+    private final CompileCache cache = new CompileCache(1L << 30);
+
+    /**
+     * Public no argument constructor, for Workload.get
+     */
+    public JmhWorkload() {
+    }
+
+    @Override
+    public String source(String input) {
+        if (input.startsWith("synthetic-")) {
+            return synthetic(parseSize(input.substring("synthetic-".length())));
+        }
+        try {
+            return MiniCompiler.readSource(input);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Repeats the synthetic chunk until the text is at least the given size
+     * @param bytes size to reach
+     * @return generated source
+     */
+    static String synthetic(long bytes) {
+        StringBuilder sb = new StringBuilder((int) Math.min(Integer.MAX_VALUE - 8, bytes + SYNTHETIC_CHUNK.length()));
+        while (sb.length() < bytes) {
+            sb.append(SYNTHETIC_CHUNK);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reads a size such as 1KB, 64KB, 1MB or 100MB
+     * @param size size with a KB or MB suffix, or a plain number of bytes
+     * @return number of bytes
+     */
+    static long parseSize(String size) {
+        if (size.endsWith("MB")) return Long.parseLong(size.substring(0, size.length() - 2)) << 20;
+        if (size.endsWith("KB")) return Long.parseLong(size.substring(0, size.length() - 2)) << 10;
+        return Long.parseLong(size);
+    }
+
+    @Override
+    public long lex(String source) {
+        Lexer lexer = new Lexer(source);
+        long count = 1;
+        while (lexer.getToken().tokentype != TokenType.End_of_input) {
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public long tokenize(String source) {
+        return new Lexer(source).tokenize(this.buffer).size();
+    }
+
+    @Override
+    public long tokenizeParallel(String source) {
+        return ParallelLexer.tokenize(source).size();
+    }
+
+    @Override
+    public long tokenizeVector(String source) {
+        CharScanner scanner = CharScanner.vector(source);
+        if (scanner == null) {
+            scanner = new CharScanner(source);
+        }
+        return new Lexer(scanner, new SymbolTable(), new Diagnostics()).tokenize(this.buffer).size();
+    }
+
+    @Override
+    public Object prelex(String source) {
+        return new Lexer(source).tokenize(new TokenBuffer());
+    }
+
+    @Override
+    public Object parse(Object tokens) {
+        //unlimited errors, so inputs with constructs the Parser doesn't handle still get parsed all the way through
+        return new Parser(((TokenBuffer) tokens).stream(), new Diagnostics(Integer.MAX_VALUE)).parse();
+    }
+
+    @Override
+    public int parseArena(Object tokens) {
+        this.parser.reset(((TokenBuffer) tokens).stream(), new Diagnostics(Integer.MAX_VALUE));
+        return this.parser.parseArena();
+    }
+
+    @Override
+    public long countNodes(Object ast) {
+        //walked with an explicit stack, so long statement chains can't overflow the benchmark's own stack
+        long count = 1;
+        ArrayDeque<Parser.Node> stack = new ArrayDeque<>();
+        if (ast != null) stack.push((Parser.Node) ast);
+        while (!stack.isEmpty()) {
+            Parser.Node n = stack.pop();
+            for (Parser.Node child : new Parser.Node[]{n.left, n.right}) {
+                count++;
+                if (child != null) stack.push(child);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int printAST(Object ast) {
+        return this.printer.printAST((Parser.Node) ast, new StringBuilder(), false).length();
+    }
+
+    @Override
+    public Object compile(String source) {
+        return new Parser(new Lexer(source), new Diagnostics(Integer.MAX_VALUE)).parse();
+    }
+
+    @Override
+    public Object compileCached(String source) {
+        return this.cache.compile(source, new Diagnostics(Integer.MAX_VALUE)).ast();
+    }
+
+    @Override
+    public Object load(String source) {
+        return new Interpreter(Writer.nullWriter()).load(MiniCompiler.compile(source));
+    }
+
+    @Override
+    public int run(Object program) {
+        Interpreter interpreter = (Interpreter) program;
+        try {
+            interpreter.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return interpreter.getVariable("i");
+    }
+
+    @Override
+    public Object generate(String source) {
+        return CodeGen.generate(MiniCompiler.compile(source));
+    }
+
+    @Override
+    public int runBytecode(Object bytecode) {
+        try {
+            this.vm.run((Bytecode) bytecode);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this.vm.getVariable((Bytecode) bytecode, "i");
+    }
+
+    @Override
+    public Object generateRegisters(String source) {
+        return RegisterGen.generate(MiniCompiler.compile(source));
+    }
+
+    @Override
+    public int runRegisters(Object program) {
+        try {
+            this.registerVM.run((RegisterCode) program);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return this.registerVM.getVariable((RegisterCode) program, "i");
+    }
+
+    @Override
+    public Object jit(String source) {
+        return Jit.compile(MiniCompiler.compile(source));
+    }
+
+    @Override
+    public int runJit(Object program) {
+        try {
+            ((Jit) program).run(Writer.nullWriter());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ((Jit) program).getVariable("i");
+    }
+}
@@ -0,0 +1,42 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end throughput: source text in, AST out, with the Parser pulling tokens straight from the Lexer
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CompileBenchmark {
+    /**
+     * Lexes and parses the input
+     * @param in the input
+     * @param counts bytes done
+     * @return the AST
+     */
+    @Benchmark
+    public Object compile(Inputs in, Counts counts) {
+        counts.bytes += in.source.length();
+        return in.workload.compile(in.source);
+    }
+
+    /**
+     * Loads the AST of the input from a compile cache, which hashes the source and decodes the cached entry every
+     * time, to compare against compiling it
+     * @param in the input
+     * @param counts bytes done
+     * @return the AST
+     */
+    @Benchmark
+    public Object cached(Inputs in, Counts counts) {
+        counts.bytes += in.source.length();
+        return in.workload.compileCached(in.source);
+    }
+}
@@ -0,0 +1,31 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Extra counters reported next to each score, turning ops/s into tokens/s, nodes/s and bytes/s
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Counts {
+    /** Tokens produced */
+    public long tokens;
+    /** AST nodes produced */
+    public long nodes;
+    /** Source bytes consumed */
+    public long bytes;
+
+    /**
+     * Zeroes the counters before each iteration
+     */
+    @Setup(Level.Iteration)
+    public void clear() {
+        this.tokens = 0;
+        this.nodes = 0;
+        this.bytes = 0;
+    }
+}
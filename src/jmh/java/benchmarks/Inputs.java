@@ -0,0 +1,32 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The source every benchmark runs on: the sample programs, and generated programs from 1KB up to 100MB so the cost
+ * per byte can be compared across sizes
+ */
+@State(Scope.Benchmark)
+public class Inputs {
+    /** Name of a file in src/main/resources, or synthetic-SIZE */
+    @Param({"count.c", "prime.c", "fizzbuzz.c", "99bottles.c",
+            "synthetic-1KB", "synthetic-64KB", "synthetic-1MB", "synthetic-10MB", "synthetic-100MB"})
+    public String input;
+
+    /** Compiler operations, loaded once */
+    public Workload workload;
+    /** Text of the input */
+    public String source;
+
+    /**
+     * Loads the workload and reads or generates the input
+     */
+    @Setup
+    public void load() {
+        this.workload = Workload.get();
+        this.source = this.workload.source(this.input);
+    }
+}
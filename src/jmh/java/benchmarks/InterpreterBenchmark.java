@@ -0,0 +1,86 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How fast the Interpreter, the bytecode VM, the RegisterVM and the Jit run the sample programs, compiled once outside the measurement
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class InterpreterBenchmark {
+    /** Name of a file in src/main/resources */
+    @Param({"count.c", "prime.c", "fizzbuzz.c", "99bottles.c"})
+    public String program;
+
+    /** Compiler operations */
+    private Workload workload;
+    /** The loaded program */
+    private Object loaded;
+    /** The program as Bytecode */
+    private Object bytecode;
+    /** The program as RegisterCode */
+    private Object registers;
+    /** The program compiled by the Jit */
+    private Object compiled;
+
+    /**
+     * Compiles and loads the program
+     */
+    @Setup
+    public void load() {
+        this.workload = Workload.get();
+        String source = this.workload.source(this.program);
+        this.loaded = this.workload.load(source);
+        this.bytecode = this.workload.generate(source);
+        this.registers = this.workload.generateRegisters(source);
+        this.compiled = this.workload.jit(source);
+    }
+
+    /**
+     * Runs the program once
+     * @return a variable of the program
+     */
+    @Benchmark
+    public int run() {
+        return this.workload.run(this.loaded);
+    }
+
+    /**
+     * Runs the program's Bytecode once on the VM
+     * @return a variable of the program
+     */
+    @Benchmark
+    public int vm() {
+        return this.workload.runBytecode(this.bytecode);
+    }
+
+    /**
+     * Runs the program's RegisterCode once on the RegisterVM
+     * @return a variable of the program
+     */
+    @Benchmark
+    public int registers() {
+        return this.workload.runRegisters(this.registers);
+    }
+
+    /**
+     * Runs the program once as a hidden class compiled by the Jit
+     * @return a variable of the program
+     */
+    @Benchmark
+    public int jit() {
+        return this.workload.runJit(this.compiled);
+    }
+}
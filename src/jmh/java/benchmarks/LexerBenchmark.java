@@ -0,0 +1,74 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lexer throughput, through getToken() one Token at a time, through tokenize() into a packed buffer, through the
+ * ParallelLexer, and through tokenize() searching with the vector API
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LexerBenchmark {
+    /**
+     * Lexes the whole input with getToken()
+     * @param in the input
+     * @param counts tokens and bytes done
+     * @return number of tokens
+     */
+    @Benchmark
+    public long getToken(Inputs in, Counts counts) {
+        long n = in.workload.lex(in.source);
+        counts.tokens += n;
+        counts.bytes += in.source.length();
+        return n;
+    }
+
+    /**
+     * Lexes the whole input with tokenize(), reusing one buffer
+     * @param in the input
+     * @param counts tokens and bytes done
+     * @return number of tokens
+     */
+    @Benchmark
+    public long tokenize(Inputs in, Counts counts) {
+        long n = in.workload.tokenize(in.source);
+        counts.tokens += n;
+        counts.bytes += in.source.length();
+        return n;
+    }
+
+    /**
+     * Lexes the whole input with the ParallelLexer, which only splits inputs of at least a chunk per core
+     * @param in the input
+     * @param counts tokens and bytes done
+     * @return number of tokens
+     */
+    @Benchmark
+    public long parallel(Inputs in, Counts counts) {
+        long n = in.workload.tokenizeParallel(in.source);
+        counts.tokens += n;
+        counts.bytes += in.source.length();
+        return n;
+    }
+
+    /**
+     * Lexes the whole input with tokenize(), jumping over whitespace, comments and Strings with a VectorScanner
+     * @param in the input
+     * @param counts tokens and bytes done
+     * @return number of tokens
+     */
+    @Benchmark
+    public long vector(Inputs in, Counts counts) {
+        long n = in.workload.tokenizeVector(in.source);
+        counts.tokens += n;
+        counts.bytes += in.source.length();
+        return n;
+    }
+}
@@ -0,0 +1,75 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parser throughput on tokens lexed ahead of time, and printAST on a tree parsed ahead of time
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+    /** Tokens of the input, from Workload.prelex */
+    private Object tokens;
+    /** AST of the input */
+    private Object ast;
+    /** Number of nodes in ast */
+    private long nodeCount;
+
+    /**
+     * Lexes and parses the input once, outside the measurement
+     * @param in the input
+     */
+    @Setup
+    public void prepare(Inputs in) {
+        this.tokens = in.workload.prelex(in.source);
+        this.ast = in.workload.parse(this.tokens);
+        this.nodeCount = in.workload.countNodes(this.ast);
+    }
+
+    /**
+     * Parses the pre-lexed tokens
+     * @param in the input
+     * @param counts nodes done
+     * @return the AST
+     */
+    @Benchmark
+    public Object parse(Inputs in, Counts counts) {
+        counts.nodes += this.nodeCount;
+        return in.workload.parse(this.tokens);
+    }
+
+    /**
+     * Parses the pre-lexed tokens into a reused AstArena instead of Node objects
+     * @param in the input
+     * @param counts nodes done
+     * @return index of the root node
+     */
+    @Benchmark
+    public int parseArena(Inputs in, Counts counts) {
+        counts.nodes += this.nodeCount;
+        return in.workload.parseArena(this.tokens);
+    }
+
+    /**
+     * Prints the AST to text without echoing it
+     * @param in the input
+     * @param counts nodes done
+     * @return length of the text
+     */
+    @Benchmark
+    public int printAST(Inputs in, Counts counts) {
+        counts.nodes += this.nodeCount;
+        return in.workload.printAST(this.ast);
+    }
+}
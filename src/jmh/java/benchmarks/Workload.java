@@ -0,0 +1,161 @@
+package benchmarks;
+
+/**
+ * The compiler operations the benchmarks measure. JMH won't accept benchmarks in the default package, and a named
+ * package can't refer to the compiler's default package classes, so JmhWorkload (in the default package) implements
+ * this interface and the benchmarks load it once by name. After that every call is a plain interface call.
+ */
+public interface Workload {
+    /**
+     * Loads the default package implementation
+     * @return the Workload
+     */
+    static Workload get() {
+        try {
+            return (Workload) Class.forName("JmhWorkload").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("JmhWorkload not on the classpath", e);
+        }
+    }
+
+    /**
+     * Gets the source for a benchmark input: the name of a file in src/main/resources, or synthetic-SIZE for generated
+     * code of about SIZE bytes, such as synthetic-1KB or synthetic-100MB
+     * @param input name of the input
+     * @return source text
+     */
+    String source(String input);
+
+    /**
+     * Lexes a source one getToken() call at a time
+     * @param source source text
+     * @return number of tokens, End_of_input included
+     */
+    long lex(String source);
+
+    /**
+     * Lexes a source into a reusable packed token buffer
+     * @param source source text
+     * @return number of tokens, End_of_input included
+     */
+    long tokenize(String source);
+
+    /**
+     * Lexes a source with the ParallelLexer, one chunk per core of the common pool
+     * @param source source text
+     * @return number of tokens, End_of_input included
+     */
+    long tokenizeParallel(String source);
+
+    /**
+     * Lexes a source into a reusable packed token buffer, searching it with a VectorScanner
+     * @param source source text
+     * @return number of tokens, End_of_input included
+     */
+    long tokenizeVector(String source);
+
+    /**
+     * Lexes a source ahead of time, so parse can be measured on its own
+     * @param source source text
+     * @return the lexed tokens, to pass to parse
+     */
+    Object prelex(String source);
+
+    /**
+     * Parses tokens from prelex
+     * @param tokens result of prelex
+     * @return root of the AST
+     */
+    Object parse(Object tokens);
+
+    /**
+     * Parses tokens from prelex into the Parser's AstArena only, building no Node objects
+     * @param tokens result of prelex
+     * @return index of the root node
+     */
+    int parseArena(Object tokens);
+
+    /**
+     * Counts the nodes of an AST, null children included as the printer shows them
+     * @param ast root of the AST
+     * @return number of nodes
+     */
+    long countNodes(Object ast);
+
+    /**
+     * Writes an AST out as text, without echoing it to the console
+     * @param ast root of the AST
+     * @return length of the text
+     */
+    int printAST(Object ast);
+
+    /**
+     * Lexes and parses a source in one go
+     * @param source source text
+     * @return root of the AST
+     */
+    Object compile(String source);
+
+    /**
+     * Gets the AST of a source from an in-memory compile cache, compiling it only the first time
+     * @param source source text
+     * @return root of the AST
+     */
+    Object compileCached(String source);
+
+    /**
+     * Compiles a source and loads it into an Interpreter that throws its output away
+     * @param source source text
+     * @return the loaded Interpreter, to pass to run
+     */
+    Object load(String source);
+
+    /**
+     * Runs a program from load
+     * @param program result of load
+     * @return a variable of the program, so the run can't be optimised away
+     */
+    int run(Object program);
+
+    /**
+     * Compiles a source to Bytecode for the VM
+     * @param source source text
+     * @return the Bytecode, to pass to runBytecode
+     */
+    Object generate(String source);
+
+    /**
+     * Runs Bytecode from generate on a VM that throws its output away
+     * @param bytecode result of generate
+     * @return a variable of the program, so the run can't be optimised away
+     */
+    int runBytecode(Object bytecode);
+
+    /**
+     * Compiles a source to RegisterCode for the RegisterVM
+     * @param source source text
+     * @return the RegisterCode, to pass to runRegisters
+     */
+    Object generateRegisters(String source);
+
+    /**
+     * Runs RegisterCode from generateRegisters on a RegisterVM that throws its output away
+     * @param program result of generateRegisters
+     * @return a variable of the program, so the run can't be optimised away
+     */
+    int runRegisters(Object program);
+
+    /**
+     * Compiles a source to a hidden class with the Jit
+     * @param source source text
+     * @return the compiled program, to pass to runJit
+     */
+    Object jit(String source);
+
+    /**
+     * Runs a program from jit, throwing its output away
+     * @param program result of jit
+     * @return a variable of the program, so the run can't be optimised away
+     */
+    int runJit(Object program);
+}
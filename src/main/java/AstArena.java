@@ -0,0 +1,230 @@
+import java.util.Arrays;
+
+/**
+ * Packed store of AST nodes, kept as parallel arrays instead of one Parser.Node object per node. A node is just its
+ * index in the arrays, and a missing child is NIL. Children are always added before their parent, so every child has
+ * a smaller index than the node that holds it.
+ */
+class AstArena {
+    /** All node types, indexed by ordinal, so looking one up doesn't copy the values() array each time */
+    private static final Parser.NodeType[] KINDS = Parser.NodeType.values();
+    /** Index standing for a missing node, the way null does for Parser.Node */
+    static final int NIL = -1;
+    /** Starting capacity of the arrays */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** SymbolTable the value ids refer to */
+    private SymbolTable symbols;
+    /** Ordinal of each node's NodeType */
+    private byte[] kinds;
+    /** Index of each node's left child, NIL if it has none */
+    private int[] lefts;
+    /** Index of each node's right child, NIL if it has none */
+    private int[] rights;
+    /** SymbolTable id of each leaf's text, -1 for nodes that aren't leaves */
+    private int[] values;
+    /** Number of nodes in the arena */
+    private int size;
+
+    /**
+     * Constructor for an empty AstArena with its own SymbolTable
+     */
+    AstArena() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructor for an empty AstArena with its own SymbolTable and room for a known number of nodes
+     * @param capacity number of nodes it can hold before growing
+     */
+    AstArena(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.symbols = new SymbolTable();
+        this.kinds = new byte[capacity];
+        this.lefts = new int[capacity];
+        this.rights = new int[capacity];
+        this.values = new int[capacity];
+    }
+
+    /**
+     * Empties the arena so another AST can be built in it, keeping the arrays already allocated
+     * @param symbols SymbolTable the next leaves' value ids will refer to
+     */
+    void reset(SymbolTable symbols) {
+        this.symbols = symbols;
+        this.size = 0;
+    }
+
+    /**
+     * Appends a node, growing the arrays when they're full
+     * @param kind type of the node
+     * @param left index of the left child, or NIL
+     * @param right index of the right child, or NIL
+     * @param value SymbolTable id of a leaf's text, -1 for other nodes
+     * @return index of the new node
+     */
+    private int add(Parser.NodeType kind, int left, int right, int value) {
+        if (this.size == this.kinds.length) {
+            int capacity = this.size * 2;
+            this.kinds = Arrays.copyOf(this.kinds, capacity);
+            this.lefts = Arrays.copyOf(this.lefts, capacity);
+            this.rights = Arrays.copyOf(this.rights, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+        }
+        this.kinds[this.size] = (byte) kind.ordinal();
+        this.lefts[this.size] = left;
+        this.rights[this.size] = right;
+        this.values[this.size] = value;
+        return this.size++;
+    }
+
+    /**
+     * Adds an inner node, like Parser.Node.make_node
+     * @param kind type of the node
+     * @param left index of the left child, or NIL
+     * @param right index of the right child, or NIL
+     * @return index of the new node
+     */
+    int node(Parser.NodeType kind, int left, int right) {
+        return add(kind, left, right, -1);
+    }
+
+    /**
+     * Adds a leaf node, like Parser.Node.make_leaf
+     * @param kind nd_Ident, nd_Integer or nd_String
+     * @param value SymbolTable id of the leaf's text
+     * @return index of the new node
+     */
+    int leaf(Parser.NodeType kind, int value) {
+        return add(kind, NIL, NIL, value);
+    }
+
+    /**
+     * Adds a leaf node for a Token, reusing the Token's SymbolTable id when it has one, so Identifiers and Strings
+     * from the Lexer aren't hashed a second time
+     * @param token Identifier, Integer or String Token to make the leaf from
+     * @return index of the new node
+     */
+    int leaf(Lexer.Token token) {
+        int value = token.symbol >= 0 ? token.symbol : this.symbols.intern(token.value);
+        return leaf(token.tokentype.getNodeType(), value);
+    }
+
+    /**
+     * Getter for the number of nodes in the arena
+     * @return number of nodes
+     */
+    int size() { return this.size; }
+
+    /**
+     * Getter for the SymbolTable the value ids refer to
+     * @return the SymbolTable
+     */
+    SymbolTable getSymbols() { return this.symbols; }
+
+    /**
+     * Getter for the type of a node
+     * @param i index of the node
+     * @return type of the node
+     */
+    Parser.NodeType kind(int i) { return KINDS[this.kinds[i]]; }
+
+    /**
+     * Getter for the left child of a node
+     * @param i index of the node
+     * @return index of the left child, NIL if it has none
+     */
+    int left(int i) { return this.lefts[i]; }
+
+    /**
+     * Getter for the right child of a node
+     * @param i index of the node
+     * @return index of the right child, NIL if it has none
+     */
+    int right(int i) { return this.rights[i]; }
+
+    /**
+     * Getter for the SymbolTable id of a leaf's text
+     * @param i index of the node
+     * @return id of the text, -1 if the node isn't a leaf
+     */
+    int value(int i) { return this.values[i]; }
+
+    /**
+     * Getter for the text of a leaf
+     * @param i index of the node
+     * @return text of the leaf, empty for nodes that aren't leaves
+     */
+    String text(int i) {
+        return this.values[i] >= 0 ? this.symbols.name(this.values[i]) : "";
+    }
+
+    /**
+     * Checks whether a node is a leaf holding a value
+     * @param i index of the node
+     * @return true for Identifier, Integer and String nodes
+     */
+    boolean isLeaf(int i) {
+        Parser.NodeType kind = kind(i);
+        return kind == Parser.NodeType.nd_Ident || kind == Parser.NodeType.nd_Integer || kind == Parser.NodeType.nd_String;
+    }
+
+    /**
+     * Builds the linked Parser.Node tree for a node, for code that still works on Parser.Node. Since children always
+     * come before their parents, the nodes are built in index order with no recursion
+     * @param root index of the root node, or NIL
+     * @return the root Parser.Node, null for NIL
+     */
+    Parser.Node toNode(int root) {
+        if (root == NIL) {
+            return null;
+        }
+        Parser.Node[] nodes = new Parser.Node[root + 1];
+        for (int i = 0; i <= root; i++) {
+            Parser.Node left = this.lefts[i] == NIL ? null : nodes[this.lefts[i]];
+            Parser.Node right = this.rights[i] == NIL ? null : nodes[this.rights[i]];
+            nodes[i] = new Parser.Node(kind(i), left, right, text(i));
+            nodes[i].symbol = isLeaf(i) && kind(i) != Parser.NodeType.nd_Integer ? this.values[i] : -1;
+        }
+        return nodes[root];
+    }
+
+    /**
+     * Writes out a node and everything under it in the same format as Parser.printAST, walking with an explicit
+     * stack so long statement chains can't overflow the Java stack
+     * @param i index of the node, or NIL
+     * @param out where the text is written, left open and not flushed
+     */
+    void printAST(int i, OutputSink out) {
+        int[] stack = new int[16];
+        int sp = 0;
+        stack[sp++] = i;
+        while (sp > 0) {
+            i = stack[--sp];
+            if (i == NIL) {
+                out.append(";\n");
+            } else {
+                Parser.NodeType kind = kind(i);
+                out.append(kind.toString());
+                if (isLeaf(i)) {
+                    //String literals are kept unquoted, so put the quotes back for display
+                    out.append(' ');
+                    if (kind == Parser.NodeType.nd_String) {
+                        out.append('"').append(text(i)).append('"');
+                    } else {
+                        out.append(text(i));
+                    }
+                    out.append('\n');
+                } else {
+                    out.append('\n');
+                    //right child pushed first so the left one comes out first
+                    if (sp + 2 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[sp++] = this.rights[i];
+                    stack[sp++] = this.lefts[i];
+                }
+            }
+        }
+    }
+}
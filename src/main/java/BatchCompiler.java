@@ -0,0 +1,234 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiles many source files at once, lexing and parsing each file as its own task on a work-stealing pool.
+ * Every file gets a Result, so one bad file is reported without stopping the others.
+ */
+class BatchCompiler {
+    /** File extensions picked up when a directory is given */
+    static final List<String> SOURCE_EXTENSIONS = List.of(".c", ".t");
+    /** MB of compiled files kept in the --cache directory when --cache-size isn't given */
+    static final long DEFAULT_CACHE_MB = 64;
+    /** MB of compiled files kept in memory as well while the batch runs */
+    static final long CACHE_MEMORY_MB = 16;
+
+    /**
+     * Outcome of compiling one file: either its AST, or the error that stopped it
+     */
+    static class Result {
+        /** File that was compiled */
+        final Path file;
+        /** Root of the AST, null if the file failed */
+        final Parser.Node ast;
+        /** Error that stopped the file, null if it compiled, or if it only had errors the Parser recovered from */
+        final Exception error;
+        /** Every error reported for the file */
+        final List<Diagnostics.Diagnostic> diagnostics;
+        /** Time taken to lex and parse the file, in nanoseconds */
+        final long nanos;
+
+        /**
+         * Constructor for a Result
+         * @param file file that was compiled
+         * @param ast root of the AST, null if the file failed
+         * @param error error that stopped the file, null if it compiled
+         * @param diagnostics every error reported for the file
+         * @param nanos time taken, in nanoseconds
+         */
+        Result(Path file, Parser.Node ast, Exception error, List<Diagnostics.Diagnostic> diagnostics, long nanos) {
+            this.file = file; this.ast = ast; this.error = error; this.diagnostics = diagnostics; this.nanos = nanos;
+        }
+
+        /**
+         * Checks whether the file compiled
+         * @return true if there was no error at all
+         */
+        boolean ok() { return this.error == null && this.diagnostics.isEmpty(); }
+
+        @Override
+        public String toString() {
+            String time = String.format("%8.2f ms", this.nanos / 1e6);
+            if (ok()) {
+                return String.format("OK    %s  %s", time, this.file);
+            }
+            StringBuilder sb = new StringBuilder(String.format("FAIL  %s  %s", time, this.file));
+            for (Diagnostics.Diagnostic d : this.diagnostics) {
+                sb.append("\n      ").append(d);
+            }
+            //an error that wasn't a reported diagnostic, such as a file that couldn't be read
+            if (this.error != null && !(this.error instanceof CompileException)) {
+                sb.append("\n      ").append(this.error);
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Lexes and parses a single file, catching anything that goes wrong so it can be reported with the file
+     * @param file file to compile
+     * @param maxErrors number of errors after which the file is abandoned
+     * @return Result for the file
+     */
+    static Result compileOne(Path file, int maxErrors) {
+        return compileOne(file, maxErrors, null);
+    }
+
+    /**
+     * Lexes and parses a single file, or loads it from a CompileCache if the same text was compiled before
+     * @param file file to compile
+     * @param maxErrors number of errors after which the file is abandoned
+     * @param cache where compiled files are kept, null to always compile
+     * @return Result for the file
+     */
+    static Result compileOne(Path file, int maxErrors, CompileCache cache) {
+        long start = System.nanoTime();
+        Diagnostics diagnostics = new Diagnostics(maxErrors);
+        try {
+            Parser.Node ast;
+            if (cache != null) {
+                ast = cache.compile(Files.readString(file), diagnostics).ast();
+            } else {
+                Lexer lexer = new Lexer(Files.readString(file), new SymbolTable(), diagnostics);
+                ast = new Parser(lexer, diagnostics).parse();
+            }
+            return new Result(file, ast, null, diagnostics.getErrors(), System.nanoTime() - start);
+        } catch (IOException | RuntimeException e) {
+            return new Result(file, null, e, diagnostics.getErrors(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Compiles every file on a work-stealing pool, one task per file
+     * @param files files to compile
+     * @param parallelism number of threads to use
+     * @return one Result per file, in the same order as files
+     */
+    static List<Result> compileAll(List<Path> files, int parallelism) {
+        return compileAll(files, parallelism, Diagnostics.DEFAULT_MAX_ERRORS);
+    }
+
+    /**
+     * Compiles every file on a work-stealing pool, one task per file
+     * @param files files to compile
+     * @param parallelism number of threads to use
+     * @param maxErrors number of errors after which a file is abandoned
+     * @return one Result per file, in the same order as files
+     */
+    static List<Result> compileAll(List<Path> files, int parallelism, int maxErrors) {
+        return compileAll(files, parallelism, maxErrors, null);
+    }
+
+    /**
+     * Compiles every file on a work-stealing pool, one task per file, skipping files a CompileCache already has
+     * @param files files to compile
+     * @param parallelism number of threads to use
+     * @param maxErrors number of errors after which a file is abandoned
+     * @param cache where compiled files are kept, null to always compile
+     * @return one Result per file, in the same order as files
+     */
+    static List<Result> compileAll(List<Path> files, int parallelism, int maxErrors, CompileCache cache) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Callable<Result>> tasks = new ArrayList<>();
+            for (Path file : files) {
+                tasks.add(() -> compileOne(file, maxErrors, cache));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            //compileOne catches everything itself, so only an Error could end up here
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Expands the given paths into a list of source files, walking directories for files with a source extension
+     * @param paths files and directories
+     * @return every source file found, directories' contents in sorted order
+     * @throws IOException if a directory can't be walked
+     */
+    static List<Path> collectFiles(List<String> paths) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String name : paths) {
+            Path path = Path.of(name);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> walk = Files.walk(path)) {
+                    files.addAll(walk.filter(Files::isRegularFile)
+                            .filter(f -> SOURCE_EXTENSIONS.stream().anyMatch(ext -> f.toString().endsWith(ext)))
+                            .sorted()
+                            .collect(Collectors.toList()));
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Compiles every file and directory named in args in parallel, printing one line per file.
+     * Option -jN sets the number of threads, which defaults to the number of cores, and --max-errors=N the number
+     * of errors after which a file is abandoned. Option --cache=DIR keeps the tokens and AST of every file that
+     * compiled in DIR, so unchanged files are loaded instead of compiled on the next run, and --cache-size=N keeps
+     * at most N MB there, 64 by default. Exits with status 1 if any file failed.
+     * @param args Command line arguments, options followed by files and directories to compile
+     */
+    public static void main(String[] args) {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        int maxErrors = Diagnostics.DEFAULT_MAX_ERRORS;
+        Path cacheDir = null;
+        long cacheSize = DEFAULT_CACHE_MB;
+        List<String> paths = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("-j")) {
+                parallelism = Integer.parseInt(arg.substring(2));
+            } else if (arg.startsWith("--cache=")) {
+                cacheDir = Path.of(arg.substring("--cache=".length()));
+            } else if (arg.startsWith("--cache-size=")) {
+                cacheSize = Long.parseLong(arg.substring("--cache-size=".length()));
+            } else if (arg.startsWith("--max-errors=")) {
+                maxErrors = Integer.parseInt(arg.substring("--max-errors=".length()));
+            } else {
+                paths.add(arg);
+            }
+        }
+        if (paths.isEmpty()) {
+            CompileException.fail("No args");
+        }
+
+        try {
+            CompileCache cache = cacheDir == null ? null
+                    : new CompileCache(CACHE_MEMORY_MB << 20, cacheDir, cacheSize << 20);
+            List<Result> results = compileAll(collectFiles(paths), parallelism, maxErrors, cache);
+            int failed = 0;
+            for (Result r : results) {
+                System.out.println(r);
+                if (!r.ok()) failed++;
+            }
+            System.out.printf("%d files, %d failed\n", results.size(), failed);
+            if (failed > 0) {
+                System.exit(1);
+            }
+        } catch (IOException e) {
+            CompileException.fail("Exception: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,828 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary forms of the token stream and the AST, for handing them between stages or processes without
+ * formatting them as .lex and .par text and reading that back in.
+ *
+ * Both start with a 4 byte magic number and a varint version. Every number after that is a varint: 7 bits a byte,
+ * low bits first, with the top bit set when more bytes follow. Values go through a string table built as the stream
+ * is written: the first time a value is seen it is written out in full and gets the next id, after that only its id
+ * is written. So a stream can be written and read one token or node at a time without knowing what comes later.
+ *
+ * A token is its type's ordinal + 1, its line as a difference from the token before, its position, and then for
+ * Identifiers, Integers and Strings its value. A 0 where a type would be ends the tokens. The AST is its nodes in the
+ * same preorder as printAST, each one its NodeType's ordinal + 1 and a value for leaves, with 0 for a missing child
+ * where printAST prints a ";". Since every inner node has exactly two children, the reader knows when the tree ends.
+ *
+ * Files in these forms use the .lexb and .parb extensions, and convert to and from .lex and .par text exactly.
+ */
+class BinaryFormat {
+    /** Marks the start of a binary token stream */
+    static final int TOKENS_MAGIC = 0x4D43544B;
+    /** Marks the start of a binary AST */
+    static final int AST_MAGIC = 0x4D434153;
+    /** Version of the format, readers refuse streams from any other version */
+    static final int VERSION = 1;
+    /** Value reference meaning a new value follows in full */
+    private static final int NEW_VALUE = 0;
+    /** All token types, indexed by ordinal */
+    private static final TokenType[] TYPES = TokenType.values();
+    /** All node types, indexed by ordinal */
+    private static final Parser.NodeType[] KINDS = Parser.NodeType.values();
+    /** Every NodeType by the name printAST shows for it */
+    private static final Map<String, Parser.NodeType> KINDS_BY_NAME = new HashMap<>();
+
+    static {
+        for (Parser.NodeType kind : KINDS) {
+            KINDS_BY_NAME.put(kind.toString(), kind);
+        }
+    }
+
+    /**
+     * Checks if tokens of a type carry a value
+     * @param type the token type
+     * @return true for Identifier, Integer and String
+     */
+    private static boolean hasValue(TokenType type) {
+        return type == TokenType.Identifier || type == TokenType.Integer || type == TokenType.String;
+    }
+
+    /**
+     * Checks if nodes of a type are leaves with a value
+     * @param kind the node type
+     * @return true for Identifier, Integer and String nodes
+     */
+    private static boolean isLeaf(Parser.NodeType kind) {
+        return kind == Parser.NodeType.nd_Ident || kind == Parser.NodeType.nd_Integer || kind == Parser.NodeType.nd_String;
+    }
+
+    /**
+     * Buffered output with varints and the writer's side of the string table
+     */
+    private static class Output implements Closeable {
+        /** Where the bytes finally go */
+        private final OutputStream out;
+        /** Bytes not yet handed to out */
+        private final byte[] buffer = new byte[8192];
+        /** Number of bytes in buffer */
+        private int size;
+        /** Id of every value written so far */
+        private final Map<String, Integer> ids = new HashMap<>();
+
+        /**
+         * Constructor for an Output, which writes the header straight away
+         * @param out where to write
+         * @param magic magic number of the stream
+         * @throws IOException if it can't be written
+         */
+        Output(OutputStream out, int magic) throws IOException {
+            this.out = out;
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                writeByte(magic >>> shift);
+            }
+            writeVarint(VERSION);
+        }
+
+        /**
+         * Writes one byte
+         * @param b the byte, only the low 8 bits are used
+         * @throws IOException if it can't be written
+         */
+        void writeByte(int b) throws IOException {
+            if (this.size == this.buffer.length) {
+                flushBuffer();
+            }
+            this.buffer[this.size++] = (byte) b;
+        }
+
+        /**
+         * Writes an unsigned varint
+         * @param value number to write, treated as unsigned
+         * @throws IOException if it can't be written
+         */
+        void writeVarint(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte(value);
+        }
+
+        /**
+         * Writes a value through the string table: NEW_VALUE then the value's UTF-8 length and bytes the first time,
+         * its id + 1 after that
+         * @param value the value
+         * @throws IOException if it can't be written
+         */
+        void writeValue(String value) throws IOException {
+            Integer id = this.ids.get(value);
+            if (id != null) {
+                writeVarint(id + 1);
+                return;
+            }
+            this.ids.put(value, this.ids.size());
+            writeVarint(NEW_VALUE);
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length);
+            for (byte b : utf8) {
+                writeByte(b);
+            }
+        }
+
+        /**
+         * Hands the buffered bytes to the underlying stream
+         * @throws IOException if they can't be written
+         */
+        private void flushBuffer() throws IOException {
+            this.out.write(this.buffer, 0, this.size);
+            this.size = 0;
+        }
+
+        /**
+         * Writes out everything buffered and flushes the underlying stream
+         * @throws IOException if it can't be written
+         */
+        void flush() throws IOException {
+            flushBuffer();
+            this.out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            this.out.close();
+        }
+    }
+
+    /**
+     * Buffered input with varints and the reader's side of the string table
+     */
+    private static class Input implements Closeable {
+        /** Where the bytes come from */
+        private final InputStream in;
+        /** Bytes read ahead from in */
+        private final byte[] buffer = new byte[8192];
+        /** Index in buffer of the next byte */
+        private int position;
+        /** Number of bytes in buffer */
+        private int limit;
+        /** Every value read so far, interned in the order they were written so their ids match */
+        private final SymbolTable values = new SymbolTable();
+
+        /**
+         * Constructor for an Input, which checks the header straight away
+         * @param in where to read from
+         * @param magic magic number the stream should start with
+         * @throws IOException if it can't be read, or isn't a stream of this kind and version
+         */
+        Input(InputStream in, int magic) throws IOException {
+            this.in = in;
+            int found = 0;
+            for (int i = 0; i < 4; i++) {
+                found = found << 8 | readByte();
+            }
+            if (found != magic) {
+                throw new IOException("Not a binary " + (magic == TOKENS_MAGIC ? "token" : "AST") + " stream");
+            }
+            int version = readVarint();
+            if (version != VERSION) {
+                throw new IOException("Binary format version " + version + " isn't supported, expected " + VERSION);
+            }
+        }
+
+        /**
+         * Reads one byte
+         * @return the byte, 0 to 255
+         * @throws IOException if it can't be read, EOFException if the stream has ended
+         */
+        int readByte() throws IOException {
+            if (this.position == this.limit) {
+                this.limit = this.in.read(this.buffer);
+                this.position = 0;
+                if (this.limit <= 0) {
+                    this.limit = 0;
+                    throw new EOFException("Binary stream cut short");
+                }
+            }
+            return this.buffer[this.position++] & 0xFF;
+        }
+
+        /**
+         * Reads an unsigned varint
+         * @return the number
+         * @throws IOException if it can't be read or is longer than an int
+         */
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if (b < 0x80) {
+                    return value;
+                }
+            }
+            throw new IOException("Bad number in binary stream");
+        }
+
+        /**
+         * Reads a value written by Output.writeValue
+         * @return id of the value in getValues()
+         * @throws IOException if it can't be read or refers to a value not seen yet
+         */
+        int readValue() throws IOException {
+            int ref = readVarint();
+            if (ref != NEW_VALUE) {
+                if (ref > this.values.size()) {
+                    throw new IOException("Bad value in binary stream");
+                }
+                return ref - 1;
+            }
+            byte[] utf8 = new byte[readVarint()];
+            for (int i = 0; i < utf8.length; i++) {
+                utf8[i] = (byte) readByte();
+            }
+            return this.values.intern(new String(utf8, StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Getter for the values read so far
+         * @return SymbolTable of the values, by the ids readValue gives
+         */
+        SymbolTable getValues() {
+            return this.values;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+
+    /**
+     * Writes tokens one at a time in the binary form
+     */
+    static class TokenWriter implements Closeable {
+        /** Where the tokens go */
+        private final Output out;
+        /** Line of the token before */
+        private int line;
+
+        /**
+         * Constructor for a TokenWriter, which writes the header straight away
+         * @param out where to write
+         * @throws IOException if it can't be written
+         */
+        TokenWriter(OutputStream out) throws IOException {
+            this.out = new Output(out, TOKENS_MAGIC);
+        }
+
+        /**
+         * Writes one token
+         * @param type type of the token
+         * @param line line the token is on
+         * @param pos position within the line the token starts on
+         * @param value value of the token, only written for Identifiers, Integers and Strings
+         * @throws IOException if it can't be written
+         */
+        void write(TokenType type, int line, int pos, String value) throws IOException {
+            this.out.writeVarint(type.ordinal() + 1);
+            int delta = line - this.line;
+            this.out.writeVarint((delta << 1) ^ (delta >> 31));
+            this.out.writeVarint(pos);
+            if (hasValue(type)) {
+                this.out.writeValue(value);
+            }
+            this.line = line;
+        }
+
+        /**
+         * Writes one token
+         * @param t the Token
+         * @throws IOException if it can't be written
+         */
+        void write(Lexer.Token t) throws IOException {
+            write(t.tokentype, t.line, t.pos, t.value);
+        }
+
+        /**
+         * Writes every token of a TokenBuffer
+         * @param tokens the tokens
+         * @throws IOException if they can't be written
+         */
+        void writeAll(TokenBuffer tokens) throws IOException {
+            for (int i = 0; i < tokens.size(); i++) {
+                TokenType type = tokens.type(i);
+                write(type, tokens.line(i), tokens.pos(i), hasValue(type) ? tokens.value(i) : "");
+            }
+        }
+
+        /**
+         * Marks the end of the tokens and flushes them, leaving the stream open
+         * @throws IOException if it can't be written
+         */
+        void finish() throws IOException {
+            this.out.writeVarint(0);
+            this.out.flush();
+        }
+
+        /**
+         * Marks the end of the tokens and closes the stream
+         * @throws IOException if it can't be written
+         */
+        @Override
+        public void close() throws IOException {
+            finish();
+            this.out.close();
+        }
+    }
+
+    /**
+     * Reads tokens one at a time from the binary form. The values are interned as they are read, so Identifier and
+     * String Tokens carry symbol ids the Parser can share, like Tokens from a Lexer
+     */
+    static class TokenReader implements Closeable {
+        /** Where the tokens come from */
+        private final Input in;
+        /** Line of the token before */
+        private int line;
+        /** True once the end of the tokens has been read */
+        private boolean done;
+
+        /**
+         * Constructor for a TokenReader, which checks the header straight away
+         * @param in where to read from
+         * @throws IOException if it can't be read, or isn't a token stream of this version
+         */
+        TokenReader(InputStream in) throws IOException {
+            this.in = new Input(in, TOKENS_MAGIC);
+        }
+
+        /**
+         * Reads the next token
+         * @return the Token, null once the end of the tokens has been read
+         * @throws IOException if it can't be read or is damaged
+         */
+        Lexer.Token read() throws IOException {
+            if (this.done) {
+                return null;
+            }
+            int type = this.in.readVarint();
+            if (type == 0) {
+                this.done = true;
+                return null;
+            }
+            if (type > TYPES.length) {
+                throw new IOException("Bad token type in binary stream");
+            }
+            TokenType tokentype = TYPES[type - 1];
+            int delta = this.in.readVarint();
+            this.line += (delta >>> 1) ^ -(delta & 1);
+            int pos = this.in.readVarint();
+            if (!hasValue(tokentype)) {
+                return new Lexer.Token(tokentype, "", this.line, pos);
+            }
+            int id = this.in.readValue();
+            String value = this.in.getValues().name(id);
+            return new Lexer.Token(tokentype, value, this.line, pos, tokentype == TokenType.Integer ? -1 : id);
+        }
+
+        /**
+         * Reads the rest of the tokens as a TokenStream for the Parser. A damaged stream throws an
+         * UncheckedIOException from next or peek, since TokenStream can't throw IOException
+         * @return TokenStream over the tokens, handing out End_of_input once they run out
+         */
+        TokenStream stream() {
+            return new TokenStream() {
+                /** Tokens read ahead for peek, as a ring */
+                private final Lexer.Token[] ahead = new Lexer.Token[LOOKAHEAD];
+                /** Index in ahead of the next Token */
+                private int head;
+                /** Number of Tokens in ahead */
+                private int count;
+                /** Last Token read, handed out again once the tokens run out */
+                private Lexer.Token last = new Lexer.Token(TokenType.End_of_input, "", 1, 1);
+
+                @Override
+                public Lexer.Token next() {
+                    Lexer.Token t = peek(0);
+                    this.head = (this.head + 1) & (LOOKAHEAD - 1);
+                    this.count--;
+                    return t;
+                }
+
+                @Override
+                public Lexer.Token peek(int k) {
+                    while (this.count <= k) {
+                        Lexer.Token t;
+                        try {
+                            t = read();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        if (t == null) {
+                            //past the end, keep handing back the last Token, which should be End_of_input
+                            t = this.last;
+                        }
+                        this.last = t;
+                        this.ahead[(this.head + this.count) & (LOOKAHEAD - 1)] = t;
+                        this.count++;
+                    }
+                    return this.ahead[(this.head + k) & (LOOKAHEAD - 1)];
+                }
+
+                @Override
+                public SymbolTable getSymbols() {
+                    return TokenReader.this.in.getValues();
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+
+    /**
+     * Writes an AST in the binary form, either a whole tree at once or one node at a time in preorder
+     */
+    static class AstWriter implements Closeable {
+        /** Where the nodes go */
+        private final Output out;
+
+        /**
+         * Constructor for an AstWriter, which writes the header straight away
+         * @param out where to write
+         * @throws IOException if it can't be written
+         */
+        AstWriter(OutputStream out) throws IOException {
+            this.out = new Output(out, AST_MAGIC);
+        }
+
+        /**
+         * Writes the next node in preorder. An inner node must be followed by its left then its right subtree
+         * @param kind type of the node, null for a missing child
+         * @param value text of a leaf, ignored for other nodes
+         * @throws IOException if it can't be written
+         */
+        void writeNode(Parser.NodeType kind, String value) throws IOException {
+            if (kind == null) {
+                this.out.writeVarint(0);
+                return;
+            }
+            this.out.writeVarint(kind.ordinal() + 1);
+            if (isLeaf(kind)) {
+                this.out.writeValue(value);
+            }
+        }
+
+        /**
+         * Writes a whole tree, walking it with an explicit stack like printAST
+         * @param root root of the tree, may be null
+         * @throws IOException if it can't be written
+         */
+        void write(Parser.Node root) throws IOException {
+            Parser.Node[] stack = new Parser.Node[16];
+            int sp = 0;
+            stack[sp++] = root;
+            while (sp > 0) {
+                Parser.Node n = stack[--sp];
+                if (n == null) {
+                    writeNode(null, null);
+                    continue;
+                }
+                writeNode(n.nt, n.value);
+                if (!isLeaf(n.nt)) {
+                    if (sp + 2 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[sp++] = n.right;
+                    stack[sp++] = n.left;
+                }
+            }
+        }
+
+        /**
+         * Writes a whole tree built in an AstArena, without making any Parser.Node objects
+         * @param arena the arena
+         * @param root index of the root node, or NIL
+         * @throws IOException if it can't be written
+         */
+        void write(AstArena arena, int root) throws IOException {
+            int[] stack = new int[16];
+            int sp = 0;
+            stack[sp++] = root;
+            while (sp > 0) {
+                int i = stack[--sp];
+                if (i == AstArena.NIL) {
+                    writeNode(null, null);
+                    continue;
+                }
+                writeNode(arena.kind(i), arena.text(i));
+                if (!arena.isLeaf(i)) {
+                    if (sp + 2 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[sp++] = arena.right(i);
+                    stack[sp++] = arena.left(i);
+                }
+            }
+        }
+
+        /**
+         * Flushes everything written, leaving the stream open
+         * @throws IOException if it can't be written
+         */
+        void flush() throws IOException {
+            this.out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.out.close();
+        }
+    }
+
+    /**
+     * Reads an AST from the binary form, either a whole tree at once or one node at a time in preorder
+     */
+    static class AstReader implements Closeable {
+        /** Where the nodes come from */
+        private final Input in;
+        /** Number of nodes still to come before the tree is complete */
+        private int pending = 1;
+        /** Id of the value of the last leaf read, -1 if the last node wasn't a leaf */
+        private int value = -1;
+
+        /**
+         * Constructor for an AstReader, which checks the header straight away
+         * @param in where to read from
+         * @throws IOException if it can't be read, or isn't an AST stream of this version
+         */
+        AstReader(InputStream in) throws IOException {
+            this.in = new Input(in, AST_MAGIC);
+        }
+
+        /**
+         * Checks if the tree has more nodes
+         * @return true until every node of the tree has been read
+         */
+        boolean hasNext() {
+            return this.pending > 0;
+        }
+
+        /**
+         * Reads the next node in preorder
+         * @return type of the node, null for a missing child
+         * @throws IOException if it can't be read, is damaged, or the tree is already complete
+         */
+        Parser.NodeType next() throws IOException {
+            if (this.pending == 0) {
+                throw new IOException("AST is already complete");
+            }
+            this.pending--;
+            this.value = -1;
+            int kind = this.in.readVarint();
+            if (kind == 0) {
+                return null;
+            }
+            if (kind > KINDS.length) {
+                throw new IOException("Bad node type in binary stream");
+            }
+            Parser.NodeType nt = KINDS[kind - 1];
+            if (isLeaf(nt)) {
+                this.value = this.in.readValue();
+            } else {
+                this.pending += 2;
+            }
+            return nt;
+        }
+
+        /**
+         * Getter for the text of the last leaf read
+         * @return the text, the same instance every time for the same text
+         */
+        String value() {
+            return this.in.getValues().name(this.value);
+        }
+
+        /**
+         * Reads the whole tree back into Parser.Node objects, with an explicit stack of the nodes still waiting for a
+         * child so deep trees can't overflow the Java stack
+         * @return root of the tree, null for an empty one
+         * @throws IOException if it can't be read or is damaged
+         */
+        Parser.Node readTree() throws IOException {
+            Parser.Node[] parents = new Parser.Node[16];
+            int sp = 0;
+            Parser.Node root = null;
+            while (hasNext()) {
+                Parser.NodeType kind = next();
+                Parser.Node n = null;
+                if (kind != null) {
+                    n = new Parser.Node(kind, null, null, isLeaf(kind) ? value() : "");
+                    if (kind != Parser.NodeType.nd_Integer && isLeaf(kind)) {
+                        n.symbol = this.value;
+                    }
+                }
+                if (sp == 0) {
+                    root = n;
+                } else {
+                    //a parent whose left child is still the marker gets this node on the left
+                    Parser.Node parent = parents[sp - 1];
+                    if (parent.left == parent) {
+                        parent.left = n;
+                    } else {
+                        parent.right = n;
+                        sp--;
+                    }
+                }
+                if (n != null && !isLeaf(kind)) {
+                    n.left = n;
+                    if (sp == parents.length) {
+                        parents = Arrays.copyOf(parents, sp * 2);
+                    }
+                    parents[sp++] = n;
+                }
+            }
+            return root;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.in.close();
+        }
+    }
+
+    /**
+     * Converts .lex text, as written by MiniCompiler --lex, to the binary form
+     * @param text the .lex text
+     * @param out where to write the binary form, closed afterwards
+     * @throws IOException if it can't be read or written
+     */
+    static void lexToBinary(BufferedReader text, OutputStream out) throws IOException {
+        try (TokenWriter writer = new TokenWriter(out)) {
+            String line;
+            while ((line = text.readLine()) != null) {
+                if (!line.isBlank()) {
+                    writer.write(Parser.parseTokenLine(line));
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts binary tokens back to .lex text, exactly as MiniCompiler --lex writes it
+     * @param in the binary form
+     * @param text where to write the .lex text, left open
+     * @throws IOException if it can't be read or written
+     */
+    static void binaryToLex(InputStream in, Writer text) throws IOException {
+        try (TokenReader reader = new TokenReader(in)) {
+            boolean first = true;
+            Lexer.Token t;
+            while ((t = reader.read()) != null) {
+                if (!first) text.write("\n");
+                text.write(t.toString());
+                first = false;
+            }
+        }
+        text.flush();
+    }
+
+    /**
+     * Converts .par text, as written by printAST, to the binary form
+     * @param text the .par text
+     * @param out where to write the binary form, closed afterwards
+     * @throws IOException if it can't be read or written, or the text isn't a whole AST
+     */
+    static void parToBinary(BufferedReader text, OutputStream out) throws IOException {
+        try (AstWriter writer = new AstWriter(out)) {
+            int pending = 1;
+            String line;
+            while (pending > 0 && (line = text.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                pending--;
+                if (line.trim().equals(";")) {
+                    writer.writeNode(null, null);
+                    continue;
+                }
+                int space = line.indexOf(' ');
+                String name = space < 0 ? line.trim() : line.substring(0, space);
+                Parser.NodeType kind = KINDS_BY_NAME.get(name);
+                if (kind == null) {
+                    throw new IOException("Unknown node in .par text: " + line);
+                }
+                String value = "";
+                if (kind == Parser.NodeType.nd_String) {
+                    //keep everything between the quotes, spaces and all
+                    value = line.substring(line.indexOf('"') + 1, line.lastIndexOf('"'));
+                } else if (isLeaf(kind)) {
+                    value = line.substring(space + 1).trim();
+                } else {
+                    pending += 2;
+                }
+                writer.writeNode(kind, value);
+            }
+            if (pending > 0) {
+                throw new IOException(".par text ends part way through the AST");
+            }
+        }
+    }
+
+    /**
+     * Converts a binary AST back to .par text, exactly as printAST writes it
+     * @param in the binary form
+     * @param text where to write the .par text, left open
+     * @throws IOException if it can't be read or written
+     */
+    static void binaryToPar(InputStream in, Writer text) throws IOException {
+        try (AstReader reader = new AstReader(in)) {
+            while (reader.hasNext()) {
+                Parser.NodeType kind = reader.next();
+                if (kind == null) {
+                    text.write(";\n");
+                } else if (kind == Parser.NodeType.nd_String) {
+                    text.write(kind + " \"" + reader.value() + "\"\n");
+                } else if (isLeaf(kind)) {
+                    text.write(kind + " " + reader.value() + "\n");
+                } else {
+                    text.write(kind + "\n");
+                }
+            }
+        }
+        text.flush();
+    }
+
+    /**
+     * Opens a file in src/main/resources to write a binary form to, named like the .lex and .par dumps are
+     * @param filename name of the source file, its extension is replaced
+     * @param extension .lexb or .parb
+     * @return stream to write the file
+     * @throws IOException if it can't be opened
+     */
+    static OutputStream outputFile(String filename, String extension) throws IOException {
+        int trimHere = filename.indexOf('.');
+        if (trimHere != -1) {
+            filename = filename.substring(0, trimHere);
+        }
+        return Files.newOutputStream(Path.of(MiniCompiler.RESOURCES + filename + extension));
+    }
+
+    /**
+     * Runnable main method that converts files in src/main/resources between the text and binary forms, going by
+     * their extension: .lex to .lexb, .par to .parb, and .lexb and .parb back to text
+     * @param args Command line arguments, names of the files to convert
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            CompileException.fail("No args");
+        }
+        for (String filename : args) {
+            Path from = Path.of(MiniCompiler.RESOURCES + filename);
+            String base = filename.substring(0, filename.lastIndexOf('.') < 0 ? filename.length() : filename.lastIndexOf('.'));
+            try {
+                if (filename.endsWith(".lex") || filename.endsWith(".par")) {
+                    Path to = Path.of(MiniCompiler.RESOURCES + base + (filename.endsWith(".lex") ? ".lexb" : ".parb"));
+                    try (BufferedReader text = Files.newBufferedReader(from)) {
+                        if (filename.endsWith(".lex")) {
+                            lexToBinary(text, Files.newOutputStream(to));
+                        } else {
+                            parToBinary(text, Files.newOutputStream(to));
+                        }
+                    }
+                    System.out.println("Wrote " + to.getFileName() + ", " + Files.size(to) + " bytes from " + Files.size(from));
+                } else if (filename.endsWith(".lexb") || filename.endsWith(".parb")) {
+                    Path to = Path.of(MiniCompiler.RESOURCES + base + (filename.endsWith(".lexb") ? ".lex" : ".par"));
+                    try (Writer text = Files.newBufferedWriter(to)) {
+                        if (filename.endsWith(".lexb")) {
+                            binaryToLex(Files.newInputStream(from), text);
+                        } else {
+                            binaryToPar(Files.newInputStream(from), text);
+                        }
+                    }
+                    System.out.println("Wrote " + to.getFileName());
+                } else {
+                    CompileException.fail("Don't know how to convert " + filename);
+                }
+            } catch (IOException e) {
+                CompileException.fail("Exception: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compiled program for the VM: a flat int array of instructions, the pool of Strings it prints, and the names of
+ * its variables. Each instruction is an opcode followed by its operands, if it has any. Integer constants are stored
+ * right in the code as the operand of PUSH, since looking them up in a pool would only add a load.
+ */
+class Bytecode {
+    /** Stops the program */
+    static final int HALT = 0;
+    /** Pushes the operand */
+    static final int PUSH = 1;
+    /** Pushes the variable in the slot given by the operand */
+    static final int FETCH = 2;
+    /** Pops into the variable in the slot given by the operand */
+    static final int STORE = 3;
+    /** Pops two values and pushes their sum, the opcodes up to OR work the same way */
+    static final int ADD = 4;
+    /** Subtracts the top value from the one under it */
+    static final int SUB = 5;
+    /** Multiplies */
+    static final int MUL = 6;
+    /** Divides, rounding towards zero */
+    static final int DIV = 7;
+    /** Remainder of dividing */
+    static final int MOD = 8;
+    /** 1 if less than, otherwise 0 */
+    static final int LT = 9;
+    /** 1 if less than or equal, otherwise 0 */
+    static final int LE = 10;
+    /** 1 if greater than, otherwise 0 */
+    static final int GT = 11;
+    /** 1 if greater than or equal, otherwise 0 */
+    static final int GE = 12;
+    /** 1 if equal, otherwise 0 */
+    static final int EQ = 13;
+    /** 1 if not equal, otherwise 0 */
+    static final int NE = 14;
+    /** Negates the top value */
+    static final int NEG = 15;
+    /** 1 if the top value is 0, otherwise 0 */
+    static final int NOT = 16;
+    /** Adds the operand to the pc, which already points past the operand */
+    static final int JMP = 17;
+    /** Pops a value and jumps like JMP if it is 0 */
+    static final int JZ = 18;
+    /** Pops a value and jumps like JMP if it isn't 0 */
+    static final int JNZ = 19;
+    /** Pops a value and prints it as a char */
+    static final int PRTC = 20;
+    /** Pops a value and prints it as a number */
+    static final int PRTI = 21;
+    /** Prints the String at the index in the pool given by the operand */
+    static final int PRTS = 22;
+
+    /** Name of each opcode, for disassembling */
+    private static final String[] NAMES = {
+            "halt", "push", "fetch", "store", "add", "sub", "mul", "div", "mod", "lt", "le", "gt", "ge", "eq", "ne",
+            "neg", "not", "jmp", "jz", "jnz", "prtc", "prti", "prts"
+    };
+    /** Marks the start of a saved Bytecode file */
+    private static final int MAGIC = 0x4D434243;
+    /** Version of the saved format, bumped whenever the opcodes change so old cache files are rebuilt */
+    static final int VERSION = 1;
+
+    /** The instructions */
+    final int[] code;
+    /** Strings printed by PRTS, already unescaped */
+    final String[] strings;
+    /** Variable names, indexed by slot */
+    final String[] variables;
+    /** Most values the program ever has on the stack at once */
+    final int maxStack;
+
+    /**
+     * Constructor for Bytecode
+     * @param code the instructions
+     * @param strings Strings printed by PRTS
+     * @param variables variable names, indexed by slot
+     * @param maxStack most values ever on the stack at once
+     */
+    Bytecode(int[] code, String[] strings, String[] variables, int maxStack) {
+        this.code = code;
+        this.strings = strings;
+        this.variables = variables;
+        this.maxStack = maxStack;
+    }
+
+    /**
+     * Gets how many operands an opcode takes
+     * @param op the opcode
+     * @return 1 for opcodes with an operand, otherwise 0
+     */
+    static int operands(int op) {
+        return op == PUSH || op == FETCH || op == STORE || op == JMP || op == JZ || op == JNZ || op == PRTS ? 1 : 0;
+    }
+
+    /**
+     * Saves the Bytecode, so a program can be run again later without compiling it
+     * @param out where to write, left open
+     * @throws IOException if it can't be written
+     */
+    void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(this.maxStack);
+        data.writeInt(this.variables.length);
+        for (String name : this.variables) {
+            data.writeUTF(name);
+        }
+        data.writeInt(this.strings.length);
+        for (String s : this.strings) {
+            data.writeUTF(s);
+        }
+        data.writeInt(this.code.length);
+        for (int word : this.code) {
+            data.writeInt(word);
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads back Bytecode saved by write
+     * @param in where to read from, left open
+     * @return the Bytecode
+     * @throws IOException if it can't be read, or was saved by another version
+     */
+    static Bytecode read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+            throw new IOException("Not a bytecode file for this version");
+        }
+        int maxStack = data.readInt();
+        String[] variables = new String[data.readInt()];
+        for (int i = 0; i < variables.length; i++) {
+            variables[i] = data.readUTF();
+        }
+        String[] strings = new String[data.readInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = data.readUTF();
+        }
+        int[] code = new int[data.readInt()];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = data.readInt();
+        }
+        return new Bytecode(code, strings, variables, maxStack);
+    }
+
+    /**
+     * Lists the instructions one per line, with jumps shown as absolute targets
+     * @return the listing
+     */
+    String disassemble() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Datasize: ").append(this.variables.length).append(" Strings: ").append(this.strings.length).append("\n");
+        for (int pc = 0; pc < this.code.length; ) {
+            int op = this.code[pc];
+            sb.append(String.format(operands(op) > 0 ? "%5d %-6s" : "%5d %s", pc, NAMES[op]));
+            pc++;
+            switch (op) {
+                case PUSH: sb.append(this.code[pc]); break;
+                case FETCH: case STORE: sb.append("[").append(this.variables[this.code[pc]]).append("]"); break;
+                case JMP: case JZ: case JNZ: sb.append("(").append(this.code[pc]).append(") ").append(pc + 1 + this.code[pc]); break;
+                case PRTS: sb.append("\"").append(this.strings[this.code[pc]].replace("\n", "\\n")).append("\""); break;
+                default: break;
+            }
+            pc += operands(op);
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+}
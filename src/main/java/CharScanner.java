@@ -0,0 +1,178 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Finds the end of a run of whitespace, a String literal or a comment in a source, so the Lexer can jump over the
+ * whole run at once instead of calling getNextChar for every char of it. Lines and positions are worked out
+ * afterwards from how many line breaks were jumped over and where the last one was.
+ *
+ * This class searches one char at a time with charAt, which works for any source. When the jdk.incubator.vector
+ * module is there, a VectorScanner searches many chars per step instead. VectorScanner is built on its own from
+ * src/vector/java, since only it needs the module, and is only ever loaded by name, so running without it or without
+ * the module just means this class is used.
+ *
+ * The vector API is very slow until the JIT has compiled it, which costs around half a second of every run, so a
+ * one-off compile is faster without it even for a source of tens of megabytes. Long running processes like the
+ * compile server can turn it on for large sources with -Dminicompiler.vector=true.
+ */
+class CharScanner {
+    /** Sources shorter than this are always searched with charAt, since copying them for VectorScanner isn't worth it */
+    static final int VECTOR_MIN = 1 << 12;
+
+    /** Makes a VectorScanner for a source, null if the vector module or VectorScanner isn't there */
+    private static final MethodHandle VECTOR = loadVector();
+    /** True if of should hand out VectorScanners, set with -Dminicompiler.vector=true */
+    private static final boolean USE_VECTOR = Boolean.getBoolean("minicompiler.vector");
+
+    /** Source being searched */
+    final CharSequence s;
+
+    /**
+     * Constructor for a CharScanner that searches with charAt
+     * @param s source to search
+     */
+    CharScanner(CharSequence s) {
+        this.s = s;
+    }
+
+    /**
+     * Finds VectorScanner's factory method, if the vector module is there and VectorScanner can be loaded
+     * @return handle to VectorScanner.create, or null
+     */
+    private static MethodHandle loadVector() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            Class<?> type = Class.forName("VectorScanner");
+            return MethodHandles.lookup().findStatic(type, "create", MethodType.methodType(CharScanner.class, CharSequence.class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks if VectorScanner can be used
+     * @return true if the vector module is there and VectorScanner is on the classpath
+     */
+    static boolean hasVector() {
+        return VECTOR != null;
+    }
+
+    /**
+     * Gets the best CharScanner for a source
+     * @param s source to search
+     * @return a VectorScanner for a large String or memory mapped source when it was turned on and the vector module
+     * is there, otherwise a CharScanner
+     */
+    static CharScanner of(CharSequence s) {
+        if (USE_VECTOR && VECTOR != null && s.length() >= VECTOR_MIN) {
+            CharScanner vector = vector(s);
+            if (vector != null) {
+                return vector;
+            }
+        }
+        return new CharScanner(s);
+    }
+
+    /**
+     * Gets a VectorScanner for a source of any size
+     * @param s source to search
+     * @return the VectorScanner, or null if the vector module isn't there or it can't read this kind of source
+     */
+    static CharScanner vector(CharSequence s) {
+        if (VECTOR == null) {
+            return null;
+        }
+        try {
+            return (CharScanner) VECTOR.invokeExact(s);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Finds the first char that isn't whitespace
+     * @param from index to start at
+     * @param end index to stop at
+     * @return index of the first char from from on that isn't whitespace, or end if they all are
+     */
+    int skipSpace(int from, int end) {
+        int i = from;
+        while (i < end && Lexer.charClass(this.s.charAt(i)) == Lexer.SPACE) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Finds a char, such as the " closing a String or the line break ending a // comment. A NUL char is found as
+     * well, since the Lexer takes one as the end of the source
+     * @param c char to find
+     * @param from index to start at
+     * @param end index to stop at
+     * @return index of the first c or NUL from from on, or -1 if there is none before end
+     */
+    int find(char c, int from, int end) {
+        for (int i = from; i < end; i++) {
+            char d = this.s.charAt(i);
+            if (d == c || d == '\u0000') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the * of the first star-slash closing a comment, or a NUL char before it
+     * @param from index to start at
+     * @param end index to stop at, the slash has to come before it too
+     * @return index of the * or the NUL, or -1 if there is neither
+     */
+    int commentEnd(int from, int end) {
+        for (int i = from; i < end; i++) {
+            char d = this.s.charAt(i);
+            if (d == '\u0000' || (d == '*' && i + 1 < end && this.s.charAt(i + 1) == '/')) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Counts a char, such as the line breaks jumped over
+     * @param c char to count
+     * @param from index to start at
+     * @param end index to stop at
+     * @return how many times c is between from and end
+     */
+    int count(char c, int from, int end) {
+        int n = 0;
+        for (int i = from; i < end; i++) {
+            if (this.s.charAt(i) == c) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Finds the last time a char is in a range, searching backwards from the end since the last line break of a run
+     * is usually near its end
+     * @param c char to find
+     * @param from index to stop at
+     * @param end index just past the last one to look at
+     * @return index of the last c before end, or -1 if there is none from from on
+     */
+    int lastIndexOf(char c, int from, int end) {
+        for (int i = end - 1; i >= from; i--) {
+            if (this.s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
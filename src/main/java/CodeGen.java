@@ -0,0 +1,272 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lowers the AST from the Parser into Bytecode for the VM. Variables get slots and Strings get pool entries the first
+ * time they're seen, and an if or while becomes conditional jumps over its parts.
+ *
+ * Lowering recurses into nested statements and expressions, so a program nested tens of thousands deep runs out of
+ * call stack. That is reported as a CompileException rather than letting the StackOverflowError out.
+ */
+class CodeGen {
+    /** The instructions generated so far */
+    private int[] code = new int[64];
+    /** Number of words of code generated so far */
+    private int size;
+    /** Slot of each variable name */
+    private final Map<String, Integer> slots = new HashMap<>();
+    /** Variable names, indexed by slot */
+    private final List<String> variables = new ArrayList<>();
+    /** Pool index of each String */
+    private final Map<String, Integer> stringIndex = new HashMap<>();
+    /** The String pool */
+    private final List<String> strings = new ArrayList<>();
+    /** Values on the stack at the current point of the code */
+    private int stack;
+    /** Most values on the stack at any point so far */
+    private int maxStack;
+
+    /**
+     * Generates the Bytecode for a whole program
+     * @param root root of the AST, as given by Parser.parse
+     * @return the Bytecode, ending with HALT
+     * @throws CompileException if the program is nested too deeply to lower
+     */
+    static Bytecode generate(Parser.Node root) {
+        CodeGen gen = new CodeGen();
+        try {
+            gen.statement(root);
+        } catch (StackOverflowError e) {
+            throw new CompileException(-1, -1, "CodeGen: program nested too deeply to compile");
+        }
+        gen.emit(Bytecode.HALT);
+        return new Bytecode(Arrays.copyOf(gen.code, gen.size), gen.strings.toArray(new String[0]),
+                gen.variables.toArray(new String[0]), gen.maxStack);
+    }
+
+    /**
+     * Appends one word of code
+     * @param word opcode or operand
+     */
+    private void emit(int word) {
+        if (this.size == this.code.length) {
+            this.code = Arrays.copyOf(this.code, this.size * 2);
+        }
+        this.code[this.size++] = word;
+    }
+
+    /**
+     * Appends an instruction, keeping track of how it changes the stack
+     * @param op the opcode
+     * @param stackChange values it pushes minus values it pops
+     */
+    private void emit(int op, int stackChange) {
+        emit(op);
+        this.stack += stackChange;
+        this.maxStack = Math.max(this.maxStack, this.stack);
+    }
+
+    /**
+     * Appends an instruction with an operand, keeping track of how it changes the stack
+     * @param op the opcode
+     * @param operand its operand
+     * @param stackChange values it pushes minus values it pops
+     */
+    private void emit(int op, int operand, int stackChange) {
+        emit(op, stackChange);
+        emit(operand);
+    }
+
+    /**
+     * Appends a jump whose target isn't known yet
+     * @param op JMP, JZ or JNZ
+     * @return where the operand is, to pass to patch once the target is known
+     */
+    private int jump(int op) {
+        emit(op, 0, op == Bytecode.JMP ? 0 : -1);
+        return this.size - 1;
+    }
+
+    /**
+     * Points an earlier jump at the current end of the code
+     * @param hole where the jump's operand is, as given by jump
+     */
+    private void patch(int hole) {
+        this.code[hole] = this.size - (hole + 1);
+    }
+
+    /**
+     * Appends a jump back to an earlier point in the code
+     * @param op JMP, JZ or JNZ
+     * @param target where to jump to
+     */
+    private void jumpTo(int op, int target) {
+        emit(op, 0, op == Bytecode.JMP ? 0 : -1);
+        this.code[this.size - 1] = target - this.size;
+    }
+
+    /**
+     * Finds the slot of a variable, giving it the next free one the first time it's seen
+     * @param name name of the variable
+     * @return its slot
+     */
+    private int slot(String name) {
+        Integer slot = this.slots.get(name);
+        if (slot == null) {
+            slot = this.variables.size();
+            this.slots.put(name, slot);
+            this.variables.add(name);
+        }
+        return slot;
+    }
+
+    /**
+     * Finds the pool index of a String, adding it the first time it's seen
+     * @param s the String, already unescaped
+     * @return its index
+     */
+    private int string(String s) {
+        Integer index = this.stringIndex.get(s);
+        if (index == null) {
+            index = this.strings.size();
+            this.stringIndex.put(s, index);
+            this.strings.add(s);
+        }
+        return index;
+    }
+
+    /**
+     * Generates code for a statement
+     * @param n the statement, may be null
+     */
+    private void statement(Parser.Node n) {
+        if (n == null) {
+            return;
+        }
+        switch (n.nt) {
+            case nd_Sequence: {
+                //walk the chain with a stack, since parse builds one Sequence per top-level statement
+                ArrayDeque<Parser.Node> pending = new ArrayDeque<>();
+                pending.push(n);
+                while (!pending.isEmpty()) {
+                    Parser.Node s = pending.pop();
+                    if (s.nt == Parser.NodeType.nd_Sequence) {
+                        if (s.right != null) pending.push(s.right);
+                        if (s.left != null) pending.push(s.left);
+                    } else {
+                        statement(s);
+                    }
+                }
+                break;
+            }
+            case nd_If: {
+                expression(n.left);
+                int toElse = jump(Bytecode.JZ);
+                statement(n.right.left);
+                if (n.right.right == null) {
+                    patch(toElse);
+                } else {
+                    int toEnd = jump(Bytecode.JMP);
+                    patch(toElse);
+                    statement(n.right.right);
+                    patch(toEnd);
+                }
+                break;
+            }
+            case nd_While: {
+                int top = this.size;
+                expression(n.left);
+                int toEnd = jump(Bytecode.JZ);
+                statement(n.right);
+                jumpTo(Bytecode.JMP, top);
+                patch(toEnd);
+                break;
+            }
+            case nd_Assign:
+                expression(n.right);
+                emit(Bytecode.STORE, slot(n.left.value), -1);
+                break;
+            case nd_Prts:
+                emit(Bytecode.PRTS, string(Interpreter.unescape(n.left.value)), 0);
+                break;
+            case nd_Prti:
+                expression(n.left);
+                emit(Bytecode.PRTI, -1);
+                break;
+            case nd_Prtc:
+                expression(n.left);
+                emit(Bytecode.PRTC, -1);
+                break;
+            default:
+                throw new IllegalArgumentException("CodeGen: not a statement: " + n.nt);
+        }
+    }
+
+    /**
+     * Generates code that leaves the value of an expression on the stack
+     * @param n the expression
+     */
+    private void expression(Parser.Node n) {
+        if (n == null) {
+            throw new IllegalArgumentException("CodeGen: missing expression");
+        }
+        switch (n.nt) {
+            case nd_Integer:
+                //parsed as a long so a literal too big for an int wraps around like C instead of failing
+                emit(Bytecode.PUSH, (int) Long.parseLong(n.value), 1);
+                return;
+            case nd_Ident:
+                emit(Bytecode.FETCH, slot(n.value), 1);
+                return;
+            case nd_Not:
+                expression(n.left);
+                emit(Bytecode.NOT, 0);
+                return;
+            case nd_Negate:
+                expression(n.left);
+                emit(Bytecode.NEG, 0);
+                return;
+            case nd_And:
+            case nd_Or: {
+                //short circuit, like C and the Interpreter: the right side only runs when it decides the answer
+                int decide = n.nt == Parser.NodeType.nd_And ? Bytecode.JZ : Bytecode.JNZ;
+                expression(n.left);
+                int first = jump(decide);
+                expression(n.right);
+                int second = jump(decide);
+                emit(Bytecode.PUSH, n.nt == Parser.NodeType.nd_And ? 1 : 0, 1);
+                int toEnd = jump(Bytecode.JMP);
+                patch(first);
+                patch(second);
+                //the other path arrives here with nothing pushed yet
+                this.stack--;
+                emit(Bytecode.PUSH, n.nt == Parser.NodeType.nd_And ? 0 : 1, 1);
+                patch(toEnd);
+                return;
+            }
+            default:
+                break;
+        }
+        expression(n.left);
+        expression(n.right);
+        switch (n.nt) {
+            case nd_Mul: emit(Bytecode.MUL, -1); break;
+            case nd_Div: emit(Bytecode.DIV, -1); break;
+            case nd_Mod: emit(Bytecode.MOD, -1); break;
+            case nd_Add: emit(Bytecode.ADD, -1); break;
+            case nd_Sub: emit(Bytecode.SUB, -1); break;
+            case nd_Lss: emit(Bytecode.LT, -1); break;
+            case nd_Leq: emit(Bytecode.LE, -1); break;
+            case nd_Gtr: emit(Bytecode.GT, -1); break;
+            case nd_Geq: emit(Bytecode.GE, -1); break;
+            case nd_Eql: emit(Bytecode.EQ, -1); break;
+            case nd_Neq: emit(Bytecode.NE, -1); break;
+            default:
+                throw new IllegalArgumentException("CodeGen: not an expression: " + n.nt);
+        }
+    }
+}
@@ -0,0 +1,656 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Remembers the tokens and AST of sources that have already been compiled, so compiling the same text again skips
+ * the Lexer and Parser and just loads them back. Entries are found by a SHA-256 hash of the source and
+ * COMPILER_VERSION, so an edited source or a newer compiler never gets an old result.
+ *
+ * There are two tiers. Recently used entries are kept in memory up to a number of bytes, dropping the least recently
+ * used first. Behind that, if a directory is given, every entry is also saved there as one file named by its hash,
+ * and the files used longest ago are deleted once they add up to more than a number of bytes. Entries are kept in a
+ * compact binary form in both tiers and decoded on every hit, since the Optimizer rewrites trees in place and two
+ * callers mustn't share one.
+ *
+ * Only sources that compiled without errors are cached, so a source with errors is compiled, and reports them, every
+ * time. A CompileCache can be shared by many threads.
+ */
+class CompileCache {
+    /** Goes into every hash, bumped whenever the Lexer or Parser change what they produce so old entries are missed */
+    static final String COMPILER_VERSION = "mini-compiler 1";
+    /** Marks the start of a saved entry */
+    private static final int MAGIC = 0x4D434343;
+    /** Version of the saved format, which also goes into every hash */
+    static final int VERSION = 1;
+    /** File extension of the entries in the cache directory */
+    static final String EXTENSION = ".mcc";
+    /** All token types, indexed by ordinal */
+    private static final TokenType[] TYPES = TokenType.values();
+    /** All node types, indexed by ordinal */
+    private static final Parser.NodeType[] KINDS = Parser.NodeType.values();
+
+    /**
+     * The tokens and AST of one source, either just compiled or loaded from the cache. A loaded entry only decodes
+     * its tokens when they are asked for, since most callers only want the AST
+     */
+    static class Compiled {
+        /** Arena holding the AST, sharing its SymbolTable with the tokens */
+        final AstArena arena;
+        /** Index of the root node in arena, NIL for an empty program */
+        final int root;
+        /** Every token of the source, up to and including End_of_input, null until they are decoded */
+        private TokenBuffer tokens;
+        /** Encoded entry the tokens are still to be decoded from, null once they have been */
+        private byte[] data;
+        /** Index in data of the tokens */
+        private int tokensAt;
+        /** Text of the program, which the tokens read their values from */
+        private String source;
+
+        /**
+         * Constructor for Compiled
+         * @param tokens every token of the source
+         * @param arena arena holding the AST
+         * @param root index of the root node
+         */
+        Compiled(TokenBuffer tokens, AstArena arena, int root) {
+            this.tokens = tokens;
+            this.arena = arena;
+            this.root = root;
+        }
+
+        /**
+         * Constructor for Compiled whose tokens are left in an encoded entry until they are wanted
+         * @param arena arena holding the AST
+         * @param root index of the root node
+         * @param data the encoded entry
+         * @param tokensAt index in data of the tokens
+         * @param source text of the program
+         */
+        private Compiled(AstArena arena, int root, byte[] data, int tokensAt, String source) {
+            this(null, arena, root);
+            this.data = data;
+            this.tokensAt = tokensAt;
+            this.source = source;
+        }
+
+        /**
+         * Getter for the tokens, decoding them the first time for a loaded entry
+         * @return every token of the source, up to and including End_of_input
+         * @throws IllegalStateException if the entry turns out to be damaged, which the checksum should have caught
+         */
+        TokenBuffer tokens() {
+            if (this.tokens == null) {
+                try {
+                    this.tokens = decodeTokens(new Reader(this.data, this.tokensAt), this.source, this.arena.getSymbols());
+                } catch (IOException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+                this.data = null;
+                this.source = null;
+            }
+            return this.tokens;
+        }
+
+        /**
+         * Builds the linked Parser.Node tree, a new one every time it is called
+         * @return root of the AST, null for an empty program
+         */
+        Parser.Node ast() {
+            return this.arena.toNode(this.root);
+        }
+    }
+
+    /** Entries in memory by hash, in least to most recently used order */
+    private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+    /** Most bytes of entries kept in memory */
+    private final long maxMemoryBytes;
+    /** Bytes of entries in memory now */
+    private long memoryBytes;
+    /** Directory entries are saved in, null to keep them in memory only */
+    private final Path directory;
+    /** Most bytes of entry files kept in the directory */
+    private final long maxDiskBytes;
+    /** Bytes of entry files in the directory, as far as this cache knows */
+    private long diskBytes;
+    /** Number of sources found in memory */
+    private long memoryHits;
+    /** Number of sources found in the directory */
+    private long diskHits;
+    /** Number of sources that had to be compiled */
+    private long misses;
+
+    /**
+     * Constructor for a CompileCache kept only in memory
+     * @param maxMemoryBytes most bytes of entries to keep
+     */
+    CompileCache(long maxMemoryBytes) {
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.directory = null;
+        this.maxDiskBytes = 0;
+    }
+
+    /**
+     * Constructor for a CompileCache that also saves its entries in a directory, which is created if it is missing
+     * @param maxMemoryBytes most bytes of entries to keep in memory
+     * @param directory directory to save entries in
+     * @param maxDiskBytes most bytes of entry files to keep in the directory
+     * @throws IOException if the directory can't be created or read
+     */
+    CompileCache(long maxMemoryBytes, Path directory, long maxDiskBytes) throws IOException {
+        this.maxMemoryBytes = maxMemoryBytes;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        Files.createDirectories(directory);
+        for (Path file : entryFiles()) {
+            this.diskBytes += Files.size(file);
+        }
+    }
+
+    /**
+     * Gets the tokens and AST for a source, from the cache if it has been compiled before, otherwise by lexing and
+     * parsing it and caching the result if it had no errors
+     * @param source text of the program
+     * @param diagnostics where errors are reported, only when the source is compiled
+     * @return the tokens and AST of the source
+     * @throws CompileException if the source has more errors than diagnostics allows
+     */
+    Compiled compile(String source, Diagnostics diagnostics) {
+        String key = key(source);
+        Compiled found = lookup(key, source);
+        if (found != null) {
+            return found;
+        }
+        SymbolTable symbols = new SymbolTable();
+        TokenBuffer tokens = new Lexer(source, symbols, diagnostics).tokenize(new TokenBuffer());
+        Parser parser = new Parser(tokens.stream(), diagnostics);
+        int root = parser.parseArena();
+        Compiled compiled = new Compiled(tokens, parser.getArena(), root);
+        if (!diagnostics.hasErrors()) {
+            store(key, encode(compiled, source.length()));
+        }
+        return compiled;
+    }
+
+    /**
+     * Looks for a source in memory, then in the directory
+     * @param key hash of the source
+     * @param source text of the program
+     * @return the decoded entry, null if neither tier has it
+     */
+    private Compiled lookup(String key, String source) {
+        byte[] data;
+        synchronized (this) {
+            data = this.memory.get(key);
+            if (data != null) {
+                this.memoryHits++;
+            }
+        }
+        if (data == null && this.directory != null) {
+            data = readFile(key);
+            if (data != null) {
+                synchronized (this) {
+                    this.diskHits++;
+                    remember(key, data);
+                }
+            }
+        }
+        if (data != null) {
+            try {
+                return decode(data, source);
+            } catch (IOException | RuntimeException e) {
+                //damaged, drop it and compile again
+                forget(key);
+            }
+        }
+        synchronized (this) {
+            this.misses++;
+        }
+        return null;
+    }
+
+    /**
+     * Reads an entry file, marking it as just used so it is the last one evicted
+     * @param key hash of the source
+     * @return contents of the file, null if there isn't one
+     */
+    private byte[] readFile(String key) {
+        Path file = this.directory.resolve(key + EXTENSION);
+        try {
+            byte[] data = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return data;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Puts a new entry in both tiers
+     * @param key hash of the source
+     * @param data the encoded entry
+     */
+    private void store(String key, byte[] data) {
+        synchronized (this) {
+            remember(key, data);
+        }
+        if (this.directory == null) {
+            return;
+        }
+        try {
+            //written under another name first, so other processes never read half an entry
+            Path temp = Files.createTempFile(this.directory, key, ".tmp");
+            Files.write(temp, data);
+            Files.move(temp, this.directory.resolve(key + EXTENSION),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            boolean full;
+            synchronized (this) {
+                this.diskBytes += data.length;
+                full = this.diskBytes > this.maxDiskBytes;
+            }
+            if (full) {
+                evictFiles();
+            }
+        } catch (IOException e) {
+            //the directory is only a cache, the entry is still in memory
+        }
+    }
+
+    /**
+     * Puts an entry in memory, dropping the least recently used ones while there are too many bytes. Must be called
+     * holding the lock on this
+     * @param key hash of the source
+     * @param data the encoded entry
+     */
+    private void remember(String key, byte[] data) {
+        if (data.length > this.maxMemoryBytes) {
+            return;
+        }
+        byte[] old = this.memory.put(key, data);
+        this.memoryBytes += data.length - (old == null ? 0 : old.length);
+        Iterator<byte[]> eldest = this.memory.values().iterator();
+        while (this.memoryBytes > this.maxMemoryBytes) {
+            this.memoryBytes -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Drops an entry from both tiers
+     * @param key hash of the source
+     */
+    private void forget(String key) {
+        synchronized (this) {
+            byte[] old = this.memory.remove(key);
+            if (old != null) {
+                this.memoryBytes -= old.length;
+            }
+        }
+        if (this.directory != null) {
+            try {
+                Files.deleteIfExists(this.directory.resolve(key + EXTENSION));
+            } catch (IOException e) {
+                //left for eviction to clean up
+            }
+        }
+    }
+
+    /**
+     * Deletes the entry files used longest ago until the rest fit in maxDiskBytes. The directory is listed again
+     * rather than trusted, since other processes may share it
+     * @throws IOException if the directory can't be read
+     */
+    private synchronized void evictFiles() throws IOException {
+        Map<Path, FileTime> times = new HashMap<>();
+        Map<Path, Long> sizes = new HashMap<>();
+        long total = 0;
+        for (Path file : entryFiles()) {
+            try {
+                times.put(file, Files.getLastModifiedTime(file));
+                sizes.put(file, Files.size(file));
+                total += sizes.get(file);
+            } catch (NoSuchFileException e) {
+                //deleted by someone else meanwhile
+            }
+        }
+        List<Path> oldestFirst = new ArrayList<>(times.keySet());
+        oldestFirst.sort(Comparator.comparing(times::get));
+        for (int i = 0; i < oldestFirst.size() && total > this.maxDiskBytes; i++) {
+            Files.deleteIfExists(oldestFirst.get(i));
+            total -= sizes.get(oldestFirst.get(i));
+        }
+        this.diskBytes = total;
+    }
+
+    /**
+     * Lists the entry files in the directory
+     * @return every file with the entry extension
+     * @throws IOException if the directory can't be read
+     */
+    private List<Path> entryFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(this.directory, "*" + EXTENSION)) {
+            for (Path file : dir) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Hashes a source together with COMPILER_VERSION and VERSION
+     * @param source text of the program
+     * @return the hash as 64 hex digits
+     */
+    static String key(String source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            //every Java platform has to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+        digest.update((COMPILER_VERSION + " " + VERSION + "\n").getBytes(StandardCharsets.UTF_8));
+        byte[] hash = digest.digest(source.getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the tokens and AST in the saved format: the interned names, then the AST, then the tokens, so the AST can
+     * be loaded without the tokens. Numbers are varints, and lines, starts and child indexes are stored as
+     * differences from the token or node before, since those are small. Integer tokens' values aren't stored at all,
+     * they are read from the source again like the TokenBuffer always does
+     * @param compiled the tokens and AST
+     * @param sourceLength length of the source, checked again when loading
+     * @return the encoded entry
+     */
+    static byte[] encode(Compiled compiled, int sourceLength) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeVarint(out, sourceLength);
+            SymbolTable symbols = compiled.arena.getSymbols();
+            writeVarint(out, symbols.size());
+            for (int i = 0; i < symbols.size(); i++) {
+                byte[] utf8 = symbols.name(i).getBytes(StandardCharsets.UTF_8);
+                writeVarint(out, utf8.length);
+                out.write(utf8);
+            }
+
+            //every child comes before its parent, so i - child is always at least 1 and 0 can stand for NIL
+            AstArena arena = compiled.arena;
+            writeVarint(out, arena.size());
+            writeVarint(out, compiled.root + 1);
+            for (int i = 0; i < arena.size(); i++) {
+                out.writeByte(arena.kind(i).ordinal());
+                if (arena.isLeaf(i)) {
+                    writeVarint(out, arena.value(i));
+                } else {
+                    writeVarint(out, arena.left(i) == AstArena.NIL ? 0 : i - arena.left(i));
+                    writeVarint(out, arena.right(i) == AstArena.NIL ? 0 : i - arena.right(i));
+                }
+            }
+
+            TokenBuffer tokens = compiled.tokens();
+            writeVarint(out, tokens.size());
+            int line = 0, start = 0;
+            for (int i = 0; i < tokens.size(); i++) {
+                out.writeByte(tokens.type(i).ordinal());
+                writeVarint(out, zigzag(tokens.line(i) - line));
+                writeVarint(out, tokens.pos(i));
+                writeVarint(out, zigzag(tokens.start(i) - start));
+                writeVarint(out, tokens.length(i));
+                writeVarint(out, tokens.symbol(i) + 1);
+                line = tokens.line(i);
+                start = tokens.start(i);
+            }
+            out.flush();
+            //a checksum of everything before it, so a damaged entry is caught before any of it is used
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            //a ByteArrayOutputStream never throws
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Loads the AST back from the saved format, leaving the tokens to be decoded when they are asked for
+     * @param data the encoded entry
+     * @param source text of the program the entry was made from
+     * @return the tokens and AST
+     * @throws IOException if the data isn't an entry of this version for a source of this length
+     */
+    static Compiled decode(byte[] data, String source) throws IOException {
+        if (data.length < 4) {
+            throw new IOException("Cache entry cut short");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        if (new Reader(data, data.length - 4).readInt() != (int) crc.getValue()) {
+            throw new IOException("Cache entry is damaged");
+        }
+        Reader in = new Reader(data, 0);
+        if (in.readInt() != MAGIC || in.readInt() != VERSION || in.varint() != source.length()) {
+            throw new IOException("Not a cache entry for this source and version");
+        }
+        SymbolTable symbols = new SymbolTable();
+        int symbolCount = in.varint();
+        for (int i = 0; i < symbolCount; i++) {
+            symbols.intern(in.utf8());
+        }
+
+        int nodeCount = in.varint();
+        int root = in.varint() - 1;
+        if (root >= nodeCount) {
+            throw new IOException("Bad root in cache entry");
+        }
+        AstArena arena = new AstArena(nodeCount);
+        arena.reset(symbols);
+        for (int i = 0; i < nodeCount; i++) {
+            Parser.NodeType kind = KINDS[in.readByte()];
+            if (kind == Parser.NodeType.nd_Ident || kind == Parser.NodeType.nd_Integer || kind == Parser.NodeType.nd_String) {
+                int value = in.varint();
+                if (value >= symbolCount) {
+                    throw new IOException("Bad leaf in cache entry");
+                }
+                arena.leaf(kind, value);
+            } else {
+                int left = in.varint();
+                int right = in.varint();
+                if (left > i || right > i) {
+                    throw new IOException("Bad node in cache entry");
+                }
+                arena.node(kind, left == 0 ? AstArena.NIL : i - left, right == 0 ? AstArena.NIL : i - right);
+            }
+        }
+        return new Compiled(arena, root, data, in.position, source);
+    }
+
+    /**
+     * Loads the tokens back from the saved format
+     * @param in reader at the start of the tokens
+     * @param source text of the program the entry was made from
+     * @param symbols SymbolTable already loaded with the entry's names
+     * @return the tokens
+     * @throws IOException if the tokens are damaged
+     */
+    private static TokenBuffer decodeTokens(Reader in, String source, SymbolTable symbols) throws IOException {
+        int tokenCount = in.varint();
+        TokenBuffer tokens = new TokenBuffer(tokenCount);
+        tokens.reset(source, symbols);
+        int line = 0, start = 0;
+        for (int i = 0; i < tokenCount; i++) {
+            TokenType type = TYPES[in.readByte()];
+            line += unzigzag(in.varint());
+            int pos = in.varint();
+            start += unzigzag(in.varint());
+            int length = in.varint();
+            int symbol = in.varint() - 1;
+            if (start < 0 || start + length > source.length() || symbol >= symbols.size()) {
+                throw new IOException("Bad token in cache entry");
+            }
+            tokens.add(type, line, pos, start, length, symbol);
+        }
+        return tokens;
+    }
+
+    /**
+     * Writes an unsigned number 7 bits at a time, low bits first, with the top bit of each byte set when more follow
+     * @param out where to write
+     * @param value number to write, treated as unsigned
+     * @throws IOException if it can't be written
+     */
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Maps a signed number to an unsigned one so small negative numbers stay small: 0, -1, 1, -2 become 0, 1, 2, 3
+     * @param value signed number
+     * @return unsigned number
+     */
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Undoes zigzag
+     * @param value unsigned number
+     * @return signed number
+     */
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads the saved format straight out of a byte array, which is quicker than going through a DataInputStream
+     */
+    private static class Reader {
+        /** The encoded entry */
+        private final byte[] data;
+        /** Index of the next byte to read */
+        private int position;
+
+        /**
+         * Constructor for a Reader
+         * @param data the encoded entry
+         * @param position index of the first byte to read
+         */
+        Reader(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        /**
+         * Reads one unsigned byte
+         * @return the byte
+         * @throws IOException if the data has run out
+         */
+        int readByte() throws IOException {
+            if (this.position >= this.data.length) {
+                throw new IOException("Cache entry cut short");
+            }
+            return this.data[this.position++] & 0xFF;
+        }
+
+        /**
+         * Reads a big-endian int, as DataOutputStream writes them
+         * @return the int
+         * @throws IOException if the data has run out
+         */
+        int readInt() throws IOException {
+            return readByte() << 24 | readByte() << 16 | readByte() << 8 | readByte();
+        }
+
+        /**
+         * Reads a number written by writeVarint
+         * @return the number
+         * @throws IOException if the data has run out or the number is too long
+         */
+        int varint() throws IOException {
+            //most numbers fit in one byte
+            if (this.position < this.data.length && this.data[this.position] >= 0) {
+                return this.data[this.position++];
+            }
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if (b < 0x80) {
+                    return value;
+                }
+            }
+            throw new IOException("Bad number in cache entry");
+        }
+
+        /**
+         * Reads a String written as its UTF-8 length then its UTF-8 bytes
+         * @return the String
+         * @throws IOException if the data has run out
+         */
+        String utf8() throws IOException {
+            int length = varint();
+            if (length < 0 || length > this.data.length - this.position) {
+                throw new IOException("Cache entry cut short");
+            }
+            String s = new String(this.data, this.position, length, StandardCharsets.UTF_8);
+            this.position += length;
+            return s;
+        }
+    }
+
+    /**
+     * Getter for the number of sources found in memory
+     * @return number of memory hits
+     */
+    synchronized long getMemoryHits() { return this.memoryHits; }
+
+    /**
+     * Getter for the number of sources found in the directory but not in memory
+     * @return number of disk hits
+     */
+    synchronized long getDiskHits() { return this.diskHits; }
+
+    /**
+     * Getter for the number of sources that weren't cached and had to be compiled
+     * @return number of misses
+     */
+    synchronized long getMisses() { return this.misses; }
+
+    /**
+     * Getter for the bytes of entries in memory
+     * @return bytes in memory
+     */
+    synchronized long getMemoryBytes() { return this.memoryBytes; }
+}
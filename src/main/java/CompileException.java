@@ -0,0 +1,34 @@
+/**
+ * Thrown when the Lexer or Parser finds an error in the source, or a backend finds the program nested too deeply for
+ * its call stack, so the caller decides what happens next:
+ * the command line entry points print it and exit, while a batch run records it and carries on with other files
+ */
+class CompileException extends RuntimeException {
+    /** Version of the serialized form */
+    private static final long serialVersionUID = 1L;
+    /** Line the error was found on, or -1 if it isn't tied to a place in the source */
+    final int line;
+    /** Position within the line the error was found at, or -1 if it isn't tied to a place in the source */
+    final int pos;
+
+    /**
+     * Constructor for a CompileException
+     * @param line line the error was found on
+     * @param pos position within the line the error was found at
+     * @param msg a message explaining the error
+     */
+    CompileException(int line, int pos, String msg) {
+        super(Diagnostics.format(line, pos, msg));
+        this.line = line;
+        this.pos = pos;
+    }
+
+    /**
+     * Prints an error message and exits the program, for the command line entry points only
+     * @param msg message to print
+     */
+    static void fail(String msg) {
+        System.out.println(msg);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,318 @@
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-running compile daemon, so editor tooling can compile on every keystroke without paying JVM startup and
+ * warm-up each time. Listens on a Unix domain socket, or on a localhost TCP port where those aren't available.
+ *
+ * Each request is a mode byte (MODE_TOKENS or MODE_AST), then the length of the source in bytes as an int, then the
+ * source as UTF-8. Each response is a status byte (STATUS_OK or STATUS_ERRORS), then the length of the text as an int,
+ * then the text as UTF-8: the tokens one per line, the AST as printAST writes it, or the errors one per line.
+ * A connection can send any number of requests. A request with an unknown mode gets an error response, and one with
+ * a length below 0 or above MAX_SOURCE gets an error response and the connection is closed, since the server can't
+ * tell where the next request would start.
+ */
+class CompileServer implements Closeable {
+    /** Request mode asking for the tokens of the source */
+    static final byte MODE_TOKENS = 'T';
+    /** Request mode asking for the AST of the source */
+    static final byte MODE_AST = 'A';
+    /** Response status when the source compiled */
+    static final byte STATUS_OK = 0;
+    /** Response status when the source had errors, the text is then the errors */
+    static final byte STATUS_ERRORS = 1;
+    /** Longest source a request may send, so a bad length can't make the server allocate without limit */
+    static final int MAX_SOURCE = 1 << 26;
+
+    /**
+     * A Lexer and Parser kept for one thread and reset for every request, instead of being built again each time
+     */
+    static class Worker {
+        /** Interned names for the current request, cleared between requests */
+        final SymbolTable symbols = new SymbolTable();
+        /** Errors for the current request, cleared between requests */
+        final Diagnostics diagnostics = new Diagnostics(Diagnostics.DEFAULT_MAX_ERRORS);
+        /** Lexer reused for every request */
+        final Lexer lexer = new Lexer("", this.symbols, this.diagnostics);
+        /** Parser reused for every request */
+        final Parser parser = new Parser(this.lexer, this.diagnostics);
+
+        /**
+         * Compiles one source
+         * @param mode MODE_TOKENS or MODE_AST
+         * @param source text of the program
+         * @param out where the text of the response is written
+         * @return STATUS_OK, or STATUS_ERRORS if out holds errors instead
+         */
+        byte compile(byte mode, String source, StringBuilder out) {
+            if (mode != MODE_TOKENS && mode != MODE_AST) {
+                out.append("Unknown request mode ").append(mode).append("\n");
+                return STATUS_ERRORS;
+            }
+            this.symbols.clear();
+            this.diagnostics.clear();
+            this.lexer.reset(source);
+            try {
+                if (mode == MODE_TOKENS) {
+                    Lexer.Token t;
+                    do {
+                        t = this.lexer.next();
+                        out.append(t).append("\n");
+                    } while (t.tokentype != TokenType.End_of_input);
+                } else {
+                    this.parser.reset(this.lexer, this.diagnostics);
+                    this.parser.printAST(this.parser.parseArena(), out, false);
+                }
+            } catch (CompileException e) {
+                //too many errors, the ones collected so far are sent back below
+            }
+            if (this.diagnostics.hasErrors()) {
+                out.setLength(0);
+                for (Diagnostics.Diagnostic d : this.diagnostics.getErrors()) {
+                    out.append(d).append("\n");
+                }
+                return STATUS_ERRORS;
+            }
+            return STATUS_OK;
+        }
+    }
+
+    /** Each pool thread keeps its own Worker, so they stay warm across connections */
+    private static final ThreadLocal<Worker> WORKERS = ThreadLocal.withInitial(Worker::new);
+
+    /** Channel accepting connections */
+    private final ServerSocketChannel server;
+    /** Threads serving connections, one connection per thread at a time */
+    private final ExecutorService pool = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "compile-server");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Constructor for a CompileServer listening on the given address
+     * @param address a UnixDomainSocketAddress, or an InetSocketAddress
+     * @throws IOException if the address can't be bound
+     */
+    CompileServer(SocketAddress address) throws IOException {
+        if (address instanceof UnixDomainSocketAddress) {
+            this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            this.server = ServerSocketChannel.open();
+        }
+        this.server.bind(address);
+    }
+
+    /**
+     * Creates a CompileServer on a localhost TCP port
+     * @param port port to listen on, 0 for any free port
+     * @return the server, not yet accepting connections
+     * @throws IOException if the port can't be bound
+     */
+    static CompileServer onPort(int port) throws IOException {
+        return new CompileServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Creates a CompileServer on a Unix domain socket, replacing a stale socket file left by an earlier run
+     * @param socket path of the socket file
+     * @return the server, not yet accepting connections
+     * @throws IOException if the socket can't be bound
+     */
+    static CompileServer onSocket(Path socket) throws IOException {
+        Files.deleteIfExists(socket);
+        return new CompileServer(UnixDomainSocketAddress.of(socket));
+    }
+
+    /**
+     * Getter for the address the server is listening on, which has the real port when it was bound to port 0
+     * @return the bound address
+     * @throws IOException if the server is closed
+     */
+    SocketAddress getAddress() throws IOException {
+        return this.server.getLocalAddress();
+    }
+
+    /**
+     * Accepts connections until the server is closed, handing each one to a pool thread
+     */
+    void serve() {
+        while (this.server.isOpen()) {
+            try {
+                SocketChannel client = this.server.accept();
+                this.pool.execute(() -> handle(client));
+            } catch (IOException e) {
+                //accept fails once the server is closed, which ends the loop
+            }
+        }
+    }
+
+    /**
+     * Starts accepting connections on a background thread
+     * @return this server
+     */
+    CompileServer start() {
+        Thread t = new Thread(this::serve, "compile-server-accept");
+        t.setDaemon(true);
+        t.start();
+        return this;
+    }
+
+    /**
+     * Answers requests on one connection until the client closes it
+     * @param client the connection
+     */
+    private void handle(SocketChannel client) {
+        Worker worker = WORKERS.get();
+        StringBuilder out = new StringBuilder();
+        try (client;
+             DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+             DataOutputStream reply = new DataOutputStream(Channels.newOutputStream(client))) {
+            while (true) {
+                byte mode;
+                try {
+                    mode = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                int length = in.readInt();
+                out.setLength(0);
+                if (length < 0 || length > MAX_SOURCE) {
+                    out.append("Source length ").append(length).append(" is out of range, at most ").append(MAX_SOURCE)
+                            .append(" bytes\n");
+                    respond(reply, STATUS_ERRORS, out);
+                    return;
+                }
+                byte[] source = new byte[length];
+                in.readFully(source);
+
+                byte status = worker.compile(mode, new String(source, StandardCharsets.UTF_8), out);
+                respond(reply, status, out);
+            }
+        } catch (IOException e) {
+            //the client went away mid request, nothing to answer
+        }
+    }
+
+    /**
+     * Writes one response
+     * @param reply stream to the client
+     * @param status STATUS_OK or STATUS_ERRORS
+     * @param text text of the response
+     * @throws IOException if the client went away
+     */
+    private static void respond(DataOutputStream reply, byte status, StringBuilder text) throws IOException {
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        reply.writeByte(status);
+        reply.writeInt(bytes.length);
+        reply.write(bytes);
+        reply.flush();
+    }
+
+    /**
+     * Stops accepting connections
+     * @throws IOException if the channel can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.server.close();
+        this.pool.shutdownNow();
+    }
+
+    /**
+     * Client side of the protocol, for tools and tests talking to a running CompileServer
+     */
+    static class Client implements Closeable {
+        /** Connection to the server */
+        private final SocketChannel channel;
+        /** Reads responses */
+        private final DataInputStream in;
+        /** Writes requests */
+        private final DataOutputStream out;
+        /** Status byte of the last response */
+        private byte status;
+
+        /**
+         * Constructor for a Client connected to the given address
+         * @param address address the server is listening on
+         * @throws IOException if the connection fails
+         */
+        Client(SocketAddress address) throws IOException {
+            this.channel = SocketChannel.open(address);
+            this.in = new DataInputStream(Channels.newInputStream(this.channel));
+            this.out = new DataOutputStream(Channels.newOutputStream(this.channel));
+        }
+
+        /**
+         * Sends one source and waits for the answer
+         * @param mode MODE_TOKENS or MODE_AST
+         * @param source text of the program
+         * @return text of the response
+         * @throws IOException if the connection fails
+         */
+        String request(byte mode, String source) throws IOException {
+            byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+            this.out.writeByte(mode);
+            this.out.writeInt(bytes.length);
+            this.out.write(bytes);
+            this.out.flush();
+            this.status = this.in.readByte();
+            byte[] text = new byte[this.in.readInt()];
+            this.in.readFully(text);
+            return new String(text, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Getter for the status of the last response
+         * @return STATUS_OK or STATUS_ERRORS
+         */
+        byte getStatus() {
+            return this.status;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Runs the server until the process is killed. Option --unix=path listens on a Unix domain socket,
+     * otherwise --port=N listens on localhost, defaulting to port 7341
+     * @param args Command line arguments
+     */
+    public static void main(String[] args) {
+        Path socket = null;
+        int port = 7341;
+        for (String arg : args) {
+            if (arg.startsWith("--unix=")) {
+                socket = Path.of(arg.substring("--unix=".length()));
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            }
+        }
+        try {
+            CompileServer server = socket != null ? onSocket(socket) : onPort(port);
+            System.out.println("Listening on " + server.getAddress());
+            server.serve();
+        } catch (IOException e) {
+            CompileException.fail("Exception: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,482 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Records where the time of one compile goes: wall time and bytes allocated for each phase, how many tokens of each
+ * TokenType and AST nodes of each NodeType there were, and how deeply the Parser had to nest. It is read back as a
+ * Snapshot, and every phase and finished compile is also a JFR event, so a flight recording of a long run shows slow
+ * or pathological sources without attaching a profiler.
+ *
+ * Only MiniCompiler records into a CompileStats, for each file it is given with --stats. The CompileServer and
+ * BatchCompiler don't, so their compiles show up in neither the summary nor the JFR events.
+ *
+ * When the Parser pulls its tokens straight from a Lexer, as a plain compile does, lexing can't be timed apart from
+ * parsing without slowing both down, so it is timed as part of PARSE and the summary says so.
+ *
+ * Allocation is counted for the current thread only, so a phase has to begin and end on the same thread, and is -1
+ * on JVMs that can't count it.
+ */
+class CompileStats {
+    /**
+     * The phases of a compile that are timed
+     */
+    enum Phase {
+        /** Reading the source file */
+        IO("io"),
+        /** Lexing the source into tokens */
+        LEX("lex"),
+        /** Parsing the tokens into an AST */
+        PARSE("parse"),
+        /** Writing the .lex and .par dumps */
+        PRINT("print");
+
+        /** Name of the phase as printed in the summary and the JFR events */
+        private final String name;
+
+        /**
+         * Constructor for a Phase
+         * @param name name of the phase as printed
+         */
+        Phase(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() { return this.name; }
+    }
+
+    /**
+     * JFR event for one phase of one compile, lasting as long as the phase did
+     */
+    @Name("minicompiler.Phase")
+    @Label("Compile Phase")
+    @Category("MiniCompiler")
+    @Description("One phase of compiling a source")
+    @StackTrace(false)
+    static class PhaseEvent extends Event {
+        /** Name of the source being compiled */
+        @Label("Source")
+        String source;
+        /** Name of the phase */
+        @Label("Phase")
+        String phase;
+        /** Bytes allocated by the phase, -1 if the JVM can't count them */
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+    }
+
+    /**
+     * JFR event committed once a compile is finished, with its totals
+     */
+    @Name("minicompiler.Compile")
+    @Label("Compile")
+    @Category("MiniCompiler")
+    @Description("Totals for compiling one source")
+    @StackTrace(false)
+    static class CompileEvent extends Event {
+        /** Name of the source that was compiled */
+        @Label("Source")
+        String source;
+        /** Length of the source */
+        @Label("Source Size")
+        @DataAmount
+        long bytes;
+        /** Number of tokens, End_of_input included */
+        @Label("Tokens")
+        long tokens;
+        /** Number of AST nodes built */
+        @Label("Nodes")
+        long nodes;
+        /** Most statements nested inside each other */
+        @Label("Max Statement Depth")
+        int maxStmtDepth;
+        /** Most expressions nested inside each other */
+        @Label("Max Expression Depth")
+        int maxExprDepth;
+        /** Wall time of lexing and parsing together */
+        @Label("Lex And Parse Nanos")
+        long nanos;
+    }
+
+    /** All token types, indexed by ordinal */
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    /** All node types, indexed by ordinal */
+    private static final Parser.NodeType[] NODE_TYPES = Parser.NodeType.values();
+    /** Counts the bytes each thread allocates, null if this JVM can't */
+    private static final com.sun.management.ThreadMXBean ALLOCATION = allocationBean();
+
+    /** Name of the source being compiled */
+    private final String source;
+    /** Wall time spent in each phase, indexed by ordinal */
+    private final long[] nanos = new long[Phase.values().length];
+    /** Bytes allocated in each phase, indexed by ordinal */
+    private final long[] allocated = new long[Phase.values().length];
+    /** System.nanoTime() when each running phase began, -1 for phases not running */
+    private final long[] startNanos = new long[Phase.values().length];
+    /** Bytes the thread had allocated when each running phase began */
+    private final long[] startAllocated = new long[Phase.values().length];
+    /** JFR event of each running phase */
+    private final PhaseEvent[] events = new PhaseEvent[Phase.values().length];
+    /** Number of tokens of each TokenType, indexed by ordinal */
+    private final long[] tokens = new long[TOKEN_TYPES.length];
+    /** Number of AST nodes of each NodeType, indexed by ordinal */
+    private final long[] nodes = new long[NODE_TYPES.length];
+    /** Length of the source */
+    private long bytes;
+    /** Most statements nested inside each other */
+    private int maxStmtDepth;
+    /** Most expressions nested inside each other */
+    private int maxExprDepth;
+    /** True if the tokens were counted as the Parser took them, so lexing was timed as part of PARSE */
+    private boolean streamed;
+
+    /**
+     * Constructor for CompileStats with nothing recorded yet
+     * @param source name of the source being compiled, used in the summary and the JFR events
+     */
+    CompileStats(String source) {
+        this.source = source;
+        Arrays.fill(this.startNanos, -1);
+    }
+
+    /**
+     * Finds the bean that counts allocated bytes per thread, and turns the counting on
+     * @return the bean, or null if this JVM can't count them
+     */
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean counting = (com.sun.management.ThreadMXBean) bean;
+            if (counting.isThreadAllocatedMemorySupported()) {
+                counting.setThreadAllocatedMemoryEnabled(true);
+                return counting;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the bytes the current thread has allocated so far
+     * @return the bytes, or -1 if this JVM can't count them
+     */
+    private static long allocatedBytes() {
+        return ALLOCATION != null ? ALLOCATION.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    /**
+     * Starts timing a phase. Running the same phase again adds to its time
+     * @param phase the phase
+     */
+    void begin(Phase phase) {
+        int i = phase.ordinal();
+        PhaseEvent event = new PhaseEvent();
+        event.begin();
+        this.events[i] = event;
+        this.startAllocated[i] = allocatedBytes();
+        this.startNanos[i] = System.nanoTime();
+    }
+
+    /**
+     * Stops timing a phase, adding its wall time and allocation to the totals. Does nothing if it isn't running
+     * @param phase the phase
+     */
+    void end(Phase phase) {
+        int i = phase.ordinal();
+        if (this.startNanos[i] < 0) {
+            return;
+        }
+        this.nanos[i] += System.nanoTime() - this.startNanos[i];
+        long allocated = this.startAllocated[i] < 0 ? -1 : allocatedBytes() - this.startAllocated[i];
+        this.allocated[i] = allocated < 0 ? -1 : this.allocated[i] + allocated;
+        this.startNanos[i] = -1;
+        PhaseEvent event = this.events[i];
+        this.events[i] = null;
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = this.source;
+            event.phase = phase.toString();
+            event.allocated = allocated;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records the length of the source
+     * @param source text being compiled
+     */
+    void source(CharSequence source) {
+        this.bytes = source.length();
+    }
+
+    /**
+     * Counts the tokens of each TokenType in a buffer
+     * @param tokens the lexed tokens
+     */
+    void countTokens(TokenBuffer tokens) {
+        for (int i = 0; i < tokens.size(); i++) {
+            this.tokens[tokens.type(i).ordinal()]++;
+        }
+    }
+
+    /**
+     * Wraps the Lexer a Parser pulls its tokens from, counting the tokens of each TokenType as the Parser takes them.
+     * Lexing then happens inside PARSE, and is timed as part of it
+     * @param lexer where the tokens come from
+     * @return TokenStream handing out the same tokens
+     */
+    TokenStream countTokens(TokenStream lexer) {
+        this.streamed = true;
+        return new TokenStream() {
+            /** True once End_of_input has been counted, since it is handed out again for every later next */
+            private boolean ended;
+
+            @Override
+            public Lexer.Token next() {
+                Lexer.Token t = lexer.next();
+                if (!this.ended) {
+                    tokens[t.tokentype.ordinal()]++;
+                    this.ended = t.tokentype == TokenType.End_of_input;
+                }
+                return t;
+            }
+
+            @Override
+            public Lexer.Token peek(int k) {
+                return lexer.peek(k);
+            }
+
+            @Override
+            public SymbolTable getSymbols() {
+                return lexer.getSymbols();
+            }
+        };
+    }
+
+    /**
+     * Counts the nodes of each NodeType the Parser built, and takes how deeply it had to nest
+     * @param parser Parser that has just parsed into its arena
+     */
+    void countNodes(Parser parser) {
+        AstArena arena = parser.getArena();
+        for (int i = 0; i < arena.size(); i++) {
+            this.nodes[arena.kind(i).ordinal()]++;
+        }
+        this.maxStmtDepth = Math.max(this.maxStmtDepth, parser.getMaxStmtDepth());
+        this.maxExprDepth = Math.max(this.maxExprDepth, parser.getMaxExprDepth());
+    }
+
+    /**
+     * Takes a Snapshot of everything recorded so far
+     * @return the Snapshot
+     */
+    Snapshot snapshot() {
+        Map<Phase, Long> nanos = new EnumMap<>(Phase.class);
+        Map<Phase, Long> allocated = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values()) {
+            nanos.put(phase, this.nanos[phase.ordinal()]);
+            allocated.put(phase, this.allocated[phase.ordinal()]);
+        }
+        Map<TokenType, Long> tokens = new EnumMap<>(TokenType.class);
+        for (int i = 0; i < this.tokens.length; i++) {
+            if (this.tokens[i] > 0) {
+                tokens.put(TOKEN_TYPES[i], this.tokens[i]);
+            }
+        }
+        Map<Parser.NodeType, Long> nodes = new EnumMap<>(Parser.NodeType.class);
+        for (int i = 0; i < this.nodes.length; i++) {
+            if (this.nodes[i] > 0) {
+                nodes.put(NODE_TYPES[i], this.nodes[i]);
+            }
+        }
+        return new Snapshot(this.source, this.bytes, nanos, allocated, tokens, nodes, this.maxStmtDepth, this.maxExprDepth,
+                this.streamed);
+    }
+
+    /**
+     * Ends any phase still running, such as one stopped by a CompileException, and commits the JFR event for the
+     * whole compile
+     * @return Snapshot of the finished compile
+     */
+    Snapshot finish() {
+        for (Phase phase : Phase.values()) {
+            end(phase);
+        }
+        Snapshot snapshot = snapshot();
+        CompileEvent event = new CompileEvent();
+        if (event.shouldCommit()) {
+            event.source = this.source;
+            event.bytes = snapshot.bytes;
+            event.tokens = snapshot.tokenCount();
+            event.nodes = snapshot.nodeCount();
+            event.maxStmtDepth = snapshot.maxStmtDepth;
+            event.maxExprDepth = snapshot.maxExprDepth;
+            event.nanos = snapshot.nanos(Phase.LEX) + snapshot.nanos(Phase.PARSE);
+            event.commit();
+        }
+        return snapshot;
+    }
+
+    /**
+     * What CompileStats had recorded at one point, which doesn't change afterwards
+     */
+    static class Snapshot {
+        /** Name of the source that was compiled */
+        final String source;
+        /** Length of the source */
+        final long bytes;
+        /** Wall time spent in each phase */
+        private final Map<Phase, Long> nanos;
+        /** Bytes allocated in each phase, -1 if the JVM can't count them */
+        private final Map<Phase, Long> allocated;
+        /** Number of tokens of each TokenType, types with none left out */
+        private final Map<TokenType, Long> tokens;
+        /** Number of AST nodes of each NodeType, types with none left out */
+        private final Map<Parser.NodeType, Long> nodes;
+        /** Most statements nested inside each other */
+        final int maxStmtDepth;
+        /** Most expressions nested inside each other */
+        final int maxExprDepth;
+        /** True if lexing was timed as part of PARSE, since the Parser pulled its tokens straight from the Lexer */
+        final boolean streamed;
+
+        /**
+         * Constructor for a Snapshot, which keeps the maps it is given
+         * @param source name of the source that was compiled
+         * @param bytes length of the source
+         * @param nanos wall time spent in each phase
+         * @param allocated bytes allocated in each phase
+         * @param tokens number of tokens of each TokenType
+         * @param nodes number of AST nodes of each NodeType
+         * @param maxStmtDepth most statements nested inside each other
+         * @param maxExprDepth most expressions nested inside each other
+         * @param streamed true if lexing was timed as part of PARSE
+         */
+        Snapshot(String source, long bytes, Map<Phase, Long> nanos, Map<Phase, Long> allocated,
+                 Map<TokenType, Long> tokens, Map<Parser.NodeType, Long> nodes, int maxStmtDepth, int maxExprDepth,
+                 boolean streamed) {
+            this.source = source;
+            this.bytes = bytes;
+            this.nanos = nanos;
+            this.allocated = allocated;
+            this.tokens = tokens;
+            this.nodes = nodes;
+            this.maxStmtDepth = maxStmtDepth;
+            this.maxExprDepth = maxExprDepth;
+            this.streamed = streamed;
+        }
+
+        /**
+         * Getter for the wall time of a phase
+         * @param phase the phase
+         * @return nanoseconds spent in it
+         */
+        long nanos(Phase phase) {
+            return this.nanos.get(phase);
+        }
+
+        /**
+         * Getter for the bytes allocated in a phase
+         * @param phase the phase
+         * @return bytes allocated, -1 if the JVM can't count them
+         */
+        long allocated(Phase phase) {
+            return this.allocated.get(phase);
+        }
+
+        /**
+         * Getter for the number of tokens of one TokenType
+         * @param type the TokenType
+         * @return how many there were
+         */
+        long tokens(TokenType type) {
+            return this.tokens.getOrDefault(type, 0L);
+        }
+
+        /**
+         * Getter for the number of AST nodes of one NodeType
+         * @param type the NodeType
+         * @return how many there were
+         */
+        long nodes(Parser.NodeType type) {
+            return this.nodes.getOrDefault(type, 0L);
+        }
+
+        /**
+         * Getter for the number of tokens of every type together
+         * @return number of tokens, End_of_input included
+         */
+        long tokenCount() {
+            return this.tokens.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        /**
+         * Getter for the number of AST nodes of every type together
+         * @return number of nodes
+         */
+        long nodeCount() {
+            return this.nodes.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        /**
+         * Works out how fast the source was lexed and parsed, leaving out reading it and printing the dumps
+         * @return bytes of source per second, 0 if no time was recorded
+         */
+        double bytesPerSecond() {
+            long nanos = nanos(Phase.LEX) + nanos(Phase.PARSE);
+            return nanos == 0 ? 0 : this.bytes * 1e9 / nanos;
+        }
+
+        /**
+         * Formats the Snapshot as the summary printed by --stats, a line of totals, a line per phase, then the
+         * counts of each TokenType and NodeType
+         * @return the summary
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%s: %d bytes, %d tokens, %d nodes, depth %d statements / %d expressions, %.2f MB/s%n",
+                    this.source, this.bytes, tokenCount(), nodeCount(), this.maxStmtDepth, this.maxExprDepth,
+                    bytesPerSecond() / 1e6));
+            for (Phase phase : Phase.values()) {
+                if (phase == Phase.LEX && this.streamed) {
+                    sb.append(String.format("  %-6s streamed to the Parser, timed as part of %s%n", phase, Phase.PARSE));
+                    continue;
+                }
+                long allocated = allocated(phase);
+                sb.append(String.format("  %-6s %10.3f ms %12s%n", phase, nanos(phase) / 1e6,
+                        allocated < 0 ? "?" : allocated / 1024 + " KB"));
+            }
+            sb.append("  tokens ").append(counts(this.tokens)).append(System.lineSeparator());
+            sb.append("  nodes  ").append(counts(this.nodes));
+            return sb.toString();
+        }
+
+        /**
+         * Formats counts as name=count pairs
+         * @param counts the counts, in ordinal order
+         * @return the pairs, separated by spaces
+         */
+        private static String counts(Map<?, Long> counts) {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<?, Long> entry : counts.entrySet()) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(entry.getKey()).append('=').append(entry.getValue());
+            }
+            return sb.toString();
+        }
+    }
+}
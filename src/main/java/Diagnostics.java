@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects the errors found while compiling one source, so the Lexer and Parser can report several and carry on,
+ * instead of stopping the whole program at the first one
+ */
+class Diagnostics {
+    /** Maximum number of errors used by the command line drivers when none is given */
+    static final int DEFAULT_MAX_ERRORS = 20;
+
+    /**
+     * One error, with the place in the source it was found
+     */
+    static class Diagnostic {
+        /** Line the error was found on, or -1 if it isn't tied to a place in the source */
+        final int line;
+        /** Position within the line the error was found at, or -1 if it isn't tied to a place in the source */
+        final int pos;
+        /** A message explaining the error */
+        final String message;
+
+        /**
+         * Constructor for a Diagnostic
+         * @param line line the error was found on
+         * @param pos position within the line the error was found at
+         * @param message a message explaining the error
+         */
+        Diagnostic(int line, int pos, String message) {
+            this.line = line; this.pos = pos; this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return format(this.line, this.pos, this.message);
+        }
+    }
+
+    /** Errors reported so far, in the order they were found */
+    private final List<Diagnostic> errors = new ArrayList<>();
+    /** Number of errors after which compiling stops with a CompileException */
+    private final int maxErrors;
+
+    /**
+     * Constructor for Diagnostics that stop at the first error, the way the compiler always used to
+     */
+    Diagnostics() {
+        this(1);
+    }
+
+    /**
+     * Constructor for Diagnostics
+     * @param maxErrors number of errors after which compiling stops with a CompileException, at least 1
+     */
+    Diagnostics(int maxErrors) {
+        this.maxErrors = Math.max(1, maxErrors);
+    }
+
+    /**
+     * Records an error. Once maxErrors have been recorded, throws a CompileException for this one to stop compiling
+     * @param line line the error was found on
+     * @param pos position within the line the error was found at
+     * @param msg a message explaining the error
+     */
+    void error(int line, int pos, String msg) {
+        this.errors.add(new Diagnostic(line, pos, msg));
+        if (this.errors.size() >= this.maxErrors) {
+            throw new CompileException(line, pos, msg);
+        }
+    }
+
+    /**
+     * Forgets every error reported so far, so the same Diagnostics can be reused for another source
+     */
+    void clear() {
+        this.errors.clear();
+    }
+
+    /**
+     * Checks whether any error has been reported
+     * @return true if there is at least one error
+     */
+    boolean hasErrors() {
+        return !this.errors.isEmpty();
+    }
+
+    /**
+     * Getter for the number of errors reported so far, without wrapping the list like getErrors does
+     * @return number of errors
+     */
+    int count() {
+        return this.errors.size();
+    }
+
+    /**
+     * Getter for the errors reported so far
+     * @return read-only list of errors, in the order they were found
+     */
+    List<Diagnostic> getErrors() {
+        return Collections.unmodifiableList(this.errors);
+    }
+
+    /**
+     * Formats an error message with its location, the way the compiler has always printed them
+     * @param line line the error was found on, or -1
+     * @param pos position within the line the error was found at, or -1
+     * @param msg a message explaining the error
+     * @return the formatted message
+     */
+    static String format(int line, int pos, String msg) {
+        return line > 0 && pos > 0 ? String.format("%s in line %d, pos %d", msg, line, pos) : msg;
+    }
+}
@@ -0,0 +1,427 @@
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the tokens and AST of a source that is being edited, such as a file open in an IDE, and brings them up to
+ * date after each edit without lexing and parsing the whole source again.
+ *
+ * After an edit, lexing restarts at the last token that ends before the edit and stops as soon as a new token starts
+ * where an old token after the edit started, since from there on the old tokens are still right once they're moved
+ * along. Parsing then restarts at the top-level statement before the first changed token, since that statement looked
+ * at the next token to see if an else followed, and stops at the first statement boundary in the unchanged tokens.
+ * The AST has no positions in it, so the statements after that are kept as they are.
+ *
+ * The whole AST is a left-deep chain of Sequence nodes over the statements, so changing a statement changes every
+ * Sequence node above it. getStatements hands out the statements without that chain, at no cost per edit. getAst
+ * keeps the chain between calls and only builds it again from the first statement an edit parsed again, so an edit
+ * near the end of the source stays cheap, but one near the start still costs a node per statement after it.
+ */
+class IncrementalCompiler {
+    /**
+     * One top-level statement, with the errors found in it
+     */
+    private static class Statement {
+        /** AST of the statement, null for an empty statement or the end of the input */
+        final Parser.Node ast;
+        /** Index of the statement's first token */
+        int firstToken;
+        /** Errors found parsing the statement, with lines counted from the line of its first token */
+        final List<Diagnostics.Diagnostic> errors;
+
+        /**
+         * Constructor for a Statement
+         * @param ast AST of the statement
+         * @param firstToken index of its first token
+         * @param errors errors found parsing it, with lines counted from the line of its first token
+         */
+        Statement(Parser.Node ast, int firstToken, List<Diagnostics.Diagnostic> errors) {
+            this.ast = ast;
+            this.firstToken = firstToken;
+            this.errors = errors;
+        }
+    }
+
+    /**
+     * An error found lexing a token. It belongs to the token, not a statement, since a statement can be parsed again
+     * without all of its tokens being lexed again
+     */
+    private static class TokenError {
+        /** Index of the token being lexed when the error was found */
+        final int token;
+        /** The error, with its line counted from the line of the token */
+        final Diagnostics.Diagnostic error;
+
+        /**
+         * Constructor for a TokenError
+         * @param token index of the token
+         * @param error the error, with its line counted from the line of the token
+         */
+        TokenError(int token, Diagnostics.Diagnostic error) {
+            this.token = token;
+            this.error = error;
+        }
+    }
+
+    /** The source, edited in place */
+    private final StringBuilder text;
+    /** Tokens of the source, ending with End_of_input */
+    private final TokenBuffer tokens = new TokenBuffer();
+    /** Lexer over text, moved to wherever lexing has to restart */
+    private final Lexer lexer;
+    /** Parser reused for every edit */
+    private final Parser parser;
+    /** Top-level statements in order, the last one standing for End_of_input */
+    private final List<Statement> statements = new ArrayList<>();
+    /**
+     * Sequence nodes of the AST built by getAst, the one at k holding statements 0 to k. Cut back to the first
+     * statement an edit parses again, and built again from there by the next getAst
+     */
+    private final List<Parser.Node> spine = new ArrayList<>();
+    /** Errors found lexing, in token order */
+    private List<TokenError> lexErrors = new ArrayList<>();
+    /** Tokens lexed again by the last edit */
+    private int relexed;
+    /** Statements parsed again by the last edit */
+    private int reparsed;
+
+    /**
+     * Constructor for an IncrementalCompiler, which lexes and parses the whole source once
+     * @param source text of the program
+     */
+    IncrementalCompiler(String source) {
+        this.text = new StringBuilder(source);
+        Diagnostics found = new Diagnostics(Integer.MAX_VALUE);
+        this.lexer = new Lexer(this.text, new SymbolTable(), found);
+        this.tokens.reset(this.text, this.lexer.getSymbols());
+        TokenType type;
+        do {
+            type = this.lexer.scanInto(this.tokens);
+            addErrors(found, this.tokens, this.tokens.size() - 1, 0, this.lexErrors);
+        } while (type != TokenType.End_of_input);
+        this.parser = new Parser(this.tokens.stream(), new Diagnostics(Integer.MAX_VALUE));
+        this.relexed = this.tokens.size();
+        reparse(0, Integer.MAX_VALUE, 0);
+    }
+
+    /**
+     * Applies an edit to the source and brings the tokens and AST up to date
+     * @param offset index in the source where the edit starts
+     * @param removed number of chars the edit removes from there
+     * @param inserted text the edit puts in their place
+     */
+    void edit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > this.text.length()) {
+            throw new IllegalArgumentException("edit: " + offset + "+" + removed + " is outside the source");
+        }
+        TokenBuffer old = this.tokens;
+        int delta = inserted.length() - removed;
+        int oldSize = old.size();
+
+        //the last token ending before the edit, a token ending right at it could be made longer by it
+        int restart = -1;
+        for (int lo = 0, hi = oldSize - 2; lo <= hi; ) {
+            int mid = (lo + hi) >>> 1;
+            if (old.lexemeEnd(mid) < offset) {
+                restart = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        TokenType prev = restart > 0 ? old.type(restart - 1) : null;
+
+        this.text.replace(offset, offset + removed, inserted);
+        Diagnostics found = new Diagnostics(Integer.MAX_VALUE);
+        this.lexer.reset(this.text, old.symbols(), found);
+        if (restart >= 0) {
+            this.lexer.resume(old.lexemeStart(restart), old.line(restart), old.pos(restart), prev);
+        } else {
+            //the edit is before the first token, maybe in a comment, so lex from the very start
+            restart = 0;
+        }
+
+        //lex until a token starts where an old token after the edit did, with the same token before it
+        TokenBuffer fresh = new TokenBuffer();
+        fresh.reset(this.text, old.symbols());
+        int editEnd = offset + inserted.length();
+        int tailStart = Integer.MAX_VALUE;
+        //the old tokens up to this one are replaced, along with their errors
+        int replaced = oldSize - 1;
+        List<TokenError> errors = new ArrayList<>();
+        int lineDelta = 0, posLine = -1, posDelta = 0;
+        while (true) {
+            TokenType type = this.lexer.scanInto(fresh);
+            int last = fresh.size() - 1;
+            addErrors(found, fresh, last, restart, errors);
+            int start = fresh.lexemeStart(last);
+            if (start >= editEnd) {
+                int match = find(old, start - delta, restart);
+                if (match >= 0 && old.type(match) == type && (match > 0 ? old.type(match - 1) : null) == prev) {
+                    lineDelta = fresh.line(last) - old.line(match);
+                    posLine = old.line(match);
+                    posDelta = fresh.pos(last) - old.pos(match);
+                    fresh.removeLast();
+                    old.splice(restart, match, fresh, delta, lineDelta, posLine, posDelta);
+                    tailStart = restart + fresh.size();
+                    //the matching token's errors were just found again, maybe at a new place on its line
+                    replaced = match;
+                    break;
+                }
+            }
+            if (type == TokenType.End_of_input) {
+                old.splice(restart, oldSize, fresh, delta, 0, -1, 0);
+                break;
+            }
+            prev = type;
+        }
+        this.relexed = fresh.size();
+        int tokenDelta = old.size() - oldSize;
+        List<TokenError> merged = new ArrayList<>();
+        for (TokenError e : this.lexErrors) {
+            if (e.token < restart) {
+                merged.add(e);
+            }
+        }
+        merged.addAll(errors);
+        for (TokenError e : this.lexErrors) {
+            if (e.token > replaced) {
+                Diagnostics.Diagnostic d = e.error;
+                //an error on an earlier line than its token, such as an unclosed comment, keeps its real position,
+                //which moves too if it's on the line the edit ended on
+                if (d.line != 0 && d.line + old.line(e.token + tokenDelta) - lineDelta == posLine) {
+                    d = new Diagnostics.Diagnostic(d.line, d.pos + posDelta, d.message);
+                }
+                merged.add(new TokenError(e.token + tokenDelta, d));
+            }
+        }
+        this.lexErrors = merged;
+
+        //statement holding the restart token, and the one before it
+        int first = 0;
+        for (int lo = 0, hi = this.statements.size() - 1; lo <= hi; ) {
+            int mid = (lo + hi) >>> 1;
+            if (this.statements.get(mid).firstToken <= restart) {
+                first = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        first = Math.max(0, first - 1);
+        reparse(first, tailStart, tokenDelta);
+    }
+
+    /**
+     * Finds the token whose text starts at an index in the source
+     * @param buffer the tokens
+     * @param start index in the source
+     * @param from index of a token at or before the one wanted
+     * @return index of the token, -1 if no token starts there
+     */
+    private static int find(TokenBuffer buffer, int start, int from) {
+        for (int lo = Math.max(0, from), hi = buffer.size() - 1; lo <= hi; ) {
+            int mid = (lo + hi) >>> 1;
+            int at = buffer.lexemeStart(mid);
+            if (at == start) {
+                return mid;
+            } else if (at < start) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses statements again from one statement on, until the statements line up with the old ones again
+     * @param first index of the first statement to parse again
+     * @param tailStart index of the first token that wasn't lexed again, Integer.MAX_VALUE if lexing reached the end
+     * @param tokenDelta how many tokens the edit added, negative if it removed tokens
+     */
+    private void reparse(int first, int tailStart, int tokenDelta) {
+        int from = first < this.statements.size() ? this.statements.get(first).firstToken : 0;
+        TokenBuffer.Stream stream = this.tokens.stream(from);
+        Diagnostics parseErrors = new Diagnostics(Integer.MAX_VALUE);
+        this.parser.reset(stream, parseErrors);
+        List<Statement> parsed = new ArrayList<>();
+        int keep = this.statements.size();
+        while (true) {
+            boolean more = this.parser.hasNextStatement();
+            int at = stream.index();
+            if (at >= tailStart) {
+                keep = findStatement(at - tokenDelta, first);
+                if (keep >= 0) {
+                    break;
+                }
+                keep = this.statements.size();
+            }
+            int before = parseErrors.getErrors().size();
+            Parser.Node ast = more ? this.parser.nextStatement() : null;
+            List<Diagnostics.Diagnostic> errors = new ArrayList<>();
+            for (Diagnostics.Diagnostic d : parseErrors.getErrors().subList(before, parseErrors.getErrors().size())) {
+                errors.add(relative(d, this.tokens.line(at), this.tokens.pos(at)));
+            }
+            parsed.add(new Statement(ast, at, errors));
+            if (!more) {
+                break;
+            }
+        }
+        for (int i = keep; i < this.statements.size(); i++) {
+            this.statements.get(i).firstToken += tokenDelta;
+        }
+        this.statements.subList(first, keep).clear();
+        this.statements.addAll(first, parsed);
+        if (this.spine.size() > first) {
+            this.spine.subList(first, this.spine.size()).clear();
+        }
+        this.reparsed = parsed.size();
+    }
+
+    /**
+     * Finds the statement that started at a token before the edit
+     * @param token index of the token before the edit
+     * @param from index of a statement at or before the one wanted
+     * @return index of the statement, -1 if no statement started there
+     */
+    private int findStatement(int token, int from) {
+        for (int lo = from, hi = this.statements.size() - 1; lo <= hi; ) {
+            int mid = (lo + hi) >>> 1;
+            int at = this.statements.get(mid).firstToken;
+            if (at == token) {
+                return mid;
+            } else if (at < token) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves the errors the Lexer reported while lexing a token over to a list, tied to that token
+     * @param found where the Lexer reports errors, emptied afterwards
+     * @param buffer buffer the token was lexed into
+     * @param token index of the token in buffer
+     * @param offset index buffer's first token will have in the tokens
+     * @param into list to add the errors to
+     */
+    private static void addErrors(Diagnostics found, TokenBuffer buffer, int token, int offset, List<TokenError> into) {
+        for (Diagnostics.Diagnostic d : found.getErrors()) {
+            into.add(new TokenError(offset + token, relative(d, buffer.line(token), buffer.pos(token))));
+        }
+        found.clear();
+    }
+
+    /**
+     * Moves an error to a line counted from the line of a token, and a position counted from the token's when it's on
+     * that line, so it stays right when an edit earlier in the source moves the token
+     * @param d error with its real line and position
+     * @param line line of the token
+     * @param pos position of the token
+     * @return the moved error
+     */
+    private static Diagnostics.Diagnostic relative(Diagnostics.Diagnostic d, int line, int pos) {
+        return new Diagnostics.Diagnostic(d.line - line, d.line == line ? d.pos - pos : d.pos, d.message);
+    }
+
+    /**
+     * Moves an error back from relative to a token to its real line and position
+     * @param d error relative to the token
+     * @param token index of the token
+     * @return the error with its real line and position
+     */
+    private Diagnostics.Diagnostic absolute(Diagnostics.Diagnostic d, int token) {
+        int line = this.tokens.line(token);
+        return new Diagnostics.Diagnostic(d.line + line, d.line == 0 ? d.pos + this.tokens.pos(token) : d.pos, d.message);
+    }
+
+    /**
+     * Getter for the source as edited so far
+     * @return the source text
+     */
+    String getSource() {
+        return this.text.toString();
+    }
+
+    /**
+     * Getter for the tokens of the source
+     * @return the tokens, ending with End_of_input, changed in place by the next edit
+     */
+    TokenBuffer getTokens() {
+        return this.tokens;
+    }
+
+    /**
+     * Gets the AST of the whole source, the same tree Parser.parse gives. The Sequence nodes over the statements
+     * before the first one the last edit parsed again are the ones the last call gave, so the tree shouldn't be changed
+     * @return root of the AST, null for a source with no statements
+     */
+    Parser.Node getAst() {
+        int count = this.statements.size() - 1;
+        for (int i = this.spine.size(); i < count; i++) {
+            Parser.Node before = i > 0 ? this.spine.get(i - 1) : null;
+            this.spine.add(Parser.Node.make_node(Parser.NodeType.nd_Sequence, before, this.statements.get(i).ast));
+        }
+        return count > 0 ? this.spine.get(count - 1) : null;
+    }
+
+    /**
+     * Getter for the AST of each top-level statement, for callers that don't need them joined into one tree
+     * @return read-only view of the statements in order, null for an empty statement, changed in place by the next
+     * edit
+     */
+    List<Parser.Node> getStatements() {
+        return new AbstractList<>() {
+            @Override
+            public Parser.Node get(int index) {
+                if (index < 0 || index >= size()) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                return IncrementalCompiler.this.statements.get(index).ast;
+            }
+
+            @Override
+            public int size() {
+                return IncrementalCompiler.this.statements.size() - 1;
+            }
+        };
+    }
+
+    /**
+     * Getter for every error in the source, lexing and parsing, in the order they appear in the source
+     * @return the errors, with their real lines and positions
+     */
+    List<Diagnostics.Diagnostic> getErrors() {
+        List<Diagnostics.Diagnostic> errors = new ArrayList<>();
+        for (TokenError e : this.lexErrors) {
+            errors.add(absolute(e.error, e.token));
+        }
+        for (Statement s : this.statements) {
+            for (Diagnostics.Diagnostic d : s.errors) {
+                errors.add(absolute(d, s.firstToken));
+            }
+        }
+        errors.sort(Comparator.comparingInt((Diagnostics.Diagnostic d) -> d.line).thenComparingInt(d -> d.pos));
+        return errors;
+    }
+
+    /**
+     * Getter for how many tokens the last edit lexed again, or the whole source for the first compile
+     * @return number of tokens
+     */
+    int getRelexed() {
+        return this.relexed;
+    }
+
+    /**
+     * Getter for how many top-level statements the last edit parsed again, counting the end of the input
+     * @return number of statements
+     */
+    int getReparsed() {
+        return this.reparsed;
+    }
+}
@@ -0,0 +1,355 @@
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tree-walking interpreter that runs the AST from the Parser. Loading a program walks the Parser.Node tree once and
+ * builds a resolved copy of it: every variable gets a slot in an int array, Integer values are parsed, String escapes
+ * are decoded and Sequence chains are flattened into blocks. Running then never looks anything up by name.
+ *
+ * Loading and running recurse into nested statements and expressions, so unlike the Parser and Optimizer they can run
+ * out of call stack on a program nested tens of thousands deep. That is reported as a CompileException rather than
+ * letting the StackOverflowError out.
+ */
+class Interpreter {
+    /** Output is handed to the Writer once this many chars are buffered */
+    private static final int FLUSH_AT = 8192;
+
+    /**
+     * One node of a loaded program
+     */
+    private static final class Code {
+        /** What the node does, the NodeType it was loaded from, with nd_Sequence standing for a block */
+        final Parser.NodeType kind;
+        /** Left operand, condition, or the value being assigned or printed */
+        Code left;
+        /** Right operand, or the body of an if or while */
+        Code right;
+        /** Else part of an if, null if there is none */
+        Code other;
+        /** Statements of a block, in order */
+        Code[] body;
+        /** Value of an Integer, or slot of an Identifier */
+        int value;
+        /** Decoded text of a String */
+        String text;
+
+        /**
+         * Constructor for a Code node
+         * @param kind what the node does
+         */
+        Code(Parser.NodeType kind) {
+            this.kind = kind;
+        }
+    }
+
+    /** Slot of each variable name, only used while loading */
+    private final Map<String, Integer> slots = new HashMap<>();
+    /** Variable names, indexed by slot */
+    private final List<String> names = new ArrayList<>();
+    /** Value of each variable, indexed by slot */
+    private int[] variables = new int[0];
+    /** The loaded program, null for an empty one */
+    private Code program;
+    /** Where the program's output goes */
+    private final Writer out;
+    /** Output not yet handed to out */
+    private final StringBuilder buffer = new StringBuilder(FLUSH_AT + 64);
+
+    /**
+     * Constructor for an Interpreter
+     * @param out where the program's output goes, written in chunks rather than a char at a time
+     */
+    Interpreter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Loads a program, resolving its variables to slots
+     * @param root root of the AST, as given by Parser.parse
+     * @return this Interpreter
+     * @throws CompileException if the program is nested too deeply to load
+     */
+    Interpreter load(Parser.Node root) {
+        this.slots.clear();
+        this.names.clear();
+        this.program = null;
+        try {
+            this.program = statement(root);
+        } catch (StackOverflowError e) {
+            throw new CompileException(-1, -1, "Interpreter: program nested too deeply to load");
+        }
+        this.variables = new int[this.names.size()];
+        return this;
+    }
+
+    /**
+     * Runs the loaded program from the start, with every variable at 0
+     * @throws IOException if the output can't be written
+     * @throws CompileException if the program is nested too deeply to run, after printing what it had so far
+     */
+    void run() throws IOException {
+        Arrays.fill(this.variables, 0);
+        try {
+            exec(this.program);
+        } catch (StackOverflowError e) {
+            throw new CompileException(-1, -1, "Interpreter: program nested too deeply to run");
+        } finally {
+            flush();
+        }
+    }
+
+    /**
+     * Getter for the value of a variable, as the last run left it
+     * @param name name of the variable
+     * @return its value, 0 if the program has no such variable
+     */
+    int getVariable(String name) {
+        Integer slot = this.slots.get(name);
+        return slot == null ? 0 : this.variables[slot];
+    }
+
+    /**
+     * Loads a statement, flattening a chain of Sequences into one block
+     * @param n the statement, may be null
+     * @return loaded statement, null for an empty one
+     */
+    private Code statement(Parser.Node n) {
+        if (n == null) {
+            return null;
+        }
+        switch (n.nt) {
+            case nd_Sequence: {
+                //walk the chain with a stack, since parse builds one Sequence per top-level statement
+                List<Code> body = new ArrayList<>();
+                ArrayDeque<Parser.Node> stack = new ArrayDeque<>();
+                stack.push(n);
+                while (!stack.isEmpty()) {
+                    Parser.Node s = stack.pop();
+                    if (s.nt == Parser.NodeType.nd_Sequence) {
+                        if (s.right != null) stack.push(s.right);
+                        if (s.left != null) stack.push(s.left);
+                    } else {
+                        body.add(statement(s));
+                    }
+                }
+                Code block = new Code(Parser.NodeType.nd_Sequence);
+                block.body = body.toArray(new Code[0]);
+                return block;
+            }
+            case nd_If: {
+                Code c = new Code(n.nt);
+                c.left = expression(n.left);
+                c.right = statement(n.right.left);
+                c.other = statement(n.right.right);
+                return c;
+            }
+            case nd_While: {
+                Code c = new Code(n.nt);
+                c.left = expression(n.left);
+                c.right = statement(n.right);
+                return c;
+            }
+            case nd_Assign: {
+                Code c = new Code(n.nt);
+                c.value = slot(n.left.value);
+                c.left = expression(n.right);
+                return c;
+            }
+            case nd_Prts: {
+                Code c = new Code(n.nt);
+                c.text = unescape(n.left.value);
+                return c;
+            }
+            case nd_Prti:
+            case nd_Prtc: {
+                Code c = new Code(n.nt);
+                c.left = expression(n.left);
+                return c;
+            }
+            default:
+                throw new IllegalArgumentException("Interpreter: not a statement: " + n.nt);
+        }
+    }
+
+    /**
+     * Loads an expression
+     * @param n the expression
+     * @return loaded expression
+     */
+    private Code expression(Parser.Node n) {
+        if (n == null) {
+            throw new IllegalArgumentException("Interpreter: missing expression");
+        }
+        Code c = new Code(n.nt);
+        switch (n.nt) {
+            case nd_Integer:
+                //parsed as a long so a literal too big for an int wraps around like C instead of failing
+                c.value = (int) Long.parseLong(n.value);
+                break;
+            case nd_Ident:
+                c.value = slot(n.value);
+                break;
+            case nd_Not:
+            case nd_Negate:
+                c.left = expression(n.left);
+                break;
+            case nd_Mul: case nd_Div: case nd_Mod: case nd_Add: case nd_Sub:
+            case nd_Lss: case nd_Leq: case nd_Gtr: case nd_Geq: case nd_Eql: case nd_Neq:
+            case nd_And: case nd_Or:
+                c.left = expression(n.left);
+                c.right = expression(n.right);
+                break;
+            default:
+                throw new IllegalArgumentException("Interpreter: not an expression: " + n.nt);
+        }
+        return c;
+    }
+
+    /**
+     * Finds the slot of a variable, giving it the next free one the first time it's seen
+     * @param name name of the variable
+     * @return its slot
+     */
+    private int slot(String name) {
+        Integer slot = this.slots.get(name);
+        if (slot == null) {
+            slot = this.names.size();
+            this.slots.put(name, slot);
+            this.names.add(name);
+        }
+        return slot;
+    }
+
+    /**
+     * Decodes the \n and \\ escapes the Lexer leaves in String values
+     * @param s String value as lexed
+     * @return the text it stands for
+     */
+    static String unescape(String s) {
+        if (s.indexOf('\\') < 0) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char next = s.charAt(++i);
+                sb.append(next == 'n' ? '\n' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs a statement
+     * @param c the statement, may be null
+     * @throws IOException if the output can't be written
+     */
+    private void exec(Code c) throws IOException {
+        if (c == null) {
+            return;
+        }
+        switch (c.kind) {
+            case nd_Sequence:
+                for (Code s : c.body) {
+                    exec(s);
+                }
+                break;
+            case nd_If:
+                if (eval(c.left) != 0) {
+                    exec(c.right);
+                } else {
+                    exec(c.other);
+                }
+                break;
+            case nd_While:
+                while (eval(c.left) != 0) {
+                    exec(c.right);
+                }
+                break;
+            case nd_Assign:
+                this.variables[c.value] = eval(c.left);
+                break;
+            case nd_Prts:
+                this.buffer.append(c.text);
+                break;
+            case nd_Prti:
+                this.buffer.append(eval(c.left));
+                break;
+            case nd_Prtc:
+                this.buffer.append((char) eval(c.left));
+                break;
+            default:
+                throw new IllegalStateException("Interpreter: not a statement: " + c.kind);
+        }
+        if (this.buffer.length() >= FLUSH_AT) {
+            flush();
+        }
+    }
+
+    /**
+     * Works out the value of an expression. Comparisons and logic give 1 for true and 0 for false, like C
+     * @param c the expression
+     * @return its value
+     */
+    private int eval(Code c) {
+        switch (c.kind) {
+            case nd_Integer: return c.value;
+            case nd_Ident: return this.variables[c.value];
+            case nd_Not: return eval(c.left) == 0 ? 1 : 0;
+            case nd_Negate: return -eval(c.left);
+            case nd_Mul: return eval(c.left) * eval(c.right);
+            case nd_Div: return eval(c.left) / eval(c.right);
+            case nd_Mod: return eval(c.left) % eval(c.right);
+            case nd_Add: return eval(c.left) + eval(c.right);
+            case nd_Sub: return eval(c.left) - eval(c.right);
+            case nd_Lss: return eval(c.left) < eval(c.right) ? 1 : 0;
+            case nd_Leq: return eval(c.left) <= eval(c.right) ? 1 : 0;
+            case nd_Gtr: return eval(c.left) > eval(c.right) ? 1 : 0;
+            case nd_Geq: return eval(c.left) >= eval(c.right) ? 1 : 0;
+            case nd_Eql: return eval(c.left) == eval(c.right) ? 1 : 0;
+            case nd_Neq: return eval(c.left) != eval(c.right) ? 1 : 0;
+            case nd_And: return eval(c.left) != 0 && eval(c.right) != 0 ? 1 : 0;
+            case nd_Or: return eval(c.left) != 0 || eval(c.right) != 0 ? 1 : 0;
+            default:
+                throw new IllegalStateException("Interpreter: not an expression: " + c.kind);
+        }
+    }
+
+    /**
+     * Hands all buffered output to the Writer
+     * @throws IOException if the output can't be written
+     */
+    private void flush() throws IOException {
+        this.out.append(this.buffer);
+        this.out.flush();
+        this.buffer.setLength(0);
+    }
+
+    /**
+     * Runnable main method that compiles a source file, simplifies it with the Optimizer and runs it
+     * @param args Command line arguments, the name of the source file, defaults to count.c
+     */
+    public static void main(String[] args) {
+        String filename = args.length > 0 ? args[0] : "count.c";
+        try {
+            Parser.Node ast = Optimizer.optimize(MiniCompiler.compile(MiniCompiler.readSource(filename)));
+            new Interpreter(new OutputStreamWriter(System.out)).load(ast).run();
+        } catch (CompileException e) {
+            CompileException.fail(e.getMessage());
+        } catch (IOException e) {
+            CompileException.fail("Exception: " + e.getMessage());
+        } catch (ArithmeticException e) {
+            CompileException.fail("Runtime error: " + e.getMessage());
+        }
+    }
+}
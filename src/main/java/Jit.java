@@ -0,0 +1,760 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles the AST from the Parser straight to a JVM class and loads it as a hidden class, so HotSpot compiles the
+ * program's loops like any other Java code. Every variable becomes a local of the generated run method, an if or
+ * while becomes real branches, and printing calls into an Output that buffers the text.
+ *
+ * The class file is written by hand at version 49, the last version the JVM verifies without StackMapTable frames,
+ * so the branches need no frames worked out for them.
+ *
+ * HotSpot never compiles a method of more than 8000 bytes of bytecode (HugeMethodLimit, unless DontCompileHugeMethods
+ * is turned off), so a bigger run method would stay in the JVM's interpreter and be slower than the VM. compile
+ * refuses programs past that limit instead, and callers run them on the VM. It refuses the same way a program nested
+ * so deeply that writing it runs out of call stack, since that could never fit in the limit anyway.
+ */
+class Jit {
+    /**
+     * Largest run method the Jit will write, HotSpot's HugeMethodLimit, so the method still gets compiled. This also
+     * keeps every branch well within a 16 bit offset
+     */
+    static final int MAX_CODE = 8000;
+    /** Class file version 49, Java 5 */
+    private static final int CLASS_VERSION = 49;
+    /** Locals of run before the variables start: this, the int[] of variables, and the Output */
+    private static final int FIRST_VARIABLE = 3;
+
+    /**
+     * What the generated class implements
+     */
+    interface Program {
+        /**
+         * Runs the program
+         * @param variables starting value of each variable, indexed by slot, holding the final values afterwards
+         * @param out where the program prints
+         * @throws IOException if the output can't be written
+         */
+        void run(int[] variables, Output out) throws IOException;
+    }
+
+    /**
+     * Buffered output that compiled programs print through
+     */
+    static class Output {
+        /** Output is handed to the Writer once this many chars are buffered */
+        private static final int FLUSH_AT = 8192;
+        /** Where the output goes */
+        private final Writer out;
+        /** Output not yet handed to out */
+        private final StringBuilder buffer = new StringBuilder(FLUSH_AT + 64);
+
+        /**
+         * Constructor for an Output
+         * @param out where the output goes, written in chunks rather than a char at a time
+         */
+        Output(Writer out) {
+            this.out = out;
+        }
+
+        /**
+         * Prints a String
+         * @param s the String
+         * @throws IOException if the output can't be written
+         */
+        void prts(String s) throws IOException {
+            this.buffer.append(s);
+            if (this.buffer.length() >= FLUSH_AT) flush();
+        }
+
+        /**
+         * Prints a number
+         * @param i the number
+         * @throws IOException if the output can't be written
+         */
+        void prti(int i) throws IOException {
+            this.buffer.append(i);
+            if (this.buffer.length() >= FLUSH_AT) flush();
+        }
+
+        /**
+         * Prints a char
+         * @param c code of the char
+         * @throws IOException if the output can't be written
+         */
+        void prtc(int c) throws IOException {
+            this.buffer.append((char) c);
+            if (this.buffer.length() >= FLUSH_AT) flush();
+        }
+
+        /**
+         * Hands all buffered output to the Writer
+         * @throws IOException if the output can't be written
+         */
+        void flush() throws IOException {
+            this.out.append(this.buffer);
+            this.out.flush();
+            this.buffer.setLength(0);
+        }
+    }
+
+    /** The loaded program */
+    private final Program program;
+    /** Variable names, indexed by slot */
+    private final String[] variables;
+    /** Values of the variables after the last run */
+    private int[] values;
+
+    /**
+     * Constructor for a compiled program
+     * @param program instance of the hidden class
+     * @param variables variable names, indexed by slot
+     */
+    private Jit(Program program, String[] variables) {
+        this.program = program;
+        this.variables = variables;
+        this.values = new int[variables.length];
+    }
+
+    /**
+     * Compiles a program to a hidden class
+     * @param root root of the AST, as given by Parser.parse
+     * @return the compiled program, ready to run
+     * @throws IllegalArgumentException if the run method would be over MAX_CODE bytes, or the program is nested too
+     * deeply to write, run it on the VM instead
+     */
+    static Jit compile(Parser.Node root) {
+        ClassWriter writer = new ClassWriter();
+        byte[] bytes = writer.write(root);
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            Program program = (Program) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+            return new Jit(program, writer.variables.toArray(new String[0]));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Jit: could not load the compiled program", e);
+        }
+    }
+
+    /**
+     * Runs the program from the start, with every variable at 0
+     * @param out where the program prints
+     * @throws IOException if the output can't be written
+     */
+    void run(Writer out) throws IOException {
+        Output output = new Output(out);
+        this.values = new int[this.variables.length];
+        try {
+            this.program.run(this.values, output);
+        } finally {
+            output.flush();
+        }
+    }
+
+    /**
+     * Getter for the value of a variable, as the last run left it
+     * @param name name of the variable
+     * @return its value, 0 if the program has no such variable
+     */
+    int getVariable(String name) {
+        for (int slot = 0; slot < this.variables.length; slot++) {
+            if (this.variables[slot].equals(name)) {
+                return this.values[slot];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Writes the class file for one program: a final class implementing Program with a constructor and a run method
+     */
+    private static class ClassWriter {
+        /** Opcodes used, named as in the JVM specification */
+        static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC = 0x12, LDC_W = 0x13,
+                ILOAD = 0x15, ALOAD = 0x19, IALOAD = 0x2e, ISTORE = 0x36, IASTORE = 0x4f,
+                IADD = 0x60, ISUB = 0x64, IMUL = 0x68, IDIV = 0x6c, IREM = 0x70, INEG = 0x74,
+                IFEQ = 0x99, IFNE = 0x9a, IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1, IF_ICMPGE = 0xa2,
+                IF_ICMPGT = 0xa3, IF_ICMPLE = 0xa4, GOTO = 0xa7, RETURN = 0xb1,
+                INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, WIDE = 0xc4;
+
+        /** Constant pool entries written so far, after the unused entry 0 */
+        private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        /** Index of each constant already in the pool, keyed by its tag and contents */
+        private final Map<String, Integer> constants = new HashMap<>();
+        /** Number of constant pool slots used, counting the unused entry 0 */
+        private int poolCount = 1;
+        /** Code of the method being written */
+        private byte[] code = new byte[256];
+        /** Number of bytes of code written so far */
+        private int size;
+        /** Values on the operand stack at the current point of the code */
+        private int stack;
+        /** Most values on the operand stack at any point so far */
+        private int maxStack;
+        /** Slot of each variable name */
+        private final Map<String, Integer> slots = new HashMap<>();
+        /** Variable names, indexed by slot */
+        final List<String> variables = new ArrayList<>();
+
+        /**
+         * Writes the whole class file
+         * @param root root of the AST
+         * @return bytes of the class file
+         */
+        byte[] write(Parser.Node root) {
+            int thisClass = classRef("JitProgram");
+            int superClass = classRef("java/lang/Object");
+            int programInterface = classRef("Jit$Program");
+            int objectInit = methodRef("java/lang/Object", "<init>", "()V");
+
+            //constructor, just calls Object()
+            op(ALOAD, 1); u1(0);
+            invoke(INVOKESPECIAL, objectInit, -1);
+            op(RETURN, 0);
+            byte[] initCode = Arrays.copyOf(this.code, this.size);
+            int initStack = this.maxStack;
+
+            //run: copy the variables into locals, run the program, copy them back. The program is written first
+            //since the variables aren't all known until then, and its branches are relative so it can be moved
+            this.size = 0;
+            this.stack = 0;
+            this.maxStack = 0;
+            try {
+                statement(root);
+            } catch (StackOverflowError e) {
+                throw new IllegalArgumentException("Jit: program nested too deeply to compile");
+            }
+            byte[] programCode = Arrays.copyOf(this.code, this.size);
+            this.size = 0;
+            for (int slot = 0; slot < this.variables.size(); slot++) {
+                op(ALOAD, 1); u1(1);
+                push(slot);
+                op(IALOAD, -1);
+                local(ISTORE, slot);
+            }
+            for (byte b : programCode) {
+                u1(b);
+            }
+            for (int slot = 0; slot < this.variables.size(); slot++) {
+                op(ALOAD, 1); u1(1);
+                push(slot);
+                local(ILOAD, slot);
+                op(IASTORE, -3);
+            }
+            op(RETURN, 0);
+            byte[] runCode = Arrays.copyOf(this.code, this.size);
+            if (runCode.length > MAX_CODE) {
+                throw new IllegalArgumentException("Jit: program too large for HotSpot to compile, " + runCode.length
+                        + " bytes of bytecode, at most " + MAX_CODE);
+            }
+
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                int codeName = utf8("Code");
+                int initName = utf8("<init>"), initType = utf8("()V");
+                int runName = utf8("run"), runType = utf8("([ILJit$Output;)V");
+                out.writeInt(0xCAFEBABE);
+                out.writeShort(0);
+                out.writeShort(CLASS_VERSION);
+                out.writeShort(this.poolCount);
+                out.write(this.pool.toByteArray());
+                out.writeShort(0x0030); //final, super
+                out.writeShort(thisClass);
+                out.writeShort(superClass);
+                out.writeShort(1);
+                out.writeShort(programInterface);
+                out.writeShort(0); //no fields
+                out.writeShort(2);
+                method(out, initName, initType, codeName, initCode, initStack, 1);
+                method(out, runName, runType, codeName, runCode, this.maxStack, FIRST_VARIABLE + this.variables.size());
+                out.writeShort(0); //no class attributes
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Writes one public method with its Code attribute
+         * @param out the class file
+         * @param name pool index of the method name
+         * @param type pool index of the method descriptor
+         * @param codeName pool index of "Code"
+         * @param code the bytecode
+         * @param maxStack most values on the operand stack
+         * @param maxLocals number of locals, this included
+         * @throws IOException never, it writes to memory
+         */
+        private static void method(DataOutputStream out, int name, int type, int codeName, byte[] code, int maxStack, int maxLocals) throws IOException {
+            out.writeShort(0x0001); //public
+            out.writeShort(name);
+            out.writeShort(type);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + code.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0); //no exception table
+            out.writeShort(0); //no code attributes
+        }
+
+        /**
+         * Adds a constant to the pool, unless the same one is already there
+         * @param key tag and contents of the constant, to find it again
+         * @param entry bytes of the entry
+         * @return its index
+         */
+        private int constant(String key, byte[] entry) {
+            Integer index = this.constants.get(key);
+            if (index == null) {
+                index = this.poolCount++;
+                this.constants.put(key, index);
+                this.pool.write(entry, 0, entry.length);
+            }
+            return index;
+        }
+
+        /**
+         * Builds the bytes of a pool entry made of a tag and 16 bit indexes
+         * @param tag the constant's tag
+         * @param refs the indexes
+         * @return bytes of the entry
+         */
+        private static byte[] entry(int tag, int... refs) {
+            byte[] entry = new byte[1 + 2 * refs.length];
+            entry[0] = (byte) tag;
+            for (int i = 0; i < refs.length; i++) {
+                entry[1 + 2 * i] = (byte) (refs[i] >> 8);
+                entry[2 + 2 * i] = (byte) refs[i];
+            }
+            return entry;
+        }
+
+        /**
+         * Adds a CONSTANT_Utf8
+         * @param s the text
+         * @return its index
+         */
+        private int utf8(String s) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeByte(1);
+                out.writeUTF(s);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return constant("Utf8 " + s, bytes.toByteArray());
+        }
+
+        /**
+         * Adds a CONSTANT_Class
+         * @param name internal name of the class
+         * @return its index
+         */
+        private int classRef(String name) {
+            return constant("Class " + name, entry(7, utf8(name)));
+        }
+
+        /**
+         * Adds a CONSTANT_Methodref
+         * @param owner internal name of the class
+         * @param name name of the method
+         * @param type descriptor of the method
+         * @return its index
+         */
+        private int methodRef(String owner, String name, String type) {
+            int nameAndType = constant("NameAndType " + name + type, entry(12, utf8(name), utf8(type)));
+            return constant("Methodref " + owner + "." + name + type, entry(10, classRef(owner), nameAndType));
+        }
+
+        /**
+         * Writes an opcode with no operands, keeping track of how it changes the stack
+         * @param opcode the opcode
+         * @param stackChange values it pushes minus values it pops
+         */
+        private void op(int opcode, int stackChange) {
+            u1(opcode);
+            this.stack += stackChange;
+            this.maxStack = Math.max(this.maxStack, this.stack);
+        }
+
+        /**
+         * Writes one byte of code
+         * @param value the byte, only the low 8 bits are kept
+         */
+        private void u1(int value) {
+            if (this.size == this.code.length) {
+                this.code = Arrays.copyOf(this.code, this.size * 2);
+            }
+            this.code[this.size++] = (byte) value;
+        }
+
+        /**
+         * Writes a 16 bit operand
+         * @param value the operand
+         */
+        private void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        /**
+         * Writes an invoke instruction
+         * @param opcode INVOKEVIRTUAL or INVOKESPECIAL
+         * @param method pool index of the method
+         * @param stackChange values it pushes minus values it pops, receiver included
+         */
+        private void invoke(int opcode, int method, int stackChange) {
+            op(opcode, stackChange);
+            u2(method);
+        }
+
+        /**
+         * Writes an iload or istore of a variable, using wide when its local is past 255
+         * @param opcode ILOAD or ISTORE
+         * @param slot slot of the variable
+         */
+        private void local(int opcode, int slot) {
+            int index = FIRST_VARIABLE + slot;
+            int change = opcode == ILOAD ? 1 : -1;
+            if (index < 256) {
+                op(opcode, change);
+                u1(index);
+            } else {
+                u1(WIDE);
+                op(opcode, change);
+                u2(index);
+            }
+        }
+
+        /**
+         * Writes the shortest instruction pushing a constant
+         * @param value the constant
+         */
+        private void push(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value, 1);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH, 1);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH, 1);
+                u2(value);
+            } else {
+                int index = constant("Integer " + value, new byte[]{3, (byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value});
+                ldc(index);
+            }
+        }
+
+        /**
+         * Writes an ldc of a pool entry
+         * @param index pool index of the constant
+         */
+        private void ldc(int index) {
+            if (index < 256) {
+                op(LDC, 1);
+                u1(index);
+            } else {
+                op(LDC_W, 1);
+                u2(index);
+            }
+        }
+
+        /**
+         * Writes a branch whose target isn't known yet
+         * @param opcode the branch opcode
+         * @param stackChange values it pops, as a negative number
+         * @return where the branch starts, to pass to patch once the target is known
+         */
+        private int branch(int opcode, int stackChange) {
+            int at = this.size;
+            op(opcode, stackChange);
+            u2(0);
+            return at;
+        }
+
+        /**
+         * Points earlier branches at the current end of the code
+         * @param holes where the branches start, as given by branch
+         */
+        private void patch(List<Integer> holes) {
+            for (int at : holes) {
+                patch(at);
+            }
+            holes.clear();
+        }
+
+        /**
+         * Points an earlier branch at the current end of the code
+         * @param at where the branch starts, as given by branch
+         */
+        private void patch(int at) {
+            int offset = this.size - at;
+            if (offset > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Jit: program too large to compile to one method");
+            }
+            this.code[at + 1] = (byte) (offset >> 8);
+            this.code[at + 2] = (byte) offset;
+        }
+
+        /**
+         * Writes a goto back to an earlier point in the code
+         * @param target where to go to
+         */
+        private void gotoBack(int target) {
+            int at = this.size;
+            op(GOTO, 0);
+            u2(target - at);
+        }
+
+        /**
+         * Finds the slot of a variable, giving it the next free one the first time it's seen
+         * @param name name of the variable
+         * @return its slot
+         */
+        private int slot(String name) {
+            Integer slot = this.slots.get(name);
+            if (slot == null) {
+                slot = this.variables.size();
+                this.slots.put(name, slot);
+                this.variables.add(name);
+            }
+            return slot;
+        }
+
+        /**
+         * Writes code for a statement
+         * @param n the statement, may be null
+         */
+        private void statement(Parser.Node n) {
+            if (n == null) {
+                return;
+            }
+            List<Integer> holes = new ArrayList<>();
+            switch (n.nt) {
+                case nd_Sequence: {
+                    //walk the chain with a stack, since parse builds one Sequence per top-level statement
+                    ArrayDeque<Parser.Node> pending = new ArrayDeque<>();
+                    pending.push(n);
+                    while (!pending.isEmpty()) {
+                        Parser.Node s = pending.pop();
+                        if (s.nt == Parser.NodeType.nd_Sequence) {
+                            if (s.right != null) pending.push(s.right);
+                            if (s.left != null) pending.push(s.left);
+                        } else {
+                            statement(s);
+                        }
+                    }
+                    break;
+                }
+                case nd_If: {
+                    jumpIfFalse(n.left, holes);
+                    statement(n.right.left);
+                    if (n.right.right == null) {
+                        patch(holes);
+                    } else {
+                        int toEnd = branch(GOTO, 0);
+                        patch(holes);
+                        statement(n.right.right);
+                        patch(toEnd);
+                    }
+                    break;
+                }
+                case nd_While: {
+                    int top = this.size;
+                    jumpIfFalse(n.left, holes);
+                    statement(n.right);
+                    gotoBack(top);
+                    patch(holes);
+                    break;
+                }
+                case nd_Assign:
+                    expression(n.right);
+                    local(ISTORE, slot(n.left.value));
+                    break;
+                case nd_Prts:
+                    op(ALOAD, 1); u1(2);
+                    ldc(constant("String " + n.left.value, entry(8, utf8(Interpreter.unescape(n.left.value)))));
+                    invoke(INVOKEVIRTUAL, methodRef("Jit$Output", "prts", "(Ljava/lang/String;)V"), -2);
+                    break;
+                case nd_Prti:
+                case nd_Prtc:
+                    op(ALOAD, 1); u1(2);
+                    expression(n.left);
+                    invoke(INVOKEVIRTUAL, methodRef("Jit$Output", n.nt == Parser.NodeType.nd_Prti ? "prti" : "prtc", "(I)V"), -2);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Jit: not a statement: " + n.nt);
+            }
+        }
+
+        /**
+         * Gets the if_icmp opcode that branches when a comparison is true
+         * @param nt type of the comparison node
+         * @return the opcode, or 0 if the node isn't a comparison
+         */
+        private static int compare(Parser.NodeType nt) {
+            switch (nt) {
+                case nd_Lss: return IF_ICMPLT;
+                case nd_Leq: return IF_ICMPLE;
+                case nd_Gtr: return IF_ICMPGT;
+                case nd_Geq: return IF_ICMPGE;
+                case nd_Eql: return IF_ICMPEQ;
+                case nd_Neq: return IF_ICMPNE;
+                default: return 0;
+            }
+        }
+
+        /**
+         * Gets the if_icmp opcode that branches when the comparison the given one branches on is false
+         * @param opcode an if_icmp opcode
+         * @return the opposite opcode
+         */
+        private static int negate(int opcode) {
+            switch (opcode) {
+                case IF_ICMPLT: return IF_ICMPGE;
+                case IF_ICMPGE: return IF_ICMPLT;
+                case IF_ICMPGT: return IF_ICMPLE;
+                case IF_ICMPLE: return IF_ICMPGT;
+                case IF_ICMPEQ: return IF_ICMPNE;
+                default: return IF_ICMPEQ;
+            }
+        }
+
+        /**
+         * Writes code that branches away when a condition is false, and falls through when it is true
+         * @param cond the condition
+         * @param holes where the branches are added, for the caller to patch to the false target
+         */
+        private void jumpIfFalse(Parser.Node cond, List<Integer> holes) {
+            int cmp = cond == null ? 0 : compare(cond.nt);
+            if (cmp != 0) {
+                expression(cond.left);
+                expression(cond.right);
+                holes.add(branch(negate(cmp), -2));
+            } else if (cond != null && cond.nt == Parser.NodeType.nd_Not) {
+                jumpIfTrue(cond.left, holes);
+            } else if (cond != null && cond.nt == Parser.NodeType.nd_And) {
+                jumpIfFalse(cond.left, holes);
+                jumpIfFalse(cond.right, holes);
+            } else if (cond != null && cond.nt == Parser.NodeType.nd_Or) {
+                List<Integer> isTrue = new ArrayList<>();
+                jumpIfTrue(cond.left, isTrue);
+                jumpIfFalse(cond.right, holes);
+                patch(isTrue);
+            } else {
+                expression(cond);
+                holes.add(branch(IFEQ, -1));
+            }
+        }
+
+        /**
+         * Writes code that branches away when a condition is true, and falls through when it is false
+         * @param cond the condition
+         * @param holes where the branches are added, for the caller to patch to the true target
+         */
+        private void jumpIfTrue(Parser.Node cond, List<Integer> holes) {
+            int cmp = cond == null ? 0 : compare(cond.nt);
+            if (cmp != 0) {
+                expression(cond.left);
+                expression(cond.right);
+                holes.add(branch(cmp, -2));
+            } else if (cond != null && cond.nt == Parser.NodeType.nd_Not) {
+                jumpIfFalse(cond.left, holes);
+            } else if (cond != null && cond.nt == Parser.NodeType.nd_And) {
+                List<Integer> isFalse = new ArrayList<>();
+                jumpIfFalse(cond.left, isFalse);
+                jumpIfTrue(cond.right, holes);
+                patch(isFalse);
+            } else if (cond != null && cond.nt == Parser.NodeType.nd_Or) {
+                jumpIfTrue(cond.left, holes);
+                jumpIfTrue(cond.right, holes);
+            } else {
+                expression(cond);
+                holes.add(branch(IFNE, -1));
+            }
+        }
+
+        /**
+         * Writes code that leaves the value of an expression on the stack
+         * @param n the expression
+         */
+        private void expression(Parser.Node n) {
+            if (n == null) {
+                throw new IllegalArgumentException("Jit: missing expression");
+            }
+            switch (n.nt) {
+                case nd_Integer:
+                    //parsed as a long so a literal too big for an int wraps around like C instead of failing
+                    push((int) Long.parseLong(n.value));
+                    return;
+                case nd_Ident:
+                    local(ILOAD, slot(n.value));
+                    return;
+                case nd_Negate:
+                    expression(n.left);
+                    op(INEG, 0);
+                    return;
+                case nd_Mul: case nd_Div: case nd_Mod: case nd_Add: case nd_Sub:
+                    expression(n.left);
+                    expression(n.right);
+                    op(n.nt == Parser.NodeType.nd_Mul ? IMUL : n.nt == Parser.NodeType.nd_Div ? IDIV
+                            : n.nt == Parser.NodeType.nd_Mod ? IREM : n.nt == Parser.NodeType.nd_Add ? IADD : ISUB, -1);
+                    return;
+                default:
+                    break;
+            }
+            //a condition used as a value, 1 when true and 0 when false
+            List<Integer> holes = new ArrayList<>();
+            jumpIfFalse(n, holes);
+            push(1);
+            int toEnd = branch(GOTO, 0);
+            patch(holes);
+            this.stack--;
+            push(0);
+            patch(toEnd);
+        }
+    }
+
+    /**
+     * Runnable main method that compiles a source file in src/main/resources, simplified by the Optimizer, to a hidden
+     * class and runs it, falling back to the VM for a program too big for HotSpot to compile or nested too deeply to
+     * write
+     * @param args Command line arguments, the name of the source file, defaults to count.c
+     */
+    public static void main(String[] args) {
+        String filename = args.length > 0 ? args[0] : "count.c";
+        try {
+            Parser.Node ast = Optimizer.optimize(MiniCompiler.compile(MiniCompiler.readSource(filename)));
+            Writer out = new OutputStreamWriter(System.out);
+            try {
+                compile(ast).run(out);
+            } catch (IllegalArgumentException e) {
+                new VM(out).run(CodeGen.generate(ast));
+            }
+        } catch (CompileException e) {
+            CompileException.fail(e.getMessage());
+        } catch (IOException e) {
+            CompileException.fail("Exception: " + e.getMessage());
+        } catch (ArithmeticException e) {
+            CompileException.fail("Runtime error: " + e.getMessage());
+        }
+    }
+}
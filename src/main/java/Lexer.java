@@ -1,17 +1,17 @@
 //Rory Hackney
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
 /**
  * Represents the lexer portion of the compiler, which takes in a text file / string and returns its tokens
  */
-public class Lexer {
+public class Lexer implements TokenStream {
     /** Line number of the current char for display */
     private int line;
     /** Position within the line of the current char for display */
@@ -20,15 +20,54 @@ public class Lexer {
     private int position;
     /** Value of the current character being evaluated */
     private char chr;
-    /** String representation of the file being processed, as a single String containing \n to separate lines in the file*/
-    private String s;
+    /** Text of the file being processed, as a single sequence of chars containing \n to separate lines in the file.
+     * Usually a String, or a MappedSource when lexing straight from a memory mapped file */
+    private CharSequence s;
     /** The type of the token before the current character */
     private TokenType prevToken;
+    /** Ring buffer of Tokens that have been lexed by peek but not yet handed out by next */
+    private final Token[] lookahead = new Token[LOOKAHEAD];
+    /** Index in lookahead of the oldest buffered Token */
+    private int head;
+    /** Number of Tokens currently buffered in lookahead */
+    private int buffered;
 
+    /** Line of the token scan last found */
+    private int tokLine;
+    /** Position within the line of the token scan last found */
+    private int tokPos;
+    /** Index in s of the start of the text of the token scan last found */
+    private int tokStart;
+    /** Index in s just past the end of the text of the token scan last found */
+    private int tokEnd;
+    /** Finds the ends of whitespace, comments and String literals in s, a whole run at a time */
+    private CharScanner scanner;
+    /** Interned identifier names and String literal values, may be shared between Lexers */
+    private SymbolTable symbols;
+    /** Where errors are reported, may be shared with the Parser reading this Lexer */
+    private Diagnostics diagnostics;
+
+    /** Char class of anything that isn't whitespace, a digit or a letter */
+    static final byte OTHER = 0;
+    /** Char class of whitespace */
+    static final byte SPACE = 1;
+    /** Char class of digits */
+    static final byte DIGIT = 2;
+    /** Char class of letters */
+    static final byte LETTER = 3;
     /**
-     * Special keywords in the language, including if, else, while, print, putc
+     * Char class of every ASCII char, so the hot loops can classify a char with one array read
      */
-    Map<String, TokenType> keywords = new HashMap<>();
+    static final byte[] CHAR_CLASS = new byte[128];
+
+    static {
+        //built from the Character methods so the table always agrees with them
+        for (char c = 0; c < CHAR_CLASS.length; c++) {
+            if (Character.isWhitespace(c)) CHAR_CLASS[c] = SPACE;
+            else if (Character.isDigit(c)) CHAR_CLASS[c] = DIGIT;
+            else if (Character.isLetter(c)) CHAR_CLASS[c] = LETTER;
+        }
+    }
 
     /**
      * Represents a lexeme with a particular token type, value, line and position (location) in the source file
@@ -42,6 +81,8 @@ public class Lexer {
         public int line;
         /** Position within the line this Token starts on*/
         public int pos;
+        /** Id of the value in the Lexer's SymbolTable for Identifier and String Tokens, -1 for all others*/
+        public int symbol;
 
         /**
          * Constructor for Token objects
@@ -51,7 +92,19 @@ public class Lexer {
          * @param pos the position within the line this Token starts on
          */
         Token(TokenType token, String value, int line, int pos) {
-            this.tokentype = token; this.value = value; this.line = line; this.pos = pos;
+            this(token, value, line, pos, -1);
+        }
+
+        /**
+         * Constructor for Token objects whose value has been interned
+         * @param token category of token, one of TokenType enum
+         * @param value the value of the Token, the interned instance from the SymbolTable
+         * @param line the line of the file this Token is on
+         * @param pos the position within the line this Token starts on
+         * @param symbol id of the value in the SymbolTable
+         */
+        Token(TokenType token, String value, int line, int pos, int symbol) {
+            this.tokentype = token; this.value = value; this.line = line; this.pos = pos; this.symbol = symbol;
         }
 
         /**
@@ -60,207 +113,384 @@ public class Lexer {
          */
         @Override
         public String toString() {
-            String result = String.format("%5d  %5d %-15s", this.line, this.pos, this.tokentype);
+            StringBuilder sb = new StringBuilder(32);
+            writeTo(OutputSink.of(sb));
+            return sb.toString();
+        }
+
+        /**
+         * Writes this Token the way toString shows it, padded like String.format("%5d  %5d %-15s") and then the value,
+         * without building any Strings along the way
+         * @param out where to write
+         */
+        void writeTo(OutputSink out) {
+            out.padLeft(this.line, 5).append("  ").padLeft(this.pos, 5).append(' ').padRight(this.tokentype.name(), 15);
             switch (this.tokentype) {
                 case Integer:
-                    result += String.format("  %4s", value);
+                    out.append("  ").padLeft(this.value, 4);
                     break;
                 case Identifier:
-                    result += String.format(" %s", value);
+                    out.append(' ').append(this.value);
                     break;
                 case String:
-                    result += String.format(" \"%s\"", value);
+                    out.append(" \"").append(this.value).append('"');
                     break;
             }
-            return result;
         }
     }
 
     /**
-     * Represents all possible token types
-     */
-    static enum TokenType {
-        End_of_input, Op_multiply,  Op_divide, Op_mod, Op_add, Op_subtract,
-        Op_negate, Op_not, Op_less, Op_lessequal, Op_greater, Op_greaterequal,
-        Op_equal, Op_notequal, Op_assign, Op_and, Op_or, Keyword_if,
-        Keyword_else, Keyword_while, Keyword_print, Keyword_putc, LeftParen, RightParen,
-        LeftBrace, RightBrace, Semicolon, Comma, Identifier, Integer, String
-    }
-
-    /**
-     * Displays an error message with bug location and exits program
+     * Reports an error with bug location to this Lexers Diagnostics, which throws a CompileException to stop lexing
+     * once there are too many, otherwise lexing carries on past the bad input
      * @param line the line number causing the error
      * @param pos the position within the line causing the error
      * @param msg a message explaining the error
      */
-    static void error(int line, int pos, String msg) {
-        if (line > 0 && pos > 0) {
-            System.out.printf("%s in line %d, pos %d\n", msg, line, pos);
-        } else {
-            System.out.println(msg);
-        }
-        System.exit(1);
+    void error(int line, int pos, String msg) {
+        this.diagnostics.error(line, pos, msg);
     }
 
     /**
      * Constructor of Lexer object which collects all the Tokens in the source String
-     * @param source String to perform lexer operation on
+     * @param source String, or any other sequence of chars, to perform lexer operation on
+     */
+    Lexer(CharSequence source) {
+        this(source, new SymbolTable(), new Diagnostics());
+    }
+
+    /**
+     * Constructor of Lexer object that interns its identifiers and String literals into an existing SymbolTable,
+     * so several sources can share one set of ids
+     * @param source String, or any other sequence of chars, to perform lexer operation on
+     * @param symbols SymbolTable to intern identifiers and String literals into
+     */
+    Lexer(CharSequence source, SymbolTable symbols) {
+        this(source, symbols, new Diagnostics());
+    }
+
+    /**
+     * Constructor of Lexer object that reports its errors to the given Diagnostics instead of stopping at the first one
+     * @param source String, or any other sequence of chars, to perform lexer operation on
+     * @param symbols SymbolTable to intern identifiers and String literals into
+     * @param diagnostics where to report errors
+     */
+    Lexer(CharSequence source, SymbolTable symbols, Diagnostics diagnostics) {
+        reset(source, symbols, diagnostics);
+    }
+
+    /**
+     * Constructor of Lexer object that searches its source with a CharScanner made already, so Lexers working on
+     * parts of the same large source can share one
+     * @param scanner CharScanner over the source to perform lexer operation on
+     * @param symbols SymbolTable to intern identifiers and String literals into
+     * @param diagnostics where to report errors
+     */
+    Lexer(CharScanner scanner, SymbolTable symbols, Diagnostics diagnostics) {
+        reset(scanner, symbols, diagnostics);
+    }
+
+    /**
+     * Points this Lexer at a new source, so one Lexer can be reused for many compiles instead of building a new one
+     * each time. The SymbolTable and Diagnostics are kept, callers clear them if the new source shouldn't share them
+     * @param source String, or any other sequence of chars, to perform lexer operation on
      */
-    Lexer(String source) {
+    void reset(CharSequence source) {
+        reset(source, this.symbols, this.diagnostics);
+    }
+
+    /**
+     * Points this Lexer at a new source, with the given SymbolTable and Diagnostics
+     * @param source String, or any other sequence of chars, to perform lexer operation on
+     * @param symbols SymbolTable to intern identifiers and String literals into
+     * @param diagnostics where to report errors
+     */
+    void reset(CharSequence source, SymbolTable symbols, Diagnostics diagnostics) {
+        reset(CharScanner.of(source), symbols, diagnostics);
+    }
+
+    /**
+     * Points this Lexer at the source of a CharScanner, with the given SymbolTable and Diagnostics
+     * @param scanner CharScanner over the source to perform lexer operation on
+     * @param symbols SymbolTable to intern identifiers and String literals into
+     * @param diagnostics where to report errors
+     */
+    void reset(CharScanner scanner, SymbolTable symbols, Diagnostics diagnostics) {
+        CharSequence source = scanner.s;
+        this.scanner = scanner;
         this.line = 1;
         this.pos = -1;
         this.position = -1;
         this.s = source;
-        this.chr = this.s.charAt(0);
-        this.keywords.put("if", TokenType.Keyword_if);
-        this.keywords.put("else", TokenType.Keyword_else);
-        this.keywords.put("print", TokenType.Keyword_print);
-        this.keywords.put("putc", TokenType.Keyword_putc);
-        this.keywords.put("while", TokenType.Keyword_while);
+        this.chr = this.s.length() == 0 ? '\u0000' : this.s.charAt(0);
+        this.prevToken = null;
+        Arrays.fill(this.lookahead, null);
+        this.head = 0;
+        this.buffered = 0;
+        this.symbols = symbols;
+        this.diagnostics = diagnostics;
     }
 
     /**
-     * Checks if the following char matches expected char, and returns the appropriate Token in each case
+     * Moves this Lexer to the start of a token in the middle of its source, in the state it would be in after lexing
+     * everything before it, so lexing can pick up again there after an edit without starting over
+     * @param start index in the source of the first char of the token, quote included for a String
+     * @param line line the token is on
+     * @param pos position within the line the token starts on
+     * @param prevToken type of the token before it, which decides if a - is a subtraction, null at the start
+     */
+    void resume(int start, int line, int pos, TokenType prevToken) {
+        this.line = line;
+        this.pos = pos - 1;
+        this.position = start - 1;
+        this.chr = start > 0 ? this.s.charAt(start - 1) : '\u0000';
+        this.prevToken = prevToken;
+        Arrays.fill(this.lookahead, null);
+        this.head = 0;
+        this.buffered = 0;
+    }
+
+    /**
+     * Getter for the SymbolTable the ids in this Lexers Tokens refer to
+     * @return SymbolTable of identifiers and String literals
+     */
+    @Override
+    public SymbolTable getSymbols() {
+        return this.symbols;
+    }
+
+    /**
+     * Creates a Lexer that reads an ASCII source file through a memory mapping instead of loading it into a String
+     * @param file path of the source file
+     * @return Lexer over the mapped file
+     * @throws IOException if the file can't be mapped
+     */
+    static Lexer mapped(Path file) throws IOException {
+        return new Lexer(MappedSource.map(file));
+    }
+
+    /**
+     * Checks if the following char matches expected char, and returns the appropriate token type in each case
      * @param expect expected next char
-     * @param ifyes Token to return if next char matches expect
-     * @param ifno Token to return if next char doesn't match expect
+     * @param ifyes type to return if next char matches expect
+     * @param ifno type to return if next char doesn't match expect
      * @param line current line number
      * @param pos current position in the line
-     * @return appropriate Token based on expected char
+     * @return appropriate token type based on expected char
      */
-    Token follow(char expect, TokenType ifyes, TokenType ifno, int line, int pos) {
-        if (this.s.charAt(this.position + 1) == expect) {
+    TokenType follow(char expect, TokenType ifyes, TokenType ifno, int line, int pos) {
+        if (peekChar() == expect) {
             getNextChar();
-            return new Token(ifyes, "", line, pos);
+            return ifyes;
         }
         if (ifno == TokenType.End_of_input) {
             error(line, pos, String.format("follow: unrecognized character: (%d) '%c'", (int)this.chr, this.chr));
         }
-        return new Token(ifno, "", line, pos);
+        return ifno;
 
     }
     //So the idea is, you process the char and return its int representation
     //Maybe the Parser is what identifies it as a char, not the Lexer?
 
     /**
-     * Processes a char literal, returning Integer Token with ASCII value or throwing error for malformed chars
+     * Processes a char literal, returning Integer type or reporting an error for malformed chars.
+     * The whole literal, quotes included, is recorded as the token text, and decoded to its ASCII value by tokenValue
      * @param line line the char literal is on
      * @param pos position within the line the char literal starts on
-     * @return Integer Token with ASCII value
+     * @return Integer type
      */
-    Token char_lit(int line, int pos) { // handle character literals
+    TokenType char_lit(int line, int pos) { // handle character literals
+        this.tokStart = this.position;
         char c = getNextChar(); // skip opening quote - this is the char
         if(c == '\'') {
             error(line, pos, "Empty char literal");
+            this.tokEnd = this.position + 1;
+            return TokenType.Integer;
         }
         // a char_lit should be either '?' or '\n' or '\\'
         char d = getNextChar();
-        Token ret = null;
         //if d = ', then c
         if (d == '\'') {
-            ret = new Token(TokenType.Integer, "" + (int)c, line, pos);
+            this.tokEnd = this.position + 1;
+            return TokenType.Integer;
         }
         //else if c = \
         else if (c == '\\') {
-            //if d = n, \n
-            if (d == 'n') ret = new Token(TokenType.Integer, "" + (int)'\n', line, pos);
-            //if d = \, \\
-            else if (d == '\\') ret = new Token(TokenType.Integer, "" + (int)('\\'), line, pos);
-            else error(line, pos, "invalid escape character");
+            //must be \n or \\
+            if (d != 'n' && d != '\\') error(line, pos, "invalid escape character");
             //skip past closing quote, if it wasn't a quote, invalid char literal
             if (getNextChar() != '\'') error(line, pos, "invalid char literal - no closing quote");
         }
-        //if neither in form '?' or '\n' or '\\', invalid char lit
-        else error(line, pos, "invalid char literal");
-        return ret;
+        //if neither in form '?' or '\n' or '\\', invalid char lit, skip to its closing quote to carry on after it
+        else {
+            error(line, pos, "invalid char literal");
+            while (this.chr != '\'' && this.chr != '\n' && this.chr != '\u0000') {
+                getNextChar();
+            }
+        }
+        //a literal cut off by the end of the file stops there
+        this.tokEnd = Math.min(this.position + 1, this.s.length());
+        return TokenType.Integer;
     }
 
     /**
-     * Processes a String literal until closing " and returns a String Token or error if not closed
+     * Processes a String literal until closing " and returns String type or error if not closed.
+     * The text between the quotes is recorded as the token text
      * @param start char at the start of the String literal, should be "
      * @param line line number the String is on
      * @param pos position within the line the String starts on
-     * @return String Token containing the value of the String
-     */
-    Token string_lit(char start, int line, int pos) { // handle string literals
-        StringBuilder result = new StringBuilder();
-        // code here
-        start = getNextChar();
-        while (start != '"') {
-            if (start == '\u0000') {
-                error(this.line, this.pos, "Reached end of file without closing String");
-                return new Token(TokenType.End_of_input, result.toString(), line, pos);
-            }
-            result.append(start);
-            start = getNextChar();
+     * @return String type
+     */
+    TokenType string_lit(char start, int line, int pos) { // handle string literals
+        this.tokStart = this.position + 1;
+        int close = this.scanner.find('"', this.position + 1, this.s.length());
+        advanceTo(close < 0 ? this.s.length() : close);
+        if (this.chr != '"') {
+            error(this.line, this.pos, "Reached end of file without closing String");
+            this.tokEnd = this.position;
+            return TokenType.End_of_input;
         }
-        return new Token(TokenType.String, result.toString(), line, pos);
+        this.tokEnd = this.position;
+        return TokenType.String;
     }
 
     /**
-     * Processes a token beginning with / and either skips comment or returns Division Operator Token
+     * Processes a token beginning with / and either skips comment or returns Division Operator type
      * @param line line number the token is on
      * @param pos position within the line the token is on
-     * @return Division Operator Token, or if a comment, skips past and returns the following Token instead
+     * @return Division Operator type, or if a comment, skips past and returns the type of the following token instead
      */
-    Token div_or_comment(int line, int pos) { // handle division or comments
+    TokenType div_or_comment(int line, int pos) { // handle division or comments
         //if // aka the next symbol is also /, COMMENT - skip to the next line
-        char nextSymbol = this.s.charAt(this.position + 1);
+        char nextSymbol = peekChar();
         if (nextSymbol == '/') {
             getNextChar(); //skip it
-            while (this.line == line) {
-                //if the next char is end of file, return end of input token, otherwise continue
-                if (getNextChar() == '\u0000') return new Token(TokenType.End_of_input, "", this.line, this.pos);
+            int end = this.scanner.find('\n', this.position + 1, this.s.length());
+            advanceTo(end < 0 ? this.s.length() : end);
+            //if the comment runs to the end of file, return end of input token, otherwise carry on after it
+            if (this.chr == '\u0000') {
+                this.tokLine = this.line;
+                this.tokPos = this.pos;
+                this.tokStart = this.position;
+                this.tokEnd = this.position;
+                return TokenType.End_of_input;
             }
-            return getToken();
+            return scan();
             //if /* aka the next symbol is * COMMENT - skip past comments
         } else if (nextSymbol == '*') {
             getNextChar(); // skip it
-            //while the next symbol is not *, go to the next character. If the next char is not /, go past and keep going
-            boolean done = false;
-            while (! done) {
-                nextSymbol = getNextChar();
-                if (nextSymbol == '*' && this.s.charAt(this.position + 1) == '/') {
-                    getNextChar();
-                    done = true;
-                }
+            //jump to the * of the closing */, or to the end of file if there isn't one
+            int end = this.scanner.commentEnd(this.position + 1, this.s.length());
+            advanceTo(end < 0 ? this.s.length() : end);
+            if (this.chr == '\u0000') {
+                error(line, pos, "Reached end of file without closing comment");
+                this.tokLine = this.line;
+                this.tokPos = this.pos;
+                this.tokStart = this.position;
+                this.tokEnd = this.position;
+                return TokenType.End_of_input;
             }
-            return getToken();
+            getNextChar(); // skip the closing /
+            return scan();
         }
         //if not comment, must be division operator
-        return new Token(TokenType.Op_divide, null, line, pos);
+        return TokenType.Op_divide;
+    }
+
+    /**
+     * Returns the char class of a char, from the table for ASCII and from the Character methods for anything else
+     * @param c char to classify
+     * @return one of OTHER, SPACE, DIGIT, LETTER
+     */
+    static byte charClass(char c) {
+        if (c < CHAR_CLASS.length) {
+            return CHAR_CLASS[c];
+        }
+        if (Character.isWhitespace(c)) return SPACE;
+        if (Character.isDigit(c)) return DIGIT;
+        if (Character.isLetter(c)) return LETTER;
+        return OTHER;
     }
 
     /**
-     * Processes token and returns Identifier, Integer, or Keyword Token as appropriate
-     * @param line line number this Token is on
-     * @param pos position within the line this Token starts on
-     * @return Identifier, Integer, or Keyword Token as appropriate
+     * Processes token and returns Identifier, Integer, or Keyword type as appropriate, recording its text
+     * @param line line number this token is on
+     * @param pos position within the line this token starts on
+     * @return Identifier, Integer, or Keyword type as appropriate
      */
-    Token identifier_or_integer(int line, int pos) { // handle identifiers and integers
-        StringBuilder text = new StringBuilder();
-        text.append(chr);
+    TokenType identifier_or_integer(int line, int pos) { // handle identifiers and integers
+        this.tokStart = this.position;
+        //the first char decides between a number and a word, a number only stays one if every char is a digit
+        byte first = charClass(this.chr);
+        boolean allDigits = first == DIGIT;
         int posi = this.position + 1;
-        //while in valid index range and the following letter is a letter or a number, append it
-        while (posi < this.s.length() && Character.isLetterOrDigit(this.s.charAt(posi))) {
-            text.append(getNextChar());
+        int length = this.s.length();
+        byte cls;
+        //while in valid index range and the following letter is a letter or a number, move past it
+        while (posi < length && ((cls = charClass(this.s.charAt(posi))) == DIGIT || cls == LETTER)) {
+            allDigits &= cls == DIGIT;
             posi++;
         }
-        //if not, done building the token
-        String value = text.toString();
+        //words never contain a newline, so jump straight to the last char instead of calling getNextChar for each one
+        int skipped = posi - 1 - this.position;
+        this.position += skipped;
+        this.pos += skipped;
+        this.chr = this.s.charAt(this.position);
+        this.tokEnd = posi;
 
-        //if it's a keyword, return that keyword as a token
-        TokenType lookup = keywords.get(value);
-        if (lookup != null) {
-            return new Token(lookup, "", line, pos);
+        //if it's a keyword, return that keyword
+        if (first == LETTER) {
+            TokenType lookup = keyword(this.tokStart, this.tokEnd);
+            if (lookup != null) {
+                return lookup;
+            }
         }
-        //if it's an integer, return Integer Token
-        if(value.matches("^-?\\d+$")) {
-            return new Token(TokenType.Integer, value, line, pos);
+        //if it's an integer, return Integer
+        if (allDigits) {
+            return TokenType.Integer;
         }
 
-        //if neither an integer nor a keyword, return an Identifier Token
-        return new Token(TokenType.Identifier, "\t" + value, line, pos);
+        //if neither an integer nor a keyword, return an Identifier
+        return TokenType.Identifier;
+    }
+
+    /**
+     * Looks up the text between start and end in the keywords, without building a String for it.
+     * The length and first char pick out the only keyword it could be, so at most one keyword is compared
+     * @param start index in s of the first char of the word
+     * @param end index in s just past the last char of the word
+     * @return the keyword's type, or null if the word isn't a keyword
+     */
+    TokenType keyword(int start, int end) {
+        char first = this.s.charAt(start);
+        switch (end - start) {
+            case 2:
+                if (first == 'i' && restMatches("if", start)) return TokenType.Keyword_if;
+                break;
+            case 4:
+                if (first == 'e' && restMatches("else", start)) return TokenType.Keyword_else;
+                if (first == 'p' && restMatches("putc", start)) return TokenType.Keyword_putc;
+                break;
+            case 5:
+                if (first == 'p' && restMatches("print", start)) return TokenType.Keyword_print;
+                if (first == 'w' && restMatches("while", start)) return TokenType.Keyword_while;
+                break;
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the chars of s from start match a keyword, after the first char, which is already known to match
+     * @param word keyword to compare against
+     * @param start index in s of the first char of the word
+     * @return true if every char matches
+     */
+    private boolean restMatches(String word, int start) {
+        for (int i = 1; i < word.length(); i++) {
+            if (this.s.charAt(start + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -268,38 +498,60 @@ public class Lexer {
      * @return the next Token
      */
     Token getToken() {
+        TokenType type = scan();
+        if (type == TokenType.Identifier || type == TokenType.String) {
+            int id = this.symbols.intern(this.s, this.tokStart, this.tokEnd);
+            return new Token(type, this.symbols.name(id), this.tokLine, this.tokPos, id);
+        }
+        return new Token(type, tokenValue(this.s, type, this.tokStart, this.tokEnd), this.tokLine, this.tokPos);
+    }
+
+    /**
+     * Lexes the next token without creating any objects for it. Its type is returned, and its line, position and the
+     * bounds of its text in s are left in tokLine, tokPos, tokStart and tokEnd
+     * @return type of the next token
+     */
+    TokenType scan() {
         int line, pos;
         getNextChar();
-        while (Character.isWhitespace(this.chr)) {
+        if (charClass(this.chr) == SPACE) {
             getNextChar();
+            if (charClass(this.chr) == SPACE) {
+                //a longer run, such as the indent of the next line, is jumped over in one go
+                advanceTo(this.scanner.skipSpace(this.position + 1, this.s.length()));
+            }
         }
         line = this.line;
         pos = this.pos;
+        this.tokLine = line;
+        this.tokPos = pos;
+        this.tokStart = this.position;
+        this.tokEnd = this.position;
 
         // switch statement on character for all forms of tokens with return to follow.... one example left for you
-        Token result = switch (this.chr) {
+        TokenType result = switch (this.chr) {
             case '\u0000':
-                yield new Token(TokenType.End_of_input, "", this.line, this.pos);
+                yield TokenType.End_of_input;
             // remaining case statements
             case '\'': yield char_lit(line, pos);
             case '"': yield string_lit('"', this.line, this.pos);
             case '/': yield div_or_comment(line, pos);
-            case '(': yield new Token(TokenType.LeftParen, "", line, pos);
-            case ')': yield new Token(TokenType.RightParen, "", line, pos);
-            case '{': yield new Token(TokenType.LeftBrace, "", line, pos);
-            case '}': yield new Token(TokenType.RightBrace, "", line, pos);
-            case ';': yield new Token(TokenType.Semicolon, "", line, pos);
-            case ',': yield new Token(TokenType.Comma, "", line, pos);
-            case '*': yield new Token(TokenType.Op_multiply, "", line, pos);
-            case '%': yield new Token(TokenType.Op_mod, "", line, pos);
-            case '+': yield new Token(TokenType.Op_add, "", line, pos);
+            case '(': yield TokenType.LeftParen;
+            case ')': yield TokenType.RightParen;
+            case '{': yield TokenType.LeftBrace;
+            case '}': yield TokenType.RightBrace;
+            case ';': yield TokenType.Semicolon;
+            case ',': yield TokenType.Comma;
+            case '*': yield TokenType.Op_multiply;
+            case '%': yield TokenType.Op_mod;
+            case '+': yield TokenType.Op_add;
             case '-':
                 //if the previous token was an identifier or integer, then binary minus
                 if (prevToken == TokenType.Identifier || prevToken == TokenType.Integer) {
-                    yield new Token(TokenType.Op_subtract, "", line, pos);
+                    yield TokenType.Op_subtract;
                 } else {
                     //else, unary minus
-                    yield new Token(TokenType.Op_negate, "", line, pos);
+                    yield TokenType.Op_negate;
                 }
             case '<': // < vs <=
                 yield follow('=', TokenType.Op_lessequal, TokenType.Op_less, line, pos);
@@ -311,16 +563,45 @@ public class Lexer {
                 yield follow('=', TokenType.Op_notequal, TokenType.Op_not, line, pos);
             case '&':
                 getNextChar(); //skip second &
-                yield new Token(TokenType.Op_and, "", line, pos);
+                yield TokenType.Op_and;
             case '|':
                 getNextChar(); //skip second |
-                yield new Token(TokenType.Op_or, "", line, pos);
+                yield TokenType.Op_or;
             default: yield identifier_or_integer(line, pos);
         };
-        prevToken = result.tokentype;
+        prevToken = result;
         return result;
     }
 
+    /**
+     * Turns the text of a token back into the value its Token would hold. Only Integer, Identifier and String
+     * tokens have a value, everything else gets an empty String
+     * @param s source text the token was lexed from
+     * @param type type of the token
+     * @param start index in s of the start of the token's text
+     * @param end index in s just past the end of the token's text
+     * @return value of the token
+     */
+    static String tokenValue(CharSequence s, TokenType type, int start, int end) {
+        switch (type) {
+            case Integer:
+                //char literals are stored with their quotes, and hold their ASCII value
+                if (s.charAt(start) == '\'') {
+                    char c = start + 1 < end ? s.charAt(start + 1) : '\u0000';
+                    if (c == '\\' && start + 2 < end) {
+                        c = s.charAt(start + 2) == 'n' ? '\n' : '\\';
+                    }
+                    return "" + (int)c;
+                }
+                return s.subSequence(start, end).toString();
+            case Identifier:
+            case String:
+                return s.subSequence(start, end).toString();
+            default:
+                return "";
+        }
+    }
+
     /**
      * Returns the next char in this Lexers s String, skipping whitespace
      * @return the next char, skipping whitespace
@@ -340,21 +621,146 @@ public class Lexer {
         return this.chr;
     }
 
+    /**
+     * Moves to a char further on, ending up just as if getNextChar had been called until it was reached, but with
+     * the line breaks jumped over counted all at once
+     * @param index index in s of the char to move to, or the length of s to move to the end of file
+     */
+    void advanceTo(int index) {
+        int length = this.s.length();
+        int from = this.position + 1;
+        index = Math.min(index, length);
+        if (index < from) {
+            return;
+        }
+        //the char moved to counts too, since a line break starts its line at pos 0
+        int to = Math.min(index + 1, length);
+        int newlines = this.scanner.count('\n', from, to);
+        if (newlines == 0) {
+            this.pos += index - this.position;
+        } else {
+            this.line += newlines;
+            this.pos = index - this.scanner.lastIndexOf('\n', from, to);
+        }
+        this.position = index;
+        this.chr = index < length ? this.s.charAt(index) : '\u0000';
+    }
+
+    /**
+     * Returns the char after the current one without moving to it
+     * @return the following char, or \u0000 if the current char is the last one
+     */
+    char peekChar() {
+        if (this.position + 1 >= this.s.length()) {
+            return '\u0000';
+        }
+        return this.s.charAt(this.position + 1);
+    }
+
+    /**
+     * Returns the next Token, taking it from the lookahead buffer if peek already lexed it
+     * @return the next Token
+     */
+    @Override
+    public Token next() {
+        if (this.buffered == 0) {
+            return getToken();
+        }
+        Token t = this.lookahead[this.head];
+        this.lookahead[this.head] = null;
+        this.head = (this.head + 1) & (LOOKAHEAD - 1);
+        this.buffered--;
+        return t;
+    }
+
+    /**
+     * Returns a Token ahead of the current one, lexing just enough Tokens into the lookahead buffer to reach it
+     * @param k how far ahead to look, peek(0) is the Token next() would return
+     * @return the Token k places ahead
+     */
+    @Override
+    public Token peek(int k) {
+        if (k < 0 || k >= LOOKAHEAD) {
+            throw new IllegalArgumentException("peek: can only look " + (LOOKAHEAD - 1) + " Tokens ahead, asked for " + k);
+        }
+        while (this.buffered <= k) {
+            this.lookahead[(this.head + this.buffered) & (LOOKAHEAD - 1)] = getToken();
+            this.buffered++;
+        }
+        return this.lookahead[(this.head + k) & (LOOKAHEAD - 1)];
+    }
+
+    /**
+     * Collects every Token in this Lexers s String, up to and including the End_of_input Token, so they can be
+     * handed straight to the Parser without going through a .lex file
+     * @return List of all Tokens read from this Lexers s String
+     */
+    List<Token> getTokens() {
+        List<Token> tokens = new ArrayList<>();
+        Token t;
+        while ((t = next()).tokentype != TokenType.End_of_input) {
+            tokens.add(t);
+        }
+        tokens.add(t);
+        return tokens;
+    }
+
+    /**
+     * Lexes every token in this Lexers s String into a packed TokenBuffer, up to and including End_of_input,
+     * without creating a Token object or a String for any of them
+     * @param buffer buffer to fill, emptied first so one buffer can be reused for many files
+     * @return the same buffer, filled
+     */
+    TokenBuffer tokenize(TokenBuffer buffer) {
+        buffer.reset(this.s, this.symbols);
+        TokenType type;
+        do {
+            type = scanInto(buffer);
+        } while (type != TokenType.End_of_input);
+        return buffer;
+    }
+
+    /**
+     * Lexes the next token straight onto the end of a TokenBuffer
+     * @param buffer buffer to add the token to
+     * @return type of the token
+     */
+    TokenType scanInto(TokenBuffer buffer) {
+        TokenType type = scan();
+        int id = -1;
+        if (type == TokenType.Identifier || type == TokenType.String) {
+            id = this.symbols.intern(this.s, this.tokStart, this.tokEnd);
+        }
+        buffer.add(type, this.tokLine, this.tokPos, this.tokStart, this.tokEnd - this.tokStart, id);
+        return type;
+    }
+
     /**
      * Returns a String representation of all the Tokens in this Lexers s String
-     * @return String text of all Tokens read from this Lexers s String
+     * @return String text of all Tokens read from this Lexers s String, one per line
      */
     String printTokens() {
-        Token t;
         StringBuilder sb = new StringBuilder();
+        printTokens(OutputSink.of(sb));
+        return sb.toString();
+    }
+
+    /**
+     * Writes every Token in this Lexers s String to an OutputSink, one per line, the way toString shows them
+     * @param out where to write, flushed at the end but left open
+     * @return number of Tokens written, End_of_input included
+     */
+    int printTokens(OutputSink out) {
+        Token t;
+        int count = 1;
         while ((t = getToken()).tokentype != TokenType.End_of_input) {
-            sb.append(t);
-            sb.append("\n");
-            System.out.println(t);
+            t.writeTo(out);
+            out.append('\n');
+            count++;
         }
-        sb.append(t);
-        System.out.println(t);
-        return sb.toString();
+        t.writeTo(out);
+        out.flush();
+        return count;
     }
 
     /**
@@ -363,39 +769,31 @@ public class Lexer {
      * @param filename name of the file to write to, replaces extension with .lex
      */
     static void outputToFile(String result, String filename) {
-        try {
-            //remove old extension and replace with .lex
-            int trimHere = filename.indexOf('.');
-            if (trimHere != -1) {
-                filename = filename.substring(0, trimHere);
-            }
-            filename = filename + ".lex";
-
-            //write to file
-            FileWriter myWriter = new FileWriter("src/main/resources/" + filename);
-            myWriter.write(result);
-            myWriter.close();
-            System.out.println("Successfully wrote to the file.");
+        try (OutputSink out = OutputSink.toFile(filename, ".lex")) {
+            out.append(result);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        System.out.println("Successfully wrote to the file.");
     }
 
     /**
-     * Processes tokens in all filenames given in args, and outputs result of each to its own file.lex
+     * Processes tokens in all filenames given in args, and outputs result of each to its own file.lex.
+     * Option --echo also prints the tokens on the console
      * @param args Command line arguments, should be a list of file names to read from
      */
     public static void main(String[] args) {
-        if (1==1) {
-            File[] files = new File[args.length];
+        boolean echo = Arrays.asList(args).contains("--echo");
+        if (args.length > (echo ? 1 : 0)) {
             Scanner s;
             StringBuilder source;
             Lexer l;
-            String result;
             try {
-                for (int fileNum = 0; fileNum < args.length; fileNum++) {
-                    files[fileNum] = new File("src/main/resources/" + args[fileNum]);
-                    s = new Scanner(files[fileNum]);
+                for (String filename : args) {
+                    if (filename.equals("--echo")) {
+                        continue;
+                    }
+                    s = new Scanner(new File("src/main/resources/" + filename));
                     source = new StringBuilder();
                     while (s.hasNext()) {
                         source.append(s.nextLine()).append("\n");
@@ -403,14 +801,18 @@ public class Lexer {
                     s.close();
 
                     l = new Lexer(source.toString());
-                    result = l.printTokens();
-                    outputToFile(result, args[fileNum]);
+                    try (OutputSink out = OutputSink.toFile(filename, ".lex").echo(echo)) {
+                        l.printTokens(out);
+                    }
+                    System.out.println("Successfully wrote to the file.");
                 }
-            } catch(FileNotFoundException e) {
-                 error(-1, -1, "Exception: " + e.getMessage());
+            } catch (CompileException e) {
+                CompileException.fail(e.getMessage());
+            } catch (IOException e) {
+                CompileException.fail("Exception: " + e.getMessage());
             }
         } else {
-            error(-1, -1, "No args");
+            CompileException.fail("No args");
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,73 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only view of an ASCII source file mapped straight into memory, so the Lexer can walk a very large file
+ * without the file ever being copied into a String
+ */
+class MappedSource implements CharSequence {
+    /** Bytes of the source, one byte per char */
+    private final ByteBuffer bytes;
+
+    /**
+     * Constructor for a MappedSource over some bytes
+     * @param bytes bytes of the source, from position 0 up to the limit
+     */
+    MappedSource(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Maps a whole file into memory. The channel is closed straight away, the mapping stays valid until it is garbage collected.
+     * @param file path of the source file
+     * @return MappedSource over the contents of the file
+     * @throws IOException if the file can't be opened, or is too big to map in one piece
+     */
+    static MappedSource map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to map: " + file + " (" + size + " bytes)");
+            }
+            return new MappedSource(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Returns the byte buffer behind this source, for callers that can work on bytes directly
+     * @return the underlying bytes, position 0 to limit
+     */
+    ByteBuffer bytes() {
+        return this.bytes;
+    }
+
+    @Override
+    public int length() {
+        return this.bytes.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (this.bytes.get(index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new MappedSource(this.bytes.slice(start, end - start));
+    }
+
+    /**
+     * Copies the whole source into a String, only meant for small sources or debugging
+     * @return the source as a String
+     */
+    @Override
+    public String toString() {
+        byte[] copy = new byte[this.bytes.limit()];
+        this.bytes.get(0, copy);
+        return new String(copy, StandardCharsets.ISO_8859_1);
+    }
+}
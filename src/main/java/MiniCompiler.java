@@ -0,0 +1,217 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single entry point for the compiler, which hands the Lexer's Tokens straight to the Parser in memory.
+ * The .lex and .par files are only written when asked for, as debug dumps.
+ */
+public class MiniCompiler {
+    /** Directory the source files are read from and the debug dumps are written to */
+    static final String RESOURCES = "src/main/resources/";
+
+    /**
+     * Lexes and parses a source String without any intermediate files
+     * @param source text of the program to compile
+     * @return root of the AST for the program
+     */
+    static Parser.Node compile(String source) {
+        return new Parser(new Lexer(source)).parse();
+    }
+
+    /**
+     * Reads a whole source file from the resources directory
+     * @param filename name of the file within src/main/resources
+     * @return contents of the file
+     * @throws IOException if the file can't be read
+     */
+    static String readSource(String filename) throws IOException {
+        return Files.readString(Path.of(RESOURCES + filename));
+    }
+
+    /**
+     * Reads a source file in the resources directory, or maps it into memory
+     * @param filename name of the file within src/main/resources
+     * @param mmap true to map the file into memory instead of reading it into a String
+     * @return contents of the file
+     * @throws IOException if the file can't be read
+     */
+    static CharSequence openSource(String filename, boolean mmap) throws IOException {
+        return mmap ? MappedSource.map(Path.of(RESOURCES + filename)) : readSource(filename);
+    }
+
+    /**
+     * Creates a Lexer for a source file in the resources directory that reports its errors to the given Diagnostics
+     * @param filename name of the file within src/main/resources
+     * @param mmap true to lex straight from a memory mapping of the file instead of reading it into a String
+     * @param diagnostics where to report errors
+     * @return Lexer over the contents of the file
+     * @throws IOException if the file can't be read
+     */
+    static Lexer openLexer(String filename, boolean mmap, Diagnostics diagnostics) throws IOException {
+        return new Lexer(openSource(filename, mmap), new SymbolTable(), diagnostics);
+    }
+
+    /**
+     * Lexes a whole source file in the resources directory into a TokenBuffer, for when the tokens are wanted before
+     * parsing starts: to dump them with --lex, or to lex with the ParallelLexer
+     * @param filename name of the file within src/main/resources
+     * @param mmap true to lex straight from a memory mapping of the file instead of reading it into a String
+     * @param parallel true to lex with the ParallelLexer
+     * @param diagnostics where to report errors
+     * @param stats where the phases and token counts are recorded, or null
+     * @return the tokens, ending with End_of_input
+     * @throws IOException if the file can't be read
+     */
+    static TokenBuffer lexFile(String filename, boolean mmap, boolean parallel, Diagnostics diagnostics,
+                               CompileStats stats) throws IOException {
+        if (stats != null) {
+            stats.begin(CompileStats.Phase.IO);
+        }
+        CharSequence source = openSource(filename, mmap);
+        if (stats != null) {
+            stats.end(CompileStats.Phase.IO);
+            stats.source(source);
+            stats.begin(CompileStats.Phase.LEX);
+        }
+        SymbolTable symbols = new SymbolTable();
+        TokenBuffer tokens = parallel ? ParallelLexer.tokenize(source, symbols, diagnostics)
+                : new Lexer(source, symbols, diagnostics).tokenize(new TokenBuffer());
+        if (stats != null) {
+            stats.end(CompileStats.Phase.LEX);
+            stats.countTokens(tokens);
+        }
+        return tokens;
+    }
+
+    /**
+     * Compiles every file named in args. Options --lex and --par also write filename.lex / filename.par debug dumps,
+     * --opt runs the Optimizer over the AST first so the .par dump shows the simplified tree, --binary writes the
+     * dumps in BinaryFormat as filename.lexb / filename.parb instead of text, --echo also prints the text dumps on
+     * the console,
+     * --mmap lexes each file through a memory mapping, for very large ASCII sources, --parallel lexes each file on every
+     * core with the ParallelLexer before parsing it, --stats prints where the time of each file went, with lexing
+     * timed on its own only when --lex or --parallel lex the whole file before parsing, and --max-errors=N sets how many
+     * errors are reported for a file before it is abandoned. Exits with status 1 if any file had errors.
+     * @param args Command line arguments, options followed by a list of file names to compile
+     */
+    public static void main(String[] args) {
+        boolean dumpLex = false, dumpPar = false, mmap = false, optimize = false, binary = false,
+                echo = false, parallel = false, showStats = false;
+        int maxErrors = Diagnostics.DEFAULT_MAX_ERRORS;
+        List<String> files = new ArrayList<>();
+        for (String arg : args) {
+            switch (arg) {
+                case "--lex" -> dumpLex = true;
+                case "--par" -> dumpPar = true;
+                case "--mmap" -> mmap = true;
+                case "--opt" -> optimize = true;
+                case "--binary" -> binary = true;
+                case "--echo" -> echo = true;
+                case "--parallel" -> parallel = true;
+                case "--stats" -> showStats = true;
+                default -> {
+                    if (arg.startsWith("--max-errors=")) {
+                        maxErrors = Integer.parseInt(arg.substring("--max-errors=".length()));
+                    } else {
+                        files.add(arg);
+                    }
+                }
+            }
+        }
+        if (files.isEmpty()) {
+            CompileException.fail("No args");
+        }
+
+        boolean failed = false;
+        for (String filename : files) {
+            Diagnostics diagnostics = new Diagnostics(maxErrors);
+            CompileStats stats = showStats ? new CompileStats(filename) : null;
+            try {
+                Parser p;
+                if (dumpLex || parallel) {
+                    //the dump lexes with no limit on errors so it never stops early, they are handed on once it's written
+                    Diagnostics lexErrors = dumpLex ? new Diagnostics(Integer.MAX_VALUE) : diagnostics;
+                    TokenBuffer tokens = lexFile(filename, mmap, parallel, lexErrors, stats);
+                    if (dumpLex) {
+                        if (stats != null) {
+                            stats.begin(CompileStats.Phase.PRINT);
+                        }
+                        if (binary) {
+                            try (BinaryFormat.TokenWriter out = new BinaryFormat.TokenWriter(BinaryFormat.outputFile(filename, ".lexb"))) {
+                                out.writeAll(tokens);
+                            }
+                        } else {
+                            try (OutputSink out = OutputSink.toFile(filename, ".lex").echo(echo)) {
+                                tokens.printTokens(out);
+                            }
+                            System.out.println("Successfully wrote to the file.");
+                        }
+                        if (stats != null) {
+                            stats.end(CompileStats.Phase.PRINT);
+                        }
+                        for (Diagnostics.Diagnostic d : lexErrors.getErrors()) {
+                            diagnostics.error(d.line, d.pos, d.message);
+                        }
+                    }
+                    p = new Parser(tokens.stream(), diagnostics);
+                    if (stats != null) {
+                        stats.begin(CompileStats.Phase.PARSE);
+                    }
+                } else if (stats != null) {
+                    //the same streaming pipeline as a plain compile, lexing as the Parser asks for tokens
+                    stats.begin(CompileStats.Phase.IO);
+                    CharSequence source = openSource(filename, mmap);
+                    stats.end(CompileStats.Phase.IO);
+                    stats.source(source);
+                    p = new Parser(stats.countTokens(new Lexer(source, new SymbolTable(), diagnostics)), diagnostics);
+                    stats.begin(CompileStats.Phase.PARSE);
+                } else {
+                    p = new Parser(openLexer(filename, mmap, diagnostics), diagnostics);
+                }
+                int ast = p.parseArena();
+                if (stats != null) {
+                    stats.end(CompileStats.Phase.PARSE);
+                    stats.countNodes(p);
+                    if (dumpPar) {
+                        stats.begin(CompileStats.Phase.PRINT);
+                    }
+                }
+                if (dumpPar && binary) {
+                    try (BinaryFormat.AstWriter out = new BinaryFormat.AstWriter(BinaryFormat.outputFile(filename, ".parb"))) {
+                        if (optimize) {
+                            out.write(Optimizer.optimize(p.getArena().toNode(ast)));
+                        } else {
+                            out.write(p.getArena(), ast);
+                        }
+                    }
+                } else if (dumpPar) {
+                    try (OutputSink out = OutputSink.toFile(filename, ".par").echo(echo)) {
+                        if (optimize) {
+                            p.printAST(Optimizer.optimize(p.getArena().toNode(ast)), out);
+                        } else {
+                            p.printAST(ast, out);
+                        }
+                    }
+                    System.out.println("Successfully wrote to the file.");
+                }
+            } catch (CompileException e) {
+                //too many errors, the ones collected so far are printed below
+            } catch (IOException e) {
+                CompileException.fail("Exception: " + e.getMessage());
+            }
+            for (Diagnostics.Diagnostic d : diagnostics.getErrors()) {
+                System.out.println(filename + ": " + d);
+                failed = true;
+            }
+            if (stats != null) {
+                System.out.println(stats.finish());
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
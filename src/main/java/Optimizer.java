@@ -0,0 +1,270 @@
+import java.util.Arrays;
+
+/**
+ * Simplifies the AST from the Parser before it is run, so every backend has less to do. Expressions made only of
+ * constants are folded to one Integer, x*1, x+0 and x-0 become x, !!x becomes x wherever only the truth of x matters,
+ * an If with a constant condition is replaced by the branch it takes, a While that never runs is removed, and
+ * Sequence nodes left with nothing on one side are dropped.
+ *
+ * Nothing that could fail at run time is folded, so 1/0 stays in the tree and still gives its runtime error.
+ */
+class Optimizer {
+    /** Node on the work stack that hasn't been visited yet */
+    private static final byte VISIT = 0;
+    /** Node on the work stack whose children have both been simplified */
+    private static final byte SIMPLIFY = 1;
+    /** The Sequence node holding an If's two branches, which must stay a pair rather than be collapsed */
+    private static final byte VISIT_BRANCHES = 2;
+    /** Branches node whose two branches have been simplified */
+    private static final byte KEEP = 3;
+
+    /** Nodes waiting on the work stack */
+    private Parser.Node[] nodes = new Parser.Node[64];
+    /** What to do with each node on the work stack */
+    private byte[] actions = new byte[64];
+    /** Simplified subtrees, waiting for their parent */
+    private Parser.Node[] results = new Parser.Node[64];
+
+    /**
+     * Simplifies a whole program. The tree is rewritten in place, so the old root shouldn't be used afterwards
+     * @param root root of the AST, as given by Parser.parse, may be null
+     * @return root of the simplified AST, null if nothing is left to run
+     */
+    static Parser.Node optimize(Parser.Node root) {
+        return new Optimizer().simplifyTree(root);
+    }
+
+    /**
+     * Simplifies every node after its children, with explicit stacks rather than recursion so a deeply nested program
+     * can't overflow the call stack, same as the Parser
+     * @param root root of the tree
+     * @return root of the simplified tree
+     */
+    private Parser.Node simplifyTree(Parser.Node root) {
+        int sp = push(0, root, VISIT);
+        int rp = 0;
+        while (sp > 0) {
+            Parser.Node n = this.nodes[--sp];
+            byte action = this.actions[sp];
+            if (action == SIMPLIFY || action == KEEP) {
+                Parser.Node right = this.results[--rp];
+                Parser.Node left = this.results[--rp];
+                if (action == KEEP) {
+                    n.left = left;
+                    n.right = right;
+                } else {
+                    n = simplify(n, left, right);
+                }
+                rp = result(rp, n);
+            } else if (n == null || n.nt == Parser.NodeType.nd_Ident || n.nt == Parser.NodeType.nd_Integer
+                    || n.nt == Parser.NodeType.nd_String) {
+                rp = result(rp, n);
+            } else {
+                //left is pushed last so it is simplified first, and its result ends up under the right one's
+                sp = push(sp, n, action == VISIT_BRANCHES ? KEEP : SIMPLIFY);
+                sp = push(sp, n.right, n.nt == Parser.NodeType.nd_If && action == VISIT ? VISIT_BRANCHES : VISIT);
+                sp = push(sp, n.left, VISIT);
+            }
+        }
+        return this.results[0];
+    }
+
+    /**
+     * Pushes a node on the work stack, growing it when full
+     * @param sp current stack size
+     * @param n the node, may be null
+     * @param action what to do with it when it is popped
+     * @return new stack size
+     */
+    private int push(int sp, Parser.Node n, byte action) {
+        if (sp == this.nodes.length) {
+            this.nodes = Arrays.copyOf(this.nodes, sp * 2);
+            this.actions = Arrays.copyOf(this.actions, sp * 2);
+        }
+        this.nodes[sp] = n;
+        this.actions[sp] = action;
+        return sp + 1;
+    }
+
+    /**
+     * Pushes a simplified subtree for its parent, growing the stack when full
+     * @param rp current stack size
+     * @param n the subtree, may be null
+     * @return new stack size
+     */
+    private int result(int rp, Parser.Node n) {
+        if (rp == this.results.length) {
+            this.results = Arrays.copyOf(this.results, rp * 2);
+        }
+        this.results[rp] = n;
+        return rp + 1;
+    }
+
+    /**
+     * Checks if a node is an Integer constant
+     * @param n the node, may be null
+     * @return true if it is an Integer leaf
+     */
+    private static boolean isConstant(Parser.Node n) {
+        return n != null && n.nt == Parser.NodeType.nd_Integer;
+    }
+
+    /**
+     * Gets the value of an Integer constant, wrapping around like the backends do for literals too big for an int
+     * @param n an Integer leaf
+     * @return its value
+     */
+    private static int value(Parser.Node n) {
+        return (int) Long.parseLong(n.value);
+    }
+
+    /**
+     * Makes an Integer constant
+     * @param value its value
+     * @return a new Integer leaf
+     */
+    private static Parser.Node constant(int value) {
+        return Parser.Node.make_leaf(Parser.NodeType.nd_Integer, Integer.toString(value));
+    }
+
+    /**
+     * Checks if an expression always gives 0 or 1
+     * @param n the expression
+     * @return true for comparisons, !, && and ||
+     */
+    private static boolean isBoolean(Parser.Node n) {
+        switch (n.nt) {
+            case nd_Lss: case nd_Leq: case nd_Gtr: case nd_Geq: case nd_Eql: case nd_Neq:
+            case nd_Not: case nd_And: case nd_Or:
+                return true;
+            default:
+                return isConstant(n) && (value(n) == 0 || value(n) == 1);
+        }
+    }
+
+    /**
+     * Simplifies an expression whose value only matters as true or false, by dropping any double !
+     * @param n the expression, already simplified
+     * @return an expression that is true exactly when n is
+     */
+    private static Parser.Node condition(Parser.Node n) {
+        while (n != null && n.nt == Parser.NodeType.nd_Not && n.left != null && n.left.nt == Parser.NodeType.nd_Not) {
+            n = n.left.left;
+        }
+        return n;
+    }
+
+    /**
+     * Simplifies one node whose children are already simplified
+     * @param n the node
+     * @param left its simplified left child
+     * @param right its simplified right child
+     * @return the node to use in its place, may be null for a statement that does nothing
+     */
+    private static Parser.Node simplify(Parser.Node n, Parser.Node left, Parser.Node right) {
+        n.left = left;
+        n.right = right;
+        switch (n.nt) {
+            case nd_Sequence:
+                if (left == null) return right;
+                if (right == null) return left;
+                return n;
+            case nd_If: {
+                //right is a Sequence node holding the then and else branches
+                Parser.Node cond = condition(left);
+                if (isConstant(cond)) {
+                    return right == null ? null : value(cond) != 0 ? right.left : right.right;
+                }
+                n.left = cond;
+                return n;
+            }
+            case nd_While: {
+                Parser.Node cond = condition(left);
+                if (isConstant(cond) && value(cond) == 0) {
+                    return null;
+                }
+                n.left = cond;
+                return n;
+            }
+            case nd_Negate:
+                return isConstant(left) ? constant(-value(left)) : n;
+            case nd_Not:
+                if (isConstant(left)) {
+                    return constant(value(left) == 0 ? 1 : 0);
+                }
+                //!!x is only x when x is already 0 or 1, anywhere else just its truth matters, see condition
+                if (left != null && left.nt == Parser.NodeType.nd_Not && left.left != null && isBoolean(left.left)) {
+                    return left.left;
+                }
+                return n;
+            case nd_And:
+            case nd_Or: {
+                boolean and = n.nt == Parser.NodeType.nd_And;
+                n.left = left = condition(left);
+                n.right = right = condition(right);
+                if (isConstant(left)) {
+                    //a left side that decides the answer means the right side never runs
+                    if ((value(left) != 0) != and) {
+                        return constant(and ? 0 : 1);
+                    }
+                    if (isConstant(right)) {
+                        return constant(value(right) != 0 ? 1 : 0);
+                    }
+                    if (isBoolean(right)) {
+                        return right;
+                    }
+                }
+                return n;
+            }
+            default:
+                break;
+        }
+        if (isConstant(left) && isConstant(right)) {
+            Integer folded = fold(n.nt, value(left), value(right));
+            if (folded != null) {
+                return constant(folded);
+            }
+        }
+        switch (n.nt) {
+            case nd_Mul:
+                if (isConstant(right) && value(right) == 1) return left;
+                if (isConstant(left) && value(left) == 1) return right;
+                return n;
+            case nd_Add:
+                if (isConstant(right) && value(right) == 0) return left;
+                if (isConstant(left) && value(left) == 0) return right;
+                return n;
+            case nd_Sub:
+            case nd_Div:
+                //x/1 is x as well
+                if (isConstant(right) && value(right) == (n.nt == Parser.NodeType.nd_Sub ? 0 : 1)) return left;
+                return n;
+            default:
+                return n;
+        }
+    }
+
+    /**
+     * Works out a binary operator on two constants
+     * @param nt the operator
+     * @param a left value
+     * @param b right value
+     * @return the result, or null if it can't be worked out now, such as dividing by 0
+     */
+    private static Integer fold(Parser.NodeType nt, int a, int b) {
+        switch (nt) {
+            case nd_Mul: return a * b;
+            case nd_Div: return b == 0 ? null : a / b;
+            case nd_Mod: return b == 0 ? null : a % b;
+            case nd_Add: return a + b;
+            case nd_Sub: return a - b;
+            case nd_Lss: return a < b ? 1 : 0;
+            case nd_Leq: return a <= b ? 1 : 0;
+            case nd_Gtr: return a > b ? 1 : 0;
+            case nd_Geq: return a >= b ? 1 : 0;
+            case nd_Eql: return a == b ? 1 : 0;
+            case nd_Neq: return a != b ? 1 : 0;
+            default: return null;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Where printTokens and printAST write their text. The text can be collected in a StringBuilder, written to a Writer
+ * or an OutputStream, echoed to the console, or any mix of those, or thrown away.
+ *
+ * Text going to a Writer or the console is gathered in one large buffer and handed over a buffer at a time, rather
+ * than a line at a time, since every System.out.println takes a lock and flushes. Nothing is left in the buffer after
+ * flush or close. A Writer that fails throws an UncheckedIOException, so the printers don't all need a throws clause.
+ */
+class OutputSink implements Closeable {
+    /** Number of chars gathered before they are handed to the Writers */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Where the text is collected, null if it isn't */
+    private final StringBuilder text;
+    /** Where the text is written, null if it isn't */
+    private final Writer writer;
+    /** Writer on the console, null unless the text is echoed */
+    private Writer console;
+    /** Chars not yet handed to writer and console, null while there are neither */
+    private char[] buffer;
+    /** Number of chars in buffer */
+    private int size;
+
+    /**
+     * Constructor for an OutputSink
+     * @param text where the text is collected, or null
+     * @param writer where the text is written, or null
+     */
+    private OutputSink(StringBuilder text, Writer writer) {
+        this.text = text;
+        this.writer = writer;
+        if (writer != null) {
+            this.buffer = new char[BUFFER_SIZE];
+        }
+    }
+
+    /**
+     * Makes a sink that throws the text away, for timing a printer or when only the console echo is wanted
+     * @return the OutputSink
+     */
+    static OutputSink quiet() {
+        return new OutputSink(null, null);
+    }
+
+    /**
+     * Makes a sink that collects the text
+     * @param sb where the text is appended
+     * @return the OutputSink
+     */
+    static OutputSink of(StringBuilder sb) {
+        return new OutputSink(sb, null);
+    }
+
+    /**
+     * Makes a sink that writes the text to a Writer, which is closed along with the sink
+     * @param writer where the text is written
+     * @return the OutputSink
+     */
+    static OutputSink of(Writer writer) {
+        return new OutputSink(null, writer);
+    }
+
+    /**
+     * Makes a sink that writes the text to an OutputStream as UTF-8, which is closed along with the sink
+     * @param out where the text is written
+     * @return the OutputSink
+     */
+    static OutputSink of(OutputStream out) {
+        return of(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Makes a sink that writes a debug dump in src/main/resources, named like the .lex and .par dumps are
+     * @param filename name of the source file, its extension is replaced
+     * @param extension extension of the dump, such as .lex or .par
+     * @return the OutputSink
+     * @throws IOException if the file can't be opened
+     */
+    static OutputSink toFile(String filename, String extension) throws IOException {
+        int trimHere = filename.indexOf('.');
+        if (trimHere != -1) {
+            filename = filename.substring(0, trimHere);
+        }
+        return of(new FileWriter(MiniCompiler.RESOURCES + filename + extension));
+    }
+
+    /**
+     * Makes a sink that only prints the text on the console
+     * @return the OutputSink
+     */
+    static OutputSink console() {
+        return quiet().echo(true);
+    }
+
+    /**
+     * Turns on echoing the text to the console as well as wherever else it goes
+     * @param echo true to echo, false leaves the sink as it is
+     * @return this OutputSink
+     */
+    OutputSink echo(boolean echo) {
+        if (echo && this.console == null) {
+            //System.out is never closed by close, only flushed
+            this.console = new OutputStreamWriter(System.out);
+            if (this.buffer == null) {
+                this.buffer = new char[BUFFER_SIZE];
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends some text
+     * @param s the text
+     * @return this OutputSink
+     */
+    OutputSink append(CharSequence s) {
+        if (this.text != null) {
+            this.text.append(s);
+        }
+        if (this.buffer != null) {
+            int length = s.length();
+            for (int i = 0; i < length; ) {
+                if (this.size == this.buffer.length) {
+                    drain();
+                }
+                int n = Math.min(length - i, this.buffer.length - this.size);
+                if (s instanceof String) {
+                    ((String) s).getChars(i, i + n, this.buffer, this.size);
+                } else {
+                    for (int j = 0; j < n; j++) {
+                        this.buffer[this.size + j] = s.charAt(i + j);
+                    }
+                }
+                this.size += n;
+                i += n;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends one char
+     * @param c the char
+     * @return this OutputSink
+     */
+    OutputSink append(char c) {
+        if (this.text != null) {
+            this.text.append(c);
+        }
+        if (this.buffer != null) {
+            if (this.size == this.buffer.length) {
+                drain();
+            }
+            this.buffer[this.size++] = c;
+        }
+        return this;
+    }
+
+    /**
+     * Appends a number in decimal, without making a String for it
+     * @param value the number
+     * @return this OutputSink
+     */
+    OutputSink append(int value) {
+        if (this.text != null) {
+            this.text.append(value);
+        }
+        if (this.buffer != null) {
+            if (this.size + 11 > this.buffer.length) {
+                drain();
+            }
+            //digits are written backwards from the end of where the number goes
+            long v = value;
+            if (v < 0) {
+                this.buffer[this.size++] = '-';
+                v = -v;
+            }
+            int end = this.size + digits(v);
+            for (int i = end - 1; i >= this.size; i--) {
+                this.buffer[i] = (char) ('0' + v % 10);
+                v /= 10;
+            }
+            this.size = end;
+        }
+        return this;
+    }
+
+    /**
+     * Appends a number right aligned in a field, like %5d in String.format
+     * @param value the number
+     * @param width width of the field
+     * @return this OutputSink
+     */
+    OutputSink padLeft(int value, int width) {
+        int length = value < 0 ? digits(-(long) value) + 1 : digits(value);
+        spaces(width - length);
+        return append(value);
+    }
+
+    /**
+     * Appends text right aligned in a field, like %4s in String.format
+     * @param s the text
+     * @param width width of the field
+     * @return this OutputSink
+     */
+    OutputSink padLeft(CharSequence s, int width) {
+        spaces(width - s.length());
+        return append(s);
+    }
+
+    /**
+     * Appends text left aligned in a field, like %-15s in String.format
+     * @param s the text
+     * @param width width of the field
+     * @return this OutputSink
+     */
+    OutputSink padRight(CharSequence s, int width) {
+        append(s);
+        return spaces(width - s.length());
+    }
+
+    /**
+     * Appends a number of spaces
+     * @param count how many, nothing if it isn't positive
+     * @return this OutputSink
+     */
+    private OutputSink spaces(int count) {
+        for (int i = 0; i < count; i++) {
+            append(' ');
+        }
+        return this;
+    }
+
+    /**
+     * Counts the decimal digits of a number
+     * @param v a number that isn't negative
+     * @return number of digits, 1 for 0
+     */
+    private static int digits(long v) {
+        int n = 1;
+        while (v >= 10) {
+            v /= 10;
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Hands the buffered chars to the Writer and the console
+     */
+    private void drain() {
+        try {
+            if (this.writer != null) {
+                this.writer.write(this.buffer, 0, this.size);
+            }
+            if (this.console != null) {
+                this.console.write(this.buffer, 0, this.size);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.size = 0;
+    }
+
+    /**
+     * Writes out everything buffered
+     */
+    void flush() {
+        if (this.buffer == null) {
+            return;
+        }
+        drain();
+        try {
+            if (this.writer != null) {
+                this.writer.flush();
+            }
+            if (this.console != null) {
+                this.console.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes out everything buffered and closes the Writer, leaving the console open
+     */
+    @Override
+    public void close() {
+        flush();
+        if (this.writer != null) {
+            try {
+                this.writer.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
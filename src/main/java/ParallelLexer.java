@@ -0,0 +1,311 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Lexes a large source on several cores at once. The source is cut into chunks at line breaks and every chunk is
+ * lexed on its own, guessing that it starts outside any String or comment. Only the first chunk is sure to be
+ * right, since a String can run over a line break and a comment nearly always does, so the chunks are then checked
+ * and joined in order:
+ *
+ * Lexing a chunk carries on just past its end, to the first token starting in the next chunk. If the next chunk's
+ * own lexing has a token starting in the same place, the two agree from there on, because where the Lexer goes next
+ * only depends on where it is. Its tokens before that point are the ones lexed from inside a comment or String and
+ * are dropped. Only a - can come out different, since it depends on the token before it, so it is fixed up. If the
+ * guess never lands on the right place the chunk is lexed again from there, on its own.
+ *
+ * Every chunk but the first counts its lines from 1 and gets its line numbers moved along while joining, so no pass
+ * over the whole source is needed to find them first. Its identifiers and Strings go in a SymbolTable of its own and
+ * are interned into the real one while joining, in the same order lexing the whole source at once would give them
+ * ids. A source with any errors is lexed again from the start by one Lexer, so the errors come out exactly as usual.
+ */
+class ParallelLexer {
+    /** Smallest chunk worth handing to another core, smaller sources are lexed the usual way */
+    static final int MIN_CHUNK = 1 << 20;
+
+    /**
+     * What lexing one chunk of the source found
+     */
+    private static class Chunk {
+        /** Index in the source the chunk's lexing started at */
+        final int from;
+        /** Index in the source of the start of the next chunk, tokens starting there or later belong to it */
+        final int limit;
+        /** SymbolTable the chunk's symbol ids refer to */
+        final SymbolTable symbols;
+        /** Tokens starting in the chunk */
+        final TokenBuffer tokens;
+        /** Index of the last token whose lexing reported an error, -1 if there were none */
+        int lastError = -1;
+        /** True if the chunk ends with End_of_input, so nothing after it is needed */
+        boolean ended;
+        /** Start of the first token past the chunk, quote included for a String */
+        int nextStart;
+        /** Line of the first token past the chunk, counted the same way as the chunk's own lines */
+        int nextLine;
+        /** Position within the line of the first token past the chunk */
+        int nextPos;
+
+        /**
+         * Constructor for a Chunk
+         * @param from index in the source the lexing starts at
+         * @param limit index in the source of the start of the next chunk
+         * @param symbols SymbolTable to intern into
+         * @param capacity guess at the number of tokens, to size the buffer
+         */
+        Chunk(int from, int limit, SymbolTable symbols, int capacity) {
+            this.from = from;
+            this.limit = limit;
+            this.symbols = symbols;
+            this.tokens = new TokenBuffer(capacity);
+        }
+
+        /**
+         * Finds the token starting at an index in the source
+         * @param start index in the source, quote included for a String
+         * @return index of the token, or -1 if no token of the chunk starts there
+         */
+        int find(int start) {
+            int low = 0;
+            int high = this.tokens.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int at = this.tokens.lexemeStart(mid);
+                if (at < start) {
+                    low = mid + 1;
+                } else if (at > start) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Lexes a source with a new SymbolTable, on the common pool, stopping at the first error
+     * @param source text to lex
+     * @return the tokens, ending with End_of_input
+     */
+    static TokenBuffer tokenize(CharSequence source) {
+        return tokenize(source, new SymbolTable(), new Diagnostics());
+    }
+
+    /**
+     * Lexes a source on the common pool, with one chunk per core as long as the chunks are at least MIN_CHUNK chars
+     * @param source text to lex
+     * @param symbols SymbolTable to intern identifiers and String literals into
+     * @param diagnostics where to report errors
+     * @return the tokens, ending with End_of_input
+     */
+    static TokenBuffer tokenize(CharSequence source, SymbolTable symbols, Diagnostics diagnostics) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int chunks = Math.min(pool.getParallelism(), source.length() / MIN_CHUNK);
+        return tokenize(source, symbols, diagnostics, chunks, pool);
+    }
+
+    /**
+     * Lexes a source in a given number of chunks, giving exactly the tokens, symbol ids and errors a single Lexer would
+     * @param source text to lex
+     * @param symbols SymbolTable to intern identifiers and String literals into
+     * @param diagnostics where to report errors
+     * @param chunks number of chunks to cut the source into, fewer if it doesn't have that many lines
+     * @param pool where the chunks are lexed
+     * @return the tokens, ending with End_of_input
+     */
+    static TokenBuffer tokenize(CharSequence source, SymbolTable symbols, Diagnostics diagnostics, int chunks,
+                                ForkJoinPool pool) {
+        int[] bounds = split(source, chunks);
+        if (bounds.length <= 2) {
+            return new Lexer(source, symbols, diagnostics).tokenize(new TokenBuffer());
+        }
+        //one scanner for every chunk, so a VectorScanner copies the source into bytes only once
+        CharScanner scanner = CharScanner.of(source);
+        List<Callable<Chunk>> tasks = new ArrayList<>();
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            int from = bounds[i];
+            int limit = i + 2 == bounds.length ? Integer.MAX_VALUE : bounds[i + 1];
+            //only the first chunk is sure of its tokens, so only it may intern straight into the real table
+            SymbolTable table = i == 0 ? symbols : new SymbolTable();
+            tasks.add(() -> lex(scanner, from, limit, 1, from == 0 ? 0 : 1, null, table));
+        }
+        Chunk[] lexed = new Chunk[tasks.size()];
+        try {
+            List<Future<Chunk>> futures = pool.invokeAll(tasks);
+            for (int i = 0; i < lexed.length; i++) {
+                lexed[i] = futures.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        TokenBuffer joined = join(scanner, symbols, lexed);
+        if (joined == null) {
+            //lexed again by one Lexer, so the errors and where it stops come out exactly as usual
+            return new Lexer(source, symbols, diagnostics).tokenize(new TokenBuffer());
+        }
+        return joined;
+    }
+
+    /**
+     * Picks where the chunks start, each just after a line break
+     * @param source text to lex
+     * @param chunks number of chunks wanted
+     * @return index of the start of each chunk, then the length of the source
+     */
+    static int[] split(CharSequence source, int chunks) {
+        int length = source.length();
+        int[] bounds = new int[Math.max(chunks, 1) + 1];
+        int count = 1;
+        for (int i = 1; i < chunks; i++) {
+            int at = Math.max((int) ((long) length * i / chunks), bounds[count - 1]);
+            while (at < length && source.charAt(at) != '\n') {
+                at++;
+            }
+            //past the line break, and skipped if the line it ends took up the whole chunk
+            if (at + 1 < length && at + 1 > bounds[count - 1]) {
+                bounds[count++] = at + 1;
+            }
+        }
+        bounds[count++] = length;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Lexes the tokens starting between from and limit, and the first one after them
+     * @param scanner CharScanner over the text to lex
+     * @param from index in the source to start at, 0 or just after a line break
+     * @param limit index in the source where the next chunk starts
+     * @param line line to count from
+     * @param pos position within the line of the char at from
+     * @param prevToken type of the token before from, null if it isn't known
+     * @param symbols SymbolTable to intern into
+     * @return the Chunk
+     */
+    private static Chunk lex(CharScanner scanner, int from, int limit, int line, int pos, TokenType prevToken,
+                             SymbolTable symbols) {
+        CharSequence source = scanner.s;
+        int capacity = (Math.min(limit, source.length()) - from) / 4 + 16;
+        Chunk chunk = new Chunk(from, limit, symbols, capacity);
+        Diagnostics diagnostics = new Diagnostics(Integer.MAX_VALUE);
+        Lexer lexer = new Lexer(scanner, symbols, diagnostics);
+        if (from > 0) {
+            lexer.resume(from, line, pos, prevToken);
+        }
+        TokenBuffer tokens = chunk.tokens;
+        tokens.reset(source, symbols);
+        int errors = 0;
+        while (true) {
+            TokenType type = lexer.scanInto(tokens);
+            int last = tokens.size() - 1;
+            if (diagnostics.count() != errors) {
+                errors = diagnostics.count();
+                chunk.lastError = last;
+            }
+            if (tokens.lexemeStart(last) >= limit) {
+                chunk.nextStart = tokens.lexemeStart(last);
+                chunk.nextLine = tokens.line(last);
+                chunk.nextPos = tokens.pos(last);
+                tokens.removeLast();
+                return chunk;
+            }
+            if (type == TokenType.End_of_input) {
+                chunk.ended = true;
+                return chunk;
+            }
+        }
+    }
+
+    /**
+     * Joins the chunks' tokens in order, keeping from each chunk only the tokens from where the one before it left off
+     * @param scanner CharScanner over the text that was lexed
+     * @param symbols the real SymbolTable, which the first chunk already used
+     * @param chunks every chunk, in order
+     * @return all the tokens, or null if any of them had an error
+     */
+    private static TokenBuffer join(CharScanner scanner, SymbolTable symbols, Chunk[] chunks) {
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            total += chunk.tokens.size();
+        }
+        TokenBuffer joined = new TokenBuffer(total + 1);
+        joined.reset(scanner.s, symbols);
+        TokenType prev = null;
+        int sync = 0;
+        int line = 1;
+        int pos = 0;
+        for (Chunk chunk : chunks) {
+            if (sync >= chunk.limit) {
+                //a String or comment from an earlier chunk runs right over this one
+                continue;
+            }
+            //the first chunk starts where the source does, so it is right from its first token and counts real lines
+            int first = 0;
+            int lineDelta = 0;
+            if (chunk.from > 0) {
+                first = chunk.find(sync);
+                lineDelta = first < 0 ? 0 : line - chunk.tokens.line(first);
+            }
+            if (first < 0) {
+                //the guess never lined up, so lex it again from the right place
+                chunk = lex(scanner, sync, chunk.limit, line, pos, prev, symbols);
+                first = 0;
+            }
+            if (chunk.lastError >= first) {
+                return null;
+            }
+            prev = append(joined, chunk, first, lineDelta, prev);
+            if (chunk.ended) {
+                break;
+            }
+            sync = chunk.nextStart;
+            line = chunk.nextLine + lineDelta;
+            pos = chunk.nextPos;
+        }
+        return joined;
+    }
+
+    /**
+     * Copies a chunk's tokens from an index on, moving their lines along and interning their identifiers and Strings
+     * into the real SymbolTable
+     * @param joined where the tokens go
+     * @param chunk the chunk
+     * @param first index of the first token to copy
+     * @param lineDelta how far to move the lines
+     * @param prev type of the token before the first one, which decides if a - is a subtraction
+     * @return type of the last token copied
+     */
+    private static TokenType append(TokenBuffer joined, Chunk chunk, int first, int lineDelta, TokenType prev) {
+        TokenBuffer tokens = chunk.tokens;
+        SymbolTable symbols = joined.symbols();
+        //ids in the chunk's own table, turned into real ones the first time each is used
+        int[] ids = null;
+        if (chunk.symbols != symbols) {
+            ids = new int[chunk.symbols.size()];
+            Arrays.fill(ids, -1);
+        }
+        for (int i = first; i < tokens.size(); i++) {
+            TokenType type = tokens.type(i);
+            if (i == first && (type == TokenType.Op_subtract || type == TokenType.Op_negate)) {
+                type = prev == TokenType.Identifier || prev == TokenType.Integer ? TokenType.Op_subtract : TokenType.Op_negate;
+            }
+            int symbol = tokens.symbol(i);
+            if (symbol >= 0 && ids != null) {
+                if (ids[symbol] < 0) {
+                    ids[symbol] = symbols.intern(chunk.symbols.name(symbol));
+                }
+                symbol = ids[symbol];
+            }
+            joined.add(type, tokens.line(i) + lineDelta, tokens.pos(i), tokens.start(i), tokens.length(i), symbol);
+            prev = type;
+        }
+        return prev;
+    }
+}
@@ -1,15 +1,11 @@
 //import jdk.incubator.foreign.CLinker;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Scanner;
-import java.util.StringTokenizer;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.HashMap;
 
 /**
  * Parser class that takes input from Lexer and interprets it via the grammatical rules
@@ -17,17 +13,137 @@ import java.util.HashMap;
 class Parser {
 
     /**
-     * List of tokens from input file
+     * Stream of tokens from the input, pulled one at a time as parsing goes
      */
-    private List<Token> source;
+    private TokenStream source;
     /**
-     * A single token from within the list, current one
+     * A single token from within the stream, current one
      */
-    private Token token;
+    private Lexer.Token token;
     /**
-     * Current position within the List of Tokens
+     * Where errors are reported, may be shared with the Lexer feeding this Parser
      */
-    private int position;
+    private Diagnostics diagnostics;
+    /**
+     * How many braces deep the statement being parsed is, used when recovering from an error
+     */
+    private int depth;
+    /**
+     * Most statement frames the Parser has had on its stack at once since reset, how deeply ifs, whiles and blocks nest
+     */
+    private int maxStmtDepth;
+    /**
+     * Most expression frames the Parser has had on its stack at once since reset, how deeply one expression nests
+     */
+    private int maxExprDepth;
+    /**
+     * Where the nodes of the AST are built, reused from one parse to the next
+     */
+    private final AstArena arena = new AstArena();
+
+    /** What an expression frame does with the value of the expression it is waiting on: close a parenthesis */
+    private static final byte AFTER_PAREN = 0;
+    /** What an expression frame does with the value of the expression it is waiting on: apply a unary operator */
+    private static final byte AFTER_UNARY = 1;
+    /** What an expression frame does with the value of the expression it is waiting on: apply a binary operator */
+    private static final byte AFTER_BINARY = 2;
+    /** What a statement frame does with the statement it is waiting on: it is the body of an if */
+    private static final byte IF_THEN = 0;
+    /** What a statement frame does with the statement it is waiting on: it is the else of an if */
+    private static final byte IF_ELSE = 1;
+    /** What a statement frame does with the statement it is waiting on: it is the body of a while */
+    private static final byte WHILE_BODY = 2;
+    /** What a statement frame does with the statement it is waiting on: it is the first statement in a block */
+    private static final byte BLOCK_FIRST = 3;
+    /** What a statement frame does with the statement it is waiting on: it is a later statement in a block */
+    private static final byte BLOCK_NEXT = 4;
+    /** All node types, indexed by ordinal, for turning the node kinds in the tables back into NodeTypes */
+    private static final NodeType[] NODE_TYPES = NodeType.values();
+    /** What a token starting an operand is: not an operand at all */
+    private static final byte PRIMARY_NONE = 0;
+    /** What a token starting an operand is: an identifier, integer or String leaf */
+    private static final byte PRIMARY_LEAF = 1;
+    /** What a token starting an operand is: an opening parenthesis */
+    private static final byte PRIMARY_PAREN = 2;
+    /** What a token starting an operand is: a unary operator */
+    private static final byte PRIMARY_UNARY = 3;
+    /** What each token type is at the start of an operand, PRIMARY_NONE to PRIMARY_UNARY, indexed by ordinal */
+    private static final byte[] PRIMARY = new byte[TokenType.values().length];
+    /** Precedence of each unary operator, indexed by ordinal */
+    private static final byte[] UNARY_PREC = new byte[TokenType.values().length];
+    /** NodeType ordinal of each unary operator, indexed by ordinal */
+    private static final byte[] UNARY_NODE = new byte[TokenType.values().length];
+    /** Precedence of each binary operator, indexed by ordinal, -1 for tokens that aren't one so they always stop */
+    private static final byte[] BINARY_PREC = new byte[TokenType.values().length];
+    /**
+     * Lowest precedence the right operand of each binary operator accepts, indexed by ordinal. The same as its own
+     * precedence when it is right associative, one more when it is left associative
+     */
+    private static final byte[] BINARY_RIGHT_PREC = new byte[TokenType.values().length];
+    /** NodeType ordinal of each binary operator, indexed by ordinal */
+    private static final byte[] BINARY_NODE = new byte[TokenType.values().length];
+
+    static {
+        for (TokenType type : TokenType.values()) {
+            int i = type.ordinal();
+            BINARY_PREC[i] = -1;
+            if (type == TokenType.Identifier || type == TokenType.Integer || type == TokenType.String) {
+                PRIMARY[i] = PRIMARY_LEAF;
+            } else if (type == TokenType.LeftParen) {
+                PRIMARY[i] = PRIMARY_PAREN;
+            } else if (type.isUnary()) {
+                PRIMARY[i] = PRIMARY_UNARY;
+                UNARY_PREC[i] = (byte) type.getPrecedence();
+                UNARY_NODE[i] = (byte) type.getNodeType().ordinal();
+            }
+            if (type.isBinary()) {
+                setBinary(i, type);
+            }
+        }
+        //the Lexer can only guess that a - is a negation, as it does after a ), so after an operand it subtracts
+        setBinary(TokenType.Op_negate.ordinal(), TokenType.Op_subtract);
+    }
+
+    /**
+     * Fills in the binary operator tables for one token type
+     * @param i ordinal of the token type
+     * @param op binary operator it stands for
+     */
+    private static void setBinary(int i, TokenType op) {
+        BINARY_PREC[i] = (byte) op.getPrecedence();
+        BINARY_RIGHT_PREC[i] = (byte) (op.isRightAssoc() ? op.getPrecedence() : op.getPrecedence() + 1);
+        BINARY_NODE[i] = (byte) op.getNodeType().ordinal();
+    }
+
+    /**
+     * Explicit stack for expr, one frame per expression it would otherwise have recursed into. Each frame holds the
+     * lowest precedence it accepts, the left operand parsed so far, and what to do once the inner expression is done
+     */
+    private int[] exprPrec = new int[16], exprResult = new int[16], exprOp = new int[16];
+    /** Action of each expression frame, AFTER_PAREN, AFTER_UNARY or AFTER_BINARY, with its NodeType ordinal in exprOp */
+    private byte[] exprAction = new byte[16];
+    /**
+     * Explicit stack for stmt, one frame per if, while or block being parsed around the current statement. Each frame
+     * holds its kind and up to two nodes already parsed, such as the condition and the then part of an if
+     */
+    private int[] stmtFirst = new int[16], stmtSecond = new int[16];
+    /** Kind of each statement frame, IF_THEN, IF_ELSE, WHILE_BODY, BLOCK_FIRST or BLOCK_NEXT */
+    private byte[] stmtKind = new byte[16];
+
+    /**
+     * Thrown once an error has been reported, to unwind back to the statement being parsed so it can resync
+     */
+    private static class ParseError extends RuntimeException {
+        /** Version of the serialized form */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor for a ParseError, which skips the stack trace since it is always caught inside the Parser
+         */
+        ParseError() {
+            super(null, null, false, false);
+        }
+    }
 
     /**
      * Inner class to create Node objects
@@ -45,6 +161,10 @@ class Parser {
          * The value of this nude
          */
         public String value;
+        /**
+         * SymbolTable id of the value, for Identifier and String leaves, -1 for all other nodes
+         */
+        public int symbol = -1;
 
         /**
          * Default node creator, initializes all values to null
@@ -100,147 +220,17 @@ class Parser {
         public static Node make_leaf(NodeType nodetype, String value) {
             return new Node(nodetype, null, null, value);
         }
-    }
-
-    /**
-     * Private inner class to create Token object
-     */
-    static class Token {
-        /**
-         * The type of token; will be set based on an Enum of TokenTypes
-         */
-        public TokenType tokentype;
-        /**
-         * Value that this token will hold
-         */
-        public String value;
-        /**
-         * Line that this token is found on
-         */
-        public int line;
-        /**
-         * Position that this token is found in
-         */
-        public int pos;
 
         /**
-         * Constructor for a Token object
-         * @param token Type of Token for this object
-         * @param value Value that this token will hold
-         * @param line Line that this token can be found on
-         * @param pos Position that this token can be found in
-         */
-        Token(TokenType token, String value, int line, int pos) {
-            this.tokentype = token; this.value = value; this.line = line; this.pos = pos;
-        }
-        @Override
-        public String toString() {
-            return String.format("%5d  %5d %-15s %s", this.line, this.pos, this.tokentype, this.value);
-        }
-    }
-
-    /**
-     * Enum for preset TokenTypes that will be encountered within our subset of C code
-     */
-    static enum TokenType {
-        End_of_input(false, false, false, -1, NodeType.nd_None),
-        Op_multiply(false, true, false, 13, NodeType.nd_Mul),
-        Op_divide(false, true, false, 13, NodeType.nd_Div),
-        Op_mod(false, true, false, 13, NodeType.nd_Mod),
-        Op_add(false, true, false, 12, NodeType.nd_Add),
-        Op_subtract(false, true, false, 12, NodeType.nd_Sub),
-        Op_negate(false, false, true, 14, NodeType.nd_Negate),
-        Op_not(false, false, true, 14, NodeType.nd_Not),
-        Op_less(false, true, false, 10, NodeType.nd_Lss),
-        Op_lessequal(false, true, false, 10, NodeType.nd_Leq),
-        Op_greater(false, true, false, 10, NodeType.nd_Gtr),
-        Op_greaterequal(false, true, false, 10, NodeType.nd_Geq),
-        Op_equal(false, true, true, 9, NodeType.nd_Eql),
-        Op_notequal(false, true, false, 9, NodeType.nd_Neq),
-        Op_assign(false, false, false, -1, NodeType.nd_Assign),
-        Op_and(false, true, false, 5, NodeType.nd_And),
-        Op_or(false, true, false, 4, NodeType.nd_Or),
-        Keyword_if(false, false, false, -1, NodeType.nd_If),
-        Keyword_else(false, false, false, -1, NodeType.nd_None),
-        Keyword_while(false, false, false, -1, NodeType.nd_While),
-        Keyword_print(false, false, false, -1, NodeType.nd_None),
-        Keyword_putc(false, false, false, -1, NodeType.nd_None),
-        LeftParen(false, false, false, -1, NodeType.nd_None),
-        RightParen(false, false, false, -1, NodeType.nd_None),
-        LeftBrace(false, false, false, -1, NodeType.nd_None),
-        RightBrace(false, false, false, -1, NodeType.nd_None),
-        Semicolon(false, false, false, -1, NodeType.nd_None),
-        Comma(false, false, false, -1, NodeType.nd_None),
-        Identifier(false, false, false, -1, NodeType.nd_Ident),
-        Integer(false, false, false, -1, NodeType.nd_Integer),
-        String(false, false, false, -1, NodeType.nd_String);
-
-        /**
-         * The precedence that this TokenType holds
-         */
-        private final int precedence;
-        /**
-         * Boolean whether this TokenType is right associative
-         */
-        private final boolean right_assoc;
-        /**
-         * Boolean value whether this TokenType is a binary operator
-         */
-        private final boolean is_binary;
-        /**
-         * Boolean value whether this TokenType is a unary operator
-         */
-        private final boolean is_unary;
-        /**
-         * Type of node this TokenType is
-         */
-        private final NodeType node_type;
-
-        /**
-         * Consturctor for a TokenType object
-         * @param right_assoc Boolean, dependent on if this TokenType is right associative
-         * @param is_binary Boolean, dependent on if this TokenType is binary
-         * @param is_unary Boolean, dependent on if this TokenType is unary
-         * @param precedence Precedence that this TokenType holds
-         * @param node NodeType that this TokenType is
+         * Makes a leaf node from a Token, sharing its interned value and SymbolTable id rather than copying the text
+         * @param token Identifier, Integer or String Token to make the leaf from
+         * @return a new leaf node
          */
-        TokenType(boolean right_assoc, boolean is_binary, boolean is_unary, int precedence, NodeType node) {
-            this.right_assoc = right_assoc;
-            this.is_binary = is_binary;
-            this.is_unary = is_unary;
-            this.precedence = precedence;
-            this.node_type = node;
+        public static Node make_leaf(Lexer.Token token) {
+            Node leaf = new Node(token.tokentype.getNodeType(), null, null, token.value);
+            leaf.symbol = token.symbol;
+            return leaf;
         }
-
-        /**
-         * Getter method for right_assoc attribute
-         * @return right_assoc
-         */
-        boolean isRightAssoc() { return this.right_assoc; }
-
-        /**
-         * Getter method for is_binary attribute
-         * @return is_binary
-         */
-        boolean isBinary() { return this.is_binary; }
-
-        /**
-         * Getter method for is_unary attribute
-         * @return is_unary
-         */
-        boolean isUnary() { return this.is_unary; }
-
-        /**
-         * Getter method for precedence attribute
-         * @return precedence
-         */
-        int getPrecedence() { return this.precedence; }
-
-        /**
-         * Getter method for node_type attribute
-         * @return node_type
-         */
-        NodeType getNodeType() { return this.node_type; }
     }
 
     /**
@@ -271,90 +261,203 @@ class Parser {
     }
 
     /**
-     * Method to produce an error that halts the program and produces output to terminal
+     * Method to report an error to the Diagnostics and abandon the current statement. Parsing picks up again at the
+     * next Semicolon or RightBrace, unless the Diagnostics have had too many errors and throw a CompileException
      * @param line line that this error was found on
      * @param pos position that this error was found in
      * @param msg additional information that would be outputted
      */
-    static void error(int line, int pos, String msg) {
-        if (line > 0 && pos > 0) {
-            System.out.printf("%s in line %d, pos %d\n", msg, line, pos);
-        } else {
-            System.out.println(msg);
-        }
-        System.exit(1);
+    void error(int line, int pos, String msg) {
+        this.diagnostics.error(line, pos, msg);
+        throw new ParseError();
     }
 
     /**
-     * Constructor for a Parser object
-     * @param source a list of Tokens
+     * Constructor for a Parser object that pulls its tokens from a stream, such as a Lexer
+     * @param source stream of Tokens
+     */
+    Parser(TokenStream source) {
+        this(source, new Diagnostics());
+    }
+
+    /**
+     * Constructor for a Parser object that reports its errors to the given Diagnostics and recovers from them
+     * @param source stream of Tokens
+     * @param diagnostics where to report errors
+     */
+    Parser(TokenStream source, Diagnostics diagnostics) {
+        reset(source, diagnostics);
+    }
+
+    /**
+     * Points this Parser at a new stream of tokens, so one Parser can be reused for many compiles
+     * @param source stream of Tokens
+     * @param diagnostics where to report errors
      */
-    Parser(List<Token> source) {
+    void reset(TokenStream source, Diagnostics diagnostics) {
         this.source = source;
         this.token = null;
-        this.position = 0;
+        this.diagnostics = diagnostics;
+        this.depth = 0;
+        this.maxStmtDepth = 0;
+        this.maxExprDepth = 0;
+        //share the Lexer's SymbolTable when there is one, so leaves can use the ids it already handed out
+        SymbolTable symbols = source.getSymbols();
+        this.arena.reset(symbols != null ? symbols : new SymbolTable());
+    }
+
+    /**
+     * Getter for the arena the AST is built in, which is emptied again by reset
+     * @return the AstArena
+     */
+    AstArena getArena() {
+        return this.arena;
+    }
+
+    /**
+     * Getter for how deeply statements have nested since reset, counting every if, while and block around them
+     * @return most statement frames on the stack at once
+     */
+    int getMaxStmtDepth() {
+        return this.maxStmtDepth;
+    }
+
+    /**
+     * Getter for how deeply expressions have nested since reset, counting every parenthesis, unary and binary
+     * operator still waiting on its operand
+     * @return most expression frames on the stack at once
+     */
+    int getMaxExprDepth() {
+        return this.maxExprDepth;
+    }
+
+    /**
+     * Constructor for a Parser object
+     * @param source a list of Tokens
+     */
+    Parser(List<Lexer.Token> source) {
+        this(TokenStream.of(source));
     }
 
     /**
      * method to move the current token forward one and to return the next token
      * @return next token
      */
-    Token getNextToken() {
-        this.token = this.source.get(this.position++);
+    Lexer.Token getNextToken() {
+        this.token = this.source.next();
         return this.token;
     }
 
     /**
-     * method to parse any expressions encountered
+     * method to parse any expressions encountered. Works like precedence climbing, but keeps its own stack of
+     * frames instead of recursing, so deeply nested expressions can't overflow the Java stack. Everything it needs
+     * to know about a token is looked up in the byte tables by ordinal. A left associative chain like a - b - c is
+     * folded in a loop within one frame, and a new frame is only pushed when an operand is a parenthesis or unary
+     * operator, or when the operator after it binds tighter
      * @param p precedence of this expression
-     * @return result of the parse
+     * @return index of the resulting node in the arena
      */
-    Node expr(int p) {
-        // create nodes for token types such as LeftParen, Op_add, Op_subtract, etc.
-        // be very careful here and be aware of the precedence rules for the AST tree
-
-        Node result = null, node;
-        TokenType op;
-        int precLvl;
-
-        if (this.token.tokentype == TokenType.LeftParen) {
-            result = paren_expr();
-
-        } else if (this.token.tokentype == TokenType.Op_not) {
-            op = this.token.tokentype;
-            getNextToken();
-            Node oneNode = expr(op.getPrecedence());
-            result = Node.make_node(op.getNodeType(), oneNode, null);
-        } else if (this.token.tokentype == TokenType.Identifier || this.token.tokentype == TokenType.Integer) {
-            result = Node.make_leaf(this.token.tokentype.getNodeType(), this.token.value);
+    int expr(int p) {
+        int sp = pushExpr(0, p);
+        int top = 0;
+        int value;
+
+        while (true) {
+            // operand: a leaf, or a parenthesis or unary operator that opens a frame for what follows it
+            int type = this.token.tokentype.ordinal();
+            byte primary = PRIMARY[type];
+            if (primary == PRIMARY_PAREN || primary == PRIMARY_UNARY) {
+                getNextToken();
+                this.exprAction[top] = primary == PRIMARY_PAREN ? AFTER_PAREN : AFTER_UNARY;
+                this.exprOp[top] = UNARY_NODE[type];
+                sp = pushExpr(sp, primary == PRIMARY_PAREN ? 0 : UNARY_PREC[type]);
+                top = sp - 1;
+                continue;
+            }
+            if (primary != PRIMARY_LEAF) {
+                error(this.token.line, this.token.pos, "expr: Expecting a primary, found: '" + this.token.tokentype + "'");
+            }
+            value = this.arena.leaf(this.token);
             getNextToken();
-        }
-
-        while (this.token.tokentype.is_binary && this.token.tokentype.getPrecedence() >= p) {
-                op = this.token.tokentype;
-                this.getNextToken();
 
-                if (op.isRightAssoc()) {
-                    precLvl = op.getPrecedence();
-                } else {
-                    precLvl = op.getPrecedence() + 1;
+            // operators, until one binds too loosely for the frame on top, which is then done
+            while (true) {
+                type = this.token.tokentype.ordinal();
+                if (BINARY_PREC[type] >= this.exprPrec[top]) {
+                    getNextToken();
+                    if (PRIMARY[this.token.tokentype.ordinal()] == PRIMARY_LEAF) {
+                        int leaf = this.arena.leaf(this.token);
+                        getNextToken();
+                        if (BINARY_PREC[this.token.tokentype.ordinal()] < BINARY_RIGHT_PREC[type]) {
+                            // nothing binds the leaf tighter, so it is the right operand, the common case in a chain
+                            value = this.arena.node(NODE_TYPES[BINARY_NODE[type]], value, leaf);
+                            continue;
+                        }
+                        this.exprResult[top] = value;
+                        this.exprAction[top] = AFTER_BINARY;
+                        this.exprOp[top] = BINARY_NODE[type];
+                        sp = pushExpr(sp, BINARY_RIGHT_PREC[type]);
+                        top = sp - 1;
+                        value = leaf;
+                        continue;
+                    }
+                    this.exprResult[top] = value;
+                    this.exprAction[top] = AFTER_BINARY;
+                    this.exprOp[top] = BINARY_NODE[type];
+                    sp = pushExpr(sp, BINARY_RIGHT_PREC[type]);
+                    top = sp - 1;
+                    break;
                 }
-                Node rightNode = expr(precLvl);
-                result = Node.make_node(op.getNodeType(), result, rightNode);
 
+                // this frame's expression is done, hand its value to the frame waiting on it
+                sp--;
+                if (sp == 0) {
+                    return value;
+                }
+                top = sp - 1;
+                switch (this.exprAction[top]) {
+                    case AFTER_PAREN:
+                        expect("paren_expr", TokenType.RightParen);
+                        break;
+                    case AFTER_UNARY:
+                        value = this.arena.node(NODE_TYPES[this.exprOp[top]], value, AstArena.NIL);
+                        break;
+                    default:
+                        value = this.arena.node(NODE_TYPES[this.exprOp[top]], this.exprResult[top], value);
+                }
+            }
         }
+    }
 
-        return result;
+    /**
+     * Pushes a frame on the expression stack, growing it when it is full
+     * @param sp number of frames on the stack
+     * @param p lowest precedence the new frame accepts
+     * @return new number of frames
+     */
+    private int pushExpr(int sp, int p) {
+        if (sp == this.exprPrec.length) {
+            this.exprPrec = Arrays.copyOf(this.exprPrec, sp * 2);
+            this.exprResult = Arrays.copyOf(this.exprResult, sp * 2);
+            this.exprOp = Arrays.copyOf(this.exprOp, sp * 2);
+            this.exprAction = Arrays.copyOf(this.exprAction, sp * 2);
+        }
+        this.exprPrec[sp] = p;
+        this.exprResult[sp] = AstArena.NIL;
+        if (sp >= this.maxExprDepth) {
+            this.maxExprDepth = sp + 1;
+        }
+        return sp + 1;
     }
 
     /**
      * Method to handle the encounter of a parenthesis with a single expression inside
-     * @return node found within the parenthesis expression
+     * @return index of the node found within the parenthesis expression
      */
 
-    Node paren_expr() {
+    int paren_expr() {
         expect("paren_expr", TokenType.LeftParen);
-        Node node = expr(0);
+        int node = expr(0);
         expect("paren_expr", TokenType.RightParen);
         return node;
     }
@@ -373,114 +476,249 @@ class Parser {
     }
 
     /**
-     * Handles the parsing of a statement that is encountered by the program based on grammar rules
-     * @return the result of parsing of the statement
+     * Handles the parsing of a statement that is encountered by the program based on grammar rules. Statements nested
+     * in an if, while or block are parsed with an explicit stack of frames instead of by recursing, so deep nesting
+     * can't overflow the Java stack
+     * @return index of the resulting node in the arena, NIL for an empty statement
      */
-    Node stmt() {
+    int stmt() {
         // this one handles TokenTypes such as Keyword_if, Keyword_else, nd_If, Keyword_print, etc.
         // also handles while, end of file, braces
-        Node s, s2 = null, t = null, e, v;
-
-        switch(this.token.tokentype) {
-            case Keyword_if:
-                getNextToken();
-                e = paren_expr();
-                s = stmt();
-
-                if (this.token.tokentype == TokenType.Keyword_else)  {
-                    getNextToken();
-                    s2 = stmt();
-                }
-                Node sequenceNode = Node.make_node(NodeType.nd_Sequence, s, s2);
-                t = Node.make_node(NodeType.nd_If, e, sequenceNode);
-                break;
-
-            // case Keyword_print is incomplete; and does not function properly. Will fix during second opportunity.
-            case Keyword_print:
-                getNextToken();
-                expect("LeftParen", TokenType.LeftParen);
+        int s, s2, t = AstArena.NIL, e, v;
+        int sp = 0;
+        boolean start = true;
 
-                 s = null;
-
-
-                if (this.token.tokentype == TokenType.String) {
-                    s = Node.make_node(NodeType.nd_Prts, Node.make_leaf(NodeType.nd_String, this.token.value));
-                    getNextToken();
-                }
+        while (true) {
+            try {
+                if (start) {
+                    s2 = AstArena.NIL;
+                    t = AstArena.NIL;
+                    switch (this.token.tokentype) {
+                        case Keyword_if:
+                            getNextToken();
+                            e = paren_expr();
+                            sp = pushStmt(sp, IF_THEN, e);
+                            continue;
+
+                        case Keyword_print:
+                            getNextToken();
+                            expect("LeftParen", TokenType.LeftParen);
+
+                            s = print_arg();
+
+                            while (this.token.tokentype == TokenType.Comma) {
+                                getNextToken();
+                                s2 = print_arg();
+                                s = this.arena.node(NodeType.nd_Sequence, s, s2);
+
+                            }
+
+                            expect("RightParen", TokenType.RightParen);
+                            expect("Semicolon", TokenType.Semicolon);
+
+                            // Create the print node
+                            t = this.arena.node(NodeType.nd_Sequence, AstArena.NIL, s);
+                            break;
+
+
+
+                        case Keyword_putc:
+                            getNextToken();
+                            e = paren_expr();
+                            t = this.arena.node(NodeType.nd_Prtc, e, AstArena.NIL);
+                            expect("Semicolon", TokenType.Semicolon);
+                            break;
+
+
+                        case Keyword_while:
+                            getNextToken();
+                            e = paren_expr();
+                            sp = pushStmt(sp, WHILE_BODY, e);
+                            continue;
+
+                        case Semicolon:
+                            getNextToken();
+                            break;
+
+                        case Identifier:
+                            Lexer.Token name = this.token;
+                            getNextToken();
+
+                            if (this.token.tokentype == TokenType.Op_assign) {
+                                getNextToken();
+                                v = this.arena.leaf(name);
+                                e = expr(0);
+                                t = this.arena.node(NodeType.nd_Assign, v, e);
+                            }
+                            expect("Semicolon", TokenType.Semicolon);
+                            break;
+
+                        case LeftBrace:
+                            getNextToken();
+                            if (this.token.tokentype == TokenType.RightBrace) {
+                                // an empty block is as good as an empty statement
+                                getNextToken();
+                                break;
+                            }
+                            this.depth++;
+                            sp = pushStmt(sp, BLOCK_FIRST, AstArena.NIL);
+                            continue;
+
+                        default:
+                            error(this.token.line, this.token.pos, "stmt: Expecting start of statement, found: '" + this.token.tokentype + "'");
 
-                while (this.token.tokentype == TokenType.Comma) {
-                    getNextToken();
-                    Node printNode = null;
 
-                    if (this.token.tokentype == TokenType.String) {
-                        printNode = Node.make_node(NodeType.nd_Prts, Node.make_leaf(NodeType.nd_String, this.token.value));
-                        getNextToken();
-                    } else if (this.token.tokentype == TokenType.Identifier || this.token.tokentype == TokenType.Integer) {
-                        s2 = expr(0);
-                        printNode = Node.make_node(NodeType.nd_Prti, s2);
                     }
-                    s = Node.make_node(NodeType.nd_Sequence, s, printNode);
-
+                    start = false;
                 }
 
-                expect("RightParen", TokenType.RightParen);
-                expect("Semicolon", TokenType.Semicolon);
-
-                // Create the print node
-                t = Node.make_node(NodeType.nd_Sequence, null, s);
-                break;
-
-
-
-            case Keyword_putc:
-                getNextToken();
-                e = paren_expr();
-                t = Node.make_node(NodeType.nd_Prtc, e, null);
-                expect("Semicolon", TokenType.Semicolon);
-                break;
+                // the statement t is done, hand it to the frame waiting on it
+                if (sp == 0) {
+                    return t;
+                }
+                int top = sp - 1;
+                switch (this.stmtKind[top]) {
+                    case IF_THEN:
+                        if (this.token.tokentype == TokenType.Keyword_else) {
+                            getNextToken();
+                            this.stmtKind[top] = IF_ELSE;
+                            this.stmtSecond[top] = t;
+                            start = true;
+                            continue;
+                        }
+                        t = this.arena.node(NodeType.nd_If, this.stmtFirst[top], this.arena.node(NodeType.nd_Sequence, t, AstArena.NIL));
+                        sp--;
+                        break;
+                    case IF_ELSE:
+                        t = this.arena.node(NodeType.nd_If, this.stmtFirst[top], this.arena.node(NodeType.nd_Sequence, this.stmtSecond[top], t));
+                        sp--;
+                        break;
+                    case WHILE_BODY:
+                        t = this.arena.node(NodeType.nd_While, this.stmtFirst[top], t);
+                        sp--;
+                        break;
+                    default:
+                        s = this.stmtKind[top] == BLOCK_FIRST ? t : this.arena.node(NodeType.nd_Sequence, this.stmtFirst[top], t);
+                        if (this.token.tokentype != TokenType.RightBrace && this.token.tokentype != TokenType.End_of_input) {
+                            this.stmtKind[top] = BLOCK_NEXT;
+                            this.stmtFirst[top] = s;
+                            start = true;
+                            continue;
+                        }
+                        sp--;
+                        this.depth--;
+                        expect("RightBrace", TokenType.RightBrace);
+                        t = this.arena.node(NodeType.nd_Sequence, AstArena.NIL, s);
+                }
+            } catch (ParseError err) {
+                // each statement in a block is parsed as with statement(), so the innermost block takes the error,
+                // dropping the if and while frames inside it, and resyncs
+                int block = sp - 1;
+                while (block >= 0 && this.stmtKind[block] != BLOCK_FIRST && this.stmtKind[block] != BLOCK_NEXT) {
+                    block--;
+                }
+                if (block < 0) {
+                    throw err;
+                }
+                sp = block + 1;
+                synchronize();
+                t = AstArena.NIL;
+                start = false;
+            }
+        }
+    }
 
+    /**
+     * Parses one argument of a print, a String or an expression whose value is printed as a number. Whether an
+     * expression starts here is looked up in the same PRIMARY table expr uses, so it takes every unary operator too
+     * @return index of the Prts or Prti node, NIL if there is no argument here
+     */
+    int print_arg() {
+        if (this.token.tokentype == TokenType.String) {
+            int leaf = this.arena.leaf(this.token);
+            getNextToken();
+            return this.arena.node(NodeType.nd_Prts, leaf, AstArena.NIL);
+        }
+        if (PRIMARY[this.token.tokentype.ordinal()] != PRIMARY_NONE) {
+            return this.arena.node(NodeType.nd_Prti, expr(0), AstArena.NIL);
+        }
+        return AstArena.NIL;
+    }
 
-            case Keyword_while:
-                getNextToken();
-                e = paren_expr();
-                s = stmt();
-                t = Node.make_node(NodeType.nd_While, e, s);
-                break;
+    /**
+     * Pushes a frame on the statement stack, growing it when it is full
+     * @param sp number of frames on the stack
+     * @param kind IF_THEN, WHILE_BODY or BLOCK_FIRST
+     * @param first node the frame holds on to, such as the condition of an if
+     * @return new number of frames
+     */
+    private int pushStmt(int sp, byte kind, int first) {
+        if (sp == this.stmtKind.length) {
+            this.stmtKind = Arrays.copyOf(this.stmtKind, sp * 2);
+            this.stmtFirst = Arrays.copyOf(this.stmtFirst, sp * 2);
+            this.stmtSecond = Arrays.copyOf(this.stmtSecond, sp * 2);
+        }
+        this.stmtKind[sp] = kind;
+        this.stmtFirst[sp] = first;
+        if (sp >= this.maxStmtDepth) {
+            this.maxStmtDepth = sp + 1;
+        }
+        return sp + 1;
+    }
 
-            case Semicolon:
-                getNextToken();
-                break;
+    /**
+     * Parses a statement, and if it has an error, skips ahead to where the next statement should start
+     * @return index of the resulting node in the arena, NIL if it had an error
+     */
+    int statement() {
+        try {
+            return stmt();
+        } catch (ParseError e) {
+            synchronize();
+            return AstArena.NIL;
+        }
+    }
 
-            case Identifier:
-                String name = this.token.value;
+    /**
+     * Skips tokens after an error until just past a Semicolon, or up to the RightBrace closing the current block.
+     * At the top level there is no block to close, so a stray RightBrace is skipped too
+     */
+    void synchronize() {
+        while (this.token.tokentype != TokenType.End_of_input) {
+            if (this.token.tokentype == TokenType.Semicolon) {
                 getNextToken();
-
-                if (this.token.tokentype == TokenType.Op_assign) {
+                return;
+            }
+            if (this.token.tokentype == TokenType.RightBrace) {
+                if (this.depth == 0) {
                     getNextToken();
-                    v = Node.make_leaf(NodeType.nd_Ident, name);
-                    e = expr(0);
-                    t = Node.make_node(NodeType.nd_Assign, v, e);
                 }
-                expect("Semicolon", TokenType.Semicolon);
-                break;
-
-            case LeftBrace:
-                getNextToken();
-                s = stmt();
-                while (this.token.tokentype != TokenType.RightBrace) {
-                    s2 = stmt();
-
-                    s = Node.make_node(NodeType.nd_Sequence, s, s2);
-
-                }
-                expect("RightBrace", TokenType.RightBrace);
-                t = Node.make_node(NodeType.nd_Sequence, null, s);
-                break;
-
+                return;
+            }
+            getNextToken();
+        }
+    }
 
+    /**
+     * Checks whether there is another top-level statement left to parse
+     * @return true if the input hasn't reached End_of_input yet
+     */
+    boolean hasNextStatement() {
+        if (this.token == null) {
+            getNextToken();
         }
+        return this.token.tokentype != TokenType.End_of_input;
+    }
 
-        return t;
+    /**
+     * Parses just the next top-level statement, so its AST can be used before the rest of the input is lexed
+     * @return AST of the next statement, may be null for an empty statement
+     */
+    Node nextStatement() {
+        hasNextStatement();
+        //each statement is handed out as its own tree, so the arena only ever needs to hold one
+        this.arena.reset(this.arena.getSymbols());
+        return this.arena.toNode(statement());
     }
 
     /**
@@ -488,10 +726,17 @@ class Parser {
      * @return completed result
      */
     Node parse() {
-        Node t = null;
-        getNextToken();
-        while (this.token.tokentype != TokenType.End_of_input) {
-            t = Node.make_node(NodeType.nd_Sequence, t, stmt());
+        return this.arena.toNode(parseArena());
+    }
+
+    /**
+     * Parses the series of tokens into the arena only, without building any Node objects
+     * @return index of the root node in getArena(), NIL for an empty program
+     */
+    int parseArena() {
+        int t = AstArena.NIL;
+        while (hasNextStatement()) {
+            t = this.arena.node(NodeType.nd_Sequence, t, statement());
         }
         return t;
     }
@@ -503,126 +748,146 @@ class Parser {
      * @return String output of the AST tree
      */
     String printAST(Node t, StringBuilder sb) {
-        int i = 0;
-        if (t == null) {
-            sb.append(";");
-            sb.append("\n");
-            System.out.println(";");
-        } else {
-            sb.append(t.nt);
-            System.out.printf("%-14s", t.nt);
-            if (t.nt == NodeType.nd_Ident || t.nt == NodeType.nd_Integer || t.nt == NodeType.nd_String) {
-                sb.append(" " + t.value);
-                sb.append("\n");
-                System.out.println(" " + t.value);
+        return printAST(t, sb, false);
+    }
+
+    /**
+     * Writes out the AST based on the parsing of the tokens, optionally echoing it to the console
+     * @param t node that holds the tokens
+     * @param sb creates the String of nodes
+     * @param echo true to also print the text on the console
+     * @return String output of the AST tree
+     */
+    String printAST(Node t, StringBuilder sb, boolean echo) {
+        OutputSink out = OutputSink.of(sb).echo(echo);
+        printAST(t, out);
+        out.flush();
+        return sb.toString();
+    }
+
+    /**
+     * Writes out the AST based on the parsing of the tokens, one node per line in preorder, with ";" for a missing
+     * child
+     * @param t node that holds the tokens
+     * @param out where to write, left open and not flushed
+     */
+    void printAST(Node t, OutputSink out) {
+        //preorder walk with an explicit stack, right child pushed first so the left one comes out first
+        Node[] stack = new Node[16];
+        int sp = 0;
+        stack[sp++] = t;
+        while (sp > 0) {
+            t = stack[--sp];
+            if (t == null) {
+                out.append(";\n");
             } else {
-                sb.append("\n");
-                System.out.println();
-                printAST(t.left, sb);
-                printAST(t.right, sb);
+                out.append(t.nt.toString());
+                if (t.nt == NodeType.nd_Ident || t.nt == NodeType.nd_Integer || t.nt == NodeType.nd_String) {
+                    //String literals are kept unquoted in the tokens, so put the quotes back for display
+                    out.append(' ');
+                    if (t.nt == NodeType.nd_String) {
+                        out.append('"').append(t.value).append('"');
+                    } else {
+                        out.append(t.value);
+                    }
+                    out.append('\n');
+                } else {
+                    out.append('\n');
+                    if (sp + 2 > stack.length) {
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    }
+                    stack[sp++] = t.right;
+                    stack[sp++] = t.left;
+                }
             }
-
         }
+    }
+
+    /**
+     * Writes out an AST built in the arena, in the same format as printAST for Nodes
+     * @param root index of the root node in getArena()
+     * @param sb creates the String of nodes
+     * @param echo true to also print the text on the console
+     * @return String output of the AST tree
+     */
+    String printAST(int root, StringBuilder sb, boolean echo) {
+        OutputSink out = OutputSink.of(sb).echo(echo);
+        this.arena.printAST(root, out);
+        out.flush();
         return sb.toString();
     }
 
+    /**
+     * Writes out an AST built in the arena, in the same format as printAST for Nodes
+     * @param root index of the root node in getArena()
+     * @param out where to write, left open and not flushed
+     */
+    void printAST(int root, OutputSink out) {
+        this.arena.printAST(root, out);
+    }
+
     /**
      * Outputs the results of parsing of the tokens to a file
      * @param result results of the parsing of the tokens
+     * @param filename name of the file to write to, replaces extension with .par
      */
-    static void outputToFile(String result) {
-        try {
-            FileWriter myWriter = new FileWriter("src/main/resources/count.par");
-            myWriter.write(result);
-            myWriter.close();
-            System.out.println("Successfully wrote to the file.");
+    static void outputToFile(String result, String filename) {
+        try (OutputSink out = OutputSink.toFile(filename, ".par")) {
+            out.append(result);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        System.out.println("Successfully wrote to the file.");
     }
 
     /**
-     * Runnable main method that allows program to execute and calls methods as needed
+     * Rebuilds a Token from one line of a .lex debug dump, in the format written by Lexer.Token.toString
+     * @param str one line of a .lex file
+     * @return the Token that line describes
      */
+    static Lexer.Token parseTokenLine(String str) {
+        //line, pos, token type, then everything left over is the value, kept whole so inner spaces survive
+        String[] fields = str.trim().split("\\s+", 4);
+        int line = Integer.parseInt(fields[0]);
+        int pos = Integer.parseInt(fields[1]);
+        TokenType type = TokenType.valueOf(fields[2]);
+        String value = fields.length > 3 ? fields[3] : "";
+        if (type == TokenType.String && value.length() >= 2) {
+            value = value.substring(1, value.length() - 1);
+        }
+        return new Lexer.Token(type, value, line, pos);
+    }
 
+    /**
+     * Runnable main method that parses a .lex debug dump back into tokens and writes the AST to a matching .par file.
+     * Option --echo also prints the AST on the console
+     * @param args Command line arguments, optionally --echo and the name of the .lex file to read, defaults to count.lex
+     */
     public static void main(String[] args) {
-        if (1==1) {
-            try {
-                String value, token;
-                String result = " ";
-                StringBuilder sb = new StringBuilder();
-                int line, pos;
-                Token t;
-                boolean found;
-                List<Token> list = new ArrayList<>();
-                Map<String, TokenType> str_to_tokens = new HashMap<>();
-
-
-                str_to_tokens.put("LeftParen",TokenType.LeftParen );
-                str_to_tokens.put("RightParen",TokenType.RightParen );
-                str_to_tokens.put("Identifier",TokenType.Identifier );
-                str_to_tokens.put("Integer",TokenType.Integer );
-                str_to_tokens.put("Comma",TokenType.Comma );
-                str_to_tokens.put("Keyword_if",TokenType.Keyword_if );
-                str_to_tokens.put("Keyword_else",TokenType.Keyword_else );
-                str_to_tokens.put("Keyword_print",TokenType.Keyword_print );
-                str_to_tokens.put("Keyword_putc",TokenType.Keyword_putc );
-                str_to_tokens.put("Keyword_while",TokenType.Keyword_while );
-                str_to_tokens.put("LeftBrace",TokenType.LeftBrace );
-                str_to_tokens.put("Op_add",TokenType.Op_add );
-                str_to_tokens.put("Op_subtract",TokenType.Op_subtract );
-                str_to_tokens.put("Op_and",TokenType.Op_and );
-                str_to_tokens.put("Op_assign",TokenType.Op_assign );
-                str_to_tokens.put("Op_greater",TokenType.Op_greater );
-                str_to_tokens.put("Op_greaterequal",TokenType.Op_greaterequal );
-                str_to_tokens.put("Op_equal",TokenType.Op_equal );
-                str_to_tokens.put("Op_lessequal",TokenType.Op_lessequal );
-                str_to_tokens.put("Op_less",TokenType.Op_less );
-                str_to_tokens.put("Op_mod",TokenType.Op_mod );
-                str_to_tokens.put("Op_multiply",TokenType.Op_multiply );
-                str_to_tokens.put("Op_divide",TokenType.Op_divide );
-                str_to_tokens.put("Op_negate",TokenType.Op_negate );
-                str_to_tokens.put("Op_not",TokenType.Op_not );
-                str_to_tokens.put("Op_notequal",TokenType.Op_notequal );
-                str_to_tokens.put("Op_or",TokenType.Op_or );
-                str_to_tokens.put("RightBrace",TokenType.RightBrace );
-                str_to_tokens.put("String",TokenType.String );
-                str_to_tokens.put("Semicolon",TokenType.Semicolon );
-                str_to_tokens.put("End_of_input", TokenType.End_of_input);
-
-                // finish creating your Hashmap. I left one as a model
-
-                Scanner s = new Scanner(new File("src/main/resources/count.lex"));
-                String source = " ";
-                while (s.hasNext()) {
-                    String str = s.nextLine();
-                    StringTokenizer st = new StringTokenizer(str);
-                    line = Integer.parseInt(st.nextToken());
-                    pos = Integer.parseInt(st.nextToken());
-                    token = st.nextToken();
-                    value = "";
-                    while (st.hasMoreTokens()) {
-                        value += st.nextToken() + " ";
-                    }
-                    found = false;
-                    if (str_to_tokens.containsKey(token)) {
-                        found = true;
-                        list.add(new Token(str_to_tokens.get(token), value, line, pos));
-                    }
-                    if (found == false) {
-                        throw new Exception("Token not found: '" + token + "'");
-                    }
+        List<String> argList = new ArrayList<>(Arrays.asList(args));
+        boolean echo = argList.remove("--echo");
+        String filename = argList.size() > 0 ? argList.get(0) : "count.lex";
+        try {
+            List<Lexer.Token> list = new ArrayList<>();
+            Scanner s = new Scanner(new File("src/main/resources/" + filename));
+            while (s.hasNext()) {
+                String str = s.nextLine();
+                if (!str.isBlank()) {
+                    list.add(parseTokenLine(str));
                 }
-                Parser p = new Parser(list);
-                result = p.printAST(p.parse(), sb);
-                outputToFile(result);
-            } catch (FileNotFoundException e) {
-                error(-1, -1, "Exception: " + e.getMessage());
-            } catch (Exception e) {
-                error(-1, -1, "Exception: " + e.getMessage());
             }
-        } else {
-            error(-1, -1, "No args");
+            s.close();
+            Parser p = new Parser(list);
+            try (OutputSink out = OutputSink.toFile(filename, ".par").echo(echo)) {
+                p.printAST(p.parse(), out);
+            }
+            System.out.println("Successfully wrote to the file.");
+        } catch (CompileException e) {
+            CompileException.fail(e.getMessage());
+        } catch (IOException e) {
+            CompileException.fail("Exception: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            CompileException.fail("Exception: Token not found: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,214 @@
+/**
+ * A compiled program for the RegisterVM: a flat int array of three-address instructions, the pool of Strings it
+ * prints, and the names of its variables. Instead of pushing and popping a stack, each instruction names the
+ * registers it reads and the one it writes. Variables live in the first registers, indexed by slot, and the
+ * registers after them hold the partial results of expressions.
+ *
+ * Besides the plain instructions there are forms that take their right operand as a constant, like ADDI for
+ * i = i + 1, and compare-and-branch instructions, like JGE for the test of while (i < n), that do a comparison and
+ * a jump in one dispatch. Jump targets are absolute positions in the code.
+ */
+class RegisterCode {
+    /** Stops the program */
+    static final int HALT = 0;
+    /** Sets register d to the constant: d imm */
+    static final int LOADI = 1;
+    /** Copies register a into register d: d a */
+    static final int MOV = 2;
+    /** Sets register d to a + b: d a b. The opcodes up to NE work the same way */
+    static final int ADD = 3;
+    /** d = a - b */
+    static final int SUB = 4;
+    /** d = a * b */
+    static final int MUL = 5;
+    /** d = a / b, rounding towards zero */
+    static final int DIV = 6;
+    /** d = a % b */
+    static final int MOD = 7;
+    /** d = 1 if a < b, otherwise 0 */
+    static final int LT = 8;
+    /** d = 1 if a <= b, otherwise 0 */
+    static final int LE = 9;
+    /** d = 1 if a > b, otherwise 0 */
+    static final int GT = 10;
+    /** d = 1 if a >= b, otherwise 0 */
+    static final int GE = 11;
+    /** d = 1 if a == b, otherwise 0 */
+    static final int EQ = 12;
+    /** d = 1 if a != b, otherwise 0 */
+    static final int NE = 13;
+    /** Like ADD with a constant for b: d a imm. Each opcode up to NEI is its plain one plus IMMEDIATE */
+    static final int ADDI = 14;
+    /** d = a - imm */
+    static final int SUBI = 15;
+    /** d = a * imm */
+    static final int MULI = 16;
+    /** d = a / imm */
+    static final int DIVI = 17;
+    /** d = a % imm */
+    static final int MODI = 18;
+    /** d = 1 if a < imm, otherwise 0 */
+    static final int LTI = 19;
+    /** d = 1 if a <= imm, otherwise 0 */
+    static final int LEI = 20;
+    /** d = 1 if a > imm, otherwise 0 */
+    static final int GTI = 21;
+    /** d = 1 if a >= imm, otherwise 0 */
+    static final int GEI = 22;
+    /** d = 1 if a == imm, otherwise 0 */
+    static final int EQI = 23;
+    /** d = 1 if a != imm, otherwise 0 */
+    static final int NEI = 24;
+    /** d = -a: d a */
+    static final int NEG = 25;
+    /** d = 1 if a is 0, otherwise 0: d a */
+    static final int NOT = 26;
+    /** Jumps to the target: target */
+    static final int JMP = 27;
+    /** Jumps to the target if register a is 0: a target */
+    static final int JZ = 28;
+    /** Jumps to the target if register a isn't 0: a target */
+    static final int JNZ = 29;
+    /** Jumps to the target if a < b: a b target. The opcodes up to JNE work the same way */
+    static final int JLT = 30;
+    /** Jumps if a <= b */
+    static final int JLE = 31;
+    /** Jumps if a > b */
+    static final int JGT = 32;
+    /** Jumps if a >= b */
+    static final int JGE = 33;
+    /** Jumps if a == b */
+    static final int JEQ = 34;
+    /** Jumps if a != b */
+    static final int JNE = 35;
+    /** Like JLT with a constant for b: a imm target. Each opcode up to JNEI is its plain one plus COMPARISONS */
+    static final int JLTI = 36;
+    /** Jumps if a <= imm */
+    static final int JLEI = 37;
+    /** Jumps if a > imm */
+    static final int JGTI = 38;
+    /** Jumps if a >= imm */
+    static final int JGEI = 39;
+    /** Jumps if a == imm */
+    static final int JEQI = 40;
+    /** Jumps if a != imm */
+    static final int JNEI = 41;
+    /** Prints register a as a char: a */
+    static final int PRTC = 42;
+    /** Prints register a as a number: a */
+    static final int PRTI = 43;
+    /** Prints the String at the index in the pool given by the operand: index */
+    static final int PRTS = 44;
+
+    /** Distance from a binary opcode to its form with a constant */
+    static final int IMMEDIATE = ADDI - ADD;
+    /** Number of comparisons, LT to NE, and the distance from a compare-and-branch opcode to its form with a constant */
+    static final int COMPARISONS = JLTI - JLT;
+
+    /** Name of each opcode, for disassembling */
+    private static final String[] NAMES = {
+            "halt", "loadi", "mov", "add", "sub", "mul", "div", "mod", "lt", "le", "gt", "ge", "eq", "ne",
+            "addi", "subi", "muli", "divi", "modi", "lti", "lei", "gti", "gei", "eqi", "nei", "neg", "not",
+            "jmp", "jz", "jnz", "jlt", "jle", "jgt", "jge", "jeq", "jne", "jlti", "jlei", "jgti", "jgei", "jeqi", "jnei",
+            "prtc", "prti", "prts"
+    };
+    /** How many operands each opcode takes */
+    private static final int[] OPERANDS = {
+            0, 2, 2, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3,
+            3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 2, 2,
+            1, 2, 2, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3, 3,
+            1, 1, 1
+    };
+
+    /** The instructions */
+    final int[] code;
+    /** Strings printed by PRTS, already unescaped */
+    final String[] strings;
+    /** Variable names, indexed by slot, which is also their register */
+    final String[] variables;
+    /** Number of registers, the variables and then the ones for partial results */
+    final int registers;
+
+    /**
+     * Constructor for RegisterCode
+     * @param code the instructions
+     * @param strings Strings printed by PRTS
+     * @param variables variable names, indexed by slot
+     * @param registers number of registers the program uses, at least as many as it has variables
+     */
+    RegisterCode(int[] code, String[] strings, String[] variables, int registers) {
+        this.code = code;
+        this.strings = strings;
+        this.variables = variables;
+        this.registers = registers;
+    }
+
+    /**
+     * Gets how many operands an opcode takes
+     * @param op the opcode
+     * @return number of operands
+     */
+    static int operands(int op) {
+        return OPERANDS[op];
+    }
+
+    /**
+     * Counts the instructions of the program, which is how many dispatches a run through it without jumping takes
+     * @return number of instructions
+     */
+    int instructions() {
+        int count = 0;
+        for (int pc = 0; pc < this.code.length; pc += 1 + operands(this.code[pc])) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Names a register for disassembling, by its variable name if it has one
+     * @param r the register
+     * @return its name
+     */
+    private String register(int r) {
+        return r < this.variables.length ? "[" + this.variables[r] + "]" : "r" + r;
+    }
+
+    /**
+     * Lists the instructions one per line, with registers shown by variable name where they have one
+     * @return the listing
+     */
+    String disassemble() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Datasize: ").append(this.variables.length).append(" Registers: ").append(this.registers)
+                .append(" Strings: ").append(this.strings.length).append("\n");
+        for (int pc = 0; pc < this.code.length; ) {
+            int op = this.code[pc];
+            sb.append(String.format(operands(op) > 0 ? "%5d %-6s" : "%5d %s", pc, NAMES[op]));
+            int[] c = this.code;
+            if (op == LOADI) {
+                sb.append(register(c[pc + 1])).append(" ").append(c[pc + 2]);
+            } else if (op == MOV || op == NEG || op == NOT) {
+                sb.append(register(c[pc + 1])).append(" ").append(register(c[pc + 2]));
+            } else if (op >= ADD && op <= NE) {
+                sb.append(register(c[pc + 1])).append(" ").append(register(c[pc + 2])).append(" ").append(register(c[pc + 3]));
+            } else if (op >= ADDI && op <= NEI) {
+                sb.append(register(c[pc + 1])).append(" ").append(register(c[pc + 2])).append(" ").append(c[pc + 3]);
+            } else if (op == JMP) {
+                sb.append(c[pc + 1]);
+            } else if (op == JZ || op == JNZ) {
+                sb.append(register(c[pc + 1])).append(" ").append(c[pc + 2]);
+            } else if (op >= JLT && op <= JNE) {
+                sb.append(register(c[pc + 1])).append(" ").append(register(c[pc + 2])).append(" ").append(c[pc + 3]);
+            } else if (op >= JLTI && op <= JNEI) {
+                sb.append(register(c[pc + 1])).append(" ").append(c[pc + 2]).append(" ").append(c[pc + 3]);
+            } else if (op == PRTC || op == PRTI) {
+                sb.append(register(c[pc + 1]));
+            } else if (op == PRTS) {
+                sb.append("\"").append(this.strings[c[pc + 1]].replace("\n", "\\n")).append("\"");
+            }
+            pc += 1 + operands(op);
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+}
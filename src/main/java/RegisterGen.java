@@ -0,0 +1,444 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lowers the AST from the Parser into RegisterCode for the RegisterVM. Every variable gets its own register before
+ * any code is generated, and each part of an expression is worked out into the next free register after them, which
+ * is given back as soon as the expression is done. An assignment writes its last instruction straight into the
+ * variable's register, so i = i + 1 is one ADDI.
+ *
+ * Conditions are never worked out into a register when they don't have to be. The test of an if or while becomes
+ * compare-and-branch instructions, with && and || turned into jumps, and a while loop has its test at the bottom so
+ * each time around the loop only runs one branch.
+ *
+ * Lowering recurses into nested statements and expressions, so a program nested tens of thousands deep runs out of
+ * call stack. That is reported as a CompileException rather than letting the StackOverflowError out.
+ */
+class RegisterGen {
+    /** For each comparison, LT to NE, the comparison that is true exactly when it is false */
+    private static final int[] NEGATE = {3, 2, 1, 0, 5, 4};
+    /** For each comparison, LT to NE, the comparison that gives the same answer with its operands swapped */
+    private static final int[] MIRROR = {2, 3, 0, 1, 4, 5};
+
+    /** The instructions generated so far */
+    private int[] code = new int[64];
+    /** Number of words of code generated so far */
+    private int size;
+    /** Slot of each variable name */
+    private final Map<String, Integer> slots = new HashMap<>();
+    /** Variable names, indexed by slot */
+    private final List<String> variables = new ArrayList<>();
+    /** Pool index of each String */
+    private final Map<String, Integer> stringIndex = new HashMap<>();
+    /** The String pool */
+    private final List<String> strings = new ArrayList<>();
+    /** First register not holding a variable or a partial result */
+    private int next;
+    /** Most registers in use at any point so far */
+    private int registers;
+
+    /**
+     * Generates the RegisterCode for a whole program
+     * @param root root of the AST, as given by Parser.parse
+     * @return the RegisterCode, ending with HALT
+     * @throws CompileException if the program is nested too deeply to lower
+     */
+    static RegisterCode generate(Parser.Node root) {
+        RegisterGen gen = new RegisterGen();
+        gen.declare(root);
+        gen.next = gen.variables.size();
+        gen.registers = gen.next;
+        try {
+            gen.statement(root);
+        } catch (StackOverflowError e) {
+            throw new CompileException(-1, -1, "RegisterGen: program nested too deeply to compile");
+        }
+        gen.emit(RegisterCode.HALT);
+        return new RegisterCode(Arrays.copyOf(gen.code, gen.size), gen.strings.toArray(new String[0]),
+                gen.variables.toArray(new String[0]), gen.registers);
+    }
+
+    /**
+     * Gives every variable of the program its slot, so the registers for partial results can start after them
+     * @param root root of the AST, may be null
+     */
+    private void declare(Parser.Node root) {
+        ArrayDeque<Parser.Node> pending = new ArrayDeque<>();
+        if (root != null) {
+            pending.push(root);
+        }
+        while (!pending.isEmpty()) {
+            Parser.Node n = pending.pop();
+            if (n.nt == Parser.NodeType.nd_Ident) {
+                slot(n.value);
+            }
+            if (n.right != null) pending.push(n.right);
+            if (n.left != null) pending.push(n.left);
+        }
+    }
+
+    /**
+     * Appends one word of code
+     * @param word opcode or operand
+     */
+    private void emit(int word) {
+        if (this.size == this.code.length) {
+            this.code = Arrays.copyOf(this.code, this.size * 2);
+        }
+        this.code[this.size++] = word;
+    }
+
+    /**
+     * Appends an instruction with one operand
+     * @param op the opcode
+     * @param a its operand
+     */
+    private void emit(int op, int a) {
+        emit(op);
+        emit(a);
+    }
+
+    /**
+     * Appends an instruction with two operands
+     * @param op the opcode
+     * @param a its first operand
+     * @param b its second operand
+     */
+    private void emit(int op, int a, int b) {
+        emit(op, a);
+        emit(b);
+    }
+
+    /**
+     * Appends an instruction with three operands
+     * @param op the opcode
+     * @param a its first operand
+     * @param b its second operand
+     * @param c its third operand
+     */
+    private void emit(int op, int a, int b, int c) {
+        emit(op, a, b);
+        emit(c);
+    }
+
+    /**
+     * Points earlier jumps at a target
+     * @param holes where the jumps' targets go, as collected by branch
+     * @param target where to jump to
+     */
+    private void patch(List<Integer> holes, int target) {
+        for (int hole : holes) {
+            this.code[hole] = target;
+        }
+    }
+
+    /**
+     * Finds the slot of a variable, giving it the next free one the first time it's seen
+     * @param name name of the variable
+     * @return its slot
+     */
+    private int slot(String name) {
+        Integer slot = this.slots.get(name);
+        if (slot == null) {
+            slot = this.variables.size();
+            this.slots.put(name, slot);
+            this.variables.add(name);
+        }
+        return slot;
+    }
+
+    /**
+     * Finds the pool index of a String, adding it the first time it's seen
+     * @param s the String, already unescaped
+     * @return its index
+     */
+    private int string(String s) {
+        Integer index = this.stringIndex.get(s);
+        if (index == null) {
+            index = this.strings.size();
+            this.stringIndex.put(s, index);
+            this.strings.add(s);
+        }
+        return index;
+    }
+
+    /**
+     * Takes the next free register for a partial result
+     * @return the register
+     */
+    private int temp() {
+        int r = this.next++;
+        this.registers = Math.max(this.registers, this.next);
+        return r;
+    }
+
+    /**
+     * Checks if an expression is an integer constant, which can go straight into an instruction
+     * @param n the expression
+     * @return true if it's an Integer node
+     */
+    private static boolean isConstant(Parser.Node n) {
+        return n.nt == Parser.NodeType.nd_Integer;
+    }
+
+    /**
+     * Gets the value of an Integer node
+     * @param n the node
+     * @return its value, wrapped around like C if it's too big for an int
+     */
+    private static int constant(Parser.Node n) {
+        return (int) Long.parseLong(n.value);
+    }
+
+    /**
+     * Gets the opcode for a binary operator
+     * @param type type of the node
+     * @return ADD to NE, or -1 if it isn't one of those
+     */
+    private static int opcode(Parser.NodeType type) {
+        switch (type) {
+            case nd_Add: return RegisterCode.ADD;
+            case nd_Sub: return RegisterCode.SUB;
+            case nd_Mul: return RegisterCode.MUL;
+            case nd_Div: return RegisterCode.DIV;
+            case nd_Mod: return RegisterCode.MOD;
+            case nd_Lss: return RegisterCode.LT;
+            case nd_Leq: return RegisterCode.LE;
+            case nd_Gtr: return RegisterCode.GT;
+            case nd_Geq: return RegisterCode.GE;
+            case nd_Eql: return RegisterCode.EQ;
+            case nd_Neq: return RegisterCode.NE;
+            default: return -1;
+        }
+    }
+
+    /**
+     * Generates code for a statement
+     * @param n the statement, may be null
+     */
+    private void statement(Parser.Node n) {
+        if (n == null) {
+            return;
+        }
+        switch (n.nt) {
+            case nd_Sequence: {
+                //walk the chain with a stack, since parse builds one Sequence per top-level statement
+                ArrayDeque<Parser.Node> pending = new ArrayDeque<>();
+                pending.push(n);
+                while (!pending.isEmpty()) {
+                    Parser.Node s = pending.pop();
+                    if (s.nt == Parser.NodeType.nd_Sequence) {
+                        if (s.right != null) pending.push(s.right);
+                        if (s.left != null) pending.push(s.left);
+                    } else {
+                        statement(s);
+                    }
+                }
+                break;
+            }
+            case nd_If: {
+                List<Integer> toElse = new ArrayList<>();
+                branch(n.left, false, toElse);
+                statement(n.right.left);
+                if (n.right.right == null) {
+                    patch(toElse, this.size);
+                } else {
+                    emit(RegisterCode.JMP, 0);
+                    int toEnd = this.size - 1;
+                    patch(toElse, this.size);
+                    statement(n.right.right);
+                    this.code[toEnd] = this.size;
+                }
+                break;
+            }
+            case nd_While: {
+                //the test goes after the body, so going around again is one branch instead of a branch and a jump
+                emit(RegisterCode.JMP, 0);
+                int toTest = this.size - 1;
+                int top = this.size;
+                statement(n.right);
+                this.code[toTest] = this.size;
+                List<Integer> toTop = new ArrayList<>();
+                branch(n.left, true, toTop);
+                patch(toTop, top);
+                break;
+            }
+            case nd_Assign:
+                into(n.right, slot(n.left.value));
+                break;
+            case nd_Prts:
+                emit(RegisterCode.PRTS, string(Interpreter.unescape(n.left.value)));
+                break;
+            case nd_Prti:
+            case nd_Prtc: {
+                int mark = this.next;
+                emit(n.nt == Parser.NodeType.nd_Prti ? RegisterCode.PRTI : RegisterCode.PRTC, value(n.left));
+                this.next = mark;
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("RegisterGen: not a statement: " + n.nt);
+        }
+    }
+
+    /**
+     * Gets a register holding the value of an expression, which is the variable's own register for a variable and
+     * otherwise a new one for a partial result. The caller gives partial result registers back when it's done
+     * @param n the expression
+     * @return the register
+     */
+    private int value(Parser.Node n) {
+        if (n == null) {
+            throw new IllegalArgumentException("RegisterGen: missing expression");
+        }
+        if (n.nt == Parser.NodeType.nd_Ident) {
+            return slot(n.value);
+        }
+        int r = temp();
+        into(n, r);
+        return r;
+    }
+
+    /**
+     * Generates code that leaves the value of an expression in a register. Only the last instruction writes to it,
+     * so it can be a variable the expression reads
+     * @param n the expression
+     * @param d the register
+     */
+    private void into(Parser.Node n, int d) {
+        if (n == null) {
+            throw new IllegalArgumentException("RegisterGen: missing expression");
+        }
+        int mark = this.next;
+        switch (n.nt) {
+            case nd_Integer:
+                emit(RegisterCode.LOADI, d, constant(n));
+                break;
+            case nd_Ident:
+                if (slot(n.value) != d) {
+                    emit(RegisterCode.MOV, d, slot(n.value));
+                }
+                break;
+            case nd_Negate:
+                emit(RegisterCode.NEG, d, value(n.left));
+                break;
+            case nd_Not:
+                emit(RegisterCode.NOT, d, value(n.left));
+                break;
+            case nd_And:
+            case nd_Or: {
+                //short circuit, like C and the Interpreter: the right side only runs when it decides the answer
+                List<Integer> toFalse = new ArrayList<>();
+                branch(n, false, toFalse);
+                emit(RegisterCode.LOADI, d, 1);
+                if (!toFalse.isEmpty()) {
+                    emit(RegisterCode.JMP, 0);
+                    int toEnd = this.size - 1;
+                    patch(toFalse, this.size);
+                    emit(RegisterCode.LOADI, d, 0);
+                    this.code[toEnd] = this.size;
+                }
+                break;
+            }
+            default: {
+                int op = opcode(n.nt);
+                if (op < 0) {
+                    throw new IllegalArgumentException("RegisterGen: not an expression: " + n.nt);
+                }
+                Parser.Node left = n.left;
+                Parser.Node right = n.right;
+                //a constant on the left can only go into an instruction if the operands can be swapped
+                if (isConstant(left) && !isConstant(right)) {
+                    if (op == RegisterCode.ADD || op == RegisterCode.MUL) {
+                        left = n.right;
+                        right = n.left;
+                    } else if (op >= RegisterCode.LT) {
+                        left = n.right;
+                        right = n.left;
+                        op = RegisterCode.LT + MIRROR[op - RegisterCode.LT];
+                    }
+                }
+                int a = value(left);
+                if (isConstant(right)) {
+                    emit(op + RegisterCode.IMMEDIATE, d, a, constant(right));
+                } else {
+                    emit(op, d, a, value(right));
+                }
+                break;
+            }
+        }
+        this.next = mark;
+    }
+
+    /**
+     * Generates code that jumps when a condition comes out a certain way and falls through otherwise. A comparison
+     * becomes one compare-and-branch instruction, ! swaps which way it jumps, and && and || become a branch for each
+     * side, so the right side is only worked out when the left one doesn't decide
+     * @param n the condition
+     * @param jumpIf true to jump when the condition is true, false to jump when it is false
+     * @param holes where the jumps' targets go are added here, to patch once the target is known
+     */
+    private void branch(Parser.Node n, boolean jumpIf, List<Integer> holes) {
+        if (n == null) {
+            throw new IllegalArgumentException("RegisterGen: missing expression");
+        }
+        switch (n.nt) {
+            case nd_Not:
+                branch(n.left, !jumpIf, holes);
+                return;
+            case nd_And:
+            case nd_Or: {
+                boolean and = n.nt == Parser.NodeType.nd_And;
+                if (and != jumpIf) {
+                    //either side alone decides it, false for && and true for ||
+                    branch(n.left, jumpIf, holes);
+                    branch(n.right, jumpIf, holes);
+                } else {
+                    //the left side deciding the other way skips the test of the right side
+                    List<Integer> skip = new ArrayList<>();
+                    branch(n.left, !jumpIf, skip);
+                    branch(n.right, jumpIf, holes);
+                    patch(skip, this.size);
+                }
+                return;
+            }
+            case nd_Integer:
+                if ((constant(n) != 0) == jumpIf) {
+                    emit(RegisterCode.JMP, 0);
+                    holes.add(this.size - 1);
+                }
+                return;
+            default:
+                break;
+        }
+        int mark = this.next;
+        int op = opcode(n.nt);
+        if (op >= RegisterCode.LT) {
+            int c = op - RegisterCode.LT;
+            Parser.Node left = n.left;
+            Parser.Node right = n.right;
+            if (isConstant(left) && !isConstant(right)) {
+                left = n.right;
+                right = n.left;
+                c = MIRROR[c];
+            }
+            if (!jumpIf) {
+                c = NEGATE[c];
+            }
+            int a = value(left);
+            if (isConstant(right)) {
+                emit(RegisterCode.JLTI + c, a, constant(right), 0);
+            } else {
+                emit(RegisterCode.JLT + c, a, value(right), 0);
+            }
+        } else {
+            emit(jumpIf ? RegisterCode.JNZ : RegisterCode.JZ, value(n), 0);
+        }
+        holes.add(this.size - 1);
+        this.next = mark;
+    }
+}
@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Register machine that runs RegisterCode with one switch over the opcode per instruction, like the VM does for
+ * Bytecode. Since each instruction names its registers, the pushes and pops the VM spends most of its dispatches on
+ * are gone, and a loop test like i < n is one compare-and-branch instead of fetch, fetch, compare and jump.
+ */
+class RegisterVM {
+    /** Output is handed to the Writer once this many chars are buffered */
+    private static final int FLUSH_AT = 8192;
+
+    /** Where the program's output goes */
+    private final Writer out;
+    /** Output not yet handed to out */
+    private final StringBuilder buffer = new StringBuilder(FLUSH_AT + 64);
+    /** Registers after the last run, the variables first, indexed by slot */
+    private int[] registers = new int[0];
+
+    /**
+     * Constructor for a RegisterVM
+     * @param out where programs' output goes, written in chunks rather than a char at a time
+     */
+    RegisterVM(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Runs a program from the start, with every variable at 0
+     * @param program the RegisterCode to run
+     * @throws IOException if the output can't be written
+     */
+    void run(RegisterCode program) throws IOException {
+        final int[] code = program.code;
+        final String[] strings = program.strings;
+        //reused between runs of programs the same size, since a benchmark runs the same one over and over
+        if (this.registers.length != program.registers) {
+            this.registers = new int[program.registers];
+        } else {
+            Arrays.fill(this.registers, 0);
+        }
+        final int[] r = this.registers;
+        final StringBuilder buf = this.buffer;
+        int pc = 0;
+
+        try {
+            while (true) {
+                switch (code[pc]) {
+                    case RegisterCode.HALT:
+                        return;
+                    case RegisterCode.LOADI: r[code[pc + 1]] = code[pc + 2]; pc += 3; break;
+                    case RegisterCode.MOV: r[code[pc + 1]] = r[code[pc + 2]]; pc += 3; break;
+                    case RegisterCode.ADD: r[code[pc + 1]] = r[code[pc + 2]] + r[code[pc + 3]]; pc += 4; break;
+                    case RegisterCode.SUB: r[code[pc + 1]] = r[code[pc + 2]] - r[code[pc + 3]]; pc += 4; break;
+                    case RegisterCode.MUL: r[code[pc + 1]] = r[code[pc + 2]] * r[code[pc + 3]]; pc += 4; break;
+                    case RegisterCode.DIV: r[code[pc + 1]] = r[code[pc + 2]] / r[code[pc + 3]]; pc += 4; break;
+                    case RegisterCode.MOD: r[code[pc + 1]] = r[code[pc + 2]] % r[code[pc + 3]]; pc += 4; break;
+                    case RegisterCode.LT: r[code[pc + 1]] = r[code[pc + 2]] < r[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case RegisterCode.LE: r[code[pc + 1]] = r[code[pc + 2]] <= r[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case RegisterCode.GT: r[code[pc + 1]] = r[code[pc + 2]] > r[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case RegisterCode.GE: r[code[pc + 1]] = r[code[pc + 2]] >= r[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case RegisterCode.EQ: r[code[pc + 1]] = r[code[pc + 2]] == r[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case RegisterCode.NE: r[code[pc + 1]] = r[code[pc + 2]] != r[code[pc + 3]] ? 1 : 0; pc += 4; break;
+                    case RegisterCode.ADDI: r[code[pc + 1]] = r[code[pc + 2]] + code[pc + 3]; pc += 4; break;
+                    case RegisterCode.SUBI: r[code[pc + 1]] = r[code[pc + 2]] - code[pc + 3]; pc += 4; break;
+                    case RegisterCode.MULI: r[code[pc + 1]] = r[code[pc + 2]] * code[pc + 3]; pc += 4; break;
+                    case RegisterCode.DIVI: r[code[pc + 1]] = r[code[pc + 2]] / code[pc + 3]; pc += 4; break;
+                    case RegisterCode.MODI: r[code[pc + 1]] = r[code[pc + 2]] % code[pc + 3]; pc += 4; break;
+                    case RegisterCode.LTI: r[code[pc + 1]] = r[code[pc + 2]] < code[pc + 3] ? 1 : 0; pc += 4; break;
+                    case RegisterCode.LEI: r[code[pc + 1]] = r[code[pc + 2]] <= code[pc + 3] ? 1 : 0; pc += 4; break;
+                    case RegisterCode.GTI: r[code[pc + 1]] = r[code[pc + 2]] > code[pc + 3] ? 1 : 0; pc += 4; break;
+                    case RegisterCode.GEI: r[code[pc + 1]] = r[code[pc + 2]] >= code[pc + 3] ? 1 : 0; pc += 4; break;
+                    case RegisterCode.EQI: r[code[pc + 1]] = r[code[pc + 2]] == code[pc + 3] ? 1 : 0; pc += 4; break;
+                    case RegisterCode.NEI: r[code[pc + 1]] = r[code[pc + 2]] != code[pc + 3] ? 1 : 0; pc += 4; break;
+                    case RegisterCode.NEG: r[code[pc + 1]] = -r[code[pc + 2]]; pc += 3; break;
+                    case RegisterCode.NOT: r[code[pc + 1]] = r[code[pc + 2]] == 0 ? 1 : 0; pc += 3; break;
+                    case RegisterCode.JMP: pc = code[pc + 1]; break;
+                    case RegisterCode.JZ: pc = r[code[pc + 1]] == 0 ? code[pc + 2] : pc + 3; break;
+                    case RegisterCode.JNZ: pc = r[code[pc + 1]] != 0 ? code[pc + 2] : pc + 3; break;
+                    case RegisterCode.JLT: pc = r[code[pc + 1]] < r[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                    case RegisterCode.JLE: pc = r[code[pc + 1]] <= r[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                    case RegisterCode.JGT: pc = r[code[pc + 1]] > r[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                    case RegisterCode.JGE: pc = r[code[pc + 1]] >= r[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                    case RegisterCode.JEQ: pc = r[code[pc + 1]] == r[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                    case RegisterCode.JNE: pc = r[code[pc + 1]] != r[code[pc + 2]] ? code[pc + 3] : pc + 4; break;
+                    case RegisterCode.JLTI: pc = r[code[pc + 1]] < code[pc + 2] ? code[pc + 3] : pc + 4; break;
+                    case RegisterCode.JLEI: pc = r[code[pc + 1]] <= code[pc + 2] ? code[pc + 3] : pc + 4; break;
+                    case RegisterCode.JGTI: pc = r[code[pc + 1]] > code[pc + 2] ? code[pc + 3] : pc + 4; break;
+                    case RegisterCode.JGEI: pc = r[code[pc + 1]] >= code[pc + 2] ? code[pc + 3] : pc + 4; break;
+                    case RegisterCode.JEQI: pc = r[code[pc + 1]] == code[pc + 2] ? code[pc + 3] : pc + 4; break;
+                    case RegisterCode.JNEI: pc = r[code[pc + 1]] != code[pc + 2] ? code[pc + 3] : pc + 4; break;
+                    case RegisterCode.PRTC:
+                        buf.append((char) r[code[pc + 1]]);
+                        pc += 2;
+                        if (buf.length() >= FLUSH_AT) flush();
+                        break;
+                    case RegisterCode.PRTI:
+                        buf.append(r[code[pc + 1]]);
+                        pc += 2;
+                        if (buf.length() >= FLUSH_AT) flush();
+                        break;
+                    case RegisterCode.PRTS:
+                        buf.append(strings[code[pc + 1]]);
+                        pc += 2;
+                        if (buf.length() >= FLUSH_AT) flush();
+                        break;
+                    default:
+                        throw new IllegalStateException("RegisterVM: bad opcode " + code[pc] + " at " + pc);
+                }
+            }
+        } finally {
+            flush();
+        }
+    }
+
+    /**
+     * Getter for the value of a variable, as the last run left it
+     * @param program the RegisterCode that was run
+     * @param name name of the variable
+     * @return its value, 0 if the program has no such variable
+     */
+    int getVariable(RegisterCode program, String name) {
+        for (int slot = 0; slot < program.variables.length && slot < this.registers.length; slot++) {
+            if (program.variables[slot].equals(name)) {
+                return this.registers[slot];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Hands all buffered output to the Writer
+     * @throws IOException if the output can't be written
+     */
+    private void flush() throws IOException {
+        this.out.append(this.buffer);
+        this.out.flush();
+        this.buffer.setLength(0);
+    }
+
+    /**
+     * Runnable main method that compiles a source file in src/main/resources to RegisterCode and runs it.
+     * Option --opt runs the Optimizer over the AST first, --dis prints the RegisterCode instead
+     * @param args Command line arguments, options then the name of the source file, defaults to count.c
+     */
+    public static void main(String[] args) {
+        String filename = "count.c";
+        boolean dis = false, optimize = false;
+        for (String arg : args) {
+            if (arg.equals("--dis")) {
+                dis = true;
+            } else if (arg.equals("--opt")) {
+                optimize = true;
+            } else {
+                filename = arg;
+            }
+        }
+        try {
+            Parser.Node ast = MiniCompiler.compile(MiniCompiler.readSource(filename));
+            RegisterCode program = RegisterGen.generate(optimize ? Optimizer.optimize(ast) : ast);
+            if (dis) {
+                System.out.print(program.disassemble());
+            } else {
+                new RegisterVM(new OutputStreamWriter(System.out)).run(program);
+            }
+        } catch (CompileException e) {
+            CompileException.fail(e.getMessage());
+        } catch (IOException e) {
+            CompileException.fail("Exception: " + e.getMessage());
+        } catch (ArithmeticException e) {
+            CompileException.fail("Runtime error: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,155 @@
+import java.util.Arrays;
+
+/**
+ * Interns identifier names and String literal values, so each distinct one is stored once and can be referred to
+ * by a small integer id. Ids are handed out in order starting from 0.
+ */
+class SymbolTable {
+    /** Starting number of slots in the hash table, must be a power of two */
+    private static final int INITIAL_SLOTS = 64;
+
+    /** Each interned String, indexed by id */
+    private String[] names;
+    /** Hash of each interned String, indexed by id, so the table can grow without rehashing any text */
+    private int[] hashes;
+    /** Open addressing hash table holding id + 1 for each used slot, 0 for an empty one */
+    private int[] slots;
+    /** Number of interned Strings */
+    private int size;
+
+    /**
+     * Constructor for an empty SymbolTable
+     */
+    SymbolTable() {
+        this.names = new String[INITIAL_SLOTS / 2];
+        this.hashes = new int[INITIAL_SLOTS / 2];
+        this.slots = new int[INITIAL_SLOTS];
+    }
+
+    /**
+     * Forgets every interned String so the table can be reused, keeping the arrays already allocated
+     */
+    void clear() {
+        Arrays.fill(this.names, 0, this.size, null);
+        Arrays.fill(this.slots, 0);
+        this.size = 0;
+    }
+
+    /**
+     * Interns the text between start and end of some source, only creating a String the first time that text is seen
+     * @param s source text
+     * @param start index in s of the first char
+     * @param end index in s just past the last char
+     * @return id of the text
+     */
+    int intern(CharSequence s, int start, int end) {
+        //same hash as String.hashCode, so intern(String) and intern of a slice always agree
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + s.charAt(i);
+        }
+        int mask = this.slots.length - 1;
+        int slot = mix(hash) & mask;
+        int entry;
+        while ((entry = this.slots[slot]) != 0) {
+            int id = entry - 1;
+            if (this.hashes[id] == hash && sameText(this.names[id], s, start, end)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return add(s.subSequence(start, end).toString(), hash, slot);
+    }
+
+    /**
+     * Interns a whole String
+     * @param name text to intern
+     * @return id of the text
+     */
+    int intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    /**
+     * Getter for the String with a given id
+     * @param id id handed out by intern
+     * @return the interned String, always the same instance for the same id
+     */
+    String name(int id) {
+        return this.names[id];
+    }
+
+    /**
+     * Getter for the number of interned Strings, which is also one more than the largest id
+     * @return number of interned Strings
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Stores a new String in the given empty slot, growing the table once it is half full
+     * @param name String to store
+     * @param hash hash of name
+     * @param slot empty slot for name
+     * @return the new id
+     */
+    private int add(String name, int hash, int slot) {
+        int id = this.size++;
+        if (id == this.names.length) {
+            this.names = Arrays.copyOf(this.names, id * 2);
+            this.hashes = Arrays.copyOf(this.hashes, id * 2);
+        }
+        this.names[id] = name;
+        this.hashes[id] = hash;
+        this.slots[slot] = id + 1;
+        if (this.size * 2 > this.slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * Doubles the hash table and puts every id back in using its stored hash
+     */
+    private void rehash() {
+        this.slots = new int[this.slots.length * 2];
+        int mask = this.slots.length - 1;
+        for (int id = 0; id < this.size; id++) {
+            int slot = mix(this.hashes[id]) & mask;
+            while (this.slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Spreads the high bits of a hash into the low ones, since the table only looks at the low bits
+     * @param hash hash to spread
+     * @return spread hash
+     */
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Checks whether a String has exactly the same chars as a slice of some source
+     * @param name String to compare
+     * @param s source text
+     * @param start index in s of the first char
+     * @param end index in s just past the last char
+     * @return true if they match
+     */
+    private static boolean sameText(String name, CharSequence s, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != s.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
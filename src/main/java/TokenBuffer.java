@@ -0,0 +1,328 @@
+import java.util.Arrays;
+
+/**
+ * Packed store of lexed tokens, kept as parallel arrays instead of one Token object per token.
+ * A token's value is only turned into a String when something asks for it.
+ */
+class TokenBuffer {
+    /** All token types, indexed by ordinal, so looking one up doesn't copy the values() array each time */
+    private static final TokenType[] TYPES = TokenType.values();
+    /** Starting capacity of the arrays */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** Source text the tokens were lexed from, their values are read back out of it */
+    private CharSequence source;
+    /** SymbolTable the symbol ids refer to */
+    private SymbolTable symbols;
+    /** Ordinal of each token's TokenType */
+    private byte[] types;
+    /** Line each token is on */
+    private int[] lines;
+    /** Position within the line each token starts on */
+    private int[] positions;
+    /** Index in source of the start of each token's text */
+    private int[] starts;
+    /** Length of each token's text in source */
+    private int[] lengths;
+    /** SymbolTable id of each Identifier and String token's value, -1 for other tokens */
+    private int[] symbolIds;
+    /** Number of tokens in the buffer */
+    private int size;
+
+    /**
+     * Constructor for an empty TokenBuffer
+     */
+    TokenBuffer() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructor for an empty TokenBuffer with room for a known number of tokens
+     * @param capacity number of tokens it can hold before growing
+     */
+    TokenBuffer(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.types = new byte[capacity];
+        this.lines = new int[capacity];
+        this.positions = new int[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.symbolIds = new int[capacity];
+    }
+
+    /**
+     * Empties the buffer so it can be filled again from a new source, keeping the arrays already allocated
+     * @param source source text the next tokens will be lexed from
+     * @param symbols SymbolTable the next tokens' symbol ids will refer to
+     */
+    void reset(CharSequence source, SymbolTable symbols) {
+        this.source = source;
+        this.symbols = symbols;
+        this.size = 0;
+    }
+
+    /**
+     * Appends a token, growing the arrays when they're full
+     * @param type type of the token
+     * @param line line the token is on
+     * @param pos position within the line the token starts on
+     * @param start index in the source of the start of the token's text
+     * @param length length of the token's text
+     * @param symbol SymbolTable id of the token's value, -1 if it isn't an Identifier or String
+     */
+    void add(TokenType type, int line, int pos, int start, int length, int symbol) {
+        if (this.size == this.types.length) {
+            grow(this.size * 2);
+        }
+        this.types[this.size] = (byte) type.ordinal();
+        this.lines[this.size] = line;
+        this.positions[this.size] = pos;
+        this.starts[this.size] = start;
+        this.lengths[this.size] = length;
+        this.symbolIds[this.size] = symbol;
+        this.size++;
+    }
+
+    /**
+     * Grows the arrays to hold at least the given number of tokens
+     * @param capacity number of tokens to make room for
+     */
+    private void grow(int capacity) {
+        if (capacity <= this.types.length) {
+            return;
+        }
+        capacity = Math.max(capacity, this.types.length * 2);
+        this.types = Arrays.copyOf(this.types, capacity);
+        this.lines = Arrays.copyOf(this.lines, capacity);
+        this.positions = Arrays.copyOf(this.positions, capacity);
+        this.starts = Arrays.copyOf(this.starts, capacity);
+        this.lengths = Arrays.copyOf(this.lengths, capacity);
+        this.symbolIds = Arrays.copyOf(this.symbolIds, capacity);
+    }
+
+    /**
+     * Replaces a run of tokens with every token of another buffer, after the source has been edited. The tokens after
+     * the run are moved along rather than lexed again, with their starts and lines shifted by the edit, and their
+     * positions too when they're on the line the edit ended on
+     * @param from index of the first token to replace
+     * @param to index just past the last token to replace
+     * @param replacement the new tokens, lexed from the edited source
+     * @param startDelta how far the edit moved the text after it
+     * @param lineDelta how many lines the edit added, negative if it removed lines
+     * @param posLine line, before the edit, the edit ended on
+     * @param posDelta how far the edit moved the rest of that line
+     */
+    void splice(int from, int to, TokenBuffer replacement, int startDelta, int lineDelta, int posLine, int posDelta) {
+        int added = replacement.size;
+        int tail = this.size - to;
+        grow(from + added + tail);
+        System.arraycopy(this.types, to, this.types, from + added, tail);
+        System.arraycopy(this.lines, to, this.lines, from + added, tail);
+        System.arraycopy(this.positions, to, this.positions, from + added, tail);
+        System.arraycopy(this.starts, to, this.starts, from + added, tail);
+        System.arraycopy(this.lengths, to, this.lengths, from + added, tail);
+        System.arraycopy(this.symbolIds, to, this.symbolIds, from + added, tail);
+        System.arraycopy(replacement.types, 0, this.types, from, added);
+        System.arraycopy(replacement.lines, 0, this.lines, from, added);
+        System.arraycopy(replacement.positions, 0, this.positions, from, added);
+        System.arraycopy(replacement.starts, 0, this.starts, from, added);
+        System.arraycopy(replacement.lengths, 0, this.lengths, from, added);
+        System.arraycopy(replacement.symbolIds, 0, this.symbolIds, from, added);
+        this.size = from + added + tail;
+        for (int i = from + added; i < this.size; i++) {
+            if (this.lines[i] == posLine) {
+                this.positions[i] += posDelta;
+            }
+            this.starts[i] += startDelta;
+            this.lines[i] += lineDelta;
+        }
+    }
+
+    /**
+     * Drops the last token
+     */
+    void removeLast() {
+        this.size--;
+    }
+
+    /**
+     * Getter for the number of tokens in the buffer
+     * @return number of tokens
+     */
+    int size() { return this.size; }
+
+    /**
+     * Getter for the source text the tokens were lexed from
+     * @return source text
+     */
+    CharSequence source() { return this.source; }
+
+    /**
+     * Getter for the SymbolTable the symbol ids refer to
+     * @return SymbolTable of the tokens
+     */
+    SymbolTable symbols() { return this.symbols; }
+
+    /**
+     * Getter for the type of a token
+     * @param i index of the token
+     * @return type of the token
+     */
+    TokenType type(int i) { return TYPES[this.types[i]]; }
+
+    /**
+     * Getter for the line of a token
+     * @param i index of the token
+     * @return line the token is on
+     */
+    int line(int i) { return this.lines[i]; }
+
+    /**
+     * Getter for the position of a token
+     * @param i index of the token
+     * @return position within the line the token starts on
+     */
+    int pos(int i) { return this.positions[i]; }
+
+    /**
+     * Getter for where a token's text starts in the source
+     * @param i index of the token
+     * @return index in the source of the start of the token's text
+     */
+    int start(int i) { return this.starts[i]; }
+
+    /**
+     * Getter for the length of a token's text in the source
+     * @param i index of the token
+     * @return length of the token's text
+     */
+    int length(int i) { return this.lengths[i]; }
+
+    /**
+     * Getter for where a token's text starts in the source, counting the opening quote of a String
+     * @param i index of the token
+     * @return index in the source of the first char of the token
+     */
+    int lexemeStart(int i) {
+        return this.types[i] == TokenType.String.ordinal() ? this.starts[i] - 1 : this.starts[i];
+    }
+
+    /**
+     * Getter for where a token's text ends in the source, counting the closing quote of a String
+     * @param i index of the token
+     * @return index in the source just past the last char of the token
+     */
+    int lexemeEnd(int i) {
+        int end = this.starts[i] + this.lengths[i];
+        return this.types[i] == TokenType.String.ordinal() ? end + 1 : end;
+    }
+
+    /**
+     * Getter for the SymbolTable id of a token's value
+     * @param i index of the token
+     * @return id of the value, -1 if the token isn't an Identifier or String
+     */
+    int symbol(int i) { return this.symbolIds[i]; }
+
+    /**
+     * Getter for the value of a token. Identifiers and Strings come straight from the SymbolTable,
+     * other values are built from the source, allocating a String only now
+     * @param i index of the token
+     * @return value of the token, empty for tokens that have none
+     */
+    String value(int i) {
+        if (this.symbolIds[i] >= 0) {
+            return this.symbols.name(this.symbolIds[i]);
+        }
+        return Lexer.tokenValue(this.source, type(i), this.starts[i], this.starts[i] + this.lengths[i]);
+    }
+
+    /**
+     * Builds a full Token object for one token in the buffer
+     * @param i index of the token
+     * @return Token for that index
+     */
+    Lexer.Token token(int i) {
+        return new Lexer.Token(type(i), value(i), this.lines[i], this.positions[i], this.symbolIds[i]);
+    }
+
+    /**
+     * Writes every token in the buffer to an OutputSink, one per line, the same text Lexer.printTokens gives
+     * @param out where to write, flushed at the end but left open
+     * @return number of tokens written
+     */
+    int printTokens(OutputSink out) {
+        for (int i = 0; i < this.size; i++) {
+            if (i > 0) {
+                out.append('\n');
+            }
+            token(i).writeTo(out);
+        }
+        out.flush();
+        return this.size;
+    }
+
+    /**
+     * Reads the buffer back as a TokenStream, so the Parser can consume it, creating Tokens only as they're pulled
+     * @return TokenStream over the tokens in this buffer, which should end with End_of_input
+     */
+    TokenStream stream() {
+        return stream(0);
+    }
+
+    /**
+     * Reads the buffer back as a TokenStream starting part way through, so just part of it can be parsed again
+     * @param from index of the first token to hand out
+     * @return Stream over the tokens from that index on, which should end with End_of_input
+     */
+    Stream stream(int from) {
+        return new Stream(from);
+    }
+
+    /**
+     * TokenStream over a TokenBuffer that can tell where it is in the buffer
+     */
+    class Stream implements TokenStream {
+        /** Index of the next token to hand out */
+        private int position;
+        /** Index of the last token handed out by next, -1 before the first */
+        private int last = -1;
+
+        /**
+         * Constructor for a Stream
+         * @param from index of the first token to hand out
+         */
+        private Stream(int from) {
+            this.position = from;
+        }
+
+        /**
+         * Getter for where the stream is
+         * @return index of the token next last handed out, -1 if it hasn't been called yet
+         */
+        int index() {
+            return this.last;
+        }
+
+        @Override
+        public Lexer.Token next() {
+            Lexer.Token t = peek(0);
+            this.last = Math.min(this.position, size - 1);
+            if (this.position < size - 1) {
+                this.position++;
+            }
+            return t;
+        }
+
+        @Override
+        public Lexer.Token peek(int k) {
+            //past the end, keep handing back the last token, which should be End_of_input
+            return token(Math.min(this.position + k, size - 1));
+        }
+
+        @Override
+        public SymbolTable getSymbols() {
+            return symbols;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.List;
+
+/**
+ * A pull-based source of Tokens, so the Parser can ask for Tokens one at a time instead of needing them all up front
+ */
+interface TokenStream {
+    /** How many Tokens ahead peek can look, kept a power of two so the ring buffer index can be masked */
+    int LOOKAHEAD = 4;
+
+    /**
+     * Returns the next Token and moves past it
+     * @return the next Token, End_of_input once the input is used up
+     */
+    Lexer.Token next();
+
+    /**
+     * Returns a Token ahead of the current one without moving past it
+     * @param k how far ahead to look, peek(0) is the Token next() would return, must be less than LOOKAHEAD
+     * @return the Token k places ahead
+     */
+    Lexer.Token peek(int k);
+
+    /**
+     * Returns the Token next() would return without moving past it
+     * @return the next Token
+     */
+    default Lexer.Token peek() {
+        return peek(0);
+    }
+
+    /**
+     * Getter for the SymbolTable the Tokens' symbol ids refer to
+     * @return the SymbolTable, or null if the Tokens don't carry symbol ids
+     */
+    default SymbolTable getSymbols() {
+        return null;
+    }
+
+    /**
+     * Wraps an already built List of Tokens, such as one read back from a .lex file, as a TokenStream
+     * @param tokens List of Tokens, should end with an End_of_input Token. An empty List is taken as an empty source,
+     * a stream of just End_of_input
+     * @return TokenStream over the given Tokens
+     */
+    static TokenStream of(List<Lexer.Token> tokens) {
+        if (tokens.isEmpty()) {
+            tokens = List.of(new Lexer.Token(TokenType.End_of_input, "", 1, 1));
+        }
+        List<Lexer.Token> list = tokens;
+        return new TokenStream() {
+            /** Index of the next Token in the List */
+            private int position = 0;
+
+            @Override
+            public Lexer.Token next() {
+                Lexer.Token t = peek(0);
+                if (this.position < list.size() - 1) {
+                    this.position++;
+                }
+                return t;
+            }
+
+            @Override
+            public Lexer.Token peek(int k) {
+                //past the end, keep handing back the last Token, which should be End_of_input
+                return list.get(Math.min(this.position + k, list.size() - 1));
+            }
+        };
+    }
+}
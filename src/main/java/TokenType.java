@@ -0,0 +1,103 @@
+/**
+ * Represents all possible token types, shared by the Lexer that produces them and the Parser that consumes them
+ */
+enum TokenType {
+    End_of_input(false, false, false, -1, Parser.NodeType.nd_None),
+    Op_multiply(false, true, false, 13, Parser.NodeType.nd_Mul),
+    Op_divide(false, true, false, 13, Parser.NodeType.nd_Div),
+    Op_mod(false, true, false, 13, Parser.NodeType.nd_Mod),
+    Op_add(false, true, false, 12, Parser.NodeType.nd_Add),
+    Op_subtract(false, true, false, 12, Parser.NodeType.nd_Sub),
+    Op_negate(false, false, true, 14, Parser.NodeType.nd_Negate),
+    Op_not(false, false, true, 14, Parser.NodeType.nd_Not),
+    Op_less(false, true, false, 10, Parser.NodeType.nd_Lss),
+    Op_lessequal(false, true, false, 10, Parser.NodeType.nd_Leq),
+    Op_greater(false, true, false, 10, Parser.NodeType.nd_Gtr),
+    Op_greaterequal(false, true, false, 10, Parser.NodeType.nd_Geq),
+    Op_equal(false, true, true, 9, Parser.NodeType.nd_Eql),
+    Op_notequal(false, true, false, 9, Parser.NodeType.nd_Neq),
+    Op_assign(false, false, false, -1, Parser.NodeType.nd_Assign),
+    Op_and(false, true, false, 5, Parser.NodeType.nd_And),
+    Op_or(false, true, false, 4, Parser.NodeType.nd_Or),
+    Keyword_if(false, false, false, -1, Parser.NodeType.nd_If),
+    Keyword_else(false, false, false, -1, Parser.NodeType.nd_None),
+    Keyword_while(false, false, false, -1, Parser.NodeType.nd_While),
+    Keyword_print(false, false, false, -1, Parser.NodeType.nd_None),
+    Keyword_putc(false, false, false, -1, Parser.NodeType.nd_None),
+    LeftParen(false, false, false, -1, Parser.NodeType.nd_None),
+    RightParen(false, false, false, -1, Parser.NodeType.nd_None),
+    LeftBrace(false, false, false, -1, Parser.NodeType.nd_None),
+    RightBrace(false, false, false, -1, Parser.NodeType.nd_None),
+    Semicolon(false, false, false, -1, Parser.NodeType.nd_None),
+    Comma(false, false, false, -1, Parser.NodeType.nd_None),
+    Identifier(false, false, false, -1, Parser.NodeType.nd_Ident),
+    Integer(false, false, false, -1, Parser.NodeType.nd_Integer),
+    String(false, false, false, -1, Parser.NodeType.nd_String);
+
+    /**
+     * The precedence that this TokenType holds
+     */
+    private final int precedence;
+    /**
+     * Boolean whether this TokenType is right associative
+     */
+    private final boolean right_assoc;
+    /**
+     * Boolean value whether this TokenType is a binary operator
+     */
+    private final boolean is_binary;
+    /**
+     * Boolean value whether this TokenType is a unary operator
+     */
+    private final boolean is_unary;
+    /**
+     * Type of node this TokenType is
+     */
+    private final Parser.NodeType node_type;
+
+    /**
+     * Consturctor for a TokenType object
+     * @param right_assoc Boolean, dependent on if this TokenType is right associative
+     * @param is_binary Boolean, dependent on if this TokenType is binary
+     * @param is_unary Boolean, dependent on if this TokenType is unary
+     * @param precedence Precedence that this TokenType holds
+     * @param node NodeType that this TokenType is
+     */
+    TokenType(boolean right_assoc, boolean is_binary, boolean is_unary, int precedence, Parser.NodeType node) {
+        this.right_assoc = right_assoc;
+        this.is_binary = is_binary;
+        this.is_unary = is_unary;
+        this.precedence = precedence;
+        this.node_type = node;
+    }
+
+    /**
+     * Getter method for right_assoc attribute
+     * @return right_assoc
+     */
+    boolean isRightAssoc() { return this.right_assoc; }
+
+    /**
+     * Getter method for is_binary attribute
+     * @return is_binary
+     */
+    boolean isBinary() { return this.is_binary; }
+
+    /**
+     * Getter method for is_unary attribute
+     * @return is_unary
+     */
+    boolean isUnary() { return this.is_unary; }
+
+    /**
+     * Getter method for precedence attribute
+     * @return precedence
+     */
+    int getPrecedence() { return this.precedence; }
+
+    /**
+     * Getter method for node_type attribute
+     * @return node_type
+     */
+    Parser.NodeType getNodeType() { return this.node_type; }
+}
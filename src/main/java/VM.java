@@ -0,0 +1,200 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Stack machine that runs Bytecode with one switch over the opcode per instruction. Everything it touches while
+ * running is kept in locals: the code array, the pc, the stack array and its top, and the variables.
+ */
+class VM {
+    /** Output is handed to the Writer once this many chars are buffered */
+    private static final int FLUSH_AT = 8192;
+
+    /** Where the program's output goes */
+    private final Writer out;
+    /** Output not yet handed to out */
+    private final StringBuilder buffer = new StringBuilder(FLUSH_AT + 64);
+    /** Value of each variable after the last run, indexed by slot */
+    private int[] variables = new int[0];
+
+    /**
+     * Constructor for a VM
+     * @param out where programs' output goes, written in chunks rather than a char at a time
+     */
+    VM(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Runs a program from the start, with every variable at 0
+     * @param program the Bytecode to run
+     * @throws IOException if the output can't be written
+     */
+    void run(Bytecode program) throws IOException {
+        final int[] code = program.code;
+        final String[] strings = program.strings;
+        final int[] vars = new int[program.variables.length];
+        //the top of the stack is kept in tos rather than in the array, and stack[0] is only ever written with the
+        //meaningless tos of an empty stack, so popping the last value never reads below the array
+        final int[] stack = new int[program.maxStack + 2];
+        final StringBuilder buf = this.buffer;
+        this.variables = vars;
+        int pc = 0;
+        int sp = 0;
+        int tos = 0;
+
+        try {
+            while (true) {
+                switch (code[pc++]) {
+                    case Bytecode.HALT:
+                        return;
+                    case Bytecode.PUSH:
+                        stack[sp++] = tos;
+                        tos = code[pc++];
+                        break;
+                    case Bytecode.FETCH:
+                        stack[sp++] = tos;
+                        tos = vars[code[pc++]];
+                        break;
+                    case Bytecode.STORE:
+                        vars[code[pc++]] = tos;
+                        tos = stack[--sp];
+                        break;
+                    case Bytecode.ADD: tos = stack[--sp] + tos; break;
+                    case Bytecode.SUB: tos = stack[--sp] - tos; break;
+                    case Bytecode.MUL: tos = stack[--sp] * tos; break;
+                    case Bytecode.DIV: tos = stack[--sp] / tos; break;
+                    case Bytecode.MOD: tos = stack[--sp] % tos; break;
+                    case Bytecode.LT: tos = stack[--sp] < tos ? 1 : 0; break;
+                    case Bytecode.LE: tos = stack[--sp] <= tos ? 1 : 0; break;
+                    case Bytecode.GT: tos = stack[--sp] > tos ? 1 : 0; break;
+                    case Bytecode.GE: tos = stack[--sp] >= tos ? 1 : 0; break;
+                    case Bytecode.EQ: tos = stack[--sp] == tos ? 1 : 0; break;
+                    case Bytecode.NE: tos = stack[--sp] != tos ? 1 : 0; break;
+                    case Bytecode.NEG: tos = -tos; break;
+                    case Bytecode.NOT: tos = tos == 0 ? 1 : 0; break;
+                    case Bytecode.JMP:
+                        pc += code[pc] + 1;
+                        break;
+                    case Bytecode.JZ:
+                        pc += tos == 0 ? code[pc] + 1 : 1;
+                        tos = stack[--sp];
+                        break;
+                    case Bytecode.JNZ:
+                        pc += tos != 0 ? code[pc] + 1 : 1;
+                        tos = stack[--sp];
+                        break;
+                    case Bytecode.PRTC:
+                        buf.append((char) tos);
+                        tos = stack[--sp];
+                        if (buf.length() >= FLUSH_AT) flush();
+                        break;
+                    case Bytecode.PRTI:
+                        buf.append(tos);
+                        tos = stack[--sp];
+                        if (buf.length() >= FLUSH_AT) flush();
+                        break;
+                    case Bytecode.PRTS:
+                        buf.append(strings[code[pc++]]);
+                        if (buf.length() >= FLUSH_AT) flush();
+                        break;
+                    default:
+                        throw new IllegalStateException("VM: bad opcode " + code[pc - 1] + " at " + (pc - 1));
+                }
+            }
+        } finally {
+            flush();
+        }
+    }
+
+    /**
+     * Getter for the value of a variable, as the last run left it
+     * @param program the Bytecode that was run
+     * @param name name of the variable
+     * @return its value, 0 if the program has no such variable
+     */
+    int getVariable(Bytecode program, String name) {
+        for (int slot = 0; slot < program.variables.length && slot < this.variables.length; slot++) {
+            if (program.variables[slot].equals(name)) {
+                return this.variables[slot];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Hands all buffered output to the Writer
+     * @throws IOException if the output can't be written
+     */
+    private void flush() throws IOException {
+        this.out.append(this.buffer);
+        this.out.flush();
+        this.buffer.setLength(0);
+    }
+
+    /**
+     * Gets the Bytecode for a source file, reusing a cached copy in the cache directory when it is newer than the
+     * source and was saved by this version, otherwise compiling and optimizing the source and saving the result there
+     * @param source path of the source file
+     * @param cacheDir directory holding cached Bytecode, or null to always compile
+     * @return the Bytecode
+     * @throws IOException if the source can't be read
+     */
+    static Bytecode compileCached(Path source, Path cacheDir) throws IOException {
+        Path cached = cacheDir == null ? null : cacheDir.resolve(source.getFileName() + ".mcbc");
+        if (cached != null && Files.exists(cached)
+                && Files.getLastModifiedTime(cached).compareTo(Files.getLastModifiedTime(source)) >= 0) {
+            try (InputStream in = Files.newInputStream(cached)) {
+                return Bytecode.read(in);
+            } catch (IOException e) {
+                //stale or damaged, compile it again below
+            }
+        }
+        Bytecode program = CodeGen.generate(Optimizer.optimize(MiniCompiler.compile(Files.readString(source))));
+        if (cached != null) {
+            Files.createDirectories(cacheDir);
+            try (OutputStream out = Files.newOutputStream(cached)) {
+                program.write(out);
+            }
+        }
+        return program;
+    }
+
+    /**
+     * Runnable main method that compiles a source file in src/main/resources to Bytecode and runs it.
+     * Option --cache=DIR keeps the Bytecode in DIR so later runs skip compiling, --dis prints the Bytecode instead
+     * @param args Command line arguments, options then the name of the source file, defaults to count.c
+     */
+    public static void main(String[] args) {
+        String filename = "count.c";
+        Path cacheDir = null;
+        boolean dis = false;
+        for (String arg : args) {
+            if (arg.startsWith("--cache=")) {
+                cacheDir = Path.of(arg.substring("--cache=".length()));
+            } else if (arg.equals("--dis")) {
+                dis = true;
+            } else {
+                filename = arg;
+            }
+        }
+        try {
+            Bytecode program = compileCached(Path.of(MiniCompiler.RESOURCES + filename), cacheDir);
+            if (dis) {
+                System.out.print(program.disassemble());
+            } else {
+                new VM(new OutputStreamWriter(System.out)).run(program);
+            }
+        } catch (CompileException e) {
+            CompileException.fail(e.getMessage());
+        } catch (IOException e) {
+            CompileException.fail("Exception: " + e.getMessage());
+        } catch (ArithmeticException e) {
+            CompileException.fail("Runtime error: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AstArenaTest {
+
+    /**
+     * Printing straight from the arena should give exactly what printing the Node tree gives
+     */
+    @Test
+    void sameOutputAsNodes() throws IOException {
+        String[] sources = {
+                MiniCompiler.readSource("hello.t"),
+                MiniCompiler.readSource("count.c"),
+                "i = 3; while (i > 0) { if (!(i == 2)) putc(i + 48); else ; i = i - 1; }"
+        };
+        for (String source : sources) {
+            Parser p = new Parser(new Lexer(source));
+            String fromNodes = p.printAST(p.parse(), new StringBuilder(), false);
+            p.reset(new Lexer(source), new Diagnostics());
+            String fromArena = p.printAST(p.parseArena(), new StringBuilder(), false);
+            assertEquals(fromNodes, fromArena);
+        }
+    }
+
+    /**
+     * Children should always come before their parents, and leaves should reuse the Lexer's symbol ids
+     */
+    @Test
+    void layoutTest() {
+        Lexer lexer = new Lexer("x = 1 + y; print(\"hi\");");
+        Parser p = new Parser(lexer);
+        int root = p.parseArena();
+        AstArena arena = p.getArena();
+        assertEquals(arena.size() - 1, root);
+        for (int i = 0; i < arena.size(); i++) {
+            assertTrue(arena.left(i) < i && arena.right(i) < i);
+        }
+
+        int assign = arena.right(arena.left(root));
+        assertEquals(Parser.NodeType.nd_Assign, arena.kind(assign));
+        int x = arena.left(assign);
+        assertEquals("x", arena.text(x));
+        assertEquals(lexer.getSymbols().intern("x"), arena.value(x));
+        assertEquals("1", arena.text(arena.left(arena.right(assign))));
+        assertEquals(AstArena.NIL, arena.left(x));
+    }
+}
@@ -0,0 +1,30 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for BatchCompiler
+ */
+public class BatchCompilerTest {
+    @Test
+    void badFileDoesNotStopOthers(@TempDir Path dir) throws IOException {
+        Files.writeString(dir.resolve("a.c"), "x = 1;");
+        Files.writeString(dir.resolve("b.c"), "x = 'ab';");
+        Files.writeString(dir.resolve("c.c"), "while (x < 3) x = x + 1;");
+        Files.writeString(dir.resolve("notes.txt"), "not a source file");
+
+        List<BatchCompiler.Result> results = BatchCompiler.compileAll(BatchCompiler.collectFiles(List.of(dir.toString())), 2);
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).ok());
+        assertNotNull(results.get(0).ast);
+        assertFalse(results.get(1).ok());
+        assertEquals(1, results.get(1).diagnostics.size());
+        assertTrue(results.get(2).ok());
+    }
+}
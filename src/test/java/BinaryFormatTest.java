@@ -0,0 +1,158 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BinaryFormatTest {
+    /** Sample programs every test runs over */
+    private static final String[] SAMPLES = {"count.c", "fizzbuzz.c", "prime.c", "99bottles.c", "hello.t"};
+
+    /**
+     * Lexes a source into .lex text, the way MiniCompiler --lex writes it
+     * @param source text of the program
+     * @return the .lex text
+     */
+    private static String lexText(String source) {
+        StringBuilder sb = new StringBuilder();
+        for (Lexer.Token t : new Lexer(source).getTokens()) {
+            if (sb.length() > 0) sb.append("\n");
+            sb.append(t);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Compiles a source into .par text, the way printAST writes it
+     * @param source text of the program
+     * @return the .par text
+     */
+    private static String parText(String source) {
+        return new Parser(new Lexer("")).printAST(MiniCompiler.compile(source), new StringBuilder(), false);
+    }
+
+    /**
+     * .lex text should turn into binary and back without changing, and be smaller
+     */
+    @Test
+    void lexRoundTripTest() throws IOException {
+        for (String file : SAMPLES) {
+            String text = lexText(MiniCompiler.readSource(file));
+            ByteArrayOutputStream binary = new ByteArrayOutputStream();
+            BinaryFormat.lexToBinary(new BufferedReader(new StringReader(text)), binary);
+            StringWriter back = new StringWriter();
+            BinaryFormat.binaryToLex(new ByteArrayInputStream(binary.toByteArray()), back);
+            assertEquals(text, back.toString(), file);
+            assertTrue(binary.size() < text.length(), file + " " + binary.size() + " of " + text.length());
+        }
+    }
+
+    /**
+     * .par text should turn into binary and back without changing, and be smaller
+     */
+    @Test
+    void parRoundTripTest() throws IOException {
+        for (String file : SAMPLES) {
+            String text = parText(MiniCompiler.readSource(file));
+            ByteArrayOutputStream binary = new ByteArrayOutputStream();
+            BinaryFormat.parToBinary(new BufferedReader(new StringReader(text)), binary);
+            StringWriter back = new StringWriter();
+            BinaryFormat.binaryToPar(new ByteArrayInputStream(binary.toByteArray()), back);
+            assertEquals(text, back.toString(), file);
+            assertTrue(binary.size() < text.length(), file + " " + binary.size() + " of " + text.length());
+        }
+    }
+
+    /**
+     * The golden .par files should survive being converted to binary and back
+     */
+    @Test
+    void goldenFilesTest() throws IOException {
+        for (String file : new String[]{"correctCount", "correctHello", "correctLoop"}) {
+            String text = Files.readString(Path.of(MiniCompiler.RESOURCES + file));
+            ByteArrayOutputStream binary = new ByteArrayOutputStream();
+            BinaryFormat.parToBinary(new BufferedReader(new StringReader(text)), binary);
+            StringWriter back = new StringWriter();
+            BinaryFormat.binaryToPar(new ByteArrayInputStream(binary.toByteArray()), back);
+            assertEquals(text.strip(), back.toString().strip(), file);
+        }
+    }
+
+    /**
+     * Tokens and trees written by the streaming writers should parse and print the same as the originals, from Nodes
+     * and from an AstArena alike
+     */
+    @Test
+    void streamingTest() throws IOException {
+        for (String file : SAMPLES) {
+            String source = MiniCompiler.readSource(file);
+            ByteArrayOutputStream tokens = new ByteArrayOutputStream();
+            try (BinaryFormat.TokenWriter writer = new BinaryFormat.TokenWriter(tokens)) {
+                writer.writeAll(new Lexer(source).tokenize(new TokenBuffer()));
+            }
+            //the Parser can read straight from the binary tokens
+            BinaryFormat.TokenReader reader = new BinaryFormat.TokenReader(new ByteArrayInputStream(tokens.toByteArray()));
+            Parser parser = new Parser(reader.stream());
+            assertEquals(parText(source), parser.printAST(parser.parse(), new StringBuilder(), false), file);
+
+            Parser arenaParser = new Parser(new Lexer(source));
+            int root = arenaParser.parseArena();
+            ByteArrayOutputStream ast = new ByteArrayOutputStream();
+            try (BinaryFormat.AstWriter writer = new BinaryFormat.AstWriter(ast)) {
+                writer.write(arenaParser.getArena(), root);
+            }
+            Parser.Node tree = new BinaryFormat.AstReader(new ByteArrayInputStream(ast.toByteArray())).readTree();
+            assertEquals(parText(source), arenaParser.printAST(tree, new StringBuilder(), false), file);
+        }
+    }
+
+    /**
+     * An empty program is just a missing node, and a deeply nested one shouldn't overflow the call stack
+     */
+    @Test
+    void edgeCaseTest() throws IOException {
+        ByteArrayOutputStream empty = new ByteArrayOutputStream();
+        try (BinaryFormat.AstWriter writer = new BinaryFormat.AstWriter(empty)) {
+            writer.write(null);
+        }
+        assertNull(new BinaryFormat.AstReader(new ByteArrayInputStream(empty.toByteArray())).readTree());
+
+        int depth = 100000;
+        String source = "a = " + "(".repeat(depth) + "1" + " + 1)".repeat(depth) + ";";
+        ByteArrayOutputStream deep = new ByteArrayOutputStream();
+        try (BinaryFormat.AstWriter writer = new BinaryFormat.AstWriter(deep)) {
+            writer.write(MiniCompiler.compile(source));
+        }
+        Parser.Node tree = new BinaryFormat.AstReader(new ByteArrayInputStream(deep.toByteArray())).readTree();
+        assertEquals(parText(source), new Parser(new Lexer("")).printAST(tree, new StringBuilder(), false));
+    }
+
+    /**
+     * Streams that are cut short, from another version, or of the other kind should be refused
+     */
+    @Test
+    void badStreamTest() throws IOException {
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        try (BinaryFormat.AstWriter writer = new BinaryFormat.AstWriter(binary)) {
+            writer.write(MiniCompiler.compile(MiniCompiler.readSource("prime.c")));
+        }
+        byte[] data = binary.toByteArray();
+        byte[] cut = Arrays.copyOf(data, data.length - 3);
+        assertThrows(IOException.class, () -> new BinaryFormat.AstReader(new ByteArrayInputStream(cut)).readTree());
+        byte[] newer = data.clone();
+        newer[4] = BinaryFormat.VERSION + 1;
+        assertThrows(IOException.class, () -> new BinaryFormat.AstReader(new ByteArrayInputStream(newer)));
+        assertThrows(IOException.class, () -> new BinaryFormat.TokenReader(new ByteArrayInputStream(data)));
+    }
+}
@@ -0,0 +1,137 @@
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CharScannerTest {
+    /** Chars the random sources are made of, weighted towards the ones the searches look for */
+    private static final String CHARS = "    \t\n\n\r**//\"\"ab1;\u0000\u00e9\u2028\u00a0\u000b\u001c";
+
+    /**
+     * Makes a random source
+     * @param random where the chars come from
+     * @param length number of chars
+     * @return the source
+     */
+    private static String randomSource(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(CHARS.charAt(random.nextInt(CHARS.length())));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Checks that every search of a VectorScanner gives the same answer as the charAt one, from every start to a few
+     * ends, so the vector loops and their tails are both covered. Tagged vector, so it only runs in gradle vectorTest
+     */
+    @Test
+    @Tag("vector")
+    void vectorMatchesScalarTest() {
+        assertTrue(CharScanner.hasVector(), "vectorTest runs with VectorScanner and the vector module");
+        Random random = new Random(23);
+        for (int length : new int[]{0, 1, 15, 33, 64, 100, 257}) {
+            String source = randomSource(random, length);
+            CharScanner scalar = new CharScanner(source);
+            CharScanner vector = CharScanner.vector(source);
+            assertNotNull(vector);
+            for (int from = 0; from <= length; from++) {
+                for (int end : new int[]{from, Math.min(from + 1, length), (from + length) / 2, length}) {
+                    if (end < from) {
+                        continue;
+                    }
+                    String where = length + " chars, " + from + " to " + end;
+                    assertEquals(scalar.skipSpace(from, end), vector.skipSpace(from, end), where);
+                    assertEquals(scalar.find('"', from, end), vector.find('"', from, end), where);
+                    assertEquals(scalar.find('\n', from, end), vector.find('\n', from, end), where);
+                    assertEquals(scalar.find('\u00e9', from, end), vector.find('\u00e9', from, end), where);
+                    assertEquals(scalar.commentEnd(from, end), vector.commentEnd(from, end), where);
+                    assertEquals(scalar.count('\n', from, end), vector.count('\n', from, end), where);
+                    assertEquals(scalar.lastIndexOf('\n', from, end), vector.lastIndexOf('\n', from, end), where);
+                }
+            }
+        }
+    }
+
+    @Test
+    void scalarTest() {
+        CharScanner scanner = new CharScanner("  \t x /* a */ \"b\u0000c\" \n");
+        assertEquals(4, scanner.skipSpace(0, 22));
+        assertEquals(2, scanner.skipSpace(0, 2));
+        assertEquals(11, scanner.commentEnd(0, 22));
+        assertEquals(-1, scanner.commentEnd(0, 12));
+        assertEquals(14, scanner.find('"', 0, 22));
+        //a NUL ends the search like the end of the source does
+        assertEquals(16, scanner.find('"', 15, 22));
+        assertEquals(1, scanner.count('\n', 0, 21));
+        assertEquals(20, scanner.lastIndexOf('\n', 0, 21));
+        assertEquals(-1, scanner.lastIndexOf('\n', 0, 20));
+    }
+
+    /**
+     * Lexes a source with the charAt scanner and with a VectorScanner, checking the tokens come out the same
+     * @param source text to lex
+     */
+    private static void assertSameTokens(CharSequence source) {
+        Diagnostics scalarErrors = new Diagnostics(Integer.MAX_VALUE);
+        TokenBuffer expected = new Lexer(new CharScanner(source), new SymbolTable(), scalarErrors).tokenize(new TokenBuffer());
+        Diagnostics vectorErrors = new Diagnostics(Integer.MAX_VALUE);
+        TokenBuffer actual = new Lexer(CharScanner.vector(source), new SymbolTable(), vectorErrors).tokenize(new TokenBuffer());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            String where = "token " + i;
+            assertEquals(expected.type(i), actual.type(i), where);
+            assertEquals(expected.line(i), actual.line(i), where);
+            assertEquals(expected.pos(i), actual.pos(i), where);
+            assertEquals(expected.start(i), actual.start(i), where);
+            assertEquals(expected.length(i), actual.length(i), where);
+            assertEquals(expected.value(i), actual.value(i), where);
+        }
+        assertEquals(scalarErrors.getErrors().toString(), vectorErrors.getErrors().toString());
+    }
+
+    /**
+     * Lines and positions after jumping over comments, Strings and indents should be the ones getNextChar always gave
+     */
+    @Test
+    void lexerPositionsTest() {
+        Lexer lexer = new Lexer("/* one\n two */  a\n        \"three\nfour\"   // five\n\n\t\tb /* six */ c");
+        int[][] expected = {{2, 10}, {3, 9}, {6, 3}, {6, 15}, {6, 16}};
+        for (int[] place : expected) {
+            Lexer.Token token = lexer.getToken();
+            assertEquals(place[0], token.line, token.toString());
+            assertEquals(place[1], token.pos, token.toString());
+        }
+        assertEquals(TokenType.End_of_input, new Lexer("  // no line break").getToken().tokentype);
+        Diagnostics diagnostics = new Diagnostics(Integer.MAX_VALUE);
+        new Lexer("a\n  /* never\n closed", new SymbolTable(), diagnostics).tokenize(new TokenBuffer());
+        assertEquals("Reached end of file without closing comment in line 2, pos 3", diagnostics.getErrors().get(0).toString());
+        diagnostics = new Diagnostics(Integer.MAX_VALUE);
+        new Lexer("a\n  \"never\n closed", new SymbolTable(), diagnostics).tokenize(new TokenBuffer());
+        assertEquals("Reached end of file without closing String in line 3, pos 8", diagnostics.getErrors().get(0).toString());
+    }
+
+    @Test
+    @Tag("vector")
+    void lexerVectorTest() throws IOException {
+        String heavy = "/* a comment\n * over a few lines */\nx = 1;   // and one to the end of the line\n"
+                + "print(\"a String with /* not a comment */ in it\\n\");\n"
+                + "            y = x - 2;\t\t\t\n/**/ z = -y; \"\";\n";
+        assertSameTokens(heavy.repeat(200));
+        for (String file : new String[]{"count.c", "fizzbuzz.c", "prime.c", "99bottles.c"}) {
+            assertSameTokens(MiniCompiler.readSource(file).repeat(20));
+        }
+        //errors at the very end, and a memory mapped source read as bytes directly
+        assertSameTokens(heavy.repeat(100) + "/* never closed");
+        assertSameTokens(heavy.repeat(100) + "\"never closed");
+        MappedSource mapped = new MappedSource(ByteBuffer.wrap(heavy.repeat(100).getBytes(StandardCharsets.ISO_8859_1)));
+        assertSameTokens(mapped);
+    }
+}
@@ -0,0 +1,140 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompileCacheTest {
+
+    /**
+     * Checks that something from the cache holds exactly what lexing and parsing the source from scratch gives
+     * @param source text of the program
+     * @param compiled what the cache gave back
+     */
+    private static void assertSameAsCompile(String source, CompileCache.Compiled compiled) {
+        TokenBuffer full = new Lexer(source).tokenize(new TokenBuffer());
+        assertEquals(full.size(), compiled.tokens().size());
+        for (int i = 0; i < full.size(); i++) {
+            assertEquals(full.token(i).toString(), compiled.tokens().token(i).toString());
+            assertEquals(full.start(i), compiled.tokens().start(i));
+        }
+        Parser printer = new Parser(new Lexer(""));
+        assertEquals(printer.printAST(MiniCompiler.compile(source), new StringBuilder(), false),
+                printer.printAST(compiled.ast(), new StringBuilder(), false));
+    }
+
+    /**
+     * Adds up the sizes of the entry files in a directory
+     * @param dir the cache directory
+     * @return total bytes
+     */
+    private static long entryBytes(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.toString().endsWith(CompileCache.EXTENSION)).mapToLong(f -> f.toFile().length()).sum();
+        }
+    }
+
+    /**
+     * A second compile of the same text should come from memory and give the same tokens and AST
+     */
+    @Test
+    void memoryHitTest() throws IOException {
+        CompileCache cache = new CompileCache(1 << 20);
+        for (String file : new String[]{"count.c", "fizzbuzz.c", "prime.c", "99bottles.c"}) {
+            String source = MiniCompiler.readSource(file);
+            assertSameAsCompile(source, cache.compile(source, new Diagnostics()));
+            assertSameAsCompile(source, cache.compile(source, new Diagnostics()));
+        }
+        assertEquals(4, cache.getMisses());
+        assertEquals(4, cache.getMemoryHits());
+        //an empty program has no root at all
+        assertSameAsCompile("", cache.compile("", new Diagnostics()));
+        assertSameAsCompile("", cache.compile("", new Diagnostics()));
+    }
+
+    /**
+     * A new cache on the same directory should find what an earlier one saved
+     */
+    @Test
+    void diskHitTest(@TempDir Path dir) throws IOException {
+        String source = MiniCompiler.readSource("prime.c");
+        new CompileCache(1 << 20, dir, 1 << 20).compile(source, new Diagnostics());
+        CompileCache cache = new CompileCache(1 << 20, dir, 1 << 20);
+        assertSameAsCompile(source, cache.compile(source, new Diagnostics()));
+        assertEquals(1, cache.getDiskHits());
+        assertEquals(0, cache.getMisses());
+        cache.compile(source, new Diagnostics());
+        assertEquals(1, cache.getMemoryHits());
+    }
+
+    /**
+     * Neither tier should grow past its size, dropping the entries used longest ago
+     */
+    @Test
+    void evictionTest(@TempDir Path dir) throws IOException {
+        String first = "a = 0;\n";
+        CompileCache cache = new CompileCache(600, dir, 1000);
+        cache.compile(first, new Diagnostics());
+        for (int i = 1; i < 40; i++) {
+            cache.compile("a = " + i + ";\nprint(\"" + "x".repeat(i) + "\");\n", new Diagnostics());
+            assertTrue(cache.getMemoryBytes() <= 600, "memory " + cache.getMemoryBytes());
+            assertTrue(entryBytes(dir) <= 1000, "disk " + entryBytes(dir));
+        }
+        cache.compile(first, new Diagnostics());
+        assertEquals(41, cache.getMisses());
+    }
+
+    /**
+     * A source with errors should report them every time rather than be cached
+     */
+    @Test
+    void errorsNotCachedTest() {
+        CompileCache cache = new CompileCache(1 << 20);
+        for (int i = 0; i < 2; i++) {
+            Diagnostics diagnostics = new Diagnostics(Integer.MAX_VALUE);
+            cache.compile("a = (1;\nb = 1;\n", diagnostics);
+            assertEquals(1, diagnostics.getErrors().size());
+        }
+        assertEquals(2, cache.getMisses());
+        assertThrows(CompileException.class, () -> cache.compile("a = (1;", new Diagnostics()));
+    }
+
+    /**
+     * A damaged entry file should be compiled again rather than loaded
+     */
+    @Test
+    void damagedEntryTest(@TempDir Path dir) throws IOException {
+        String source = MiniCompiler.readSource("fizzbuzz.c");
+        new CompileCache(1 << 20, dir, 1 << 20).compile(source, new Diagnostics());
+        Path entry = dir.resolve(CompileCache.key(source) + CompileCache.EXTENSION);
+        byte[] data = Files.readAllBytes(entry);
+        Files.write(entry, Arrays.copyOf(data, data.length / 2));
+        CompileCache cache = new CompileCache(1 << 20, dir, 1 << 20);
+        assertSameAsCompile(source, cache.compile(source, new Diagnostics()));
+        assertEquals(1, cache.getMisses());
+        //one changed bit deep in the tokens
+        data[data.length - 20] ^= 1;
+        Files.write(entry, data);
+        cache = new CompileCache(1 << 20, dir, 1 << 20);
+        assertSameAsCompile(source, cache.compile(source, new Diagnostics()));
+        assertEquals(1, cache.getMisses());
+    }
+
+    /**
+     * Any change to the text should give another key
+     */
+    @Test
+    void keyTest() {
+        assertEquals(CompileCache.key("a = 1;"), CompileCache.key("a = 1;"));
+        assertNotEquals(CompileCache.key("a = 1;"), CompileCache.key("a = 1; "));
+        assertEquals(64, CompileCache.key("").length());
+    }
+}
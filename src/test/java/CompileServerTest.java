@@ -0,0 +1,81 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CompileServer
+ */
+public class CompileServerTest {
+    @Test
+    void answersManyRequestsOnOneConnection() throws IOException {
+        String source = MiniCompiler.readSource("hello.t");
+        Parser p = new Parser(new Lexer(source));
+        String expected = p.printAST(p.parse(), new StringBuilder(), false);
+
+        try (CompileServer server = CompileServer.onPort(0).start();
+             CompileServer.Client client = new CompileServer.Client(server.getAddress())) {
+            //the same source twice, to check the reused Lexer and Parser start clean each time
+            assertEquals(expected, client.request(CompileServer.MODE_AST, source));
+            assertEquals(CompileServer.STATUS_OK, client.getStatus());
+            assertEquals(expected, client.request(CompileServer.MODE_AST, source));
+
+            String errors = client.request(CompileServer.MODE_AST, "x = 1 2;\ny = = 3;");
+            assertEquals(CompileServer.STATUS_ERRORS, client.getStatus());
+            assertEquals(2, errors.split("\n").length);
+
+            String tokens = client.request(CompileServer.MODE_TOKENS, "x = 1;");
+            assertEquals(CompileServer.STATUS_OK, client.getStatus());
+            assertEquals(5, tokens.split("\n").length);
+        }
+    }
+
+    @Test
+    void unixSocket(@TempDir Path dir) throws IOException {
+        try (CompileServer server = CompileServer.onSocket(dir.resolve("compile.sock")).start();
+             CompileServer.Client client = new CompileServer.Client(server.getAddress())) {
+            client.request(CompileServer.MODE_AST, "x = 1;");
+            assertEquals(CompileServer.STATUS_OK, client.getStatus());
+        }
+    }
+
+    @Test
+    void unknownModeIsAnError() throws IOException {
+        try (CompileServer server = CompileServer.onPort(0).start();
+             CompileServer.Client client = new CompileServer.Client(server.getAddress())) {
+            assertEquals("Unknown request mode 88\n", client.request((byte) 'X', "x = 1;"));
+            assertEquals(CompileServer.STATUS_ERRORS, client.getStatus());
+            //the connection is still good for the next request
+            client.request(CompileServer.MODE_AST, "x = 1;");
+            assertEquals(CompileServer.STATUS_OK, client.getStatus());
+        }
+    }
+
+    @Test
+    void badLengthIsAnError() throws IOException {
+        try (CompileServer server = CompileServer.onPort(0).start()) {
+            for (int length : new int[]{-1, CompileServer.MAX_SOURCE + 1, Integer.MAX_VALUE}) {
+                try (SocketChannel channel = SocketChannel.open(server.getAddress())) {
+                    DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+                    DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+                    out.writeByte(CompileServer.MODE_AST);
+                    out.writeInt(length);
+                    out.flush();
+                    assertEquals(CompileServer.STATUS_ERRORS, in.readByte());
+                    byte[] text = new byte[in.readInt()];
+                    in.readFully(text);
+                    assertTrue(new String(text).startsWith("Source length " + length + " is out of range"));
+                    //the server hangs up, since it can't tell where the next request would start
+                    assertEquals(-1, in.read());
+                }
+            }
+        }
+    }
+}
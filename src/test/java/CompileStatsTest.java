@@ -0,0 +1,141 @@
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompileStatsTest {
+    /**
+     * Lexes and parses a source the way --stats does, recording into a CompileStats
+     * @param name name of the source
+     * @param source text of the source
+     * @return Snapshot of the finished compile
+     */
+    private static CompileStats.Snapshot compile(String name, String source) {
+        CompileStats stats = new CompileStats(name);
+        stats.source(source);
+        Diagnostics diagnostics = new Diagnostics();
+        stats.begin(CompileStats.Phase.LEX);
+        TokenBuffer tokens = new Lexer(source, new SymbolTable(), diagnostics).tokenize(new TokenBuffer());
+        stats.end(CompileStats.Phase.LEX);
+        stats.countTokens(tokens);
+        Parser parser = new Parser(tokens.stream(), diagnostics);
+        stats.begin(CompileStats.Phase.PARSE);
+        parser.parseArena();
+        stats.end(CompileStats.Phase.PARSE);
+        stats.countNodes(parser);
+        return stats.finish();
+    }
+
+    @Test
+    void countsTest() {
+        CompileStats.Snapshot snapshot = compile("test", "a = 1 + 2 * 3;\nwhile (a) { if (a) { print(\"x\"); } a = a - 1; }\n");
+        assertEquals(5, snapshot.tokens(TokenType.Identifier));
+        assertEquals(4, snapshot.tokens(TokenType.Integer));
+        assertEquals(1, snapshot.tokens(TokenType.Op_multiply));
+        assertEquals(1, snapshot.tokens(TokenType.End_of_input));
+        assertEquals(0, snapshot.tokens(TokenType.Keyword_else));
+        assertEquals(32, snapshot.tokenCount());
+        assertEquals(5, snapshot.nodes(Parser.NodeType.nd_Ident));
+        assertEquals(2, snapshot.nodes(Parser.NodeType.nd_Assign));
+        assertEquals(1, snapshot.nodes(Parser.NodeType.nd_While));
+        assertEquals(1, snapshot.nodes(Parser.NodeType.nd_Prts));
+        //while, its block, the if, then the if's block
+        assertEquals(4, snapshot.maxStmtDepth);
+        //the whole expression, then + waiting on 2 * 3, while a - 1 is folded without a frame of its own
+        assertEquals(2, snapshot.maxExprDepth);
+        assertTrue(snapshot.nanos(CompileStats.Phase.LEX) > 0);
+        assertTrue(snapshot.nanos(CompileStats.Phase.PARSE) > 0);
+        assertEquals(0, snapshot.nanos(CompileStats.Phase.IO));
+        assertTrue(snapshot.bytesPerSecond() > 0);
+        assertTrue(snapshot.toString().startsWith("test: 63 bytes, 32 tokens, "), snapshot.toString());
+    }
+
+    @Test
+    void depthTest() {
+        String nested = "x = " + "(".repeat(50) + "1" + ")".repeat(50) + ";\n" + "{".repeat(30) + "x = 2;" + "}".repeat(30);
+        CompileStats.Snapshot snapshot = compile("nested", nested);
+        assertEquals(51, snapshot.maxExprDepth);
+        assertEquals(30, snapshot.maxStmtDepth);
+    }
+
+    /**
+     * Counting the tokens as the Parser pulls them from a Lexer, the way a plain --stats compile does, gives the same
+     * counts as counting a TokenBuffer, with lexing timed as part of parse
+     */
+    @Test
+    void streamedTest() throws IOException {
+        String source = MiniCompiler.readSource("prime.c");
+        CompileStats stats = new CompileStats("streamed");
+        stats.source(source);
+        Diagnostics diagnostics = new Diagnostics();
+        Parser parser = new Parser(stats.countTokens(new Lexer(source, new SymbolTable(), diagnostics)), diagnostics);
+        stats.begin(CompileStats.Phase.PARSE);
+        parser.parseArena();
+        stats.end(CompileStats.Phase.PARSE);
+        stats.countNodes(parser);
+        CompileStats.Snapshot streamed = stats.finish();
+        CompileStats.Snapshot buffered = compile("buffered", source);
+        for (TokenType type : TokenType.values()) {
+            assertEquals(buffered.tokens(type), streamed.tokens(type), type.name());
+        }
+        assertEquals(95, streamed.tokenCount());
+        assertEquals(buffered.nodeCount(), streamed.nodeCount());
+        assertEquals(0, streamed.nanos(CompileStats.Phase.LEX));
+        assertTrue(streamed.streamed);
+        assertTrue(streamed.toString().contains("  lex    streamed to the Parser, timed as part of parse"), streamed.toString());
+        assertFalse(buffered.streamed);
+        assertFalse(buffered.toString().contains("streamed"));
+    }
+
+    /**
+     * A phase stopped by an exception should still be ended by finish, and phases run twice add up
+     */
+    @Test
+    void phasesTest() {
+        CompileStats stats = new CompileStats("phases");
+        stats.begin(CompileStats.Phase.PRINT);
+        byte[] garbage = new byte[1 << 20];
+        stats.end(CompileStats.Phase.PRINT);
+        long once = stats.snapshot().nanos(CompileStats.Phase.PRINT);
+        stats.begin(CompileStats.Phase.PRINT);
+        stats.end(CompileStats.Phase.PRINT);
+        //ending a phase that isn't running does nothing
+        stats.end(CompileStats.Phase.PRINT);
+        assertTrue(stats.snapshot().nanos(CompileStats.Phase.PRINT) >= once);
+        assertTrue(stats.snapshot().allocated(CompileStats.Phase.PRINT) >= garbage.length);
+        stats.begin(CompileStats.Phase.IO);
+        assertEquals(0, stats.snapshot().nanos(CompileStats.Phase.IO));
+        assertTrue(stats.finish().nanos(CompileStats.Phase.IO) > 0);
+    }
+
+    @Test
+    void jfrTest() throws IOException {
+        Path file = Files.createTempFile("stats", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("minicompiler.Phase");
+            recording.enable("minicompiler.Compile");
+            recording.start();
+            compile("recorded", MiniCompiler.readSource("prime.c"));
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+        long phases = events.stream().filter(e -> e.getEventType().getName().equals("minicompiler.Phase")).count();
+        assertEquals(2, phases);
+        RecordedEvent compile = events.stream().filter(e -> e.getEventType().getName().equals("minicompiler.Compile"))
+                .findFirst().orElseThrow();
+        assertEquals("recorded", compile.getString("source"));
+        assertEquals(95, compile.getLong("tokens"));
+        assertEquals(83, compile.getLong("nodes"));
+    }
+}
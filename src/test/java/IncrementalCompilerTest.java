@@ -0,0 +1,128 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IncrementalCompilerTest {
+
+    /**
+     * Checks that an IncrementalCompiler holds exactly what lexing and parsing its source from scratch gives
+     * @param compiler the IncrementalCompiler
+     */
+    private static void assertSameAsFullCompile(IncrementalCompiler compiler) {
+        String source = compiler.getSource();
+        SymbolTable symbols = new SymbolTable();
+        TokenBuffer full = new Lexer(source, symbols, new Diagnostics(Integer.MAX_VALUE)).tokenize(new TokenBuffer());
+        TokenBuffer tokens = compiler.getTokens();
+        assertEquals(full.size(), tokens.size(), source);
+        for (int i = 0; i < full.size(); i++) {
+            assertEquals(full.token(i).toString(), tokens.token(i).toString(), source);
+            assertEquals(full.start(i), tokens.start(i), source);
+        }
+
+        Diagnostics diagnostics = new Diagnostics(Integer.MAX_VALUE);
+        Parser parser = new Parser(new Lexer(source, symbols, diagnostics), diagnostics);
+        assertEquals(parser.printAST(parser.parse(), new StringBuilder(), false),
+                parser.printAST(compiler.getAst(), new StringBuilder(), false), source);
+        List<String> expected = new ArrayList<>();
+        for (Diagnostics.Diagnostic d : diagnostics.getErrors()) {
+            expected.add(d.toString());
+        }
+        List<String> actual = new ArrayList<>();
+        for (Diagnostics.Diagnostic d : compiler.getErrors()) {
+            actual.add(d.toString());
+        }
+        expected.sort(null);
+        actual.sort(null);
+        assertEquals(expected, actual, source);
+    }
+
+    /**
+     * Changing one statement should only lex and parse around that statement again
+     */
+    @Test
+    void smallEditTest() throws IOException {
+        String source = MiniCompiler.readSource("99bottles.c").repeat(20);
+        IncrementalCompiler compiler = new IncrementalCompiler(source);
+        int at = source.indexOf("bottles = 99") + source.length() / 2;
+        compiler.edit(at + "bottles = ".length(), 2, "12");
+        assertSameAsFullCompile(compiler);
+        assertTrue(compiler.getRelexed() <= 3, "relexed " + compiler.getRelexed());
+        assertTrue(compiler.getReparsed() <= 3, "reparsed " + compiler.getReparsed());
+    }
+
+    /**
+     * The statements should be handed out one by one, and getAst should keep the part of the tree before the edit
+     */
+    @Test
+    void statementsTest() {
+        IncrementalCompiler compiler = new IncrementalCompiler("a = 1;\nb = 2;\nc = 3;\nd = 4;\n");
+        List<Parser.Node> statements = compiler.getStatements();
+        assertEquals(4, statements.size());
+        assertEquals("c", statements.get(2).left.value);
+        Parser.Node before = compiler.getAst();
+        compiler.edit(compiler.getSource().indexOf("4"), 1, "5");
+        assertSameAsFullCompile(compiler);
+        assertEquals("5", statements.get(3).right.value);
+        Parser.Node after = compiler.getAst();
+        assertNotSame(before, after);
+        //the Sequence nodes over a and b are the same objects as before, c was parsed again in case an else followed it
+        assertSame(before.left.left, after.left.left);
+        compiler.edit(0, compiler.getSource().length(), "");
+        assertEquals(0, compiler.getStatements().size());
+        assertNull(compiler.getAst());
+    }
+
+    /**
+     * Edits that change how the text around them lexes or parses: comments opened and closed, a string cut in two,
+     * a minus after a new identifier, an else joined to the if before it, and lines added and removed
+     */
+    @Test
+    void trickyEditTest() {
+        IncrementalCompiler compiler = new IncrementalCompiler("if (a) x = 1;\ny = -2;\nprint(\"hi there\");\nz = 3;\n");
+        compiler.edit(0, 0, "/*");
+        assertSameAsFullCompile(compiler);
+        compiler.edit(compiler.getSource().indexOf("y ="), 0, "*/");
+        assertSameAsFullCompile(compiler);
+        compiler.edit(compiler.getSource().indexOf("there"), 0, "\"; a");
+        assertSameAsFullCompile(compiler);
+        compiler.edit(compiler.getSource().indexOf("-2"), 0, "b ");
+        assertSameAsFullCompile(compiler);
+        compiler.edit(compiler.getSource().indexOf("y ="), 0, "else ");
+        assertSameAsFullCompile(compiler);
+        compiler.edit(compiler.getSource().indexOf("\n"), 1, "");
+        assertSameAsFullCompile(compiler);
+        compiler.edit(compiler.getSource().length(), 0, "\n\n'");
+        assertSameAsFullCompile(compiler);
+        compiler.edit(0, compiler.getSource().length(), "");
+        assertSameAsFullCompile(compiler);
+    }
+
+    /**
+     * Random edits to the samples should always leave the same tokens, AST and errors as compiling from scratch
+     */
+    @Test
+    void randomEditTest() throws IOException {
+        String[] snippets = {"", " ", "\n", "a", "1", "-", "=", "<", "/", "*", "/*", "*/", "//", "\"", "'", "'x'",
+                "(", ")", "{", "}", ";", "if", "else", "while", "print(\"hi\");", "x = 1;", "else x = 2;", "&&", "!"};
+        Random random = new Random(42);
+        for (String file : new String[]{"count.c", "fizzbuzz.c", "prime.c", "99bottles.c", "testing1.c"}) {
+            IncrementalCompiler compiler = new IncrementalCompiler(MiniCompiler.readSource(file));
+            for (int i = 0; i < 200; i++) {
+                int length = compiler.getSource().length();
+                int offset = random.nextInt(length + 1);
+                int removed = Math.min(length - offset, random.nextInt(6));
+                compiler.edit(offset, removed, snippets[random.nextInt(snippets.length)]);
+                assertSameAsFullCompile(compiler);
+            }
+        }
+    }
+}
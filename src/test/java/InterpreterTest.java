@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InterpreterTest {
+
+    /**
+     * Compiles and runs a sample program
+     * @param filename name of the file within src/main/resources
+     * @return everything the program printed
+     */
+    private static String run(String filename) throws IOException {
+        StringWriter out = new StringWriter();
+        new Interpreter(out).load(MiniCompiler.compile(MiniCompiler.readSource(filename))).run();
+        return out.toString();
+    }
+
+    @Test
+    void countTest() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 1; i < 10; i++) {
+            expected.append("count is: ").append(i).append("\n");
+        }
+        assertEquals(expected.toString(), run("count.c"));
+    }
+
+    @Test
+    void fizzbuzzTest() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 1; i <= 100; i++) {
+            expected.append(i % 15 == 0 ? "FizzBuzz" : i % 3 == 0 ? "Fizz" : i % 5 == 0 ? "Buzz" : String.valueOf(i)).append("\n");
+        }
+        assertEquals(expected.toString(), run("fizzbuzz.c"));
+    }
+
+    @Test
+    void primeTest() throws IOException {
+        String out = run("prime.c");
+        assertTrue(out.startsWith("3 is prime\n5 is prime\n7 is prime\n11 is prime\n"));
+        assertTrue(out.endsWith("97 is prime\n101 is prime\nTotal primes found: 26\n"));
+    }
+
+    @Test
+    void bottlesTest() throws IOException {
+        String out = run("99bottles.c");
+        assertTrue(out.startsWith("99 bottles of beer on the wall\n99 bottles of beer\nTake one down, pass it around\n98 bottles"));
+        assertTrue(out.endsWith("1 bottles of beer\nTake one down, pass it around\n0 bottles of beer on the wall\n\n"));
+    }
+
+    /**
+     * Variables should keep their values after the run, putc should print chars and && should short circuit
+     */
+    @Test
+    void operatorsTest() throws IOException {
+        StringWriter out = new StringWriter();
+        Interpreter interpreter = new Interpreter(out);
+        interpreter.load(MiniCompiler.compile("a = 7 % 3 * 2 + 10 / 4; b = !(a == 4) || 0; c = 0 && 1 / 0; putc('h'); putc(105);"));
+        interpreter.run();
+        assertEquals(4, interpreter.getVariable("a"));
+        assertEquals(0, interpreter.getVariable("b"));
+        assertEquals(0, interpreter.getVariable("c"));
+        assertEquals("hi", out.toString());
+    }
+
+    @Test
+    void divideByZeroTest() {
+        Interpreter interpreter = new Interpreter(new StringWriter()).load(MiniCompiler.compile("a = 0; b = 1 / a;"));
+        assertThrows(ArithmeticException.class, interpreter::run);
+    }
+
+    /**
+     * Programs nested deeper than the call stack goes are reported as a CompileException, and the Interpreter can
+     * still load and run another program afterwards
+     */
+    @Test
+    void deepNestingTest() throws IOException {
+        String statements = "a = 1;\n" + "if (a) {\n".repeat(100000) + "print(a);\n" + "}\n".repeat(100000);
+        String expression = "a = 1;\nb = " + "-(a + ".repeat(100000) + "a" + ")".repeat(100000) + ";\n";
+        StringWriter out = new StringWriter();
+        Interpreter interpreter = new Interpreter(out);
+        for (String source : new String[]{statements, expression}) {
+            Parser.Node ast = MiniCompiler.compile(source);
+            CompileException e = assertThrows(CompileException.class, () -> interpreter.load(ast));
+            assertTrue(e.getMessage().startsWith("Interpreter: program nested too deeply"), e.getMessage());
+        }
+        interpreter.load(MiniCompiler.compile("a = 2; print(a);")).run();
+        assertEquals("2", out.toString());
+    }
+}
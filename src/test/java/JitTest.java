@@ -0,0 +1,100 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JitTest {
+
+    /**
+     * Compiles a source to a hidden class and runs it
+     * @param source text of the program
+     * @return everything the program printed
+     */
+    private static String run(String source) throws IOException {
+        StringWriter out = new StringWriter();
+        Jit.compile(MiniCompiler.compile(source)).run(out);
+        return out.toString();
+    }
+
+    /**
+     * The compiled programs should print exactly what the Interpreter prints for every sample program
+     */
+    @Test
+    void samplesMatchInterpreter() throws IOException {
+        for (String file : new String[]{"count.c", "fizzbuzz.c", "prime.c", "99bottles.c"}) {
+            String source = MiniCompiler.readSource(file);
+            StringWriter expected = new StringWriter();
+            new Interpreter(expected).load(MiniCompiler.compile(source)).run();
+            assertEquals(expected.toString(), run(source), file);
+        }
+    }
+
+    /**
+     * If and else, nested loops, short circuit && and || as values and as conditions, and every operator should work
+     * like the Interpreter, and the variables should keep their values after the run
+     */
+    @Test
+    void operatorsTest() throws IOException {
+        String source = "a = 7 % 3 * 2 + 10 / 4 - 1; b = !(a == 3) || 0; c = 0 && 1 / 0; d = 1 || 1 / 0;"
+                + "i = 0; n = 0; while (i < 5) { j = i; while (j >= 0) { n = n + 1; j = j - 1; } i = i + 1; }"
+                + "if (n != 15) print(\"bad\"); else { putc('o'); putc(107); }"
+                + "if (a <= 2 || !(n > 0 && b == 0)) print(\"bad\"); if (a > 2) print(\" \", a, b, c, d, n, \"\\n\");"
+                + "big = 100000 * 100; small = 200 - 1000;";
+        assertEquals("ok 300115\n", run(source));
+        StringWriter expected = new StringWriter();
+        new Interpreter(expected).load(MiniCompiler.compile(source)).run();
+        assertEquals(expected.toString(), run(source));
+        Jit program = Jit.compile(MiniCompiler.compile(source));
+        program.run(new StringWriter());
+        assertEquals(15, program.getVariable("n"));
+        assertEquals(10000000, program.getVariable("big"));
+        assertEquals(-800, program.getVariable("small"));
+    }
+
+    @Test
+    void divideByZeroTest() {
+        assertThrows(ArithmeticException.class, () -> run("a = 0; b = 1 / a;"));
+    }
+
+    /**
+     * A program too big for one JVM method should be refused rather than loaded wrong, and so should one that fits
+     * in a method but is too big for HotSpot to compile
+     */
+    @Test
+    void tooLargeTest() throws IOException {
+        StringBuilder small = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            small.append("a = a + 1000;\n");
+        }
+        Jit jit = Jit.compile(MiniCompiler.compile(small.toString()));
+        jit.run(Writer.nullWriter());
+        assertEquals(500_000, jit.getVariable("a"));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> Jit.compile(MiniCompiler.compile(small.toString().repeat(3))));
+        assertTrue(e.getMessage().endsWith("at most " + Jit.MAX_CODE), e.getMessage());
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            source.append("a = a + 1000;\n");
+        }
+        assertThrows(IllegalArgumentException.class, () -> Jit.compile(MiniCompiler.compile(source.toString())));
+    }
+
+    /**
+     * A program nested deeper than the call stack goes is refused like one too large, so callers run it on the VM
+     */
+    @Test
+    void deepNestingTest() {
+        String statements = "a = 1;\n" + "if (a) {\n".repeat(100000) + "print(a);\n" + "}\n".repeat(100000);
+        String expression = "a = 1;\nb = " + "-(a + ".repeat(100000) + "a" + ")".repeat(100000) + ";\n";
+        for (String source : new String[]{statements, expression}) {
+            Parser.Node ast = MiniCompiler.compile(source);
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> Jit.compile(ast));
+            assertEquals("Jit: program nested too deeply to compile", e.getMessage());
+        }
+    }
+}
@@ -1,4 +1,10 @@
 import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -15,42 +21,42 @@ public class LexerTests {
         //test //comment
         Lexer lexer = new Lexer("//comment\n\"str\"");
         Lexer.Token x = lexer.getToken();
-        assertEquals(Lexer.TokenType.String, x.tokentype);
+        assertEquals(TokenType.String, x.tokentype);
         assertEquals("str", x.value);
 
         //test /*comment*/
         lexer = new Lexer("/*comment*/\"str\"");
         x = lexer.getToken();
-        assertEquals(Lexer.TokenType.String, x.tokentype);
+        assertEquals(TokenType.String, x.tokentype);
         assertEquals("str", x.value);
 
         /*comm
         ent*/
         lexer = new Lexer("/*comm\nent*/\"str\"");
         x = lexer.getToken();
-        assertEquals(Lexer.TokenType.String, x.tokentype);
+        assertEquals(TokenType.String, x.tokentype);
         assertEquals("str", x.value);
 
         //should return END_OF_FILE token if nothing after
         //comment
         lexer = new Lexer("//comment");
-        assertEquals(Lexer.TokenType.End_of_input, lexer.getToken().tokentype);
+        assertEquals(TokenType.End_of_input, lexer.getToken().tokentype);
 
         /*comment*/
         lexer = new Lexer("/*comment*/");
-        assertEquals(Lexer.TokenType.End_of_input, lexer.getToken().tokentype);
+        assertEquals(TokenType.End_of_input, lexer.getToken().tokentype);
 
         /*comm
         ent*/
         lexer = new Lexer("/*comm\nent*/");
-        assertEquals(Lexer.TokenType.End_of_input, lexer.getToken().tokentype);
+        assertEquals(TokenType.End_of_input, lexer.getToken().tokentype);
     }
 
     @Test
     void stringTest() {
         Lexer lexer = new Lexer("\"bees\"");
         Lexer.Token x = lexer.getToken();
-        assertEquals(Lexer.TokenType.String, x.tokentype);
+        assertEquals(TokenType.String, x.tokentype);
         assertEquals("bees", x.value);
     }
 
@@ -58,7 +64,79 @@ public class LexerTests {
     void charTest() {
         Lexer lexer = new Lexer("'a'");
         Lexer.Token x = lexer.getToken();
-        assertEquals(Lexer.TokenType.Integer, x.tokentype);
+        assertEquals(TokenType.Integer, x.tokentype);
         assertEquals(""+(int)'a', x.value);
     }
+
+    @Test
+    void peekTest() {
+        Lexer lexer = new Lexer("a = 1;");
+        //peeking ahead shouldn't use up any Tokens
+        assertEquals(TokenType.Integer, lexer.peek(2).tokentype);
+        assertEquals(TokenType.Identifier, lexer.peek().tokentype);
+        assertEquals(TokenType.Identifier, lexer.next().tokentype);
+        assertEquals(TokenType.Op_assign, lexer.next().tokentype);
+        assertEquals(TokenType.Semicolon, lexer.peek(1).tokentype);
+        assertEquals(TokenType.Integer, lexer.next().tokentype);
+        assertEquals(TokenType.Semicolon, lexer.next().tokentype);
+        assertEquals(TokenType.End_of_input, lexer.next().tokentype);
+    }
+
+    @Test
+    void emptyListStreamTest() {
+        //an empty List of Tokens is an empty source, so it keeps handing back End_of_input
+        TokenStream stream = TokenStream.of(List.of());
+        assertEquals(TokenType.End_of_input, stream.peek(2).tokentype);
+        assertEquals(TokenType.End_of_input, stream.next().tokentype);
+        assertEquals(TokenType.End_of_input, stream.next().tokentype);
+    }
+
+    @Test
+    void mappedTest() throws IOException {
+        //lexing a mapped file should give exactly the same Tokens as lexing the same text from a String
+        Path file = Path.of("src/main/resources/count.c");
+        List<Lexer.Token> expected = new Lexer(Files.readString(file)).getTokens();
+        List<Lexer.Token> actual = Lexer.mapped(file).getTokens();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), actual.get(i).toString());
+        }
+    }
+
+    @Test
+    void tokenBufferTest() {
+        //the packed buffer should hold the same tokens, with the same values, as getToken hands out
+        String source = "x = 'a' + 42; /* note */ print(\"hi there\", x);\nputc('\\n');";
+        List<Lexer.Token> expected = new Lexer(source).getTokens();
+        TokenBuffer buffer = new Lexer(source).tokenize(new TokenBuffer());
+        assertEquals(expected.size(), buffer.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).toString(), buffer.token(i).toString());
+        }
+        assertEquals("97", buffer.value(2));
+        assertEquals("hi there", buffer.value(8));
+    }
+
+    @Test
+    void keywordTest() {
+        //keywords, words that only start like keywords, and numbers that run into letters
+        Lexer lexer = new Lexer("if else print putc while iff els Print whiles 42 12ab");
+        TokenType[] expected = {TokenType.Keyword_if, TokenType.Keyword_else, TokenType.Keyword_print,
+                TokenType.Keyword_putc, TokenType.Keyword_while, TokenType.Identifier, TokenType.Identifier,
+                TokenType.Identifier, TokenType.Identifier, TokenType.Integer, TokenType.Identifier,
+                TokenType.End_of_input};
+        for (TokenType type : expected) {
+            assertEquals(type, lexer.getToken().tokentype);
+        }
+    }
+
+    @Test
+    void unclosedCharAtEndTest() {
+        //a char literal cut off by the end of the file is an error, not a crash, when lexing carries on after errors
+        Diagnostics diagnostics = new Diagnostics(Integer.MAX_VALUE);
+        List<Lexer.Token> tokens = new Lexer("a = '", new SymbolTable(), diagnostics).getTokens();
+        assertEquals(TokenType.Integer, tokens.get(2).tokentype);
+        assertEquals(TokenType.End_of_input, tokens.get(3).tokentype);
+        assertTrue(diagnostics.hasErrors());
+    }
 }
@@ -0,0 +1,83 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class OptimizerTest {
+
+    /**
+     * Compiles and optimizes a source, then prints the AST
+     * @param source text of the program
+     * @return the printed AST, one node per line
+     */
+    private static String optimized(String source) {
+        Parser.Node root = Optimizer.optimize(MiniCompiler.compile(source));
+        return new Parser(new Lexer("")).printAST(root, new StringBuilder(), false);
+    }
+
+    @Test
+    void foldTest() {
+        assertEquals("Assign\nIdentifier a\nInteger 10\n", optimized("a = 2 * 3 + 4;"));
+        assertEquals("Assign\nIdentifier a\nInteger 1\n", optimized("a = !(3 > 4) && (7 % 4 == 3);"));
+        //ints wrap around like they do when the program runs
+        assertEquals("Assign\nIdentifier a\nInteger 1410065408\n", optimized("a = 100000 * 100000;"));
+    }
+
+    @Test
+    void identityTest() {
+        assertEquals("Sequence\nAssign\nIdentifier a\nIdentifier b\nAssign\nIdentifier c\nIdentifier b\n",
+                optimized("a = b * 1 + 0; c = 0 + (b - 0) / 1;"));
+        //!!b is only b where just its truth matters, otherwise it is kept since b can be any number
+        assertEquals("If\nIdentifier b\nSequence\nAssign\nIdentifier a\nInteger 1\n;\n", optimized("if (!!b) a = 1;"));
+        assertEquals("Assign\nIdentifier a\nNot\nNot\nIdentifier b\n;\n;\n", optimized("a = !!b;"));
+        assertEquals("Assign\nIdentifier a\nLess\nIdentifier b\nInteger 2\n", optimized("a = !!(b < 2);"));
+        assertEquals("Assign\nIdentifier a\nLess\nIdentifier b\nInteger 2\n", optimized("a = 1 && b < 2;"));
+    }
+
+    @Test
+    void deadCodeTest() {
+        assertEquals("Prts\nString \"y\"\n;\n", optimized("if (1 < 2) print(\"y\"); else print(\"n\");"));
+        assertEquals("Prts\nString \"n\"\n;\n", optimized("if (0) { print(\"y\"); } else { print(\"n\"); }"));
+        assertEquals("Assign\nIdentifier a\nInteger 1\n", optimized("while (0) { a = 2; } a = 1; if (2 - 2) a = 3;"));
+        assertNull(Optimizer.optimize(MiniCompiler.compile("if (0) a = 1; ; ; while (1 > 2) a = 2;")));
+    }
+
+    /**
+     * Anything that can fail when the program runs has to stay, so it still fails
+     */
+    @Test
+    void divideByZeroTest() {
+        assertEquals("Assign\nIdentifier a\nDivide\nInteger 1\nInteger 0\n", optimized("a = 1 / 0;"));
+        Parser.Node root = Optimizer.optimize(MiniCompiler.compile("a = 2 * 3 % 0;"));
+        assertThrows(ArithmeticException.class, () -> new Interpreter(new StringWriter()).load(root).run());
+    }
+
+    /**
+     * Every sample should print exactly the same once optimized
+     */
+    @Test
+    void samplesTest() throws IOException {
+        for (String file : new String[]{"count.c", "fizzbuzz.c", "prime.c", "99bottles.c"}) {
+            String source = MiniCompiler.readSource(file);
+            StringWriter expected = new StringWriter();
+            new Interpreter(expected).load(MiniCompiler.compile(source)).run();
+            StringWriter actual = new StringWriter();
+            new Interpreter(actual).load(Optimizer.optimize(MiniCompiler.compile(source))).run();
+            assertEquals(expected.toString(), actual.toString(), file);
+        }
+    }
+
+    /**
+     * A deeply nested program shouldn't overflow the call stack
+     */
+    @Test
+    void deepNestingTest() {
+        int depth = 100000;
+        String source = "a = " + "(".repeat(depth) + "1 + 2" + ")".repeat(depth) + ";";
+        assertEquals("Assign\nIdentifier a\nInteger 3\n", optimized(source));
+    }
+}
@@ -0,0 +1,107 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class OutputSinkTest {
+
+    /**
+     * Tokens should print exactly as String.format used to print them
+     */
+    @Test
+    void tokenFormatTest() throws IOException {
+        for (String file : new String[]{"count.c", "fizzbuzz.c", "99bottles.c", "hello.t"}) {
+            for (Lexer.Token t : new Lexer(MiniCompiler.readSource(file)).getTokens()) {
+                String expected = String.format("%5d  %5d %-15s", t.line, t.pos, t.tokentype);
+                switch (t.tokentype) {
+                    case Integer: expected += String.format("  %4s", t.value); break;
+                    case Identifier: expected += String.format(" %s", t.value); break;
+                    case String: expected += String.format(" \"%s\"", t.value); break;
+                    default: break;
+                }
+                assertEquals(expected, t.toString());
+            }
+        }
+        //numbers wider than the field, and negative ones
+        assertEquals("123456     -7 Integer          123456", new Lexer.Token(TokenType.Integer, "123456", 123456, -7).toString());
+    }
+
+    /**
+     * Text written through a Writer should match the StringBuilder version, even when it is many buffers long
+     */
+    @Test
+    void writerTest() throws IOException {
+        String source = MiniCompiler.readSource("99bottles.c").repeat(200);
+        StringBuilder expected = new StringBuilder();
+        new Lexer(source).printTokens(OutputSink.of(expected));
+        StringWriter actual = new StringWriter();
+        try (OutputSink out = OutputSink.of(actual)) {
+            assertEquals(new Lexer(source).getTokens().size(), new Lexer(source).printTokens(out));
+        }
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(new Lexer(source).printTokens(), expected.toString());
+        //a TokenBuffer prints the same text, so --lex can dump the tokens it then parses
+        StringBuilder buffered = new StringBuilder();
+        TokenBuffer tokens = new Lexer(source).tokenize(new TokenBuffer());
+        assertEquals(tokens.size(), tokens.printTokens(OutputSink.of(buffered)));
+        assertEquals(expected.toString(), buffered.toString());
+
+        Parser p = new Parser(new Lexer(source));
+        int root = p.parseArena();
+        String ast = p.printAST(root, new StringBuilder(), false);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputSink out = OutputSink.of(bytes)) {
+            p.printAST(root, out);
+        }
+        assertEquals(ast, bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The console only gets the text when echo is turned on, and then gets all of it
+     */
+    @Test
+    void echoTest() {
+        PrintStream console = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true));
+        try {
+            Parser p = new Parser(new Lexer("a = 1; print(\"x\");"));
+            Parser.Node root = p.parse();
+            String quiet = p.printAST(root, new StringBuilder(), false);
+            assertEquals("", captured.toString());
+            String echoed = p.printAST(root, new StringBuilder(), true);
+            assertEquals(quiet, echoed);
+            assertEquals(quiet, captured.toString());
+
+            captured.reset();
+            OutputSink out = OutputSink.quiet();
+            p.printAST(root, out);
+            out.flush();
+            assertEquals("", captured.toString());
+            out = OutputSink.console();
+            p.printAST(root, out);
+            out.flush();
+            assertEquals(quiet, captured.toString());
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    @Test
+    void paddingTest() {
+        StringBuilder sb = new StringBuilder();
+        OutputSink.of(sb).padLeft(42, 5).append('|').padLeft(-3, 4).append('|').padRight("ab", 4).append('|')
+                .padLeft("toolong", 3).append(Integer.MIN_VALUE);
+        assertEquals("   42|  -3|ab  |toolong" + Integer.MIN_VALUE, sb.toString());
+        StringWriter w = new StringWriter();
+        try (OutputSink out = OutputSink.of(w)) {
+            out.padLeft(42, 5).append('|').padLeft(-3, 4).append('|').append(Integer.MIN_VALUE).append(0);
+        }
+        assertEquals("   42|  -3|" + Integer.MIN_VALUE + "0", w.toString());
+    }
+}
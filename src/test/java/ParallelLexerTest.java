@@ -0,0 +1,111 @@
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ParallelLexerTest {
+    /** Pool the chunks are lexed on, with a few threads even on a machine with one core */
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdown();
+    }
+
+    /**
+     * Checks that lexing in every number of chunks from 2 up gives exactly the tokens and symbol ids of one Lexer
+     * @param source text to lex
+     * @param maxChunks most chunks to try
+     */
+    private static void assertSameAsSerial(String source, int maxChunks) {
+        TokenBuffer expected = new Lexer(source).tokenize(new TokenBuffer());
+        SymbolTable expectedSymbols = expected.symbols();
+        for (int chunks = 2; chunks <= maxChunks; chunks++) {
+            TokenBuffer actual = ParallelLexer.tokenize(source, new SymbolTable(), new Diagnostics(), chunks, pool);
+            assertEquals(expected.size(), actual.size(), chunks + " chunks");
+            for (int i = 0; i < expected.size(); i++) {
+                String where = chunks + " chunks, token " + i;
+                assertEquals(expected.type(i), actual.type(i), where);
+                assertEquals(expected.line(i), actual.line(i), where);
+                assertEquals(expected.pos(i), actual.pos(i), where);
+                assertEquals(expected.start(i), actual.start(i), where);
+                assertEquals(expected.length(i), actual.length(i), where);
+                assertEquals(expected.symbol(i), actual.symbol(i), where);
+                assertEquals(expected.value(i), actual.value(i), where);
+            }
+            assertEquals(expectedSymbols.size(), actual.symbols().size());
+        }
+    }
+
+    @Test
+    void samplesTest() throws IOException {
+        for (String file : new String[]{"count.c", "fizzbuzz.c", "prime.c", "99bottles.c", "hello.t"}) {
+            assertSameAsSerial(MiniCompiler.readSource(file), 12);
+        }
+        assertSameAsSerial(MiniCompiler.readSource("99bottles.c").repeat(50), 16);
+    }
+
+    /**
+     * Chunks starting inside a comment or a String that runs over several lines, or on a - that depends on the
+     * line before, should still come out right
+     */
+    @Test
+    void straddlingTest() {
+        String comment = "a = 1;\n/* one\nb = \"two\nthree\";\n c = 4 - 5;\n*/\nd = 6;\n";
+        String string = "print(\"one\ntwo /* three\nfour\n\");\ne = -7;\nf = g\n- 8;\nh = (i)\n- 9;\n";
+        String lineComment = "j = 10; // k = \"\nl = 11;\n// /*\nm = 12;\n";
+        String chars = "n = '\"';\no = '\\n';\np = '/';\nq = 13 / 14;\n";
+        String source = (comment + string + lineComment + chars).repeat(3);
+        assertSameAsSerial(source, source.split("\n").length + 2);
+        //a comment long enough to cover several chunks at once
+        assertSameAsSerial("x = 1;\n/*\n" + "y = \"z\";\n".repeat(40) + "*/\nw = 2;\n", 30);
+        //no line break at the end, or at all, or nothing at all
+        assertSameAsSerial("a = 1;\nb = 2;\nc = a - b", 4);
+        assertSameAsSerial("a = 1; b = 2;", 4);
+        assertSameAsSerial("", 3);
+        assertSameAsSerial("\n\n\n\n", 4);
+        //a String or comment over the last chunk boundary, then a // comment running to the end with no line break
+        assertSameAsSerial("\"-\n\" //", 3);
+        assertSameAsSerial("\"\"/*\n*///", 2);
+        assertSameAsSerial("a = 1;\n/* one\ntwo */ b = \"three\nfour\"; // five", 5);
+    }
+
+    /**
+     * A source with errors should report them just as one Lexer does, even when a chunk's guess hits something
+     * that only looks like an error
+     */
+    @Test
+    void errorsTest() {
+        String bad = "a = 1;\nb = '';\nc = 2;\nd = 'xy';\ne = 3;\n";
+        for (int chunks = 2; chunks < 6; chunks++) {
+            Diagnostics serial = new Diagnostics(Integer.MAX_VALUE);
+            new Lexer(bad, new SymbolTable(), serial).tokenize(new TokenBuffer());
+            Diagnostics parallel = new Diagnostics(Integer.MAX_VALUE);
+            ParallelLexer.tokenize(bad, new SymbolTable(), parallel, chunks, pool);
+            assertEquals(serial.getErrors().toString(), parallel.getErrors().toString());
+        }
+        assertThrows(CompileException.class,
+                () -> ParallelLexer.tokenize("a = 1;\nb = \"never closed;\nc = 2;\n", new SymbolTable(), new Diagnostics(), 3, pool));
+        //inside this comment a chunk's guess sees an unclosed String, which isn't a real error
+        assertSameAsSerial("a = 1;\n/*\n\"\n*/\nb = 2;\n", 6);
+    }
+
+    @Test
+    void splitTest() {
+        assertArrayEquals(new int[]{0, 4, 8, 10}, ParallelLexer.split("aaa\nbbb\ncc", 3));
+        //one long line can't be split
+        assertArrayEquals(new int[]{0, 10}, ParallelLexer.split("aaaaaaaaaa", 4));
+        assertArrayEquals(new int[]{0, 0}, ParallelLexer.split("", 4));
+    }
+}
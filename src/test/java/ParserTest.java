@@ -4,9 +4,17 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 
 public class ParserTest {
@@ -66,4 +74,135 @@ public class ParserTest {
 
     }
 
+    /**
+     * The in-memory Lexer to Parser pipeline should give the same AST as the golden file, without any .lex file
+     */
+    @Test
+    void inMemoryPipelineHello() throws IOException {
+        String correct = Files.readString(Path.of("src/main/resources/correctHello"));
+        Parser p = new Parser(new Lexer(MiniCompiler.readSource("hello.t")));
+        String actual = p.printAST(p.parse(), new StringBuilder());
+        assertEquals(correct.trim(), actual.trim());
+    }
+
+    /**
+     * Reading a .lex line back should keep String values whole, spaces included
+     */
+    @Test
+    void parseTokenLineKeepsSpaces() {
+        Lexer.Token t = Parser.parseTokenLine(new Lexer.Token(TokenType.String, "a  b ", 3, 10).toString());
+        assertEquals(TokenType.String, t.tokentype);
+        assertEquals("a  b ", t.value);
+        assertEquals(3, t.line);
+        assertEquals(10, t.pos);
+    }
+
+    /**
+     * Statements should come out one at a time, straight off the Lexer
+     */
+    @Test
+    void nextStatementStreams() {
+        Parser p = new Parser(new Lexer("a = 1;\nb = a;"));
+        assertTrue(p.hasNextStatement());
+        Parser.Node first = p.nextStatement();
+        assertEquals(Parser.NodeType.nd_Assign, first.nt);
+        assertEquals("a", first.left.value);
+        assertTrue(p.hasNextStatement());
+        assertEquals("b", p.nextStatement().left.value);
+        assertFalse(p.hasNextStatement());
+    }
+
+    /**
+     * With room for several errors, the Parser should report each bad statement and keep parsing the rest
+     */
+    @Test
+    void recoversAtSemicolonAndRightBrace() {
+        Diagnostics diagnostics = new Diagnostics(10);
+        Lexer lexer = new Lexer("a = 1 2;\nwhile (a) { b = = 1; c = 3; }\n}\nd = 4;", new SymbolTable(), diagnostics);
+        Parser p = new Parser(lexer, diagnostics);
+        List<Parser.Node> statements = new ArrayList<>();
+        while (p.hasNextStatement()) {
+            statements.add(p.nextStatement());
+        }
+        assertEquals(3, diagnostics.getErrors().size());
+        assertEquals(1, diagnostics.getErrors().get(0).line);
+        assertEquals(2, diagnostics.getErrors().get(1).line);
+        assertEquals(Parser.NodeType.nd_While, statements.get(1).nt);
+        assertEquals("d", statements.get(statements.size() - 1).left.value);
+    }
+
+    /**
+     * By default the first error still stops parsing
+     */
+    @Test
+    void firstErrorStopsByDefault() {
+        CompileException e = assertThrows(CompileException.class, () -> new Parser(new Lexer("a = 1 2;")).parse());
+        assertEquals(1, e.line);
+    }
+
+    /**
+     * Deep nesting and long statement lists should parse and print without a StackOverflowError
+     */
+    @Test
+    void deepNestingTest() {
+        int n = 100_000;
+        String nested = "x = " + "(".repeat(n) + "1" + ")".repeat(n) + ";\n"
+                + "if (x) ".repeat(n) + "{".repeat(n) + "x = !!!x;" + "}".repeat(n) + "\n"
+                + "y = 1 + 2;\n".repeat(n);
+        Parser p = new Parser(new Lexer(nested));
+        String ast = p.printAST(p.parse(), new StringBuilder(), false);
+        assertTrue(ast.startsWith("Sequence\n".repeat(n + 2) + ";\nAssign\nIdentifier x\nInteger 1\nIf\n"));
+        assertTrue(ast.endsWith("Assign\nIdentifier y\nAdd\nInteger 1\nInteger 2\n"));
+    }
+
+    /**
+     * Parses a source and prints its AST
+     * @param source text of the program
+     * @return the printed AST
+     */
+    private static String ast(String source) {
+        Parser p = new Parser(new Lexer(source));
+        return p.printAST(p.parse(), new StringBuilder(), false);
+    }
+
+    /**
+     * Negation, Strings and a - after a parenthesis should all parse, and chains of operators should group the way
+     * their precedence and associativity say
+     */
+    @Test
+    void expressionFormsTest() {
+        assertEquals(";\nAssign\nIdentifier x\nSubtract\nSubtract\nNegate\nIdentifier a\n;\nIdentifier b\nInteger 6\n",
+                ast("x = -a - (b) - 6;").substring("Sequence\n".length()));
+        assertEquals(";\nAssign\nIdentifier x\nAdd\nSubtract\nSubtract\nInteger 1\nInteger 2\nMultiply\nInteger 3\nInteger 4\nInteger 5\n",
+                ast("x = 1 - 2 - 3 * 4 + 5;").substring("Sequence\n".length()));
+        assertEquals(";\nAssign\nIdentifier x\nOr\nIdentifier a\nAnd\nLess\nIdentifier b\nNegate\nNot\nIdentifier c\n;\n;\nIdentifier d\n",
+                ast("x = a || b < -!c && d;").substring("Sequence\n".length()));
+        assertEquals(";\nAssign\nIdentifier x\nString \"s\"\n", ast("x = \"s\";").substring("Sequence\n".length()));
+        CompileException e = assertThrows(CompileException.class, () -> ast("x = 1 + ;"));
+        assertEquals("expr: Expecting a primary, found: 'Semicolon' in line 1, pos 8", e.getMessage());
+    }
+
+    /**
+     * Empty blocks should parse on their own and as the body of a while or either branch of an if
+     */
+    @Test
+    void emptyBlockTest() {
+        assertEquals("Sequence\n;\n;\n", ast("{}"));
+        assertEquals("Sequence\n;\nWhile\nIdentifier c\n;\n", ast("while (c) {}"));
+        assertEquals("Sequence\n;\nIf\nIdentifier c\nSequence\n;\n;\n", ast("if (c) {} else {}"));
+        assertEquals("Sequence\n;\nWhile\nIdentifier c\nSequence\n;\nSequence\n;\nAssign\nIdentifier a\nInteger 1\n",
+                ast("while (c) { {} a = 1; }"));
+    }
+
+    /**
+     * A print argument can start with anything an expression can, a negation included, on its own or after a String
+     */
+    @Test
+    void printNegatedTest() {
+        assertEquals("Sequence\n;\nSequence\n;\nPrti\nNegate\nIdentifier x\n;\n;\n", ast("print(-x);"));
+        assertEquals("Sequence\n;\nSequence\n;\nSequence\nSequence\nPrts\nString \"a\"\n;\nPrti\nNegate\nIdentifier x\n;\n;\n"
+                + "Prti\nNot\nIdentifier y\n;\n;\n", ast("print(\"a\", -x, !y);"));
+        assertEquals("Sequence\n;\nSequence\n;\nPrti\nMultiply\nNegate\nAdd\nInteger 1\nInteger 2\n;\nInteger 3\n;\n",
+                ast("print(-(1 + 2) * 3);"));
+    }
 }
@@ -0,0 +1,128 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RegisterVMTest {
+
+    /**
+     * Compiles a source to RegisterCode and runs it
+     * @param source text of the program
+     * @return everything the program printed
+     */
+    private static String run(String source) throws IOException {
+        StringWriter out = new StringWriter();
+        new RegisterVM(out).run(RegisterGen.generate(MiniCompiler.compile(source)));
+        return out.toString();
+    }
+
+    /**
+     * Runs a source on the Interpreter
+     * @param source text of the program
+     * @return everything the program printed
+     */
+    private static String interpret(String source) throws IOException {
+        StringWriter out = new StringWriter();
+        new Interpreter(out).load(MiniCompiler.compile(source)).run();
+        return out.toString();
+    }
+
+    /**
+     * The RegisterVM should print exactly what the Interpreter prints for every sample program, optimized or not
+     */
+    @Test
+    void samplesMatchInterpreter() throws IOException {
+        for (String file : new String[]{"count.c", "fizzbuzz.c", "prime.c", "99bottles.c"}) {
+            String source = MiniCompiler.readSource(file);
+            assertEquals(interpret(source), run(source), file);
+            StringWriter optimized = new StringWriter();
+            new RegisterVM(optimized).run(RegisterGen.generate(Optimizer.optimize(MiniCompiler.compile(source))));
+            assertEquals(interpret(source), optimized.toString(), file);
+        }
+    }
+
+    /**
+     * If and else, nested loops, short circuit && and || and every operator should work like the Interpreter
+     */
+    @Test
+    void operatorsTest() throws IOException {
+        String source = "a = 7 % 3 * 2 + 10 / 4 - 1; b = !(a == 3) || 0; c = 0 && 1 / 0; d = 1 || 1 / 0;"
+                + "i = 0; n = 0; while (i < 5) { j = i; while (j >= 0) { n = n + 1; j = j - 1; } i = i + 1; }"
+                + "if (n != 15) print(\"bad\"); else { putc('o'); putc(107); }"
+                + "if (a <= 2) print(\"bad\"); if (a > 2) print(\" \", a, b, c, d, n, \"\\n\");";
+        assertEquals("ok 300115\n", run(source));
+        RegisterCode program = RegisterGen.generate(MiniCompiler.compile(source));
+        RegisterVM vm = new RegisterVM(new StringWriter());
+        vm.run(program);
+        assertEquals(15, vm.getVariable(program, "n"));
+        assertEquals(0, vm.getVariable(program, "missing"));
+    }
+
+    /**
+     * Every kind of condition, as a test and as a value, with constants on either side and a variable assigned from
+     * an expression that reads it, should give what the Interpreter gives
+     */
+    @Test
+    void conditionsMatchInterpreter() throws IOException {
+        String[] conditions = {
+                "a < b", "a <= 2", "3 < a", "3 >= b", "a == b", "2 != a", "!(a > b)", "a", "!b", "1", "0", "!0",
+                "a && b", "a || b", "a < 2 && b > 1", "a < 2 || b > 1", "!(a && b) || a == 3", "0 && a", "1 || a",
+                "(a || b) && !(a - b)", "a && (b || 1 / a)", "-a < -2", "a * 2 - b % 3 > 1 - b", "(a) - -b > 2"
+        };
+        StringBuilder source = new StringBuilder();
+        for (String condition : conditions) {
+            source.append("a = 0; while (a < 4) { b = 0; while (b < 4) {")
+                    .append("if (").append(condition).append(") putc('y'); else putc('n');")
+                    .append("while ((").append(condition).append(") && b < 4) { putc('w'); b = b + 4; }")
+                    .append("c = ").append(condition).append("; print(c);")
+                    .append("b = b + 1; } a = a + 1; } print(\"\\n\");");
+        }
+        source.append("a = 5; a = 10 - a * a; print(a, \" \"); a = a && a - 1; print(a, \" \"); a = -a; print(a, \"\\n\");");
+        assertEquals(interpret(source.toString()), run(source.toString()));
+    }
+
+    /**
+     * A counting loop should take one instruction for its body and one compare-and-branch for its test
+     */
+    @Test
+    void fusionTest() throws IOException {
+        RegisterCode program = RegisterGen.generate(MiniCompiler.compile("i = 0; while (i < 10) i = i + 1;"));
+        //loadi, jmp into the test, addi, jlti, halt
+        assertEquals(5, program.instructions());
+        assertTrue(program.disassemble().contains("addi  [i] [i] 1"), program.disassemble());
+        assertTrue(program.disassemble().contains("jlti  [i] 10"), program.disassemble());
+        assertEquals(program.variables.length, program.registers);
+
+        RegisterCode prime = RegisterGen.generate(MiniCompiler.compile(MiniCompiler.readSource("prime.c")));
+        Bytecode stack = CodeGen.generate(MiniCompiler.compile(MiniCompiler.readSource("prime.c")));
+        int stackInstructions = 0;
+        for (int pc = 0; pc < stack.code.length; pc += 1 + Bytecode.operands(stack.code[pc])) {
+            stackInstructions++;
+        }
+        assertTrue(prime.instructions() * 2 < stackInstructions, prime.instructions() + " of " + stackInstructions);
+    }
+
+    @Test
+    void divideByZeroTest() {
+        assertThrows(ArithmeticException.class, () -> run("a = 0; b = 1 / a;"));
+        assertThrows(ArithmeticException.class, () -> run("a = 1; b = a % 0;"));
+    }
+
+    /**
+     * Programs nested deeper than RegisterGen's call stack goes are reported as a CompileException
+     */
+    @Test
+    void deepNestingTest() {
+        String statements = "a = 1;\n" + "if (a) {\n".repeat(100000) + "print(a);\n" + "}\n".repeat(100000);
+        String expression = "a = 1;\nb = " + "-(a + ".repeat(100000) + "a" + ")".repeat(100000) + ";\n";
+        for (String source : new String[]{statements, expression}) {
+            Parser.Node ast = MiniCompiler.compile(source);
+            CompileException e = assertThrows(CompileException.class, () -> RegisterGen.generate(ast));
+            assertEquals("RegisterGen: program nested too deeply to compile", e.getMessage());
+        }
+    }
+}
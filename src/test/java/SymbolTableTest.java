@@ -0,0 +1,44 @@
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for SymbolTable
+ */
+public class SymbolTableTest {
+    @Test
+    void internTest() {
+        SymbolTable table = new SymbolTable();
+        int count = table.intern("count");
+        //a slice with the same text should get the same id and the same String back
+        assertEquals(count, table.intern("x = count;", 4, 9));
+        assertSame(table.name(count), table.name(table.intern("count")));
+        assertNotEquals(count, table.intern("counts"));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    void growTest() {
+        //enough names to make the table grow several times, every id should still find its name
+        SymbolTable table = new SymbolTable();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, table.intern("name" + i));
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, table.intern("name" + i));
+            assertEquals("name" + i, table.name(i));
+        }
+    }
+
+    @Test
+    void lexerInternsTest() {
+        //the same identifier showing up twice should share one id and one String
+        Lexer lexer = new Lexer("n = n + 1;");
+        Lexer.Token first = lexer.getToken();
+        lexer.getToken();
+        Lexer.Token second = lexer.getToken();
+        assertEquals(first.symbol, second.symbol);
+        assertSame(first.value, second.value);
+        assertEquals(-1, lexer.getToken().symbol);
+    }
+}
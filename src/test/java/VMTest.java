@@ -0,0 +1,106 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class VMTest {
+
+    /**
+     * Compiles a source to Bytecode and runs it
+     * @param source text of the program
+     * @return everything the program printed
+     */
+    private static String run(String source) throws IOException {
+        StringWriter out = new StringWriter();
+        new VM(out).run(CodeGen.generate(MiniCompiler.compile(source)));
+        return out.toString();
+    }
+
+    /**
+     * The VM should print exactly what the Interpreter prints for every sample program
+     */
+    @Test
+    void samplesMatchInterpreter() throws IOException {
+        for (String file : new String[]{"count.c", "fizzbuzz.c", "prime.c", "99bottles.c"}) {
+            String source = MiniCompiler.readSource(file);
+            StringWriter expected = new StringWriter();
+            new Interpreter(expected).load(MiniCompiler.compile(source)).run();
+            assertEquals(expected.toString(), run(source), file);
+        }
+    }
+
+    /**
+     * If and else, nested loops, short circuit && and || and every operator should work like the Interpreter
+     */
+    @Test
+    void operatorsTest() throws IOException {
+        String source = "a = 7 % 3 * 2 + 10 / 4 - 1; b = !(a == 3) || 0; c = 0 && 1 / 0; d = 1 || 1 / 0;"
+                + "i = 0; n = 0; while (i < 5) { j = i; while (j >= 0) { n = n + 1; j = j - 1; } i = i + 1; }"
+                + "if (n != 15) print(\"bad\"); else { putc('o'); putc(107); }"
+                + "if (a <= 2) print(\"bad\"); if (a > 2) print(\" \", a, b, c, d, n, \"\\n\");";
+        assertEquals("ok 300115\n", run(source));
+        StringWriter expected = new StringWriter();
+        new Interpreter(expected).load(MiniCompiler.compile(source)).run();
+        assertEquals(expected.toString(), run(source));
+        Bytecode program = CodeGen.generate(MiniCompiler.compile(source));
+        VM vm = new VM(new StringWriter());
+        vm.run(program);
+        assertEquals(15, vm.getVariable(program, "n"));
+    }
+
+    @Test
+    void divideByZeroTest() {
+        assertThrows(ArithmeticException.class, () -> run("a = 0; b = 1 / a;"));
+    }
+
+    /**
+     * Saved Bytecode should read back the same, and the cache should be used once it exists
+     */
+    @Test
+    void cacheTest(@TempDir Path dir) throws IOException {
+        Bytecode program = CodeGen.generate(MiniCompiler.compile(MiniCompiler.readSource("prime.c")));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        program.write(bytes);
+        Bytecode copy = Bytecode.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertArrayEquals(program.code, copy.code);
+        assertArrayEquals(program.strings, copy.strings);
+        assertArrayEquals(program.variables, copy.variables);
+        assertEquals(program.maxStack, copy.maxStack);
+        assertEquals(program.disassemble(), copy.disassemble());
+
+        Path source = dir.resolve("p.c");
+        Files.writeString(source, "print(\"one\");");
+        Path cacheDir = dir.resolve("cache");
+        VM.compileCached(source, cacheDir);
+        assertTrue(Files.exists(cacheDir.resolve("p.c.mcbc")));
+        //a cache file newer than the source is used as is, even though it no longer matches
+        ByteArrayOutputStream other = new ByteArrayOutputStream();
+        CodeGen.generate(MiniCompiler.compile("print(\"two\");")).write(other);
+        Files.write(cacheDir.resolve("p.c.mcbc"), other.toByteArray());
+        assertEquals("two", VM.compileCached(source, cacheDir).strings[0]);
+    }
+
+    /**
+     * Programs nested deeper than CodeGen's call stack goes are reported as a CompileException
+     */
+    @Test
+    void deepNestingTest() {
+        String statements = "a = 1;\n" + "if (a) {\n".repeat(100000) + "print(a);\n" + "}\n".repeat(100000);
+        String expression = "a = 1;\nb = " + "-(a + ".repeat(100000) + "a" + ")".repeat(100000) + ";\n";
+        for (String source : new String[]{statements, expression}) {
+            Parser.Node ast = MiniCompiler.compile(source);
+            CompileException e = assertThrows(CompileException.class, () -> CodeGen.generate(ast));
+            assertEquals("CodeGen: program nested too deeply to compile", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * CharScanner that compares a whole vector of chars per step with the jdk.incubator.vector API, as many as the CPU's
+ * widest vector holds. It reads the source as one byte per char: a memory mapped source already is, and a String is
+ * copied into Latin-1 bytes once. A char too big for Latin-1 turns into a ?, which is never a quote, a line break or
+ * part of a star-slash either, and whitespace past ASCII is left to charClass.
+ *
+ * Only ever loaded by CharScanner through reflection, since it can't be loaded at all without the vector module.
+ */
+class VectorScanner extends CharScanner {
+    /** Widest vector of bytes the CPU handles well */
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    /** Number of bytes in one vector */
+    private static final int LANES = SPECIES.length();
+
+    /** The source, one byte per char, when it was copied out of a String */
+    private final byte[] array;
+    /** The source, one byte per char, when it is memory mapped */
+    private final ByteBuffer bytes;
+
+    /**
+     * Constructor for a VectorScanner
+     * @param s source to search
+     * @param array the same source, one byte per char, or null to read bytes instead
+     * @param bytes the same source in a buffer, used when array is null
+     */
+    private VectorScanner(CharSequence s, byte[] array, ByteBuffer bytes) {
+        super(s);
+        this.array = array;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Makes a VectorScanner for a source, called by CharScanner through a MethodHandle
+     * @param s source to search
+     * @return the VectorScanner, or null for a kind of source it can't read as bytes
+     */
+    static CharScanner create(CharSequence s) {
+        if (s instanceof MappedSource) {
+            return new VectorScanner(s, null, ((MappedSource) s).bytes());
+        }
+        if (s instanceof String) {
+            return new VectorScanner(s, ((String) s).getBytes(StandardCharsets.ISO_8859_1), null);
+        }
+        return null;
+    }
+
+    /**
+     * Loads the vector of chars starting at an index
+     * @param i index of the first char
+     * @return the vector
+     */
+    private ByteVector load(int i) {
+        if (this.array != null) {
+            return ByteVector.fromArray(SPECIES, this.array, i);
+        }
+        return ByteVector.fromByteBuffer(SPECIES, this.bytes, i, ByteOrder.nativeOrder());
+    }
+
+    @Override
+    int skipSpace(int from, int end) {
+        int i = from;
+        while (i + LANES <= end) {
+            ByteVector v = load(i);
+            //ASCII whitespace is 9 to 13 and 28 to 32, and bytes past ASCII are negative so they never match
+            VectorMask<Byte> space = v.compare(VectorOperators.GE, (byte) 9).and(v.compare(VectorOperators.LE, (byte) 13))
+                    .or(v.compare(VectorOperators.GE, (byte) 28).and(v.compare(VectorOperators.LE, (byte) 32)));
+            if (space.allTrue()) {
+                i += LANES;
+                continue;
+            }
+            i += space.not().firstTrue();
+            //a char past ASCII might still be whitespace, which charClass decides
+            if (Lexer.charClass(this.s.charAt(i)) != Lexer.SPACE) {
+                return i;
+            }
+            i++;
+        }
+        return super.skipSpace(i, end);
+    }
+
+    @Override
+    int find(char c, int from, int end) {
+        if (c >= 128) {
+            return super.find(c, from, end);
+        }
+        int i = from;
+        for (; i + LANES <= end; i += LANES) {
+            ByteVector v = load(i);
+            VectorMask<Byte> found = v.eq((byte) c).or(v.eq((byte) 0));
+            if (found.anyTrue()) {
+                return i + found.firstTrue();
+            }
+        }
+        return super.find(c, i, end);
+    }
+
+    @Override
+    int commentEnd(int from, int end) {
+        int i = from;
+        //the vector of the chars one along gives the char after each one
+        for (; i + LANES + 1 <= end; i += LANES) {
+            ByteVector v = load(i);
+            VectorMask<Byte> found = v.eq((byte) '*').and(load(i + 1).eq((byte) '/')).or(v.eq((byte) 0));
+            if (found.anyTrue()) {
+                return i + found.firstTrue();
+            }
+        }
+        return super.commentEnd(i, end);
+    }
+
+    @Override
+    int count(char c, int from, int end) {
+        if (c >= 128) {
+            return super.count(c, from, end);
+        }
+        int n = 0;
+        int i = from;
+        for (; i + LANES <= end; i += LANES) {
+            n += load(i).eq((byte) c).trueCount();
+        }
+        return n + super.count(c, i, end);
+    }
+
+    @Override
+    int lastIndexOf(char c, int from, int end) {
+        if (c >= 128) {
+            return super.lastIndexOf(c, from, end);
+        }
+        int i = end;
+        for (; i - LANES >= from; i -= LANES) {
+            VectorMask<Byte> found = load(i - LANES).eq((byte) c);
+            if (found.anyTrue()) {
+                return i - LANES + found.lastTrue();
+            }
+        }
+        return super.lastIndexOf(c, from, i);
+    }
+}